@@ -0,0 +1,517 @@
+package io.webetl.compiler;
+
+import io.webetl.runtime.ThinJar;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ArtifactRepository resolves the dependencies of flow components to jar files.
+ * <p>
+ * Artifacts are looked up by their coordinates, which map directly to a path in Maven
+ * repository layout, in this order: the WebETL artifact store, the local Maven repository,
+ * the Gradle module cache, a local mirror directory if configured, and finally the remote
+ * repository, Maven Central unless configured otherwise. Artifacts found outside the
+ * store are recorded in a persistent index, artifacts downloaded are added to the store
+ * once they match the checksum the remote repository publishes for them.
+ * An index entry is checked against the size and modification time of its file on every
+ * lookup, so a jar that changed or disappeared is resolved again. Thin flow jars refer to
+ * artifacts in the store only, see {@link #install}.
+ * <p>
+ * Configuration, as system properties:
+ * <ul>
+ *   <li>{@value #DIR_PROPERTY}: the artifact store, {@code ~/.webetl/artifacts} by default</li>
+ *   <li>{@value #MIRROR_PROPERTY}: a directory in Maven layout used instead of the remote
+ *       repository, e.g. for machines without internet access</li>
+ *   <li>{@value #REMOTE_PROPERTY}: the remote repository URL</li>
+ * </ul>
+ */
+@Slf4j
+public class ArtifactRepository {
+    /** System property overriding the artifact store directory. */
+    public static final String DIR_PROPERTY = ThinJar.STORE_PROPERTY;
+    /** System property naming a local mirror directory in Maven layout. */
+    public static final String MIRROR_PROPERTY = "webetl.artifacts.mirror";
+    /** System property overriding the remote repository URL. */
+    public static final String REMOTE_PROPERTY = "webetl.artifacts.remote";
+
+    private static final String DEFAULT_REMOTE = "https://repo1.maven.org/maven2/";
+    private static final String INDEX_FILE = "index.properties";
+    private static final int RESOLVER_THREADS = 4;
+    /** Digest algorithms of the checksums published next to artifacts, the strongest first. */
+    private static final List<String> CHECKSUM_ALGORITHMS = List.of("SHA-256", "SHA-1");
+
+    private static volatile ArtifactRepository defaultRepository;
+
+    private final Path store;
+    private final List<Path> localRepositories;
+    private final Path gradleCache;
+    private final Path mirror;
+    private final String remote;
+    private final ExecutorService resolver;
+    // coordinates -> resolved artifact, loaded from and saved to the index file
+    private final Map<String, Artifact> index = new ConcurrentHashMap<>();
+    private volatile boolean indexChanged;
+
+    /**
+     * A resolved artifact.
+     */
+    public static final class Artifact {
+        private final DependencyEntry dependency;
+        private final Path path;
+        private final long size;
+        private final long lastModified;
+        private final String sha256;
+
+        Artifact(DependencyEntry dependency, Path path, long size, long lastModified, String sha256) {
+            this.dependency = dependency;
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.sha256 = sha256;
+        }
+
+        public DependencyEntry getDependency() {
+            return dependency;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        /**
+         * Checks whether the file still is the one the artifact was resolved to.
+         */
+        boolean isCurrent() {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                return attributes.isRegularFile() && attributes.size() == size
+                    && attributes.lastModifiedTime().toMillis() == lastModified;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Creates a repository.
+     *
+     * @param store the directory downloaded artifacts and the index are kept in
+     * @param localRepositories local repositories in Maven layout, searched in order
+     * @param gradleCache the Gradle module cache, null if there is none
+     * @param mirror a directory in Maven layout used instead of the remote repository, or null
+     * @param remote the remote repository URL, or null to never download
+     */
+    public ArtifactRepository(Path store, List<Path> localRepositories, Path gradleCache, Path mirror, String remote) {
+        this.store = store;
+        this.localRepositories = localRepositories;
+        this.gradleCache = gradleCache;
+        this.mirror = mirror;
+        this.remote = remote == null || remote.endsWith("/") ? remote : remote + "/";
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.resolver = Executors.newFixedThreadPool(RESOLVER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "artifact-resolver-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        loadIndex();
+    }
+
+    /**
+     * Gets the repository shared by all compilers of this process.
+     */
+    public static ArtifactRepository getDefault() {
+        if (defaultRepository == null) {
+            synchronized (ArtifactRepository.class) {
+                if (defaultRepository == null) {
+                    Path home = Paths.get(System.getProperty("user.home"));
+                    String mirror = System.getProperty(MIRROR_PROPERTY);
+                    defaultRepository = new ArtifactRepository(
+                        // The same store thin flow jars are resolved against when they run
+                        ThinJar.getStore(),
+                        List.of(home.resolve(".m2").resolve("repository")),
+                        home.resolve(".gradle").resolve("caches").resolve("modules-2").resolve("files-2.1"),
+                        mirror != null && !mirror.isEmpty() ? Paths.get(mirror) : null,
+                        System.getProperty(REMOTE_PROPERTY, DEFAULT_REMOTE));
+                }
+            }
+        }
+        return defaultRepository;
+    }
+
+    public Path getStore() {
+        return store;
+    }
+
+    /**
+     * Resolves dependencies in parallel.
+     *
+     * @param dependencies the dependencies
+     * @return the resolved artifacts by dependency, in the order of the dependencies;
+     *         dependencies that could not be resolved are missing
+     */
+    public Map<DependencyEntry, Artifact> resolveAll(Collection<DependencyEntry> dependencies) {
+        Map<DependencyEntry, CompletableFuture<Artifact>> pending = new LinkedHashMap<>();
+        for (DependencyEntry dependency : dependencies) {
+            pending.put(dependency, CompletableFuture.supplyAsync(() -> resolveQuietly(dependency), resolver));
+        }
+        Map<DependencyEntry, Artifact> resolved = new LinkedHashMap<>();
+        pending.forEach((dependency, future) -> {
+            Artifact artifact = future.join();
+            if (artifact != null) {
+                resolved.put(dependency, artifact);
+            }
+        });
+        if (indexChanged) {
+            saveIndex();
+        }
+        return resolved;
+    }
+
+    /**
+     * Resolves a dependency.
+     *
+     * @return the artifact, null if no repository has it
+     * @throws IOException if the artifact was found but cannot be read or downloaded
+     */
+    public Artifact resolve(DependencyEntry dependency) throws IOException {
+        String coordinates = dependency.getFullName();
+        Artifact indexed = index.get(coordinates);
+        if (indexed != null && indexed.isCurrent()) {
+            return indexed;
+        }
+
+        Path path = find(dependency);
+        if (path == null) {
+            path = download(dependency);
+        }
+        if (path == null) {
+            if (index.remove(coordinates) != null) {
+                indexChanged = true;
+            }
+            return null;
+        }
+        Artifact artifact = artifact(dependency, path);
+        index.put(coordinates, artifact);
+        indexChanged = true;
+        return artifact;
+    }
+
+    /**
+     * Gets an artifact from the store only, without looking at the other repositories.
+     *
+     * @return the artifact, null if the store does not hold it
+     * @throws IOException if the artifact cannot be read
+     */
+    public Artifact getInstalled(DependencyEntry dependency) throws IOException {
+        Path path = store.resolve(dependency.getMavenPath());
+        Artifact indexed = index.get(dependency.getFullName());
+        if (indexed != null && indexed.path.equals(path) && indexed.isCurrent()) {
+            return indexed;
+        }
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        Artifact artifact = artifact(dependency, path);
+        index.put(dependency.getFullName(), artifact);
+        saveIndex();
+        return artifact;
+    }
+
+    /**
+     * Adds a jar to the store under the coordinates of a dependency, e.g. a library found
+     * in the local Maven repository, so thin flow jars can refer to it. An artifact the
+     * store already holds is kept as it is.
+     *
+     * @param dependency the coordinates
+     * @param file the jar
+     * @return the artifact in the store
+     * @throws IOException if the jar cannot be copied
+     */
+    public Artifact install(DependencyEntry dependency, Path file) throws IOException {
+        Path target = store.resolve(dependency.getMavenPath());
+        if (!Files.isRegularFile(target)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                publish(in, target);
+            }
+            log.debug("Installed {} into the artifact store", dependency);
+        }
+        Artifact indexed = index.get(dependency.getFullName());
+        if (indexed != null && indexed.path.equals(target) && indexed.isCurrent()) {
+            return indexed;
+        }
+        Artifact artifact = artifact(dependency, target);
+        index.put(dependency.getFullName(), artifact);
+        saveIndex();
+        return artifact;
+    }
+
+    private Artifact resolveQuietly(DependencyEntry dependency) {
+        try {
+            return resolve(dependency);
+        } catch (IOException e) {
+            log.warn("Could not resolve {}: {}", dependency, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Finds an artifact in the local repositories, without downloading.
+     */
+    private Path find(DependencyEntry dependency) {
+        String mavenPath = dependency.getMavenPath();
+        Path inStore = store.resolve(mavenPath);
+        if (Files.isRegularFile(inStore)) {
+            return inStore;
+        }
+        for (Path repository : localRepositories) {
+            Path candidate = repository.resolve(mavenPath);
+            if (Files.isRegularFile(candidate)) {
+                return candidate;
+            }
+        }
+        if (gradleCache != null) {
+            // <group>/<artifact>/<version>/<sha1>/<artifact>-<version>.jar
+            Path versionDir = gradleCache.resolve(dependency.getGroupId())
+                .resolve(dependency.getArtifactId()).resolve(dependency.getVersion());
+            if (Files.isDirectory(versionDir)) {
+                try (DirectoryStream<Path> hashes = Files.newDirectoryStream(versionDir, Files::isDirectory)) {
+                    for (Path hashDir : hashes) {
+                        Path candidate = hashDir.resolve(dependency.getJarFilename());
+                        if (Files.isRegularFile(candidate)) {
+                            return candidate;
+                        }
+                    }
+                } catch (IOException e) {
+                    log.debug("Could not list {}: {}", versionDir, e.getMessage());
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Copies an artifact from the mirror or downloads it from the remote repository
+     * into the store.
+     */
+    private Path download(DependencyEntry dependency) throws IOException {
+        String mavenPath = dependency.getMavenPath();
+        Path target = store.resolve(mavenPath);
+        if (mirror != null) {
+            Path mirrored = mirror.resolve(mavenPath);
+            if (!Files.isRegularFile(mirrored)) {
+                // The mirror replaces the remote repository, it is not a fallback
+                log.warn("Artifact {} is not in the mirror {}", dependency, mirror);
+                return null;
+            }
+            try (InputStream in = Files.newInputStream(mirrored)) {
+                return publish(in, target);
+            }
+        }
+        if (remote == null) {
+            return null;
+        }
+        log.info("Downloading {} from {}", dependency, remote);
+        Checksum checksum = publishedChecksum(remote + mavenPath);
+        try (InputStream in = new URL(remote + mavenPath).openStream()) {
+            return publish(in, target, checksum);
+        }
+    }
+
+    /**
+     * Fetches the checksum the remote repository publishes next to an artifact: its
+     * SHA-256 if there is one, otherwise its SHA-1, which Maven Central has for every file.
+     *
+     * @throws IOException if the repository publishes neither
+     */
+    private static Checksum publishedChecksum(String url) throws IOException {
+        for (String algorithm : CHECKSUM_ALGORITHMS) {
+            // e.g. .sha256
+            String suffix = "." + algorithm.replace("-", "").toLowerCase();
+            String content;
+            try (InputStream in = new URL(url + suffix).openStream()) {
+                content = new String(in.readAllBytes(), StandardCharsets.US_ASCII).trim();
+            } catch (FileNotFoundException e) {
+                continue;
+            }
+            // some files name the artifact after the checksum
+            String checksum = content.split("\\s+")[0].toLowerCase();
+            if (!checksum.isEmpty()) {
+                return new Checksum(algorithm, checksum);
+            }
+        }
+        throw new IOException("No checksum published for " + url);
+    }
+
+    /**
+     * Writes an artifact to a temp file and moves it into place, so concurrent
+     * resolutions never see a partially written jar.
+     */
+    private Path publish(InputStream in, Path target) throws IOException {
+        return publish(in, target, null);
+    }
+
+    /**
+     * Writes an artifact to a temp file, checks its checksum and moves it into place. An
+     * artifact not matching its checksum is deleted.
+     *
+     * @param checksum the expected checksum, or null to not check the artifact
+     * @throws IOException if the artifact cannot be written or does not match the checksum
+     */
+    private Path publish(InputStream in, Path target, Checksum checksum) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path tempFile = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            if (checksum != null) {
+                MessageDigest digest;
+                try {
+                    digest = MessageDigest.getInstance(checksum.algorithm);
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IOException(checksum.algorithm + " not available", e);
+                }
+                Files.copy(new DigestInputStream(in, digest), tempFile, StandardCopyOption.REPLACE_EXISTING);
+                String actual = HexFormat.of().formatHex(digest.digest());
+                if (!actual.equals(checksum.value)) {
+                    throw new IOException("Downloaded " + target.getFileName() + " has " + checksum.algorithm + " "
+                        + actual + " instead of the published " + checksum.value);
+                }
+            } else {
+                Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            try {
+                Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return target;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static Artifact artifact(DependencyEntry dependency, Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+        try (InputStream in = new DigestInputStream(Files.newInputStream(path), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return new Artifact(dependency, path, attributes.size(), attributes.lastModifiedTime().toMillis(),
+            HexFormat.of().formatHex(digest.digest()));
+    }
+
+    /**
+     * A checksum published for an artifact.
+     */
+    private static final class Checksum {
+        final String algorithm;
+        /** The checksum as lowercase hex. */
+        final String value;
+
+        Checksum(String algorithm, String value) {
+            this.algorithm = algorithm;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Loads the index. Each entry maps coordinates to path, size, modification time and
+     * checksum; entries that cannot be parsed are dropped.
+     */
+    private void loadIndex() {
+        Path indexFile = store.resolve(INDEX_FILE);
+        if (!Files.isRegularFile(indexFile)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            log.warn("Could not read artifact index {}: {}", indexFile, e.getMessage());
+            return;
+        }
+        for (String coordinates : properties.stringPropertyNames()) {
+            String[] gav = coordinates.split(":");
+            String[] fields = properties.getProperty(coordinates).split("\\|");
+            if (gav.length != 3 || fields.length != 4) {
+                continue;
+            }
+            try {
+                index.put(coordinates, new Artifact(new DependencyEntry(gav[0], gav[1], gav[2]),
+                    Paths.get(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]));
+            } catch (RuntimeException e) {
+                // stale format, resolved again on use
+            }
+        }
+        log.debug("Loaded {} artifacts from {}", index.size(), indexFile);
+    }
+
+    private synchronized void saveIndex() {
+        indexChanged = false;
+        Properties properties = new Properties();
+        for (Artifact artifact : new ArrayList<>(index.values())) {
+            properties.setProperty(artifact.dependency.getFullName(), artifact.path.toAbsolutePath() + "|"
+                + artifact.size + "|" + artifact.lastModified + "|" + artifact.sha256);
+        }
+        try {
+            Files.createDirectories(store);
+            Path tempFile = Files.createTempFile(store, INDEX_FILE, ".tmp");
+            try {
+                try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                    properties.store(writer, "WebETL artifact index");
+                }
+                try {
+                    Files.move(tempFile, store.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempFile, store.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            log.warn("Could not write artifact index: {}", e.getMessage());
+        }
+    }
+}
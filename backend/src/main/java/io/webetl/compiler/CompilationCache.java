@@ -0,0 +1,474 @@
+package io.webetl.compiler;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.webetl.model.Sheet;
+import io.webetl.model.data.Schema;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * CompilationCache keeps the flow jars compiled from sheets, so compiling a sheet that
+ * did not change since its last compilation costs a file copy instead of code
+ * generation, javac, dependency collection and packaging.
+ * <p>
+ * A jar is cached under two hashes. The structure hash covers the normalized sheet
+ * without its parameter values (nodes, edges and component data, but not node positions
+ * or other editor state), the class files of the components it uses and the version of
+ * the compiler and runtime classes that end up in the jar. The parameter hash covers the
+ * parameter values and the row schemas inferred for the sheet, which only the generated
+ * flow class depends on. A sheet whose
+ * structure hash matches a cached jar but whose parameters changed only needs its flow
+ * class recompiled; everything else in the jar is reused.
+ * <p>
+ * Jars are written to a temp file and renamed into place, so concurrent compilations
+ * never see a partially written jar.
+ */
+@Slf4j
+public class CompilationCache {
+    /** System property overriding the cache directory. */
+    public static final String DIR_PROPERTY = "webetl.compile-cache.dir";
+    /** System property overriding the maximum cache size in bytes. */
+    public static final String MAX_BYTES_PROPERTY = "webetl.compile-cache.max-bytes";
+
+    private static final long DEFAULT_MAX_BYTES = 512L * 1024 * 1024;
+    // Parameter variants kept per sheet structure, the older ones are removed
+    private static final int MAX_VARIANTS = 4;
+    private static final String SUFFIX = ".jar";
+    /** Packages whose classes are packed into flow jars, they make up the compiler version. */
+    private static final List<String> COMPILER_PACKAGES = List.of(
+        "io/webetl/compiler",
+        "io/webetl/runtime",
+        "io/webetl/model",
+        "io/webetl/components"
+    );
+    /** Node fields that only hold editor state. */
+    private static final Set<String> EDITOR_FIELDS = Set.of(
+        "position", "positionAbsolute", "selected", "dragging", "width", "height", "measured"
+    );
+
+    private static volatile CompilationCache defaultCache;
+    private static volatile String compilerVersion;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final ObjectMapper mapper = new ObjectMapper()
+        .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    /**
+     * Creates a cache in the given directory.
+     *
+     * @param directory the cache directory
+     * @param maxBytes the size above which least recently used entries are evicted
+     */
+    public CompilationCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the cache shared by all compilers of this process. It lives in
+     * {@code ~/.webetl/cache/flows} unless {@value #DIR_PROPERTY} is set.
+     */
+    public static CompilationCache getDefault() {
+        if (defaultCache == null) {
+            synchronized (CompilationCache.class) {
+                if (defaultCache == null) {
+                    String dir = System.getProperty(DIR_PROPERTY);
+                    Path directory = dir != null && !dir.isEmpty()
+                        ? Paths.get(dir)
+                        : Paths.get(System.getProperty("user.home"), ".webetl", "cache", "flows");
+                    defaultCache = new CompilationCache(directory,
+                        Long.getLong(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES));
+                }
+            }
+        }
+        return defaultCache;
+    }
+
+    /**
+     * The cache key of a sheet.
+     */
+    public static final class Key {
+        final String structure;
+        final String parameters;
+
+        Key(String structure, String parameters) {
+            this.structure = structure;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public String toString() {
+            return structure + "/" + parameters;
+        }
+    }
+
+    /**
+     * Computes the cache key of a sheet compiled to a fat jar.
+     *
+     * @param sheet the sheet, already validated
+     * @return the key
+     * @throws IOException if the sheet or a component class cannot be read
+     */
+    public Key key(Sheet sheet) throws IOException {
+        return key(sheet, Map.of(), FlowCompilerNG.JarLayout.FAT, FlowCompilerNG.Backend.JAVAC);
+    }
+
+    /**
+     * Computes the cache key of a sheet.
+     *
+     * @param sheet the sheet, already validated
+     * @param schemas the output schemas inferred for the nodes of the sheet, by node id
+     * @param layout the layout of the jar the sheet is compiled to
+     * @param backend the backend generating the flow class
+     * @return the key
+     * @throws IOException if the sheet or a component class cannot be read
+     */
+    public Key key(Sheet sheet, Map<String, Schema> schemas, FlowCompilerNG.JarLayout layout,
+            FlowCompilerNG.Backend backend) throws IOException {
+        List<Object> nodes = new ArrayList<>();
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        Set<String> implementationClasses = new TreeSet<>();
+        for (Map<String, Object> node : sheet.getNodes()) {
+            Map<String, Object> normalized = new TreeMap<>(node);
+            EDITOR_FIELDS.forEach(normalized::remove);
+            if (node.get("data") instanceof Map) {
+                Map<String, Object> data = sortedCopy((Map<?, ?>) node.get("data"));
+                if (data.get("componentData") instanceof Map) {
+                    Map<String, Object> componentData = sortedCopy((Map<?, ?>) data.get("componentData"));
+                    parameters.put(String.valueOf(node.get("id")), componentData.remove("parameters"));
+                    Object implementationClass = componentData.get("implementationClass");
+                    if (implementationClass instanceof String) {
+                        implementationClasses.add((String) implementationClass);
+                    }
+                    data.put("componentData", componentData);
+                }
+                normalized.put("data", data);
+            }
+            nodes.add(normalized);
+        }
+        List<Object> edges = new ArrayList<>();
+        for (Map<String, Object> edge : sheet.getEdges()) {
+            Map<String, Object> normalized = new TreeMap<>();
+            for (String field : List.of("source", "target", "sourceHandle", "targetHandle")) {
+                normalized.put(field, edge.get(field));
+            }
+            edges.add(normalized);
+        }
+
+        Map<String, Object> structure = new TreeMap<>();
+        structure.put("id", sheet.getId());
+        structure.put("nodes", nodes);
+        structure.put("edges", edges);
+        Map<String, String> components = new TreeMap<>();
+        for (String implementationClass : implementationClasses) {
+            components.put(implementationClass, classHash(implementationClass));
+        }
+        structure.put("components", components);
+        structure.put("compiler", compilerVersion());
+        structure.put("layout", layout.name());
+        structure.put("backend", backend.name());
+
+        Map<String, Object> variant = new TreeMap<>();
+        variant.put("parameters", parameters);
+        Map<String, List<String>> columns = new TreeMap<>();
+        schemas.forEach((nodeId, schema) -> columns.put(nodeId, schema.getColumns().entrySet().stream()
+            .map(column -> column.getKey() + " " + column.getValue().getType())
+            .toList()));
+        variant.put("schemas", columns);
+
+        return new Key(hash(json(structure)), hash(json(variant)));
+    }
+
+    /**
+     * Copies the jar cached for a key.
+     *
+     * @return true if the key was cached, false if the sheet has to be compiled
+     */
+    public boolean copyTo(Key key, Path target) {
+        return copy(directory.resolve(key.structure).resolve(key.parameters + SUFFIX), target);
+    }
+
+    /**
+     * Copies a jar cached for the same sheet structure but other parameter values, the
+     * most recently used one.
+     *
+     * @return true if a variant was cached, false if the sheet has to be compiled
+     */
+    public boolean copyVariantTo(Key key, Path target) {
+        Path structureDir = directory.resolve(key.structure);
+        if (!Files.isDirectory(structureDir)) {
+            return false;
+        }
+        for (Path variant : variants(structureDir)) {
+            if (copy(variant, target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a compiled jar to the cache. Failures are logged, a missing entry only costs
+     * the next compilation.
+     */
+    public void put(Key key, File jarFile) {
+        Path structureDir = directory.resolve(key.structure);
+        try {
+            Files.createDirectories(structureDir);
+            Path tempFile = Files.createTempFile(structureDir, key.parameters + "-", ".tmp");
+            try {
+                Files.copy(jarFile.toPath(), tempFile, StandardCopyOption.REPLACE_EXISTING);
+                Path target = structureDir.resolve(key.parameters + SUFFIX);
+                try {
+                    Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            List<Path> variants = variants(structureDir);
+            for (Path old : variants.subList(Math.min(MAX_VARIANTS, variants.size()), variants.size())) {
+                Files.deleteIfExists(old);
+            }
+            evictIfNeeded();
+        } catch (IOException e) {
+            log.warn("Could not cache compiled flow {}: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Evicts the least recently used sheet structures until the cache fits its size limit.
+     */
+    private void evictIfNeeded() throws IOException {
+        Map<Path, Long> sizes = new LinkedHashMap<>();
+        long totalBytes = 0;
+        try (DirectoryStream<Path> structures = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path structureDir : structures) {
+                long size = 0;
+                for (Path variant : variants(structureDir)) {
+                    size += Files.size(variant);
+                }
+                sizes.put(structureDir, size);
+                totalBytes += size;
+            }
+        }
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+        List<Path> structures = new ArrayList<>(sizes.keySet());
+        structures.sort(byLastUsed(structures));
+        for (Path structureDir : structures) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+            try (Stream<Path> walk = Files.walk(structureDir)) {
+                walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+            totalBytes -= sizes.get(structureDir);
+        }
+    }
+
+    private boolean copy(Path cached, Path target) {
+        if (!Files.isRegularFile(cached)) {
+            return false;
+        }
+        try {
+            Files.copy(cached, target, StandardCopyOption.REPLACE_EXISTING);
+            FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+            Files.setLastModifiedTime(cached, now);
+            Files.setLastModifiedTime(cached.getParent(), now);
+            return true;
+        } catch (IOException e) {
+            // evicted meanwhile
+            return false;
+        }
+    }
+
+    /**
+     * Lists the jars of a sheet structure, most recently used first.
+     */
+    private static List<Path> variants(Path structureDir) {
+        List<Path> variants = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(structureDir, "*" + SUFFIX)) {
+            files.forEach(variants::add);
+        } catch (IOException e) {
+            return variants;
+        }
+        variants.sort(byLastUsed(variants).reversed());
+        return variants;
+    }
+
+    /**
+     * Orders files by when they were last used. Other compilations touch the files while
+     * they are sorted, so the times are read once up front.
+     */
+    private static Comparator<Path> byLastUsed(List<Path> files) {
+        Map<Path, Long> lastUsed = new HashMap<>();
+        for (Path file : files) {
+            lastUsed.put(file, lastUsed(file));
+        }
+        return Comparator.comparing(lastUsed::get);
+    }
+
+    private static long lastUsed(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Copies a map parsed from a sheet, sorted by key so it serializes the same every time.
+     */
+    private static Map<String, Object> sortedCopy(Map<?, ?> map) {
+        Map<String, Object> copy = new TreeMap<>();
+        map.forEach((key, value) -> copy.put(String.valueOf(key), value));
+        return copy;
+    }
+
+    private String json(Object value) throws IOException {
+        try {
+            return mapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IOException("Could not normalize sheet: " + e.getMessage(), e);
+        }
+    }
+
+    private static String classHash(String className) throws IOException {
+        String resource = className.replace('.', '/') + ".class";
+        ClassLoader loader = CompilationCache.class.getClassLoader();
+        try (InputStream in = loader.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("Component class not found: " + className);
+            }
+            MessageDigest digest = sha256();
+            digest.update(in.readAllBytes());
+            return HexFormat.of().formatHex(digest.digest());
+        }
+    }
+
+    /**
+     * Gets the version of the compiler: a hash of the classes of the packages packed into
+     * flow jars. Computed once, the classes do not change while the process runs. If they
+     * cannot be read, the version is unique to this process, so no jar compiled by another
+     * version is ever reused.
+     */
+    static String compilerVersion() {
+        if (compilerVersion == null) {
+            synchronized (CompilationCache.class) {
+                if (compilerVersion == null) {
+                    try {
+                        compilerVersion = hashPackages();
+                    } catch (IOException | RuntimeException e) {
+                        log.warn("Could not determine the compiler version, compiled flows are cached "
+                            + "for this process only: {}", e.getMessage());
+                        compilerVersion = "process-" + UUID.randomUUID();
+                    }
+                }
+            }
+        }
+        return compilerVersion;
+    }
+
+    private static String hashPackages() throws IOException {
+        ClassLoader loader = CompilationCache.class.getClassLoader();
+        Map<String, byte[]> classes = new TreeMap<>();
+        for (String packagePath : COMPILER_PACKAGES) {
+            Enumeration<URL> resources = loader.getResources(packagePath);
+            while (resources.hasMoreElements()) {
+                URL resource = resources.nextElement();
+                if ("file".equals(resource.getProtocol())) {
+                    Path packageDir;
+                    try {
+                        packageDir = Paths.get(resource.toURI());
+                    } catch (Exception e) {
+                        throw new IOException("Cannot read " + resource, e);
+                    }
+                    try (Stream<Path> walk = Files.walk(packageDir)) {
+                        for (Path path : (Iterable<Path>) walk.filter(p -> p.toString().endsWith(".class"))::iterator) {
+                            String name = packagePath + "/" + packageDir.relativize(path).toString().replace('\\', '/');
+                            classes.put(name, Files.readAllBytes(path));
+                        }
+                    }
+                } else {
+                    URLConnection connection = resource.openConnection();
+                    if (!(connection instanceof JarURLConnection)) {
+                        throw new IOException("Cannot read classes from " + resource);
+                    }
+                    connection.setUseCaches(false);
+                    try (JarFile jar = ((JarURLConnection) connection).getJarFile()) {
+                        String prefix = ((JarURLConnection) connection).getEntryName() + "/";
+                        Enumeration<JarEntry> entries = jar.entries();
+                        while (entries.hasMoreElements()) {
+                            JarEntry entry = entries.nextElement();
+                            if (entry.getName().startsWith(prefix) && entry.getName().endsWith(".class")) {
+                                try (InputStream in = jar.getInputStream(entry)) {
+                                    classes.put(packagePath + "/" + entry.getName().substring(prefix.length()),
+                                        in.readAllBytes());
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        if (classes.isEmpty()) {
+            throw new IOException("No compiler classes found");
+        }
+        MessageDigest digest = sha256();
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update(entry.getValue());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String hash(String content) throws IOException {
+        MessageDigest digest = sha256();
+        return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8))).substring(0, 32);
+    }
+
+    private static MessageDigest sha256() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package io.webetl.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.function.Consumer;
+
+/**
+ * Sends what a thread prints to {@code System.out} to a sink line by line, for code that
+ * only writes to the console like the legacy {@link FlowCompiler}. {@code System.out} is
+ * replaced once by a stream routing every write by the thread making it, so threads not
+ * capturing keep printing to the console and several threads can capture at the same time.
+ */
+final class ConsoleCapture {
+    private static final ThreadLocal<LineSink> SINK = new ThreadLocal<>();
+    private static PrintStream console;
+
+    private ConsoleCapture() {
+    }
+
+    /**
+     * Starts sending the lines the current thread prints to the given sink, until the
+     * returned capture is closed. A line not ended when it is closed is sent then.
+     */
+    static Capture start(Consumer<String> output) {
+        install();
+        LineSink previous = SINK.get();
+        LineSink sink = new LineSink(output);
+        SINK.set(sink);
+        return () -> {
+            sink.flushLine();
+            if (previous != null) {
+                SINK.set(previous);
+            } else {
+                SINK.remove();
+            }
+        };
+    }
+
+    private static synchronized void install() {
+        if (console == null) {
+            console = System.out;
+            System.setOut(new PrintStream(new RoutingStream(console), true, Charset.defaultCharset()));
+        }
+    }
+
+    /**
+     * The output of a thread being captured.
+     */
+    @FunctionalInterface
+    interface Capture extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final class RoutingStream extends OutputStream {
+        private final PrintStream console;
+
+        RoutingStream(PrintStream console) {
+            this.console = console;
+        }
+
+        @Override
+        public void write(int b) {
+            LineSink sink = SINK.get();
+            if (sink != null) {
+                sink.write(b);
+            } else {
+                console.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            LineSink sink = SINK.get();
+            if (sink == null) {
+                console.write(b, off, len);
+                return;
+            }
+            for (int i = off; i < off + len; i++) {
+                sink.write(b[i]);
+            }
+        }
+
+        @Override
+        public void flush() {
+            console.flush();
+        }
+    }
+
+    private static final class LineSink {
+        private final Consumer<String> output;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        LineSink(Consumer<String> output) {
+            this.output = output;
+        }
+
+        void write(int b) {
+            if (b == '\n') {
+                flushLine();
+            } else {
+                line.write(b);
+            }
+        }
+
+        void flushLine() {
+            if (line.size() == 0) {
+                return;
+            }
+            String text = line.toString(Charset.defaultCharset());
+            line.reset();
+            output.accept(text.endsWith("\r") ? text.substring(0, text.length() - 1) : text);
+        }
+    }
+}
@@ -0,0 +1,516 @@
+package io.webetl.compiler;
+
+import io.webetl.model.data.ColumnDefinition;
+import io.webetl.model.data.Schema;
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.Handle;
+import org.springframework.asm.Label;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * FlowBytecodeGenerator writes the class file of a flow class directly from a
+ * {@link FlowPlan}, without generating source and running javac.
+ * <p>
+ * The class is the one the javac backend compiles from the JavaPoet source of
+ * {@code FlowCompilerNG}, statement by statement: the constructor creates and configures
+ * the components, {@code execute} connects their queues, registers the sources, runs
+ * every worker on a thread of its own and waits for them. Each worker lambda becomes a
+ * static method bound through {@code LambdaMetafactory}, as javac does. String
+ * concatenations with constant parts are folded at generation time. Changes to the
+ * generated source have to be made here too; the javac backend is the reference the
+ * two are compared against.
+ * <p>
+ * The class files are written with the ASM copy Spring ships in {@code org.springframework.asm}.
+ */
+final class FlowBytecodeGenerator implements Opcodes {
+    private static final String OBJECT = "java/lang/Object";
+    private static final String STRING = "java/lang/String";
+    private static final String MAP = "java/util/Map";
+    private static final String COMPILED_FLOW = "io/webetl/compiler/CompiledFlow";
+    private static final String EXECUTION_CONTEXT = "io/webetl/runtime/ExecutionContext";
+    private static final String CHECKPOINT_COORDINATOR = "io/webetl/runtime/CheckpointCoordinator";
+    private static final String ETL_COMPONENT = "io/webetl/model/component/ETLComponent";
+    private static final String EXECUTABLE_COMPONENT = "io/webetl/model/component/ExecutableComponent";
+    private static final String INPUT_QUEUE_PROVIDER = "io/webetl/model/component/InputQueueProvider";
+    private static final String OUTPUT_QUEUE_PROVIDER = "io/webetl/model/component/OutputQueueProvider";
+    private static final String ROW = "io/webetl/model/data/Row";
+    private static final String SCHEMA = "io/webetl/model/data/Schema";
+    private static final String COLUMN_PROJECTION = "io/webetl/model/component/ColumnProjection";
+    private static final String DATA_TYPE = "io/webetl/model/data/DataType";
+
+    private static final String WORKER_DESCRIPTOR = "(L" + MAP + ";L" + EXECUTION_CONTEXT + ";)V";
+    private static final Handle LAMBDA_METAFACTORY = new Handle(H_INVOKESTATIC,
+        "java/lang/invoke/LambdaMetafactory", "metafactory",
+        "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;"
+            + "Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)"
+            + "Ljava/lang/invoke/CallSite;",
+        false);
+
+    private final FlowPlan plan;
+    private final String internalName;
+
+    private FlowBytecodeGenerator(FlowPlan plan, String className) {
+        this.plan = plan;
+        this.internalName = className.replace('.', '/');
+    }
+
+    /**
+     * Generates a flow class.
+     *
+     * @param plan what the flow does
+     * @param className the binary name of the flow class
+     * @return the class files by binary class name
+     * @throws CompilationException if a parameter value is not a valid literal
+     */
+    static Map<String, byte[]> generate(FlowPlan plan, String className) {
+        return Map.of(className, new FlowBytecodeGenerator(plan, className).generate());
+    }
+
+    private byte[] generate() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS) {
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                // Only JDK and runtime types meet in the generated frames, none needs more than Object
+                try {
+                    return super.getCommonSuperClass(type1, type2);
+                } catch (RuntimeException | LinkageError e) {
+                    return OBJECT;
+                }
+            }
+        };
+        cw.visit(V17, ACC_PUBLIC | ACC_SUPER, internalName, null, COMPILED_FLOW, null);
+        cw.visitInnerClass("java/lang/invoke/MethodHandles$Lookup", "java/lang/invoke/MethodHandles", "Lookup",
+            ACC_PUBLIC | ACC_FINAL | ACC_STATIC);
+        cw.visitField(ACC_PRIVATE, "components", "L" + MAP + ";",
+            "L" + MAP + "<L" + STRING + ";L" + OBJECT + ";>;", null).visitEnd();
+
+        writeConstructor(cw);
+        writeExecute(cw);
+        for (int i = 0; i < plan.workers.size(); i++) {
+            writeWorker(cw, workerMethodName(i), plan.workers.get(i));
+        }
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private void writeConstructor(ClassWriter cw) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, new String[] {"java/lang/Exception"});
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, COMPILED_FLOW, "<init>", "()V", false);
+
+        // this.components = new HashMap<>()
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitTypeInsn(NEW, "java/util/HashMap");
+        mv.visitInsn(DUP);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/util/HashMap", "<init>", "()V", false);
+        mv.visitFieldInsn(PUTFIELD, internalName, "components", "L" + MAP + ";");
+
+        for (FlowPlan.Component component : plan.components) {
+            if (component.directlyInstantiable) {
+                // Object node = new Implementation()
+                String implementation = component.implementationClass.replace('.', '/');
+                mv.visitTypeInsn(NEW, implementation);
+                mv.visitInsn(DUP);
+                mv.visitMethodInsn(INVOKESPECIAL, implementation, "<init>", "()V", false);
+            } else {
+                // Object node = Class.forName(implementation).newInstance()
+                mv.visitLdcInsn(component.implementationClass);
+                mv.visitMethodInsn(INVOKESTATIC, "java/lang/Class", "forName", "(L" + STRING + ";)Ljava/lang/Class;",
+                    false);
+                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Class", "newInstance", "()L" + OBJECT + ";", false);
+            }
+            mv.visitVarInsn(ASTORE, 1);
+
+            // components.put(nodeId, node)
+            loadComponents(mv);
+            mv.visitLdcInsn(component.nodeId);
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitMethodInsn(INVOKEINTERFACE, MAP, "put", "(L" + OBJECT + ";L" + OBJECT + ";)L" + OBJECT + ";", true);
+            mv.visitInsn(POP);
+
+            // ((ETLComponent) node).setParameter(name, value)
+            for (FlowPlan.Parameter parameter : component.parameters) {
+                mv.visitVarInsn(ALOAD, 1);
+                mv.visitTypeInsn(CHECKCAST, ETL_COMPONENT);
+                mv.visitLdcInsn(parameter.name);
+                pushConstant(mv, parameter.constant());
+                mv.visitMethodInsn(INVOKEVIRTUAL, ETL_COMPONENT, "setParameter",
+                    "(L" + STRING + ";L" + OBJECT + ";)V", false);
+            }
+
+            // ((ETLComponent) node).setInputSchema(new Schema().column(name, type)...)
+            setSchema(mv, "setInputSchema", plan.inputSchemas.get(component.nodeId));
+            setSchema(mv, "setOutputSchema", plan.outputSchemas.get(component.nodeId));
+            // ((ColumnProjection) node).setRequiredColumns(Set.of(column, ...))
+            setRequiredColumns(mv, plan.requiredColumns.get(component.nodeId));
+        }
+
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private void writeExecute(ClassWriter cw) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "execute", "(L" + EXECUTION_CONTEXT + ";)V", null,
+            new String[] {"java/lang/Exception"});
+        mv.visitCode();
+        // Locals: 0 this, 1 context, 2 source, 3 target, 4 workers, 5 worker, 6 iterator, 7 exception
+        log(mv, 1, "Starting flow execution");
+
+        // Diagnostic logging for classloader issues
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitLdcInsn("Current classloader: ");
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKEVIRTUAL, OBJECT, "getClass", "()Ljava/lang/Class;", false);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Class", "getClassLoader", "()Ljava/lang/ClassLoader;", false);
+        concatClassName(mv);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitLdcInsn("Parent classloader: ");
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKEVIRTUAL, OBJECT, "getClass", "()Ljava/lang/Class;", false);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Class", "getClassLoader", "()Ljava/lang/ClassLoader;", false);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/ClassLoader", "getParent", "()Ljava/lang/ClassLoader;", false);
+        concatClassName(mv);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitLdcInsn("Thread context classloader: ");
+        mv.visitMethodInsn(INVOKESTATIC, "java/lang/Thread", "currentThread", "()Ljava/lang/Thread;", false);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Thread", "getContextClassLoader",
+            "()Ljava/lang/ClassLoader;", false);
+        concatClassName(mv);
+
+        // Connect component queues, one for every data flow edge
+        for (List<String> connection : plan.connections()) {
+            getComponent(mv, connection.get(0));
+            mv.visitVarInsn(ASTORE, 2);
+            getComponent(mv, connection.get(1));
+            mv.visitVarInsn(ASTORE, 3);
+            Label skip = new Label();
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitTypeInsn(INSTANCEOF, OUTPUT_QUEUE_PROVIDER);
+            mv.visitJumpInsn(IFEQ, skip);
+            mv.visitVarInsn(ALOAD, 3);
+            mv.visitTypeInsn(INSTANCEOF, INPUT_QUEUE_PROVIDER);
+            mv.visitJumpInsn(IFEQ, skip);
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitTypeInsn(CHECKCAST, OUTPUT_QUEUE_PROVIDER);
+            mv.visitVarInsn(ALOAD, 3);
+            mv.visitTypeInsn(CHECKCAST, INPUT_QUEUE_PROVIDER);
+            mv.visitMethodInsn(INVOKEINTERFACE, OUTPUT_QUEUE_PROVIDER, "registerInputQueue",
+                "(L" + INPUT_QUEUE_PROVIDER + ";)V", true);
+            mv.visitLabel(skip);
+        }
+
+        // Register sources for checkpointing together with the acknowledgements completing a checkpoint
+        for (FlowPlan.Source source : plan.sources) {
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitMethodInsn(INVOKEVIRTUAL, EXECUTION_CONTEXT, "getCheckpointCoordinator",
+                "()L" + CHECKPOINT_COORDINATOR + ";", false);
+            getComponent(mv, source.nodeId);
+            mv.visitLdcInsn(source.nodeId);
+            pushInt(mv, source.ackCount);
+            mv.visitMethodInsn(INVOKEVIRTUAL, CHECKPOINT_COORDINATOR, "registerSource",
+                "(L" + OBJECT + ";L" + STRING + ";I)V", false);
+        }
+
+        // Create worker threads for each component
+        mv.visitTypeInsn(NEW, "java/util/ArrayList");
+        mv.visitInsn(DUP);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/util/ArrayList", "<init>", "()V", false);
+        mv.visitVarInsn(ASTORE, 4);
+        for (int i = 0; i < plan.workers.size(); i++) {
+            mv.visitTypeInsn(NEW, "java/lang/Thread");
+            mv.visitInsn(DUP);
+            loadComponents(mv);
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitInvokeDynamicInsn("run", "(L" + MAP + ";L" + EXECUTION_CONTEXT + ";)Ljava/lang/Runnable;",
+                LAMBDA_METAFACTORY, Type.getType("()V"),
+                new Handle(H_INVOKESTATIC, internalName, workerMethodName(i), WORKER_DESCRIPTOR, false),
+                Type.getType("()V"));
+            mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Thread", "<init>", "(Ljava/lang/Runnable;)V", false);
+            mv.visitVarInsn(ASTORE, 5);
+            mv.visitVarInsn(ALOAD, 4);
+            mv.visitVarInsn(ALOAD, 5);
+            mv.visitMethodInsn(INVOKEINTERFACE, "java/util/List", "add", "(L" + OBJECT + ";)Z", true);
+            mv.visitInsn(POP);
+            mv.visitVarInsn(ALOAD, 5);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Thread", "start", "()V", false);
+        }
+
+        // Wait for all worker threads to complete
+        Label loop = new Label();
+        Label done = new Label();
+        Label joinStart = new Label();
+        Label joinEnd = new Label();
+        Label interrupted = new Label();
+        mv.visitTryCatchBlock(joinStart, joinEnd, interrupted, "java/lang/InterruptedException");
+        mv.visitVarInsn(ALOAD, 4);
+        mv.visitMethodInsn(INVOKEINTERFACE, "java/util/List", "iterator", "()Ljava/util/Iterator;", true);
+        mv.visitVarInsn(ASTORE, 6);
+        mv.visitLabel(loop);
+        mv.visitVarInsn(ALOAD, 6);
+        mv.visitMethodInsn(INVOKEINTERFACE, "java/util/Iterator", "hasNext", "()Z", true);
+        mv.visitJumpInsn(IFEQ, done);
+        mv.visitVarInsn(ALOAD, 6);
+        mv.visitMethodInsn(INVOKEINTERFACE, "java/util/Iterator", "next", "()L" + OBJECT + ";", true);
+        mv.visitTypeInsn(CHECKCAST, "java/lang/Thread");
+        mv.visitVarInsn(ASTORE, 5);
+        mv.visitLabel(joinStart);
+        mv.visitVarInsn(ALOAD, 5);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Thread", "join", "()V", false);
+        mv.visitLabel(joinEnd);
+        mv.visitJumpInsn(GOTO, loop);
+        mv.visitLabel(interrupted);
+        mv.visitVarInsn(ASTORE, 7);
+        mv.visitMethodInsn(INVOKESTATIC, "java/lang/Thread", "currentThread", "()Ljava/lang/Thread;", false);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Thread", "interrupt", "()V", false);
+        mv.visitTypeInsn(NEW, "java/lang/RuntimeException");
+        mv.visitInsn(DUP);
+        mv.visitLdcInsn("Execution interrupted");
+        mv.visitVarInsn(ALOAD, 7);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/RuntimeException", "<init>",
+            "(L" + STRING + ";Ljava/lang/Throwable;)V", false);
+        mv.visitInsn(ATHROW);
+        mv.visitLabel(done);
+
+        // A failed component fails the whole flow, so checkpoints are kept for the next run
+        Label succeeded = new Label();
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitMethodInsn(INVOKEVIRTUAL, EXECUTION_CONTEXT, "hasFailures", "()Z", false);
+        mv.visitJumpInsn(IFEQ, succeeded);
+        mv.visitTypeInsn(NEW, "java/lang/IllegalStateException");
+        mv.visitInsn(DUP);
+        mv.visitLdcInsn("Flow execution failed in ");
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitMethodInsn(INVOKEVIRTUAL, EXECUTION_CONTEXT, "getFailures", "()Ljava/util/List;", false);
+        mv.visitMethodInsn(INVOKEINTERFACE, "java/util/List", "size", "()I", true);
+        mv.visitMethodInsn(INVOKESTATIC, STRING, "valueOf", "(I)L" + STRING + ";", false);
+        concat(mv);
+        mv.visitLdcInsn(" component(s)");
+        concat(mv);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/IllegalStateException", "<init>", "(L" + STRING + ";)V", false);
+        mv.visitInsn(ATHROW);
+        mv.visitLabel(succeeded);
+
+        log(mv, 1, "Flow execution completed");
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Writes the body of a worker thread executing one component. A failing component is
+     * recorded in the context and, if it feeds other components, sends a terminator row
+     * so they do not wait forever.
+     */
+    private void writeWorker(ClassWriter cw, String methodName, FlowPlan.Worker worker) {
+        MethodVisitor mv = cw.visitMethod(ACC_PRIVATE | ACC_STATIC | ACC_SYNTHETIC, methodName, WORKER_DESCRIPTOR,
+            null, null);
+        mv.visitCode();
+        // Locals: 0 components, 1 context, 2 component, 3 exception
+        String componentName = worker.componentName;
+        Label tryStart = new Label();
+        Label tryEnd = new Label();
+        Label failed = new Label();
+        Label failedEnd = new Label();
+        Label always = new Label();
+        mv.visitTryCatchBlock(tryStart, tryEnd, failed, "java/lang/Exception");
+        mv.visitTryCatchBlock(tryStart, tryEnd, always, null);
+        mv.visitTryCatchBlock(failed, failedEnd, always, null);
+
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitLdcInsn(worker.nodeId);
+        mv.visitMethodInsn(INVOKEINTERFACE, MAP, "get", "(L" + OBJECT + ";)L" + OBJECT + ";", true);
+        mv.visitVarInsn(ASTORE, 2);
+
+        mv.visitLabel(tryStart);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitLdcInsn(componentName);
+        mv.visitMethodInsn(INVOKEVIRTUAL, EXECUTION_CONTEXT, "setCurrentComponentId", "(L" + STRING + ";)V", false);
+        log(mv, 1, "Starting execution of " + componentName);
+        Label executable = new Label();
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitTypeInsn(INSTANCEOF, EXECUTABLE_COMPONENT);
+        mv.visitJumpInsn(IFNE, executable);
+        mv.visitTypeInsn(NEW, "java/lang/IllegalStateException");
+        mv.visitInsn(DUP);
+        mv.visitLdcInsn("Component " + componentName + " does not implement ExecutableComponent");
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/IllegalStateException", "<init>", "(L" + STRING + ";)V", false);
+        mv.visitInsn(ATHROW);
+        mv.visitLabel(executable);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitTypeInsn(CHECKCAST, EXECUTABLE_COMPONENT);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitMethodInsn(INVOKEINTERFACE, EXECUTABLE_COMPONENT, "execute", "(L" + EXECUTION_CONTEXT + ";)V", true);
+        log(mv, 1, "Execution of " + componentName + " completed");
+        mv.visitLabel(tryEnd);
+        clearComponentId(mv);
+        mv.visitInsn(RETURN);
+
+        // catch (Exception e)
+        mv.visitLabel(failed);
+        mv.visitVarInsn(ASTORE, 3);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitLdcInsn("Error during execution of " + componentName + ": ");
+        mv.visitVarInsn(ALOAD, 3);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Exception", "getMessage", "()L" + STRING + ";", false);
+        mv.visitMethodInsn(INVOKESTATIC, STRING, "valueOf", "(L" + OBJECT + ";)L" + STRING + ";", false);
+        concat(mv);
+        mv.visitMethodInsn(INVOKEVIRTUAL, EXECUTION_CONTEXT, "log", "(L" + STRING + ";)V", false);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitLdcInsn(componentName);
+        mv.visitVarInsn(ALOAD, 3);
+        mv.visitMethodInsn(INVOKEVIRTUAL, EXECUTION_CONTEXT, "recordFailure",
+            "(L" + STRING + ";Ljava/lang/Throwable;)V", false);
+        Label noOutput = new Label();
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitTypeInsn(INSTANCEOF, OUTPUT_QUEUE_PROVIDER);
+        mv.visitJumpInsn(IFEQ, noOutput);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitTypeInsn(CHECKCAST, OUTPUT_QUEUE_PROVIDER);
+        mv.visitMethodInsn(INVOKESTATIC, ROW, "createTerminator", "()L" + ROW + ";", false);
+        mv.visitMethodInsn(INVOKEINTERFACE, OUTPUT_QUEUE_PROVIDER, "sendRow", "(L" + ROW + ";)V", true);
+        mv.visitLabel(noOutput);
+        mv.visitLabel(failedEnd);
+        clearComponentId(mv);
+        mv.visitInsn(RETURN);
+
+        // finally
+        mv.visitLabel(always);
+        mv.visitVarInsn(ASTORE, 3);
+        clearComponentId(mv);
+        mv.visitVarInsn(ALOAD, 3);
+        mv.visitInsn(ATHROW);
+
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Sets a schema on the component in local 1, if it is known.
+     */
+    private static void setSchema(MethodVisitor mv, String setter, Schema schema) {
+        if (schema == null) {
+            return;
+        }
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitTypeInsn(CHECKCAST, ETL_COMPONENT);
+        mv.visitTypeInsn(NEW, SCHEMA);
+        mv.visitInsn(DUP);
+        mv.visitMethodInsn(INVOKESPECIAL, SCHEMA, "<init>", "()V", false);
+        for (Map.Entry<String, ColumnDefinition> column : schema.getColumns().entrySet()) {
+            mv.visitLdcInsn(column.getKey());
+            String type = column.getValue().getType() != null ? column.getValue().getType().name() : "STRING";
+            mv.visitFieldInsn(GETSTATIC, DATA_TYPE, type, "L" + DATA_TYPE + ";");
+            mv.visitMethodInsn(INVOKEVIRTUAL, SCHEMA, "column", "(L" + STRING + ";L" + DATA_TYPE + ";)L" + SCHEMA + ";",
+                false);
+        }
+        mv.visitMethodInsn(INVOKEVIRTUAL, ETL_COMPONENT, setter, "(L" + SCHEMA + ";)V", false);
+    }
+
+    /**
+     * Sets the columns the component in local 1 reads, if not all are used.
+     */
+    private static void setRequiredColumns(MethodVisitor mv, Set<String> columns) {
+        if (columns == null) {
+            return;
+        }
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitTypeInsn(CHECKCAST, COLUMN_PROJECTION);
+        pushInt(mv, columns.size());
+        mv.visitTypeInsn(ANEWARRAY, OBJECT);
+        int index = 0;
+        for (String column : columns) {
+            mv.visitInsn(DUP);
+            pushInt(mv, index++);
+            mv.visitLdcInsn(column);
+            mv.visitInsn(AASTORE);
+        }
+        mv.visitMethodInsn(INVOKESTATIC, "java/util/Set", "of", "([L" + OBJECT + ";)Ljava/util/Set;", true);
+        mv.visitMethodInsn(INVOKEINTERFACE, COLUMN_PROJECTION, "setRequiredColumns", "(Ljava/util/Set;)V", true);
+    }
+
+    private static String workerMethodName(int index) {
+        return "lambda$execute$" + index;
+    }
+
+    private void loadComponents(MethodVisitor mv) {
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, internalName, "components", "L" + MAP + ";");
+    }
+
+    private void getComponent(MethodVisitor mv, String nodeId) {
+        loadComponents(mv);
+        mv.visitLdcInsn(nodeId);
+        mv.visitMethodInsn(INVOKEINTERFACE, MAP, "get", "(L" + OBJECT + ";)L" + OBJECT + ";", true);
+    }
+
+    private static void log(MethodVisitor mv, int context, String message) {
+        mv.visitVarInsn(ALOAD, context);
+        mv.visitLdcInsn(message);
+        mv.visitMethodInsn(INVOKEVIRTUAL, EXECUTION_CONTEXT, "log", "(L" + STRING + ";)V", false);
+    }
+
+    private static void clearComponentId(MethodVisitor mv) {
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitMethodInsn(INVOKEVIRTUAL, EXECUTION_CONTEXT, "clearCurrentComponentId", "()V", false);
+    }
+
+    /**
+     * Appends the class name of the object on the stack to the string below it and logs
+     * the result: {@code context.log(prefix + object.getClass().getName())}.
+     */
+    private static void concatClassName(MethodVisitor mv) {
+        mv.visitMethodInsn(INVOKEVIRTUAL, OBJECT, "getClass", "()Ljava/lang/Class;", false);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Class", "getName", "()L" + STRING + ";", false);
+        concat(mv);
+        mv.visitMethodInsn(INVOKEVIRTUAL, EXECUTION_CONTEXT, "log", "(L" + STRING + ";)V", false);
+    }
+
+    /**
+     * Concatenates the two strings on the stack, neither of them null.
+     */
+    private static void concat(MethodVisitor mv) {
+        mv.visitMethodInsn(INVOKEVIRTUAL, STRING, "concat", "(L" + STRING + ";)L" + STRING + ";", false);
+    }
+
+    private static void pushInt(MethodVisitor mv, int value) {
+        if (value >= -1 && value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+    /**
+     * Pushes a parameter value, boxed as javac boxes the literal.
+     */
+    private static void pushConstant(MethodVisitor mv, Object value) {
+        if (value instanceof String) {
+            mv.visitLdcInsn(value);
+        } else if (value instanceof Integer) {
+            pushInt(mv, (Integer) value);
+            mv.visitMethodInsn(INVOKESTATIC, "java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;", false);
+        } else if (value instanceof Long) {
+            mv.visitLdcInsn(value);
+            mv.visitMethodInsn(INVOKESTATIC, "java/lang/Long", "valueOf", "(J)Ljava/lang/Long;", false);
+        } else if (value instanceof Double) {
+            mv.visitLdcInsn(value);
+            mv.visitMethodInsn(INVOKESTATIC, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;", false);
+        } else {
+            mv.visitInsn((Boolean) value ? ICONST_1 : ICONST_0);
+            mv.visitMethodInsn(INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;", false);
+        }
+    }
+}
@@ -3,10 +3,14 @@ package io.webetl.compiler;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.webetl.model.Sheet;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class FlowCompilerCLI {
     public static void main(String[] args) {
@@ -30,11 +34,23 @@ public class FlowCompilerCLI {
                     }
                     boolean useNewCompiler = false;
                     boolean verbose = false;
+                    FlowCompilerNG.JarLayout layout = FlowCompilerNG.JarLayout.FAT;
+                    FlowCompilerNG.Backend backend = FlowCompilerNG.Backend.JAVAC;
                     for (int i = 3; i < args.length; i++) {
                         if ("--verbose".equals(args[i])) verbose = true;
                         if ("--new-compiler".equals(args[i])) useNewCompiler = true;
+                        if ("--thin".equals(args[i])) layout = FlowCompilerNG.JarLayout.THIN;
+                        if ("--bytecode".equals(args[i])) backend = FlowCompilerNG.Backend.BYTECODE;
                     }
-                    compileSheetCLI(args[1], args[2], verbose, useNewCompiler);
+                    if (layout == FlowCompilerNG.JarLayout.THIN && !useNewCompiler) {
+                        System.err.println("Error: --thin requires --new-compiler");
+                        System.exit(1);
+                    }
+                    if (backend == FlowCompilerNG.Backend.BYTECODE && !useNewCompiler) {
+                        System.err.println("Error: --bytecode requires --new-compiler");
+                        System.exit(1);
+                    }
+                    compileSheetCLI(args[1], args[2], verbose, useNewCompiler, layout, backend);
                     break;
                 default:
                     System.err.println("Unknown command: " + command);
@@ -51,7 +67,10 @@ public class FlowCompilerCLI {
     private static void printUsage() {
         System.out.println("Usage:");
         System.out.println("  List sheets:  compile.sh list");
-        System.out.println("  Compile:      compile.sh compile <input-sheet.json> <output.jar> [--verbose] [--new-compiler]");
+        System.out.println("  Compile:      compile.sh compile <input-sheet.json> <output.jar> [--verbose] [--new-compiler] [--thin] [--bytecode]");
+        System.out.println("                --thin writes a jar referring to the runtime and libraries in the local");
+        System.out.println("                artifact store instead of embedding them, it only runs on this machine");
+        System.out.println("                --bytecode generates the flow class directly instead of compiling it with javac");
     }
     
     private static void listSheets() throws Exception {
@@ -91,9 +110,10 @@ public class FlowCompilerCLI {
         });
     }
     
-    private static void compileSheetCLI(String inputFile, String outputFile, boolean verbose, boolean useNewCompiler) {
+    private static void compileSheetCLI(String inputFile, String outputFile, boolean verbose, boolean useNewCompiler,
+                                        FlowCompilerNG.JarLayout layout, FlowCompilerNG.Backend backend) {
         try {
-            compileSheet(inputFile, outputFile, verbose, useNewCompiler);
+            compileSheet(inputFile, outputFile, verbose, useNewCompiler, layout, backend);
         } catch (Exception e) {
             System.err.println("Compilation failed: " + e.getMessage());
             System.exit(1);
@@ -101,20 +121,42 @@ public class FlowCompilerCLI {
     }
 
     public static void compileSheet(String inputFile, String outputFile, boolean verbose, boolean useNewCompiler) throws CompilationException {
+        compileSheet(inputFile, outputFile, verbose, useNewCompiler, FlowCompilerNG.JarLayout.FAT);
+    }
+
+    /**
+     * Compiles a sheet to a jar of the given layout. Only the new compiler writes thin jars.
+     */
+    public static void compileSheet(String inputFile, String outputFile, boolean verbose, boolean useNewCompiler,
+                                    FlowCompilerNG.JarLayout layout) throws CompilationException {
+        compileSheet(inputFile, outputFile, verbose, useNewCompiler, layout, FlowCompilerNG.Backend.JAVAC);
+    }
+
+    /**
+     * Compiles a sheet to a jar of the given layout, generating the flow class with the
+     * given backend. Only the new compiler writes thin jars and has backends.
+     */
+    public static void compileSheet(String inputFile, String outputFile, boolean verbose, boolean useNewCompiler,
+                                    FlowCompilerNG.JarLayout layout, FlowCompilerNG.Backend backend)
+            throws CompilationException {
+        if (useNewCompiler) {
+            FlowCompilerNG compiler;
+            try {
+                compiler = new FlowCompilerNG(backend);
+            } catch (Exception e) {
+                throw new CompilationException("Failed to compile sheet: " + e.getMessage(), e);
+            }
+            compileSheet(compiler, inputFile, outputFile, verbose, layout, System.out::println);
+            return;
+        }
         // Read and parse sheet
         try {
             ObjectMapper mapper = new ObjectMapper();
             Sheet sheet = mapper.readValue(new File(inputFile), Sheet.class);
 
             // Compile
-            File jarFile;
-            if (useNewCompiler) {
-                FlowCompilerNG compiler = new FlowCompilerNG();
-                jarFile = compiler.compileToJar(sheet, verbose);
-            } else {
-                FlowCompiler compiler = new FlowCompiler();
-                jarFile = compiler.compileToJar(sheet, verbose);
-            }
+            FlowCompiler compiler = new FlowCompiler();
+            File jarFile = compiler.compileToJar(sheet, verbose);
 
             // Copy to output location
             Files.copy(jarFile.toPath(), new File(outputFile).toPath(), 
@@ -125,4 +167,66 @@ public class FlowCompilerCLI {
             throw new CompilationException("Failed to compile sheet: " + e.getMessage(), e);
         }
     }
+
+    /**
+     * Compiles a sheet with the legacy compiler, sending what it prints to the console to
+     * a sink instead, like the compiler output of the new compiler.
+     */
+    public static void compileSheet(String inputFile, String outputFile, boolean verbose,
+                                    Consumer<String> output) throws CompilationException {
+        try (ConsoleCapture.Capture capture = ConsoleCapture.start(output)) {
+            compileSheet(inputFile, outputFile, verbose, false);
+        }
+    }
+
+    /**
+     * Compiles a sheet with a shared compiler, writing the compiler output to a sink
+     * instead of the console, so several sheets can be compiled at the same time.
+     * The jar replaces the output file in one step, a run starting meanwhile sees
+     * either the old or the new jar.
+     */
+    public static void compileSheet(FlowCompilerNG compiler, String inputFile, String outputFile, boolean verbose,
+                                    Consumer<String> output) throws CompilationException {
+        compileSheet(compiler, inputFile, outputFile, verbose, FlowCompilerNG.JarLayout.FAT, output);
+    }
+
+    /**
+     * Compiles a sheet with a shared compiler to a jar of the given layout.
+     *
+     * @see #compileSheet(FlowCompilerNG, String, String, boolean, Consumer)
+     */
+    public static void compileSheet(FlowCompilerNG compiler, String inputFile, String outputFile, boolean verbose,
+                                    FlowCompilerNG.JarLayout layout, Consumer<String> output)
+            throws CompilationException {
+        try {
+            ObjectMapper mapper = new ObjectMapper();
+            Sheet sheet = mapper.readValue(new File(inputFile), Sheet.class);
+
+            File jarFile = compiler.compileToJar(sheet, verbose, layout, output);
+            try {
+                Path target = Paths.get(outputFile).toAbsolutePath();
+                Path partial = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+                try {
+                    Files.copy(jarFile.toPath(), partial, StandardCopyOption.REPLACE_EXISTING);
+                    moveIntoPlace(partial, target);
+                } finally {
+                    Files.deleteIfExists(partial);
+                }
+            } finally {
+                compiler.discard(jarFile);
+            }
+
+            output.accept("Successfully compiled to: " + outputFile);
+        } catch (Exception e) {
+            throw new CompilationException("Failed to compile sheet: " + e.getMessage(), e);
+        }
+    }
+
+    private static void moveIntoPlace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
 } 
\ No newline at end of file
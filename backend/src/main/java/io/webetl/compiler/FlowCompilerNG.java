@@ -1,21 +1,33 @@
 package io.webetl.compiler;
 
 import com.palantir.javapoet.*;
+import io.webetl.components.DatabaseSourceComponent;
+import io.webetl.components.FilterComponent;
+import io.webetl.components.FilterCondition;
 import io.webetl.model.Sheet;
+import io.webetl.model.component.ColumnProjection;
+import io.webetl.model.component.ColumnUsage;
 import io.webetl.model.component.ETLComponent;
 import io.webetl.model.component.ExecutableComponent;
+import io.webetl.model.component.ParameterBinding;
+import io.webetl.model.component.SchemaProvider;
+import io.webetl.model.data.Schema;
 import io.webetl.runtime.ExecutionContext;
 import io.webetl.runtime.FlowRunner;
 import io.webetl.runtime.JarClassLoader;
 import io.webetl.runtime.JarLauncher;
+import io.webetl.runtime.ThinJar;
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.lang.model.element.Modifier;
 import javax.tools.*;
 import java.io.*;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLDecoder;
@@ -25,7 +37,7 @@ import java.util.*;
 import java.util.jar.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -35,25 +47,101 @@ import java.util.Map;
 import java.util.Set;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
+import java.util.zip.CRC32;
 import java.util.zip.ZipException;
 
 @Service
 @Slf4j
 public class FlowCompilerNG {
+    private static final String GENERATED_PACKAGE_PATH = "io/webetl/generated/";
+    // Coordinates of the runtime jar thin flow jars refer to, one version per compiler version
+    private static final String RUNTIME_GROUP = "io.webetl";
+    private static final String RUNTIME_ARTIFACT = "webetl-runtime";
+
+    /**
+     * How the flow class is generated.
+     */
+    public enum Backend {
+        /** Java source generated with JavaPoet and compiled with javac, the reference backend. */
+        JAVAC,
+        /** Class files written directly, without javac. Much faster, meant to generate the same flow. */
+        BYTECODE
+    }
+
+    /**
+     * The layout of a flow jar.
+     */
+    public enum JarLayout {
+        /** A self-contained jar embedding the runtime and all libraries. */
+        FAT,
+        /**
+         * A jar holding only the flow class, referring to the runtime and the libraries in
+         * the artifact store of this machine, see {@link ThinJar}.
+         */
+        THIN
+    }
+
+    // Every compilation gets its own workspace below this directory
     private final Path tempDir;
-    private List<Map<String, Object>> controlFlowNodes;
-    private List<List<Map<String, Object>>> dataFlowPaths;
-    private AtomicInteger messageSequence = new AtomicInteger(0);
+    private final Backend backend;
+    private final CompilationCache cache;
+    private final FlowJavaCompiler javaCompiler;
+    private final ArtifactRepository artifacts;
+    // Guards building the runtime jar, which happens once per compiler version
+    private final Object runtimeLock = new Object();
     
     public FlowCompilerNG() throws IOException {
+        this(Backend.JAVAC);
+    }
+
+    /**
+     * Creates a compiler using the backend named by the {@code compiler.backend} setting.
+     */
+    @Autowired
+    public FlowCompilerNG(@Value("${compiler.backend:javac}") String backend) throws IOException {
+        this(Backend.valueOf(backend.trim().toUpperCase(Locale.ROOT)));
+    }
+
+    public FlowCompilerNG(Backend backend) throws IOException {
+        this.backend = backend;
         this.tempDir = Files.createTempDirectory("flow-compiler");
+        this.cache = CompilationCache.getDefault();
+        this.artifacts = ArtifactRepository.getDefault();
+        this.javaCompiler = new FlowJavaCompiler();
+    }
+
+    /**
+     * The state of one compilation: its workspace, its control and data flow and its
+     * output. The compiler itself holds no per-compilation state, so one instance can
+     * compile several sheets at the same time.
+     */
+    private static final class Compilation {
+        final Path workspace;
+        final Consumer<String> output;
+        final List<Map<String, Object>> controlFlowNodes = new ArrayList<>();
+        final List<List<Map<String, Object>>> dataFlowPaths = new ArrayList<>();
+        // Nodes contributing to no destination, the flow class leaves them out
+        final Set<String> deadNodes = new HashSet<>();
+
+        Compilation(Path workspace, Consumer<String> output) {
+            this.workspace = workspace;
+            this.output = output;
+        }
+
+        /**
+         * Writes compiler output, line by line.
+         */
+        void println(String text) {
+            for (String line : text.split("\\R", -1)) {
+                output.accept(line);
+            }
+        }
     }
 
     /**
      * First pass: Build control flow execution order
      */
-    private void buildControlFlow(Sheet sheet, boolean verbose) {
-        controlFlowNodes = new ArrayList<>();
+    private void buildControlFlow(Compilation compilation, Sheet sheet, boolean verbose) {
         // Find start nodes and traverse control flow
         for (Map<String, Object> node : sheet.getNodes()) {
             Map<String, Object> data = (Map<String, Object>) node.get("data");
@@ -63,49 +151,180 @@ public class FlowCompilerNG {
             
             // Identify start nodes by both type and component ID
             if ("start".equals(componentId) || "start".equals(nodeType)) {
-                traverseControlFlow(node, sheet.getNodes(), sheet.getEdges(), new HashSet<>());
+                traverseControlFlow(node, sheet.getNodes(), sheet.getEdges(), compilation.controlFlowNodes, new HashSet<>());
             }
         }
         
         if (verbose) {
-            System.out.println("\nPass 1 - Control Flow Order:");
-            controlFlowNodes.forEach(node -> 
-                System.out.println("  " + node.get("id")));
+            compilation.println("\nPass 1 - Control Flow Order:");
+            compilation.controlFlowNodes.forEach(node -> 
+                compilation.println("  " + node.get("id")));
         }
     }
 
     /**
-     * Second pass: Build data flow paths
+     * Second pass: Build data flow paths, one for every route rows take from a source
      */
-    private void buildDataFlowPaths(Sheet sheet, boolean verbose) {
-        dataFlowPaths = new ArrayList<>();
+    private void buildDataFlowPaths(Compilation compilation, Sheet sheet, boolean verbose) {
         // For each source node, build data flow path
         for (Map<String, Object> node : sheet.getNodes()) {
             // Only source nodes that are not control flow nodes should start data flow paths
             if (isSourceNode(node) && !isControlFlowNode(node)) {
-                List<Map<String, Object>> path = new ArrayList<>();
-                traverseDataFlow(node, sheet.getNodes(), sheet.getEdges(), path, new HashSet<>());
+                List<List<Map<String, Object>>> routes = new ArrayList<>();
+                traverseDataFlow(node, sheet.getNodes(), sheet.getEdges(), new ArrayList<>(), routes);
                 // Only add non-empty paths with at least one source and one other node
-                if (path.size() > 1) {
-                    dataFlowPaths.add(path);
+                for (List<Map<String, Object>> path : routes) {
+                    if (path.size() > 1) {
+                        compilation.dataFlowPaths.add(path);
+                    }
                 }
             }
         }
         
         if (verbose) {
-            System.out.println("\nPass 2 - Data Flow Paths:");
-            dataFlowPaths.forEach(path -> {
-                System.out.println("  Path:");
+            compilation.println("\nPass 2 - Data Flow Paths:");
+            compilation.dataFlowPaths.forEach(path -> {
+                compilation.println("  Path:");
                 path.forEach(node -> 
-                    System.out.println("    " + node.get("id")));
+                    compilation.println("    " + node.get("id")));
             });
         }
     }
 
+    /**
+     * Leaves out the nodes that contribute to no destination: sources the control flow does
+     * not start, nodes no started source feeds and nodes feeding no destination. They are
+     * reported as warnings and neither created nor run, nor are their classes packaged.
+     *
+     * @throws CompilationException if the remaining data flow has a cycle
+     */
+    private void eliminateDeadNodes(Compilation compilation, Sheet sheet, boolean verbose) {
+        Map<String, Map<String, Object>> nodes = new LinkedHashMap<>();
+        for (Map<String, Object> node : sheet.getNodes()) {
+            if (!isControlFlowNode(node)) {
+                nodes.put((String) node.get("id"), node);
+            }
+        }
+        Map<String, List<String>> targets = new HashMap<>();
+        Map<String, List<String>> feeders = new HashMap<>();
+        for (Map<String, Object> edge : sheet.getEdges()) {
+            String source = (String) edge.get("source");
+            String target = (String) edge.get("target");
+            if (isDataFlowEdge(edge) && nodes.containsKey(source) && nodes.containsKey(target)) {
+                targets.computeIfAbsent(source, nodeId -> new ArrayList<>()).add(target);
+                feeders.computeIfAbsent(target, nodeId -> new ArrayList<>()).add(source);
+            }
+        }
+
+        Set<String> started = new HashSet<>();
+        compilation.controlFlowNodes.forEach(node -> started.add((String) node.get("id")));
+        started.retainAll(nodes.keySet());
+        Set<String> fed = reachable(started, targets);
+        Set<String> feedingDestination = reachable(nodes.keySet().stream()
+            .filter(nodeId -> isDestinationNode(nodes.get(nodeId)))
+            .collect(Collectors.toSet()), feeders);
+
+        Set<String> live = new LinkedHashSet<>();
+        nodes.forEach((nodeId, node) -> {
+            if (fed.contains(nodeId) && feedingDestination.contains(nodeId)) {
+                live.add(nodeId);
+                return;
+            }
+            String reason;
+            if (isSourceNode(node) && !started.contains(nodeId)) {
+                reason = "is not started by the control flow";
+            } else if (!fed.contains(nodeId)) {
+                reason = "receives no rows from a started source";
+            } else {
+                reason = "feeds no destination";
+            }
+            compilation.println("Warning: node " + nodeId + " " + reason + ", leaving it out");
+            compilation.deadNodes.add(nodeId);
+        });
+
+        List<String> cycle = findCycle(live, targets);
+        if (cycle != null) {
+            throw new CompilationException("The data flow has a cycle: " + String.join(" -> ", cycle));
+        }
+
+        if (!compilation.deadNodes.isEmpty()) {
+            compilation.controlFlowNodes.removeIf(node -> compilation.deadNodes.contains(node.get("id")));
+            compilation.dataFlowPaths.removeIf(path -> compilation.deadNodes.contains(path.get(0).get("id")));
+            compilation.dataFlowPaths.forEach(path ->
+                path.removeIf(node -> compilation.deadNodes.contains(node.get("id"))));
+            compilation.dataFlowPaths.removeIf(path -> path.size() < 2);
+            // Routes into left out nodes may now end where another route passes
+            Set<List<Object>> distinct = new HashSet<>();
+            compilation.dataFlowPaths.removeIf(path ->
+                !distinct.add(path.stream().map(node -> node.get("id")).collect(Collectors.toList())));
+            if (verbose) {
+                compilation.println("\nLeft out nodes: " + compilation.deadNodes);
+            }
+        }
+    }
+
+    /**
+     * Gets the nodes reachable from some nodes, including them, following the given links.
+     */
+    private static Set<String> reachable(Set<String> from, Map<String, List<String>> links) {
+        Set<String> reached = new HashSet<>(from);
+        Deque<String> pending = new ArrayDeque<>(from);
+        while (!pending.isEmpty()) {
+            for (String next : links.getOrDefault(pending.pop(), List.of())) {
+                if (reached.add(next)) {
+                    pending.push(next);
+                }
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Finds a cycle among some nodes.
+     *
+     * @return the nodes of the cycle, starting and ending with the same node, null if
+     *         there is none
+     */
+    private static List<String> findCycle(Set<String> nodeIds, Map<String, List<String>> targets) {
+        Set<String> done = new HashSet<>();
+        for (String nodeId : nodeIds) {
+            List<String> cycle = findCycle(nodeId, nodeIds, targets, new ArrayList<>(), done);
+            if (cycle != null) {
+                return cycle;
+            }
+        }
+        return null;
+    }
+
+    private static List<String> findCycle(String nodeId, Set<String> nodeIds, Map<String, List<String>> targets,
+                                          List<String> path, Set<String> done) {
+        if (done.contains(nodeId)) {
+            return null;
+        }
+        int index = path.indexOf(nodeId);
+        if (index >= 0) {
+            List<String> cycle = new ArrayList<>(path.subList(index, path.size()));
+            cycle.add(nodeId);
+            return cycle;
+        }
+        path.add(nodeId);
+        for (String target : targets.getOrDefault(nodeId, List.of())) {
+            if (nodeIds.contains(target)) {
+                List<String> cycle = findCycle(target, nodeIds, targets, path, done);
+                if (cycle != null) {
+                    return cycle;
+                }
+            }
+        }
+        path.remove(path.size() - 1);
+        done.add(nodeId);
+        return null;
+    }
+
     /**
      * Third pass: Generate code
      */
-    private JavaFile generateCode(Sheet sheet, String className, boolean verbose) {
+    private JavaFile generateCode(Compilation compilation, FlowPlan plan, String className, boolean verbose) {
         ClassName etlComponent = ClassName.get("io.webetl.model.component", "ETLComponent");
         ClassName compiledFlow = ClassName.get("io.webetl.compiler", "CompiledFlow");
         ClassName executionContext = ClassName.get("io.webetl.runtime", "ExecutionContext");
@@ -128,10 +347,10 @@ public class FlowCompilerNG {
                 .build());
         
         // Add constructor with component initialization
-        MethodSpec.Builder constructor = buildConstructor(sheet);
+        MethodSpec.Builder constructor = buildConstructor(plan);
         
         // Add execute method using control and data flow
-        MethodSpec.Builder executeMethod = buildExecuteMethod(sheet);
+        MethodSpec.Builder executeMethod = buildExecuteMethod(plan);
         
         // Build the complete flow class
         TypeSpec flowTypeSpec = flowClass
@@ -143,44 +362,169 @@ public class FlowCompilerNG {
             .build();
             
         if (verbose) {
-            System.out.println("\nPass 3 - Generated Code:");
-            try {
-                javaFile.writeTo(System.out);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            compilation.println("\nPass 3 - Generated Code:");
+            compilation.println(javaFile.toString());
         }
         
         return javaFile;
     }
 
     public File compileToJar(Sheet sheet, boolean verbose) throws CompilationException {
+        return compileToJar(sheet, verbose, System.out::println);
+    }
+
+    /**
+     * Compiles a sheet into a flow jar. The jar is created in a workspace of its own,
+     * so concurrent compilations do not interfere.
+     * <p>
+     * An unchanged sheet reuses the jar cached by its last compilation. A sheet whose
+     * parameter values are all that changed only has its flow class recompiled, the
+     * rest of the cached jar is reused.
+     *
+     * @param sheet the sheet to compile
+     * @param verbose whether to report the compilation passes
+     * @param output receives the compiler output line by line
+     * @return the flow jar
+     * @throws CompilationException if the sheet cannot be compiled
+     */
+    public File compileToJar(Sheet sheet, boolean verbose, Consumer<String> output) throws CompilationException {
+        return compileToJar(sheet, verbose, JarLayout.FAT, output);
+    }
+
+    /**
+     * Compiles a sheet into a flow jar of the given layout. A thin jar is much smaller and
+     * faster to write, but only runs where the artifact store holds what it refers to.
+     *
+     * @param sheet the sheet to compile
+     * @param verbose whether to report the compilation passes
+     * @param layout the layout of the jar
+     * @param output receives the compiler output line by line
+     * @return the flow jar
+     * @throws CompilationException if the sheet cannot be compiled
+     * @see #compileToJar(Sheet, boolean, Consumer)
+     */
+    public File compileToJar(Sheet sheet, boolean verbose, JarLayout layout, Consumer<String> output)
+            throws CompilationException {
+        Compilation compilation;
+        try {
+            compilation = new Compilation(Files.createTempDirectory(tempDir, "compilation-"), output);
+        } catch (IOException e) {
+            throw new CompilationException("Failed to create compilation workspace: " + e.getMessage(), e);
+        }
+        File jarFile = null;
         try {
             log.info("Compiling flow: {}", sheet.getId());
             validateFlow(sheet);
             
-            // Extract component classes early
-            Set<Class<?>> componentClasses = extractComponentClasses(sheet, verbose);
-            
             // Generate code for the flow
             String className = "GeneratedFlow_" + sheet.getId().replaceAll("-", "_");
             log.info("Generated class name: {}", className);
-            
+            Path jarPath = compilation.workspace.resolve(className + ".jar");
+
             // Build control flow and data flow paths
-            buildControlFlow(sheet, verbose);
-            buildDataFlowPaths(sheet, verbose);
+            buildControlFlow(compilation, sheet, verbose);
+            buildDataFlowPaths(compilation, sheet, verbose);
+            eliminateDeadNodes(compilation, sheet, verbose);
             
-            JavaFile javaFile = generateCode(sheet, className, verbose);
+            FlowPlan plan = planFlow(compilation, sheet);
+            inferSchemas(compilation, plan, plan.dataFlowPaths);
+
+            // The schemas depend on the data read at compile time, e.g. the header of a file,
+            // so a cached jar is only reused for the same schemas and after checking them
+            CompilationCache.Key key = cache.key(sheet, plan.outputSchemas, layout, backend);
+            if (cache.copyTo(key, jarPath) && isRunnable(jarPath, layout)) {
+                log.info("Reusing cached jar for flow {}", sheet.getId());
+                compilation.println("Sheet unchanged since its last compilation, reusing the compiled flow");
+                jarFile = jarPath.toFile();
+                return jarFile;
+            }
 
-            // Create JAR with dependencies
-            return compileAndCreateJar(javaFile, className, componentClasses, verbose);
+            pushDownLimits(compilation, plan);
+            pushDownPredicates(compilation, sheet, plan);
+            pruneColumns(compilation, plan);
+            if (verbose) {
+                compilation.println("\nSchemas:");
+                plan.outputSchemas.forEach((nodeId, schema) ->
+                    compilation.println("  " + nodeId + " -> " + schema.getColumnNames()));
+            }
+            Map<String, byte[]> classFiles = generateClassFiles(compilation, plan, className, verbose);
+
+            Path cachedVariant = compilation.workspace.resolve("cached-variant.jar");
+            if (cache.copyVariantTo(key, cachedVariant) && isRunnable(cachedVariant, layout)) {
+                // Only parameter values changed, they only affect the flow class
+                log.info("Recompiling the flow class of flow {} only", sheet.getId());
+                compilation.println("Only parameters changed, recompiling the flow class");
+                jarFile = repackFlowClass(compilation, classFiles, className, cachedVariant, verbose);
+            } else {
+                Set<Class<?>> componentClasses = extractComponentClasses(compilation, sheet, verbose);
+
+                if (layout == JarLayout.THIN) {
+                    jarFile = compileAndCreateThinJar(compilation, classFiles, className, componentClasses, verbose);
+                } else {
+                    // Create JAR with dependencies
+                    jarFile = compileAndCreateJar(compilation, classFiles, className, componentClasses, verbose);
+                }
+            }
+            cache.put(key, jarFile);
+            return jarFile;
+        } catch (CompilationException e) {
+            throw e;
         } catch (IOException e) {
             throw new CompilationException("Failed to compile flow: " + e.getMessage(), e);
         } catch (Exception e) {
             throw new CompilationException("Unexpected error while compiling flow: " + e.getMessage(), e);
+        } finally {
+            cleanWorkspace(compilation.workspace, jarFile);
+        }
+    }
+
+    /**
+     * Checks whether a cached jar can be reused. A thin jar needs the artifacts it refers
+     * to, which may have been removed from the store since it was cached.
+     */
+    private boolean isRunnable(Path jarPath, JarLayout layout) {
+        if (layout == JarLayout.FAT) {
+            return true;
+        }
+        try {
+            ThinJar thinJar = ThinJar.read(jarPath);
+            if (thinJar == null) {
+                return false;
+            }
+            thinJar.resolveAll();
+            return true;
+        } catch (IOException e) {
+            log.info("Not reusing cached thin jar: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Deletes a compilation workspace except for the jar it produced.
+     */
+    private void cleanWorkspace(Path workspace, File keep) {
+        Path keepPath = keep != null ? keep.toPath() : null;
+        try (Stream<Path> walk = Files.walk(workspace)) {
+            walk.sorted(Comparator.reverseOrder())
+                .filter(path -> keepPath == null || (!path.equals(keepPath) && !path.equals(workspace)))
+                .forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            log.warn("Could not clean compilation workspace {}: {}", workspace, e.getMessage());
         }
     }
 
+    /**
+     * Deletes a jar returned by {@link #compileToJar} together with its workspace, once
+     * the caller copied or loaded it.
+     */
+    public void discard(File jarFile) {
+        Path workspace = jarFile.toPath().getParent();
+        if (workspace == null || !workspace.startsWith(tempDir)) {
+            return;
+        }
+        cleanWorkspace(workspace, null);
+    }
+
     private void validateFlow(Sheet sheet) throws CompilationException {
         if (sheet.getNodes() == null || sheet.getNodes().isEmpty()) {
             throw new CompilationException("Flow must contain at least one node");
@@ -222,7 +566,7 @@ public class FlowCompilerNG {
     }
 
     private void traverseControlFlow(Map<String, Object> node, List<Map<String, Object>> nodes, 
-            List<Map<String, Object>> edges, Set<String> visited) {
+            List<Map<String, Object>> edges, List<Map<String, Object>> controlFlowNodes, Set<String> visited) {
         String nodeId = (String) node.get("id");
         if (!visited.add(nodeId)) return;
         
@@ -249,49 +593,74 @@ public class FlowCompilerNG {
                     .filter(n -> n.get("id").equals(targetId))
                     .findFirst()
                     .ifPresent(targetNode -> 
-                        traverseControlFlow(targetNode, nodes, edges, visited));
+                        traverseControlFlow(targetNode, nodes, edges, controlFlowNodes, visited));
             });
     }
 
+    /**
+     * Collects the routes rows take from a node: every chain of data flow edges from it to
+     * a node without outgoing data flow edges. Consecutive nodes of a route are connected
+     * by a queue. A route ends before a node it already passed, such a cycle is reported
+     * by {@link #eliminateDeadNodes}.
+     *
+     * @param route the nodes passed to get to this one
+     * @param routes receives the routes found
+     */
     private void traverseDataFlow(Map<String, Object> node, List<Map<String, Object>> nodes,
-            List<Map<String, Object>> edges, List<Map<String, Object>> path, Set<String> visited) {
+            List<Map<String, Object>> edges, List<Map<String, Object>> route,
+            List<List<Map<String, Object>>> routes) {
         String nodeId = (String) node.get("id");
-        if (!visited.add(nodeId)) return;
+        route.add(node);
         
-        // Only add data processing nodes to data flow paths (exclude control flow nodes like start/stop)
-        if (!isControlFlowNode(node)) {
-            path.add(node);
-        }
-        
-        // Find outgoing data flow edges
-        edges.stream()
+        // Find outgoing data flow edges, several edges to one node are one queue
+        List<Map<String, Object>> targets = edges.stream()
             .filter(edge -> edge.get("source").equals(nodeId))
             // Filter edges to only include data flow connections
-            .filter(edge -> {
-                Object sourceHandle = edge.get("sourceHandle");
-                return sourceHandle == null || 
-                       !(sourceHandle instanceof String) || 
-                       ((String)sourceHandle).contains("data") ||
-                       !((String)sourceHandle).contains("control");
-            })
-            .forEach(edge -> {
-                String targetId = (String) edge.get("target");
-                nodes.stream()
-                    .filter(n -> n.get("id").equals(targetId))
-                    // Skip control flow nodes for data paths
-                    .filter(n -> !isControlFlowNode(n))
-                    .findFirst()
-                    .ifPresent(targetNode -> 
-                        traverseDataFlow(targetNode, nodes, edges, path, visited));
-            });
+            .filter(this::isDataFlowEdge)
+            .map(edge -> edge.get("target"))
+            .distinct()
+            .flatMap(targetId -> nodes.stream()
+                .filter(n -> n.get("id").equals(targetId))
+                // Skip control flow nodes for data paths
+                .filter(n -> !isControlFlowNode(n))
+                .findFirst()
+                .stream())
+            .filter(targetNode -> route.stream().noneMatch(passed -> passed.get("id").equals(targetNode.get("id"))))
+            .collect(Collectors.toList());
+        if (targets.isEmpty()) {
+            routes.add(new ArrayList<>(route));
+        }
+        for (Map<String, Object> targetNode : targets) {
+            traverseDataFlow(targetNode, nodes, edges, route, routes);
+        }
+        route.remove(route.size() - 1);
     }
 
-    private MethodSpec.Builder buildConstructor(Sheet sheet) {
-        MethodSpec.Builder constructor = MethodSpec.constructorBuilder()
-            .addModifiers(Modifier.PUBLIC)
-            .addException(Exception.class)
-            .addStatement("this.components = new $T<>()", HashMap.class);
-            
+    private boolean isDataFlowEdge(Map<String, Object> edge) {
+        Object sourceHandle = edge.get("sourceHandle");
+        return sourceHandle == null || 
+               !(sourceHandle instanceof String) || 
+               ((String)sourceHandle).contains("data") ||
+               !((String)sourceHandle).contains("control");
+    }
+
+    /**
+     * Counts the data flow edges ending (incoming) or starting (outgoing) at a node.
+     */
+    private long countDataFlowEdges(Sheet sheet, String nodeId, boolean incoming) {
+        return sheet.getEdges().stream()
+            .filter(edge -> nodeId.equals(edge.get(incoming ? "target" : "source")))
+            .filter(this::isDataFlowEdge)
+            .count();
+    }
+
+    /**
+     * Collects what the flow class does from the control and data flow: the components it
+     * creates, the queues it connects, the sources it registers and the components it runs.
+     * All code generation backends generate from this plan.
+     */
+    private FlowPlan planFlow(Compilation compilation, Sheet sheet) {
+        List<FlowPlan.Component> components = new ArrayList<>();
         // Create all component instances based on implementation class
         for (Map<String, Object> node : sheet.getNodes()) {
             Map<String, Object> data = (Map<String, Object>) node.get("data");
@@ -304,7 +673,11 @@ public class FlowCompilerNG {
             Map<String, Object> componentData = (Map<String, Object>) data.get("componentData");
             String implementationClass = (String) componentData.get("implementationClass");
             String nodeId = (String) node.get("id");
-            String nodeType = (String) node.get("type");
+            
+            // Skip nodes contributing to no destination
+            if (compilation.deadNodes.contains(nodeId)) {
+                continue;
+            }
             
             // Skip start and stop nodes, they are just control flow markers
             if ("start".equals(node.get("type")) || "stop".equals(node.get("type")) ||
@@ -312,21 +685,16 @@ public class FlowCompilerNG {
                 continue;
             }
             
-            // Create a valid Java variable name by replacing hyphens with underscores
-            String safeNodeId = nodeId.replaceAll("-", "_");
-            
-            // Create component instance using the implementation class
-            constructor.addComment("Create component instance for node: $L", nodeId);
-            constructor.addStatement("Object $L = Class.forName($S).newInstance()", 
-                safeNodeId, implementationClass);
-            
-            // Add component instance to map
-            constructor.addStatement("components.put($S, $L)", nodeId, safeNodeId);
-            
+            // Parameters bound to fields are converted to the field types here, so the
+            // generated code passes values of the right type
+            Class<?> componentClass = loadComponentClass(implementationClass);
+            Map<String, Field> boundFields = componentClass != null
+                ? ParameterBinding.fields(componentClass) : Map.of();
+
             // Set component parameters if available
+            List<FlowPlan.Parameter> parameterValues = new ArrayList<>();
             List<?> parameters = (List<?>) componentData.get("parameters");
-            if (parameters != null && !parameters.isEmpty()) {
-                constructor.addComment("Set parameters for component: $L", nodeId);
+            if (parameters != null) {
                 for (Object paramObj : parameters) {
                     String paramName;
                     Object paramValue;
@@ -372,19 +740,519 @@ public class FlowCompilerNG {
                             continue;
                         }
                     }
-                    
+                    Field field = boundFields.get(paramName);
+                    if (field != null) {
+                        formattedValue = typedLiteral(nodeId, paramName, paramValue, field.getType());
+                    }
+                    parameterValues.add(new FlowPlan.Parameter(paramName, formattedValue));
+                }
+            }
+            components.add(new FlowPlan.Component(nodeId, implementationClass, isDirectlyInstantiable(componentClass),
+                parameterValues));
+        }
+
+        List<List<String>> dataFlowPaths = new ArrayList<>();
+        // Transforms copy a barrier to each of their outputs, so a destination acknowledges
+        // a barrier once for every route from the source to it
+        Map<String, Set<List<String>>> routesToDestinations = new LinkedHashMap<>();
+        for (List<Map<String, Object>> path : compilation.dataFlowPaths) {
+            List<String> nodeIds = new ArrayList<>();
+            path.forEach(node -> nodeIds.add((String) node.get("id")));
+            dataFlowPaths.add(nodeIds);
+            Set<List<String>> routes = routesToDestinations.computeIfAbsent(nodeIds.get(0), nodeId -> new HashSet<>());
+            for (int i = 1; i < path.size(); i++) {
+                if (isDestinationNode(path.get(i))) {
+                    // Destinations pass nothing on
+                    routes.add(nodeIds.subList(0, i + 1));
+                    break;
+                }
+            }
+        }
+        List<FlowPlan.Source> sources = new ArrayList<>();
+        routesToDestinations.forEach((nodeId, routes) -> sources.add(new FlowPlan.Source(nodeId, routes.size())));
+
+        // Sources are started by the control flow, the components they feed run alongside them
+        Map<String, Map<String, Object>> workerNodes = new LinkedHashMap<>();
+        for (Map<String, Object> node : compilation.controlFlowNodes) {
+            Map<?, ?> componentData = (Map<?, ?>) ((Map<?, ?>) node.get("data")).get("componentData");
+
+            // Skip start and stop nodes
+            if ("start".equals(componentData.get("id")) || "stop".equals(componentData.get("id"))) {
+                continue;
+            }
+            workerNodes.put((String) node.get("id"), node);
+        }
+        for (List<Map<String, Object>> path : compilation.dataFlowPaths) {
+            if (workerNodes.containsKey((String) path.get(0).get("id"))) {
+                path.stream().skip(1).forEach(node -> workerNodes.putIfAbsent((String) node.get("id"), node));
+            }
+        }
+        List<FlowPlan.Worker> workers = new ArrayList<>();
+        for (Map<String, Object> node : workerNodes.values()) {
+            Map<?, ?> componentData = (Map<?, ?>) ((Map<?, ?>) node.get("data")).get("componentData");
+            String nodeId = (String) node.get("id");
+            workers.add(new FlowPlan.Worker(nodeId, getDisplayNameForComponent(nodeId, componentData)));
+        }
+
+        return new FlowPlan(components, dataFlowPaths, sources, workers);
+    }
+
+    /**
+     * Infers the schemas of the rows flowing between components. Sources declare their
+     * output schema, the components they feed derive theirs from their input; along a path
+     * inference stops at the first component whose schema is unknown. A component fed
+     * rows of different schemas gets none. The schemas are embedded in the flow class.
+     *
+     * @throws CompilationException if a component refers to columns its input does not have
+     */
+    private void inferSchemas(Compilation compilation, FlowPlan plan, List<List<String>> paths) {
+        Map<String, FlowPlan.Component> components = new HashMap<>();
+        plan.components.forEach(component -> components.put(component.nodeId, component));
+        Set<String> ambiguous = new HashSet<>();
+
+        for (List<String> path : paths) {
+            Schema input = null;
+            for (int i = 0; i < path.size(); i++) {
+                String nodeId = path.get(i);
+                if (i > 0) {
+                    if (input == null || ambiguous.contains(nodeId)) {
+                        break;
+                    }
+                    Schema known = plan.inputSchemas.putIfAbsent(nodeId, input);
+                    if (known != null && !known.getColumnNames().equals(input.getColumnNames())) {
+                        compilation.println("Warning: node " + nodeId + " receives rows of different schemas");
+                        ambiguous.add(nodeId);
+                        plan.inputSchemas.remove(nodeId);
+                        plan.outputSchemas.remove(nodeId);
+                        break;
+                    }
+                }
+                Schema output = plan.outputSchemas.get(nodeId);
+                if (output == null) {
+                    output = inferOutputSchema(compilation, components.get(nodeId), input);
+                    if (output == null) {
+                        break;
+                    }
+                    plan.outputSchemas.put(nodeId, output);
+                }
+                input = output;
+            }
+        }
+    }
+
+    /**
+     * Limits the queries of database sources to their row limit, so the database stops after
+     * those rows instead of the source reading them all. The maxRows of the SQL parameter is
+     * not a limit, sheets saved its default for every query. Runs before filters are pushed
+     * into the queries, the limit applies to the query as written. Sources with a watermark
+     * column limit their query themselves, after ordering it by the watermark, so a resumed
+     * run reads the rows the first run left rather than any others.
+     */
+    private void pushDownLimits(Compilation compilation, FlowPlan plan) {
+        for (FlowPlan.Component source : plan.components) {
+            if (!DatabaseSourceComponent.class.getName().equals(source.implementationClass)) {
+                continue;
+            }
+            int queryIndex = parameterIndex(source, "query");
+            Object query = queryIndex >= 0 ? source.parameters.get(queryIndex).constant() : null;
+            long limit = rowLimit(source);
+            if (!(query instanceof String) || ((String) query).isBlank() || limit <= 0 || hasWatermark(source)) {
+                continue;
+            }
+
+            String rewritten = "SELECT * FROM (" + subquery((String) query) + ") webetl_limit LIMIT " + limit;
+            source.parameters.set(queryIndex, new FlowPlan.Parameter("query", stringLiteral(rewritten)));
+            compilation.println("Limited the query of node " + source.nodeId + " to " + limit + " rows");
+        }
+    }
+
+    /**
+     * Pushes filter conditions into the query of the database source feeding the filter.
+     * The operands of the condition's top-level AND that the source's database evaluates
+     * like the filter, given the inferred schema of the source, move into a WHERE clause
+     * around the query; the rest stays in the filter. Nothing is pushed into a source of
+     * unknown schema. Only a source feeding nothing but the filter and a filter fed by
+     * nothing but the source are rewritten, other components would see different rows
+     * otherwise. Neither is a source with a watermark column and a row limit, it limits its
+     * query when running, and the condition must not apply before the limit.
+     *
+     * @throws CompilationException if a filter condition is not valid
+     */
+    private void pushDownPredicates(Compilation compilation, Sheet sheet, FlowPlan plan) {
+        Map<String, FlowPlan.Component> components = new HashMap<>();
+        plan.components.forEach(component -> components.put(component.nodeId, component));
+        // Several paths lead through a filter that has several outputs
+        Set<String> rewrittenSources = new HashSet<>();
+
+        for (List<String> path : plan.dataFlowPaths) {
+            FlowPlan.Component source = components.get(path.get(0));
+            FlowPlan.Component filter = path.size() > 1 ? components.get(path.get(1)) : null;
+            if (source == null || filter == null || !rewrittenSources.add(source.nodeId)
+                || !DatabaseSourceComponent.class.getName().equals(source.implementationClass)
+                || !FilterComponent.class.getName().equals(filter.implementationClass)
+                // the source limits the query after the condition would apply
+                || (rowLimit(source) > 0 && hasWatermark(source))
+                || countDataFlowEdges(sheet, source.nodeId, false) != 1
+                || countDataFlowEdges(sheet, filter.nodeId, true) != 1) {
+                continue;
+            }
+            int queryIndex = parameterIndex(source, "query");
+            int conditionIndex = parameterIndex(filter, "condition");
+            if (queryIndex < 0 || conditionIndex < 0) {
+                continue;
+            }
+            Object query = source.parameters.get(queryIndex).constant();
+            Object condition = filter.parameters.get(conditionIndex).constant();
+            Schema schema = plan.outputSchemas.get(source.nodeId);
+            if (!(query instanceof String) || ((String) query).isBlank() || !(condition instanceof String)
+                || schema == null) {
+                continue;
+            }
+            int dbTypeIndex = parameterIndex(source, "dbType");
+            Object dbType = dbTypeIndex >= 0 ? source.parameters.get(dbTypeIndex).constant() : null;
+            if (!(dbType instanceof String) || ((String) dbType).isEmpty()) {
+                dbType = "postgresql";
+            }
+
+            FilterCondition parsed;
+            try {
+                parsed = FilterCondition.parse((String) condition);
+            } catch (IllegalArgumentException e) {
+                throw new CompilationException("Node " + filter.nodeId + ": " + e.getMessage(), e);
+            }
+            List<FilterCondition> pushed = new ArrayList<>();
+            List<FilterCondition> residual = new ArrayList<>();
+            for (FilterCondition conjunct : parsed.conjuncts()) {
+                (conjunct.isSqlExpressible(schema, (String) dbType) ? pushed : residual).add(conjunct);
+            }
+            if (pushed.isEmpty()) {
+                continue;
+            }
+
+            String where = FilterCondition.and(pushed).toSql((String) dbType);
+            String rewritten = "SELECT * FROM (" + subquery((String) query) + ") webetl_filter WHERE " + where;
+            source.parameters.set(queryIndex, new FlowPlan.Parameter("query", stringLiteral(rewritten)));
+            filter.parameters.set(conditionIndex,
+                new FlowPlan.Parameter("condition", stringLiteral(FilterCondition.and(residual).toString())));
+            compilation.println("Pushed condition " + where + " of node " + filter.nodeId
+                + " into the query of node " + source.nodeId
+                + (residual.isEmpty() ? "" : ", keeping " + FilterCondition.and(residual) + " in the filter"));
+        }
+    }
+
+    /**
+     * Leaves out the columns of sources that nothing downstream reads. Going back from each
+     * source's consumers, every component tells which input columns it needs for the output
+     * columns needed after it, see {@link ColumnUsage}. Sources implementing
+     * {@link ColumnProjection} with a known schema are then told to read only the needed
+     * columns, and the schemas downstream are inferred again from their narrowed schemas.
+     */
+    private void pruneColumns(Compilation compilation, FlowPlan plan) {
+        Map<String, FlowPlan.Component> components = new HashMap<>();
+        plan.components.forEach(component -> components.put(component.nodeId, component));
+        Map<String, Set<String>> consumers = new HashMap<>();
+        Set<String> sources = new LinkedHashSet<>();
+        for (List<String> path : plan.dataFlowPaths) {
+            sources.add(path.get(0));
+            for (int i = 1; i < path.size(); i++) {
+                consumers.computeIfAbsent(path.get(i - 1), nodeId -> new LinkedHashSet<>()).add(path.get(i));
+            }
+        }
+
+        Map<String, Optional<Set<String>>> needed = new HashMap<>();
+        boolean pruned = false;
+        for (String nodeId : sources) {
+            FlowPlan.Component source = components.get(nodeId);
+            Class<?> componentClass = source != null ? loadComponentClass(source.implementationClass) : null;
+            Schema schema = plan.outputSchemas.get(nodeId);
+            if (componentClass == null || !ColumnProjection.class.isAssignableFrom(componentClass) || schema == null) {
+                continue;
+            }
+            Set<String> columns = neededColumns(compilation, nodeId, consumers, components, needed, new HashSet<>());
+            if (columns == null || columns.containsAll(schema.getColumnNames())) {
+                continue;
+            }
+            Schema selected = schema.select(columns);
+            plan.outputSchemas.put(nodeId, selected);
+            plan.requiredColumns.put(nodeId, new LinkedHashSet<>(selected.getColumnNames()));
+            compilation.println("Node " + nodeId + " reads only the columns " + selected.getColumnNames()
+                + " of " + schema.getColumnNames());
+            pruned = true;
+        }
+
+        if (pruned) {
+            // Paths from sources of unknown schema got no schemas the first time either
+            plan.inputSchemas.clear();
+            plan.outputSchemas.keySet().retainAll(sources);
+            inferSchemas(compilation, plan, plan.dataFlowPaths.stream()
+                .filter(path -> plan.outputSchemas.containsKey(path.get(0)))
+                .toList());
+        }
+    }
+
+    /**
+     * Gets the output columns of a node its consumers need, null if all of them are needed.
+     */
+    private Set<String> neededColumns(Compilation compilation, String nodeId, Map<String, Set<String>> consumers,
+                                      Map<String, FlowPlan.Component> components,
+                                      Map<String, Optional<Set<String>>> needed, Set<String> visiting) {
+        Optional<Set<String>> known = needed.get(nodeId);
+        if (known != null) {
+            return known.orElse(null);
+        }
+        if (!visiting.add(nodeId)) {
+            // Rows come back to the node, keep all columns rather than solving the cycle
+            return null;
+        }
+        Set<String> columns = new HashSet<>();
+        for (String consumer : consumers.getOrDefault(nodeId, Set.of())) {
+            Set<String> input = inputColumns(compilation, components.get(consumer),
+                neededColumns(compilation, consumer, consumers, components, needed, visiting));
+            if (input == null) {
+                columns = null;
+                break;
+            }
+            columns.addAll(input);
+        }
+        visiting.remove(nodeId);
+        needed.put(nodeId, Optional.ofNullable(columns));
+        return columns;
+    }
+
+    /**
+     * Asks a component which input columns it needs, null if it needs all of them.
+     */
+    private Set<String> inputColumns(Compilation compilation, FlowPlan.Component component, Set<String> outputColumns) {
+        Class<?> componentClass = component != null ? loadComponentClass(component.implementationClass) : null;
+        if (componentClass == null || !ColumnUsage.class.isAssignableFrom(componentClass)) {
+            return null;
+        }
+        try {
+            return ((ColumnUsage) createComponent(componentClass, component)).inputColumns(outputColumns);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            compilation.println("Columns used by node " + component.nodeId + " unknown: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Prepares a query for use as a subquery, dropping a terminating semicolon.
+     */
+    private static String subquery(String query) {
+        return query.strip().replaceAll(";+$", "");
+    }
+
+    /**
+     * Gets the row limit of a database source.
+     *
+     * @return the limit, 0 if the source reads all rows
+     */
+    private static long rowLimit(FlowPlan.Component source) {
+        int limitIndex = parameterIndex(source, "limit");
+        Object limit = limitIndex >= 0 ? source.parameters.get(limitIndex).constant() : null;
+        return limit instanceof Number ? ((Number) limit).longValue() : 0;
+    }
+
+    /**
+     * Checks if a database source has a watermark column, it orders and limits its query
+     * itself when checkpointing.
+     */
+    private static boolean hasWatermark(FlowPlan.Component source) {
+        int watermarkIndex = parameterIndex(source, "watermarkColumn");
+        Object watermark = watermarkIndex >= 0 ? source.parameters.get(watermarkIndex).constant() : null;
+        return watermark instanceof String && !((String) watermark).isEmpty();
+    }
+
+    private static int parameterIndex(FlowPlan.Component component, String name) {
+        for (int i = 0; i < component.parameters.size(); i++) {
+            if (component.parameters.get(i).name.equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Asks a component for its output schema, creating it with the parameter values of the sheet.
+     *
+     * @return the schema, null if the component does not know it
+     */
+    private Schema inferOutputSchema(Compilation compilation, FlowPlan.Component component, Schema input) {
+        Class<?> componentClass = component != null ? loadComponentClass(component.implementationClass) : null;
+        if (componentClass == null || !SchemaProvider.class.isAssignableFrom(componentClass)) {
+            return null;
+        }
+        SchemaProvider provider;
+        try {
+            provider = (SchemaProvider) createComponent(componentClass, component);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            compilation.println("Schema of node " + component.nodeId + " unknown, cannot create the component: "
+                + e.getMessage());
+            return null;
+        }
+        try {
+            return provider.inferOutputSchema(input);
+        } catch (IllegalArgumentException e) {
+            throw new CompilationException("Node " + component.nodeId + ": " + e.getMessage(), e);
+        } catch (Exception e) {
+            compilation.println("Schema of node " + component.nodeId + " unknown: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Creates a component with the parameter values of the sheet, for asking it about the flow.
+     */
+    private static ETLComponent createComponent(Class<?> componentClass, FlowPlan.Component component)
+            throws ReflectiveOperationException {
+        ETLComponent instance = (ETLComponent) componentClass.getDeclaredConstructor().newInstance();
+        for (FlowPlan.Parameter parameter : component.parameters) {
+            instance.setParameter(parameter.name, parameter.constant());
+        }
+        return instance;
+    }
+
+    /**
+     * Loads a component class to inspect it, null if it is not on the compiler's classpath.
+     */
+    private Class<?> loadComponentClass(String implementationClass) {
+        if (implementationClass == null) {
+            return null;
+        }
+        try {
+            return Class.forName(implementationClass);
+        } catch (ClassNotFoundException e) {
+            log.warn("Component class not found: {}", implementationClass);
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether the flow class can create a component with a direct constructor call
+     * rather than reflection: a public, concrete, top-level or static class with a public
+     * no-arg constructor. A nested class also needs public enclosing classes to be visible
+     * from the flow class.
+     */
+    private static boolean isDirectlyInstantiable(Class<?> componentClass) {
+        if (componentClass == null) {
+            return false;
+        }
+        for (Class<?> enclosing = componentClass.getEnclosingClass(); enclosing != null;
+                enclosing = enclosing.getEnclosingClass()) {
+            if (!java.lang.reflect.Modifier.isPublic(enclosing.getModifiers())) {
+                return false;
+            }
+        }
+        int modifiers = componentClass.getModifiers();
+        if (!java.lang.reflect.Modifier.isPublic(modifiers) || java.lang.reflect.Modifier.isAbstract(modifiers)
+            || componentClass.isInterface()
+            || (componentClass.isMemberClass() && !java.lang.reflect.Modifier.isStatic(modifiers))
+            || componentClass.isLocalClass() || componentClass.isAnonymousClass()) {
+            return false;
+        }
+        try {
+            return java.lang.reflect.Modifier.isPublic(componentClass.getConstructor().getModifiers());
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Formats a parameter value as a literal of the type of the field it is bound to.
+     *
+     * @throws CompilationException if the value does not fit the field type
+     */
+    private String typedLiteral(String nodeId, String name, Object value, Class<?> type) {
+        Object typed;
+        try {
+            typed = ParameterBinding.convert(name, value, type);
+        } catch (IllegalArgumentException e) {
+            throw new CompilationException("Invalid value for node " + nodeId + ": " + e.getMessage());
+        }
+        if (typed instanceof String) {
+            return "\"" + escapeJavaString((String) typed) + "\"";
+        }
+        if (typed instanceof Long) {
+            return typed + "L";
+        }
+        if (typed instanceof Double && !Double.isFinite((Double) typed)) {
+            throw new CompilationException("Invalid value for node " + nodeId + ": parameter " + name
+                + " must be a finite number, got: " + value);
+        }
+        return typed.toString();
+    }
+
+    private MethodSpec.Builder buildConstructor(FlowPlan plan) {
+        MethodSpec.Builder constructor = MethodSpec.constructorBuilder()
+            .addModifiers(Modifier.PUBLIC)
+            .addException(Exception.class)
+            .addStatement("this.components = new $T<>()", HashMap.class);
+            
+        for (FlowPlan.Component component : plan.components) {
+            String nodeId = component.nodeId;
+            
+            // Create a valid Java variable name by replacing hyphens with underscores
+            String safeNodeId = nodeId.replaceAll("-", "_");
+            
+            // Create component instance using the implementation class
+            constructor.addComment("Create component instance for node: $L", nodeId);
+            if (component.directlyInstantiable) {
+                constructor.addStatement("Object $L = new $T()",
+                    safeNodeId, ClassName.bestGuess(component.implementationClass.replace('$', '.')));
+            } else {
+                constructor.addStatement("Object $L = Class.forName($S).newInstance()", 
+                    safeNodeId, component.implementationClass);
+            }
+            
+            // Add component instance to map
+            constructor.addStatement("components.put($S, $L)", nodeId, safeNodeId);
+            
+            if (!component.parameters.isEmpty()) {
+                constructor.addComment("Set parameters for component: $L", nodeId);
+                for (FlowPlan.Parameter parameter : component.parameters) {
                     constructor.addStatement("(($T) $L).setParameter($S, $L)", 
                         ClassName.get("io.webetl.model.component", "ETLComponent"),
                         safeNodeId, 
-                        paramName, 
-                        formattedValue);
+                        parameter.name, 
+                        parameter.literal);
                 }
             }
+            
+            // Set the schemas known at compile time
+            Schema inputSchema = plan.inputSchemas.get(nodeId);
+            if (inputSchema != null) {
+                constructor.addStatement("(($T) $L).setInputSchema($L)",
+                    ClassName.get("io.webetl.model.component", "ETLComponent"), safeNodeId, schemaCode(inputSchema));
+            }
+            Schema outputSchema = plan.outputSchemas.get(nodeId);
+            if (outputSchema != null) {
+                constructor.addStatement("(($T) $L).setOutputSchema($L)",
+                    ClassName.get("io.webetl.model.component", "ETLComponent"), safeNodeId, schemaCode(outputSchema));
+            }
+            Set<String> requiredColumns = plan.requiredColumns.get(nodeId);
+            if (requiredColumns != null) {
+                CodeBlock names = requiredColumns.stream()
+                    .map(column -> CodeBlock.of("$S", column))
+                    .collect(CodeBlock.joining(", "));
+                constructor.addStatement("(($T) $L).setRequiredColumns($T.of($L))",
+                    ClassName.get("io.webetl.model.component", "ColumnProjection"), safeNodeId, Set.class, names);
+            }
         }
         
         return constructor;
     }
     
+    /**
+     * Creates the expression building a schema in the flow class.
+     */
+    private CodeBlock schemaCode(Schema schema) {
+        ClassName dataType = ClassName.get("io.webetl.model.data", "DataType");
+        CodeBlock.Builder code = CodeBlock.builder().add("new $T()", ClassName.get("io.webetl.model.data", "Schema"));
+        schema.getColumns().forEach((name, column) -> code.add(".column($S, $T.$L)", name, dataType,
+            column.getType() != null ? column.getType().name() : "STRING"));
+        return code.build();
+    }
+
     /**
      * Format a parameter value for Java code generation
      */
@@ -407,6 +1275,10 @@ public class FlowCompilerNG {
         return "\"" + escapeJavaString(value.toString()) + "\"";
     }
     
+    private String stringLiteral(String value) {
+        return "\"" + escapeJavaString(value) + "\"";
+    }
+
     /**
      * Escape special characters in Java strings
      */
@@ -419,7 +1291,7 @@ public class FlowCompilerNG {
                    .replace("\t", "\\t");
     }
 
-    private MethodSpec.Builder buildExecuteMethod(Sheet sheet) {
+    private MethodSpec.Builder buildExecuteMethod(FlowPlan plan) {
         MethodSpec.Builder method = MethodSpec.methodBuilder("execute")
             .addModifiers(Modifier.PUBLIC)
             .addAnnotation(Override.class)
@@ -436,78 +1308,42 @@ public class FlowCompilerNG {
         // Connect component queues
         method.addComment("Connect component queues");
         
-        // Generate unique path identifiers
-        for (int pathIndex = 0; pathIndex < dataFlowPaths.size(); pathIndex++) {
-            List<Map<String, Object>> path = dataFlowPaths.get(pathIndex);
-            String pathId = "path" + pathIndex;
+        // Every data flow edge gets one queue, even if several paths pass it
+        List<List<String>> connections = plan.connections();
+        for (int i = 0; i < connections.size(); i++) {
+            String sourceId = connections.get(i).get(0);
+            String targetId = connections.get(i).get(1);
             
-            method.addComment("Data flow path " + pathIndex);
+            // Use unique variable names with the connection index
+            String sourceVar = "source_" + i;
+            String targetVar = "target_" + i;
             
-            for (int i = 0; i < path.size() - 1; i++) {
-                Map<String, Object> sourceNode = path.get(i);
-                Map<String, Object> targetNode = path.get(i + 1);
-                String sourceId = (String) sourceNode.get("id");
-                String targetId = (String) targetNode.get("id");
-                
-                // Use unique variable names with path identifier
-                String sourceVar = "source_" + pathId + "_" + i;
-                String targetVar = "target_" + pathId + "_" + i;
-                
-                method.addStatement("Object $L = components.get($S)", sourceVar, sourceId)
-                      .addStatement("Object $L = components.get($S)", targetVar, targetId)
-                      .beginControlFlow("if ($L instanceof $T && $L instanceof $T)",
-                          sourceVar, ClassName.get("io.webetl.model.component", "OutputQueueProvider"),
-                          targetVar, ClassName.get("io.webetl.model.component", "InputQueueProvider"))
-                      .addStatement("(($T)$L).registerInputQueue(($T)$L)",
-                          ClassName.get("io.webetl.model.component", "OutputQueueProvider"),
-                          sourceVar,
-                          ClassName.get("io.webetl.model.component", "InputQueueProvider"),
-                          targetVar)
-                      .endControlFlow();
-            }
+            method.addStatement("Object $L = components.get($S)", sourceVar, sourceId)
+                  .addStatement("Object $L = components.get($S)", targetVar, targetId)
+                  .beginControlFlow("if ($L instanceof $T && $L instanceof $T)",
+                      sourceVar, ClassName.get("io.webetl.model.component", "OutputQueueProvider"),
+                      targetVar, ClassName.get("io.webetl.model.component", "InputQueueProvider"))
+                  .addStatement("(($T)$L).registerInputQueue(($T)$L)",
+                      ClassName.get("io.webetl.model.component", "OutputQueueProvider"),
+                      sourceVar,
+                      ClassName.get("io.webetl.model.component", "InputQueueProvider"),
+                      targetVar)
+                  .endControlFlow();
+        }
+
+        // Register sources for checkpointing together with the acknowledgements completing a checkpoint
+        method.addComment("Register sources for checkpointing");
+        for (FlowPlan.Source source : plan.sources) {
+            method.addStatement("context.getCheckpointCoordinator().registerSource(components.get($S), $S, $L)",
+                source.nodeId, source.nodeId, source.ackCount);
         }
 
         // Create worker threads for each component
         method.addComment("Create worker threads for each component");
         method.addStatement("$T<$T> workers = new $T<>()", List.class, Thread.class, ArrayList.class);
 
-        for (Map<String, Object> node : controlFlowNodes) {
-            Map<String, Object> data = (Map<String, Object>) node.get("data");
-            Map<String, Object> componentData = (Map<String, Object>) data.get("componentData");
-            String nodeId = (String) node.get("id");
-            String safeNodeId = nodeId.replaceAll("-", "_");
-
-            // Skip start and stop nodes
-            if ("start".equals(componentData.get("id")) || "stop".equals(componentData.get("id"))) {
-                continue;
-            }
-
-            method.beginControlFlow("$T worker$L = new $T(() -> ",
-                ClassName.get(Thread.class), safeNodeId, ClassName.get(Thread.class))
-                .addStatement("String componentName = $S", getDisplayNameForComponent(nodeId, componentData))
-                .beginControlFlow("try")
-                .addStatement("context.setCurrentComponentId(componentName)")
-                .addStatement("context.log(\"Starting execution of \" + componentName)")
-                .addStatement("Object component = components.get($S)", nodeId)
-                .beginControlFlow("if (component instanceof $T)",
-                    ClassName.get("io.webetl.model.component", "ExecutableComponent"))
-                .addStatement("(($T)component).execute(context)",
-                    ClassName.get("io.webetl.model.component", "ExecutableComponent"))
-                .nextControlFlow("else")
-                .addStatement("throw new $T(\"Component \" + componentName + \" does not implement ExecutableComponent\")",
-                    ClassName.get(IllegalStateException.class))
-                .endControlFlow()
-                .addStatement("context.log(\"Execution of \" + componentName + \" completed\")")
-                .nextControlFlow("catch ($T e)", Exception.class)
-                .addStatement("context.log(\"Error during execution of \" + componentName + \": \" + e.getMessage())")
-                .addStatement("e.printStackTrace()")
-                .endControlFlow()
-                .beginControlFlow("finally")
-                .addStatement("context.clearCurrentComponentId()")
-                .endControlFlow()
-                .endControlFlow(")")
-                .addStatement("workers.add(worker$L)", safeNodeId)
-                .addStatement("worker$L.start()", safeNodeId);
+        for (FlowPlan.Worker worker : plan.workers) {
+            addWorkerThread(method, worker);
         }
 
         // Wait for all workers to complete
@@ -521,15 +1357,63 @@ public class FlowCompilerNG {
             .endControlFlow()
             .endControlFlow();
 
+        // A failed component fails the whole flow, so checkpoints are kept for the next run
+        method.beginControlFlow("if (context.hasFailures())")
+            .addStatement("throw new $T(\"Flow execution failed in \" + context.getFailures().size() + \" component(s)\")",
+                IllegalStateException.class)
+            .endControlFlow();
+
         method.addStatement("context.log(\"Flow execution completed\")");
               
         return method;
     }
 
+    /**
+     * Adds a worker thread executing the component of a node.
+     * A failing component is recorded in the context and, if it feeds other
+     * components, sends a terminator row so they do not wait forever.
+     */
+    private void addWorkerThread(MethodSpec.Builder method, FlowPlan.Worker worker) {
+        String nodeId = worker.nodeId;
+        String safeNodeId = nodeId.replaceAll("-", "_");
+        ClassName outputQueueProvider = ClassName.get("io.webetl.model.component", "OutputQueueProvider");
+
+        method.beginControlFlow("$T worker$L = new $T(() -> ",
+            ClassName.get(Thread.class), safeNodeId, ClassName.get(Thread.class))
+            .addStatement("String componentName = $S", worker.componentName)
+            .addStatement("Object component = components.get($S)", nodeId)
+            .beginControlFlow("try")
+            .addStatement("context.setCurrentComponentId(componentName)")
+            .addStatement("context.log(\"Starting execution of \" + componentName)")
+            .beginControlFlow("if (component instanceof $T)",
+                ClassName.get("io.webetl.model.component", "ExecutableComponent"))
+            .addStatement("(($T)component).execute(context)",
+                ClassName.get("io.webetl.model.component", "ExecutableComponent"))
+            .nextControlFlow("else")
+            .addStatement("throw new $T(\"Component \" + componentName + \" does not implement ExecutableComponent\")",
+                ClassName.get(IllegalStateException.class))
+            .endControlFlow()
+            .addStatement("context.log(\"Execution of \" + componentName + \" completed\")")
+            .nextControlFlow("catch ($T e)", Exception.class)
+            .addStatement("context.log(\"Error during execution of \" + componentName + \": \" + e.getMessage())")
+            .addStatement("context.recordFailure(componentName, e)")
+            .beginControlFlow("if (component instanceof $T)", outputQueueProvider)
+            .addStatement("(($T)component).sendRow($T.createTerminator())",
+                outputQueueProvider, ClassName.get("io.webetl.model.data", "Row"))
+            .endControlFlow()
+            .endControlFlow()
+            .beginControlFlow("finally")
+            .addStatement("context.clearCurrentComponentId()")
+            .endControlFlow()
+            .endControlFlow(")")
+            .addStatement("workers.add(worker$L)", safeNodeId)
+            .addStatement("worker$L.start()", safeNodeId);
+    }
+
     /**
      * Gets a user-friendly display name for a component
      */
-    private String getDisplayNameForComponent(String nodeId, Map<String, Object> componentData) {
+    private String getDisplayNameForComponent(String nodeId, Map<?, ?> componentData) {
         String componentId = (String) componentData.get("id");
         String label = (String) componentData.get("label");
         
@@ -566,115 +1450,20 @@ public class FlowCompilerNG {
         }
     }
 
-    private File compileAndCreateJar(JavaFile javaFile, String className, Set<Class<?>> componentClasses, boolean verbose) throws IOException {
-        // Create temporary directories for source, class, and jar files
-        Path sourcePath = tempDir.resolve("src");
-        Path classPath = tempDir.resolve("classes");
-        Path libDir = tempDir.resolve("META-INF/lib");
-        
-        // Create directories if they don't exist
-        Files.createDirectories(sourcePath);
-        Files.createDirectories(classPath);
+    private File compileAndCreateJar(Compilation compilation, Map<String, byte[]> classFiles, String className,
+                                     Set<Class<?>> componentClasses, boolean verbose) throws IOException {
+        // The dependencies and the jar are written to the compilation's workspace,
+        // the classes stay in memory
+        Path workspace = compilation.workspace;
+        Path libDir = workspace.resolve("META-INF/lib");
         Files.createDirectories(libDir);
         
-        // Write source file
-        javaFile.writeTo(sourcePath);
-        
-        
         // Copy dependencies to lib directory
-        Set<DependencyEntry> dependencies = collectComponentDependencies(componentClasses, verbose);
-        copyDependencies(libDir, dependencies, verbose);
-        
-        // Build classpath with dependencies
-        String classpath = buildClasspathWithDependencies(libDir);
-        
-        // Copy logback.xml configuration to classes directory
-        Path logbackConfig = tempDir.resolve("classes/logback.xml");
-        Files.createDirectories(logbackConfig.getParent());
-        
-        // Simple logback configuration for standalone execution
-        String logbackConfigContent = 
-            "<configuration>\n" +
-            "  <appender name=\"STDOUT\" class=\"ch.qos.logback.core.ConsoleAppender\">\n" +
-            "    <encoder>\n" +
-            "      <pattern>%d{HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n</pattern>\n" +
-            "    </encoder>\n" +
-            "  </appender>\n" +
-            "  <root level=\"info\">\n" +
-            "    <appender-ref ref=\"STDOUT\" />\n" +
-            "  </root>\n" +
-            "</configuration>";
-        Files.write(logbackConfig, logbackConfigContent.getBytes());
-        
-        // Compile source file
-        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
-        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
-
-        // Find all source files to compile
-        List<File> sourceFiles = new ArrayList<>();
-        Files.walk(sourcePath)
-            .filter(path -> path.toString().endsWith(".java"))
-            .forEach(path -> sourceFiles.add(path.toFile()));
-        
-        if (verbose) {
-            log.info("Found {} source files to compile", sourceFiles.size());
-            for (File file : sourceFiles) {
-                log.info("  - {}", file.getName());
-            }
-        }
-        
-        // Compile classes in the correct order - ensure interfaces come first
-        Iterable<? extends JavaFileObject> compilationUnits = 
-            fileManager.getJavaFileObjectsFromFiles(sourceFiles);
-            
-        // Add the current classpath to ensure all required classes are available during compilation
-        List<String> options = Arrays.asList(
-            "-d", classPath.toString(), 
-            "-classpath", System.getProperty("java.class.path") + File.pathSeparator + classpath
-        );
-        
-        if (verbose) {
-            log.info("Compilation options:");
-            for (String option : options) {
-                log.info("  - {}", option);
-            }
-        }
-        
-        JavaCompiler.CompilationTask task = compiler.getTask(
-            null, fileManager, diagnostics, options, null, compilationUnits);
-
-        boolean success = task.call();
+        Set<DependencyEntry> dependencies = collectComponentDependencies(compilation, componentClasses, verbose);
+        copyDependencies(compilation, libDir, dependencies, verbose);
         
-        // Check for compilation errors
-        if (!success) {
-            StringBuilder errorMsg = new StringBuilder("Failed to compile flow: [");
-            for (Diagnostic<?> diagnostic : diagnostics.getDiagnostics()) {
-                errorMsg.append(diagnostic.getSource())
-                       .append(":")
-                       .append(diagnostic.getLineNumber())
-                       .append(": error: ")
-                       .append(diagnostic.getMessage(Locale.US))
-                       .append(", ");
-            }
-            errorMsg.append("]");
-            throw new CompilationException(errorMsg.toString());
-        }
-        
-        if (verbose) {
-            log.info("Compilation successful");
-            log.info("Checking compiled class files:");
-            try {
-                Files.walk(classPath)
-                    .filter(Files::isRegularFile)
-                    .forEach(path -> log.info("  - {}", classPath.relativize(path)));
-            } catch (IOException e) {
-                log.warn("Error listing compiled files", e);
-            }
-        }
-
         // Create JAR with manifest
-        Path jarPath = tempDir.resolve(className + ".jar");
+        Path jarPath = workspace.resolve(className + ".jar");
         Manifest manifest = new Manifest();
         manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
         manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, "io.webetl.runtime.JarLauncher");
@@ -690,79 +1479,26 @@ public class FlowCompilerNG {
 
         try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(jarPath.toFile()), manifest)) {
             // Add the compiled flow class
-            Files.walk(classPath)
-                .filter(Files::isRegularFile)
-                .forEach(path -> {
-                    try {
-                        String entryName = classPath.relativize(path).toString().replace('\\', '/');
-                        JarEntry entry = new JarEntry(entryName);
-                        jos.putNextEntry(entry);
-                        jos.write(Files.readAllBytes(path));
-                        jos.closeEntry();
-                    } catch (IOException e) {
-                        throw new UncheckedIOException(e);
-                    }
-                });
-            
-            // Add core component interfaces and implementations
-            addClassesToJar(jos, 
-                "io.webetl.compiler.CompiledFlow",
-                "io.webetl.runtime.ExecutionContext",
-                "io.webetl.model.component.ETLComponent",
-                "io.webetl.model.component.ExecutableComponent",
-                "io.webetl.model.component.InputQueueProvider",
-                "io.webetl.model.component.OutputQueueProvider"
-            );
-            
-            // Add SLF4J packages
-            addPackageClassesToJar(jos, "org.slf4j", getClass().getClassLoader(), verbose);
-            addPackageClassesToJar(jos, "org.slf4j.helpers", getClass().getClassLoader(), verbose);
-            addPackageClassesToJar(jos, "org.slf4j.spi", getClass().getClassLoader(), verbose);
-            addPackageClassesToJar(jos, "org.slf4j.event", getClass().getClassLoader(), verbose);
+            addClassFiles(jos, classFiles);
             
             // Add component classes
             for (Class<?> componentClass : componentClasses) {
                 addClass(jos, componentClass);
             }
             
-            // Add the entire io.webetl.runtime package
-            addPackageClassesToJar(jos, "io.webetl.runtime", getClass().getClassLoader(), verbose);
-            
-            // Add the entire io.webetl.model package and subpackages
-            addPackageClassesToJar(jos, "io.webetl.model", getClass().getClassLoader(), verbose);
-            
-            // add the entire io.webetl.components package and subpackages
-            addPackageClassesToJar(jos, "io.webetl.components", getClass().getClassLoader(), verbose);
-            
-            // Add logback configuration to jar
-            try {
-                JarEntry logbackEntry = new JarEntry("logback.xml");
-                jos.putNextEntry(logbackEntry);
-                jos.write(Files.readAllBytes(logbackConfig));
-                jos.closeEntry();
-                if (verbose) {
-                    System.out.println("Added custom logback.xml configuration to JAR");
-                }
-            } catch (ZipException e) {
-                if (e.getMessage().contains("duplicate entry")) {
-                    // Skip adding if it's a duplicate - the dependency JAR already has it
-                    if (verbose) {
-                        System.out.println("Skipped adding logback.xml as it already exists in the JAR");
-                    }
-                } else {
-                    throw e; // Re-throw if it's a different ZipException
-                }
-            }
+            // Add the runtime the flow class runs on
+            addRuntimeEntries(compilation, jos, verbose);
             
-            // Include lib directory with all dependencies
+            // Include lib directory with all dependencies. The jars are stored uncompressed,
+            // so JarClassLoader can read their classes straight from the mapped flow jar.
             Files.walk(libDir)
                 .filter(Files::isRegularFile)
                 .forEach(path -> {
                     try {
-                        String entryName = tempDir.relativize(path).toString().replace('\\', '/');
-                        JarEntry entry = new JarEntry(entryName);
-                        jos.putNextEntry(entry);
-                        jos.write(Files.readAllBytes(path));
+                        String entryName = workspace.relativize(path).toString().replace('\\', '/');
+                        byte[] content = Files.readAllBytes(path);
+                        jos.putNextEntry(storedEntry(entryName, content));
+                        jos.write(content);
                         jos.closeEntry();
                     } catch (IOException e) {
                         throw new UncheckedIOException(e);
@@ -771,12 +1507,275 @@ public class FlowCompilerNG {
         }
         
         if (verbose) {
-            System.out.println("Created JAR: " + jarPath);
+            compilation.println("Created JAR: " + jarPath);
+        }
+
+        return jarPath.toFile();
+    }
+
+    /**
+     * Adds the runtime classes flow classes run on: the core interfaces, SLF4J, the
+     * runtime, model and component packages and a logback configuration. Fat jars embed
+     * them, thin jars refer to a runtime jar holding them.
+     */
+    private void addRuntimeEntries(Compilation compilation, JarOutputStream jos, boolean verbose) throws IOException {
+        // Add core component interfaces and implementations
+        addClassesToJar(jos,
+            "io.webetl.compiler.CompiledFlow",
+            "io.webetl.runtime.ExecutionContext",
+            "io.webetl.model.component.ETLComponent",
+            "io.webetl.model.component.ExecutableComponent",
+            "io.webetl.model.component.InputQueueProvider",
+            "io.webetl.model.component.OutputQueueProvider"
+        );
+
+        // Add SLF4J packages
+        addPackageClassesToJar(compilation, jos, "org.slf4j", getClass().getClassLoader(), verbose);
+        addPackageClassesToJar(compilation, jos, "org.slf4j.helpers", getClass().getClassLoader(), verbose);
+        addPackageClassesToJar(compilation, jos, "org.slf4j.spi", getClass().getClassLoader(), verbose);
+        addPackageClassesToJar(compilation, jos, "org.slf4j.event", getClass().getClassLoader(), verbose);
+
+        // Add the entire io.webetl.runtime package
+        addPackageClassesToJar(compilation, jos, "io.webetl.runtime", getClass().getClassLoader(), verbose);
+
+        // Add the entire io.webetl.model package and subpackages
+        addPackageClassesToJar(compilation, jos, "io.webetl.model", getClass().getClassLoader(), verbose);
+
+        // add the entire io.webetl.components package and subpackages
+        addPackageClassesToJar(compilation, jos, "io.webetl.components", getClass().getClassLoader(), verbose);
+
+        // Simple logback configuration for standalone execution
+        String logbackConfigContent =
+            "<configuration>\n" +
+            "  <appender name=\"STDOUT\" class=\"ch.qos.logback.core.ConsoleAppender\">\n" +
+            "    <encoder>\n" +
+            "      <pattern>%d{HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n</pattern>\n" +
+            "    </encoder>\n" +
+            "  </appender>\n" +
+            "  <root level=\"info\">\n" +
+            "    <appender-ref ref=\"STDOUT\" />\n" +
+            "  </root>\n" +
+            "</configuration>";
+
+        // Add logback configuration to jar
+        try {
+            JarEntry logbackEntry = new JarEntry("logback.xml");
+            jos.putNextEntry(logbackEntry);
+            jos.write(logbackConfigContent.getBytes(StandardCharsets.UTF_8));
+            jos.closeEntry();
+            if (verbose) {
+                compilation.println("Added custom logback.xml configuration to JAR");
+            }
+        } catch (ZipException e) {
+            if (e.getMessage().contains("duplicate entry")) {
+                // Skip adding if it's a duplicate - the dependency JAR already has it
+                if (verbose) {
+                    compilation.println("Skipped adding logback.xml as it already exists in the JAR");
+                }
+            } else {
+                throw e; // Re-throw if it's a different ZipException
+            }
+        }
+    }
+
+    /**
+     * Creates a thin flow jar: the flow class and the component classes the runtime jar
+     * does not hold, with a manifest referring to the runtime jar and the libraries in
+     * the artifact store by coordinates and checksum. The store files are also listed
+     * in the Class-Path, so the jar still runs with {@code java -jar}.
+     */
+    private File compileAndCreateThinJar(Compilation compilation, Map<String, byte[]> classFiles, String className,
+                                         Set<Class<?>> componentClasses, boolean verbose) throws IOException {
+        Set<DependencyEntry> dependencies = collectComponentDependencies(compilation, componentClasses, verbose);
+        Map<DependencyEntry, ArtifactRepository.Artifact> resolved = artifacts.resolveAll(dependencies);
+        ArtifactRepository.Artifact runtime = installRuntime(compilation, verbose);
+
+        List<String> references = new ArrayList<>();
+        List<String> classPath = new ArrayList<>();
+        for (DependencyEntry dependency : dependencies) {
+            ArtifactRepository.Artifact artifact = resolved.get(dependency);
+            if (artifact == null) {
+                if (dependency.isOptional()) {
+                    log.warn("Optional dependency not found: " + dependency);
+                } else {
+                    log.error("Failed to resolve dependency: " + dependency);
+                }
+                continue;
+            }
+            // Thin jars only refer to the store, libraries found elsewhere are copied into it
+            artifact = artifacts.install(dependency, artifact.getPath());
+            references.add(thinJarReference(artifact));
+            classPath.add(artifact.getPath().toUri().toString());
+            if (verbose) {
+                compilation.println("Referring to dependency: " + artifact.getPath());
+            }
+        }
+
+        Path jarPath = compilation.workspace.resolve(className + ".jar");
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.put(Attributes.Name.MAIN_CLASS, "io.webetl.runtime.JarLauncher");
+        attributes.put(new Attributes.Name("Flow-Class"), "io.webetl.generated." + className);
+        attributes.put(new Attributes.Name("Created-By"), "WebETL Flow Compiler");
+        attributes.put(new Attributes.Name(ThinJar.LAYOUT_ATTRIBUTE), ThinJar.LAYOUT_THIN);
+        attributes.put(new Attributes.Name(ThinJar.RUNTIME_ATTRIBUTE), thinJarReference(runtime));
+        attributes.put(new Attributes.Name(ThinJar.DEPENDENCIES_ATTRIBUTE), String.join(" ", references));
+        classPath.add(0, runtime.getPath().toUri().toString());
+        attributes.put(Attributes.Name.CLASS_PATH, String.join(" ", classPath));
+
+        try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(jarPath.toFile()), manifest)) {
+            addClassFiles(jos, classFiles);
+            for (Class<?> componentClass : componentClasses) {
+                if (!componentClass.getName().startsWith("io.webetl.components.")) {
+                    addClass(jos, componentClass);
+                }
+            }
+        }
+
+        if (verbose) {
+            compilation.println("Created thin JAR: " + jarPath + " (runtime " + runtime.getPath() + ")");
+        }
+        return jarPath.toFile();
+    }
+
+    /**
+     * Gets the runtime jar thin flow jars of this compiler version refer to, building it
+     * into the artifact store the first time.
+     */
+    private ArtifactRepository.Artifact installRuntime(Compilation compilation, boolean verbose) throws IOException {
+        String version = CompilationCache.compilerVersion();
+        DependencyEntry runtime = new DependencyEntry(RUNTIME_GROUP, RUNTIME_ARTIFACT,
+            version.substring(0, Math.min(16, version.length())));
+        synchronized (runtimeLock) {
+            ArtifactRepository.Artifact installed = artifacts.getInstalled(runtime);
+            if (installed != null) {
+                return installed;
+            }
+            Path runtimeJar = compilation.workspace.resolve(runtime.getJarFilename());
+            Manifest manifest = new Manifest();
+            manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+            manifest.getMainAttributes().put(new Attributes.Name("Created-By"), "WebETL Flow Compiler");
+            try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(runtimeJar.toFile()), manifest)) {
+                addRuntimeEntries(compilation, jos, verbose);
+            }
+            installed = artifacts.install(runtime, runtimeJar);
+            Files.delete(runtimeJar);
+            log.info("Installed runtime jar {}", installed.getPath());
+            compilation.println("Installed runtime " + runtime.getFullName() + " into the artifact store");
+            return installed;
+        }
+    }
+
+    private static String thinJarReference(ArtifactRepository.Artifact artifact) {
+        DependencyEntry dependency = artifact.getDependency();
+        return new ThinJar.Artifact(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion(),
+            artifact.getSha256()).toString();
+    }
+
+    /**
+     * Creates a flow jar from a cached jar of the same sheet structure, replacing only
+     * its flow class. The entries are copied as they are, embedded jars stay stored.
+     */
+    private File repackFlowClass(Compilation compilation, Map<String, byte[]> classFiles, String className,
+                                 Path cachedJar, boolean verbose) throws IOException {
+        Path jarPath = compilation.workspace.resolve(className + ".jar");
+        try (JarFile cached = new JarFile(cachedJar.toFile());
+             JarOutputStream jos = new JarOutputStream(new FileOutputStream(jarPath.toFile()), cached.getManifest())) {
+            Enumeration<JarEntry> entries = cached.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (name.equals(JarFile.MANIFEST_NAME) || name.startsWith(GENERATED_PACKAGE_PATH)) {
+                    continue;
+                }
+                JarEntry copy = new JarEntry(entry);
+                if (copy.getMethod() != JarEntry.STORED) {
+                    // Recompressed, the size will differ
+                    copy.setCompressedSize(-1);
+                }
+                jos.putNextEntry(copy);
+                try (InputStream in = cached.getInputStream(entry)) {
+                    in.transferTo(jos);
+                }
+                jos.closeEntry();
+            }
+
+            addClassFiles(jos, classFiles);
         }
 
+        if (verbose) {
+            compilation.println("Created JAR: " + jarPath);
+        }
         return jarPath.toFile();
     }
 
+    /**
+     * Generates the class files of the flow class with the configured backend.
+     *
+     * @return the class files by binary class name
+     */
+    private Map<String, byte[]> generateClassFiles(Compilation compilation, FlowPlan plan, String className,
+                                                   boolean verbose) throws IOException {
+        if (backend == Backend.BYTECODE) {
+            Map<String, byte[]> classFiles = FlowBytecodeGenerator.generate(plan, "io.webetl.generated." + className);
+            if (verbose) {
+                compilation.println("\nPass 3 - Generated bytecode:");
+                classFiles.forEach((name, bytes) -> compilation.println("  " + name + " (" + bytes.length + " bytes)"));
+            }
+            return classFiles;
+        }
+        JavaFile javaFile = generateCode(compilation, plan, className, verbose);
+        return compileFlowClass(compilation, javaFile, verbose);
+    }
+
+    /**
+     * Compiles the generated flow class in memory. The flow class only refers to runtime
+     * and component classes, so it is compiled against the classpath of the compiler
+     * alone, not against the libraries embedded in the jar.
+     *
+     * @return the class files by binary class name
+     */
+    private Map<String, byte[]> compileFlowClass(Compilation compilation, JavaFile javaFile, boolean verbose)
+            throws IOException {
+        if (verbose) {
+            log.info("Compiling the flow class in memory");
+        }
+        Map<String, byte[]> classFiles = javaCompiler.compile(List.of(javaFile.toJavaFileObject()),
+            compilation::println);
+        if (verbose) {
+            log.info("Compilation successful");
+            log.info("Compiled classes:");
+            classFiles.forEach((name, bytes) -> log.info("  - {} ({} bytes)", name, bytes.length));
+        }
+        return classFiles;
+    }
+
+    /**
+     * Adds compiled classes to the jar.
+     */
+    private void addClassFiles(JarOutputStream jos, Map<String, byte[]> classFiles) throws IOException {
+        for (Map.Entry<String, byte[]> classFile : classFiles.entrySet()) {
+            jos.putNextEntry(new JarEntry(classFile.getKey().replace('.', '/') + ".class"));
+            jos.write(classFile.getValue());
+            jos.closeEntry();
+        }
+    }
+
+    /**
+     * Creates an uncompressed jar entry. STORED entries need their size and CRC up front.
+     */
+    private static JarEntry storedEntry(String entryName, byte[] content) {
+        JarEntry entry = new JarEntry(entryName);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.setMethod(JarEntry.STORED);
+        entry.setSize(content.length);
+        entry.setCompressedSize(content.length);
+        entry.setCrc(crc.getValue());
+        return entry;
+    }
+
     /**
      * Adds multiple classes to the JAR.
      */
@@ -938,7 +1937,8 @@ public class FlowCompilerNG {
     /**
      * Collects dependencies from component classes
      */
-    private Set<DependencyEntry> collectComponentDependencies(Set<Class<?>> componentClasses, boolean verbose) {
+    private Set<DependencyEntry> collectComponentDependencies(Compilation compilation, Set<Class<?>> componentClasses,
+                                                             boolean verbose) {
         Set<DependencyEntry> dependencies = new HashSet<>();
         
         // Add core dependencies that are always required
@@ -952,18 +1952,18 @@ public class FlowCompilerNG {
         
         
         if (verbose) {
-            System.out.println("Collecting dependencies from component classes...");
+            compilation.println("Collecting dependencies from component classes...");
         }
         
-        System.out.println("Component classes size: " + componentClasses.size());
+        compilation.println("Component classes size: " + componentClasses.size());
         for (Class<?> componentClass : componentClasses) {
-            System.out.println("Processing class: " + componentClass.getName());
+            compilation.println("Processing class: " + componentClass.getName());
             ComponentDependencies annotation = componentClass.getAnnotation(ComponentDependencies.class);
-            System.out.println("Found annotation: " + annotation);
+            compilation.println("Found annotation: " + annotation);
             
             if (annotation != null) {
                 if (verbose) {
-                    System.out.println("Found dependencies for component " + componentClass.getName());
+                    compilation.println("Found dependencies for component " + componentClass.getName());
                 }
                 
                 for (Dependency dependency : annotation.value()) {
@@ -971,11 +1971,11 @@ public class FlowCompilerNG {
                     dependencies.add(entry);
                     
                     if (verbose) {
-                        System.out.println("  - " + entry);
+                        compilation.println("  - " + entry);
                     }
                 }
             } else if (verbose) {
-                System.out.println("No dependencies found for component " + componentClass.getName());
+                compilation.println("No dependencies found for component " + componentClass.getName());
             }
         }
         
@@ -983,97 +1983,29 @@ public class FlowCompilerNG {
     }
 
     /**
-     * Copies required dependencies to the lib directory
+     * Copies required dependencies to the lib directory. They are resolved in parallel
+     * through the artifact repository, which finds them by their coordinates instead of
+     * searching the local repositories.
      */
-    private void copyDependencies(Path libDir, Set<DependencyEntry> dependencies, boolean verbose) throws IOException {
-        
-        // Create a set of JAR name patterns to look for
-        Set<String> dependencyPatterns = new HashSet<>();
-        
-        for (DependencyEntry dep : dependencies) {
-            dependencyPatterns.add(dep.getPattern());
-        }
-        
-        if (verbose) {
-            System.out.println("Looking for these dependency patterns: " + dependencyPatterns);
-        }
-        
-        // Find dependencies that match the patterns
-        Set<DependencyEntry> missingDependencies = new HashSet<>(dependencies);
-        
-        // Check local Maven repository first
-        Path m2Dir = Paths.get(System.getProperty("user.home"), ".m2", "repository");
-        if (Files.exists(m2Dir)) {
-            try (Stream<Path> walk = Files.walk(m2Dir)) {
-                List<Path> jarFiles = walk
-                    .filter(Files::isRegularFile)
-                    .filter(path -> path.toString().endsWith(".jar"))
-                    .collect(Collectors.toList());
-
-                for (Path jarPath : jarFiles) {
-                    String jarName = jarPath.getFileName().toString();
-                    
-                    // Check if this JAR matches any of our dependency patterns
-                    boolean isMatch = false;
-                    DependencyEntry matchedDep = null;
-                    
-                    for (DependencyEntry dep : dependencies) {
-                        if (jarName.matches(dep.getPattern())) {
-                            isMatch = true;
-                            matchedDep = dep;
-                            missingDependencies.remove(dep);
-                            break;
-                        }
-                    }
-                    
-                    // For all dependencies, just copy the JAR
-                    if (isMatch) {
-                        Path destPath = libDir.resolve(jarName);
-                        Files.copy(jarPath, destPath, StandardCopyOption.REPLACE_EXISTING);
-                        
-                        if (verbose) {
-                            System.out.println("Copied dependency: " + jarPath + " to " + destPath);
-                        }
-                    }
-                }
-            }
-        }
-        
-        // Download any missing dependencies
-        if (!missingDependencies.isEmpty()) {
-            downloadMissingDependencies(libDir, missingDependencies, verbose);
-        }
-    }
+    private void copyDependencies(Compilation compilation, Path libDir, Set<DependencyEntry> dependencies,
+                                  boolean verbose) throws IOException {
+        Map<DependencyEntry, ArtifactRepository.Artifact> resolved = artifacts.resolveAll(dependencies);
 
-    /**
-     * Downloads missing dependencies from Maven Central
-     */
-    private void downloadMissingDependencies(Path libDir, Set<DependencyEntry> dependencies, boolean verbose) {
         for (DependencyEntry dependency : dependencies) {
-            Path jarPath = libDir.resolve(dependency.getJarFilename());
-            
-            if (!Files.exists(jarPath)) {
-                if (verbose) {
-                    System.out.println("Dependency not found in classpath: " + dependency);
-                    System.out.println("Attempting to download from Maven Central...");
-                }
-                
-                try {
-                    // Try to download from Maven Central
-                    URL url = new URL("https://repo1.maven.org/maven2/" + dependency.getMavenPath());
-                    try (InputStream is = url.openStream()) {
-                        Files.copy(is, jarPath, StandardCopyOption.REPLACE_EXISTING);
-                        if (verbose) {
-                            System.out.println("Downloaded dependency: " + dependency);
-                        }
-                    }
-                } catch (IOException e) {
-                    if (dependency.isOptional()) {
-                        log.warn("Optional dependency not found: " + dependency + " - " + e.getMessage());
-                    } else {
-                        log.error("Failed to download dependency: " + dependency + " - " + e.getMessage());
-                    }
+            ArtifactRepository.Artifact artifact = resolved.get(dependency);
+            if (artifact == null) {
+                if (dependency.isOptional()) {
+                    log.warn("Optional dependency not found: " + dependency);
+                } else {
+                    log.error("Failed to resolve dependency: " + dependency);
                 }
+                continue;
+            }
+            Path destPath = libDir.resolve(dependency.getJarFilename());
+            Files.copy(artifact.getPath(), destPath, StandardCopyOption.REPLACE_EXISTING);
+
+            if (verbose) {
+                compilation.println("Copied dependency: " + artifact.getPath() + " to " + destPath);
             }
         }
     }
@@ -1149,7 +2081,8 @@ public class FlowCompilerNG {
     /**
      * Adds all classes from a package to the JAR.
      */
-    private void addPackageClassesToJar(JarOutputStream jos, String packageName, ClassLoader classLoader, boolean verbose) {
+    private void addPackageClassesToJar(Compilation compilation, JarOutputStream jos, String packageName,
+                                        ClassLoader classLoader, boolean verbose) {
         String packagePath = packageName.replace('.', '/');
         
         try {
@@ -1188,11 +2121,11 @@ public class FlowCompilerNG {
                                                 if (is != null) {
                                                     jos.write(is.readAllBytes());
                                                     if (verbose) {
-                                                        System.out.println("  - Added class: " + className);
+                                                        compilation.println("  - Added class: " + className);
                                                     }
                                                 } else {
                                                     if (verbose) {
-                                                        System.out.println("  - Could not find resource: " + resourcePath);
+                                                        compilation.println("  - Could not find resource: " + resourcePath);
                                                     }
                                                 }
                                             }
@@ -1200,19 +2133,19 @@ public class FlowCompilerNG {
                                             jos.closeEntry();
                                         } catch (ClassNotFoundException e) {
                                             if (verbose) {
-                                                System.out.println("  - Failed to load class: " + className);
+                                                compilation.println("  - Failed to load class: " + className);
                                             }
                                         }
                                     } catch (Exception e) {
                                         if (verbose) {
-                                            System.out.println("  - Error processing class file: " + path + " - " + e.getMessage());
+                                            compilation.println("  - Error processing class file: " + path + " - " + e.getMessage());
                                         }
                                     }
                                 });
                         }
                     } catch (Exception e) {
                         if (verbose) {
-                            System.out.println("  - Error processing directory resource: " + e.getMessage());
+                            compilation.println("  - Error processing directory resource: " + e.getMessage());
                         }
                     }
                 } else if ("jar".equals(protocol)) {
@@ -1242,11 +2175,11 @@ public class FlowCompilerNG {
                                         
                                         if (verbose) {
                                             String className = name.substring(0, name.length() - 6).replace('/', '.');
-                                            System.out.println("  - Added class from JAR: " + className);
+                                            compilation.println("  - Added class from JAR: " + className);
                                         }
                                     } catch (Exception e) {
                                         if (verbose) {
-                                            System.out.println("  - Failed to add JAR entry: " + name + " - " + e.getMessage());
+                                            compilation.println("  - Failed to add JAR entry: " + name + " - " + e.getMessage());
                                         }
                                     }
                                 }
@@ -1255,7 +2188,7 @@ public class FlowCompilerNG {
                             jar.close();
                         } catch (Exception e) {
                             if (verbose) {
-                                System.out.println("  - Error processing JAR resource: " + e.getMessage());
+                                compilation.println("  - Error processing JAR resource: " + e.getMessage());
                             }
                         }
                     }
@@ -1263,61 +2196,44 @@ public class FlowCompilerNG {
             }
         } catch (Exception e) {
             if (verbose) {
-                System.out.println("  - General error processing package: " + e.getMessage());
+                compilation.println("  - General error processing package: " + e.getMessage());
             }
         }
     }
 
-    /**
-     * Builds classpath string including all the dependencies
-     */
-    private String buildClasspathWithDependencies(Path libDir) throws IOException {
-        StringBuilder classpath = new StringBuilder();
-        classpath.append(System.getProperty("java.class.path"));
-        
-        // Add all jars in lib directory to classpath
-        if (Files.exists(libDir)) {
-            Files.list(libDir)
-                .filter(p -> p.toString().endsWith(".jar"))
-                .forEach(jar -> {
-                    classpath.append(File.pathSeparator);
-                    classpath.append(jar.toAbsolutePath());
-                });
-        }
-        
-        return classpath.toString();
-    }
-
     /**
      * Extracts component classes from the sheet
      */
-    private Set<Class<?>> extractComponentClasses(Sheet sheet, boolean verbose) {
+    private Set<Class<?>> extractComponentClasses(Compilation compilation, Sheet sheet, boolean verbose) {
         Set<Class<?>> componentClasses = new HashSet<>();
         
         if (verbose) {
-            System.out.println("Extracting component classes from sheet...");
+            compilation.println("Extracting component classes from sheet...");
         }
         
         for (Map<String, Object> node : sheet.getNodes()) {
             String nodeId = node.containsKey("id") ? (String) node.get("id") : "unknown";
-            System.out.println("Processing node: " + nodeId + " of type: " + node.get("type"));
+            if (compilation.deadNodes.contains(nodeId)) {
+                continue;
+            }
+            compilation.println("Processing node: " + nodeId + " of type: " + node.get("type"));
             
             // Skip nodes that don't have data
             if (!node.containsKey("data")) {
-                System.out.println("Node doesn't have data: " + node);
+                compilation.println("Node doesn't have data: " + node);
                 continue;
             }
             
             Object dataObj = node.get("data");
             if (!(dataObj instanceof Map)) {
-                System.out.println("Node data is not a map: " + dataObj);
+                compilation.println("Node data is not a map: " + dataObj);
                 continue;
             }
             
             Map<String, Object> data = (Map<String, Object>) dataObj;
             
             // Print entire data structure for debugging
-            System.out.println("Node data structure: " + data);
+            compilation.println("Node data structure: " + data);
             
             // Check various possible paths to find the implementation class
             String implementationClass = null;
@@ -1339,31 +2255,31 @@ public class FlowCompilerNG {
             }
             
             if (implementationClass == null) {
-                System.out.println("Could not find implementation class in node: " + nodeId);
+                compilation.println("Could not find implementation class in node: " + nodeId);
                 continue;
             }
             
-            System.out.println("Found implementation class: " + implementationClass + " for node " + nodeId);
+            compilation.println("Found implementation class: " + implementationClass + " for node " + nodeId);
             
             try {
                 Class<?> componentClass = Class.forName(implementationClass);
                 componentClasses.add(componentClass);
                 
                 // Print annotations on the class for debugging
-                System.out.println("Annotations on class " + componentClass.getName() + ":");
+                compilation.println("Annotations on class " + componentClass.getName() + ":");
                 for (Annotation annotation : componentClass.getAnnotations()) {
-                    System.out.println("  - " + annotation);
+                    compilation.println("  - " + annotation);
                 }
                 
                 if (verbose) {
-                    System.out.println("Added component class: " + implementationClass + " to the set");
+                    compilation.println("Added component class: " + implementationClass + " to the set");
                 }
             } catch (ClassNotFoundException e) {
                 log.warn("Component class not found: " + implementationClass, e);
             }
         }
         
-        System.out.println("Extracted " + componentClasses.size() + " component classes");
+        compilation.println("Extracted " + componentClasses.size() + " component classes");
         return componentClasses;
     }
 } 
\ No newline at end of file
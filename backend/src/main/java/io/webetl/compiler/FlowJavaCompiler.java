@@ -0,0 +1,150 @@
+package io.webetl.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.function.Consumer;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+/**
+ * FlowJavaCompiler compiles generated flow sources in memory: the sources are passed
+ * as in-memory file objects and the class files are collected in memory, so nothing is
+ * written to or read back from disk.
+ * <p>
+ * The system compiler is looked up once. The standard file managers, which index the
+ * classpath jars on first use and keep them open, are reused across compilations. A
+ * file manager is not thread safe, so every concurrent compilation borrows one of its
+ * own from a pool.
+ */
+class FlowJavaCompiler {
+    // The generated code needs no annotation processing, skip looking for processors
+    private static final List<String> OPTIONS = List.of("-proc:none");
+
+    private final JavaCompiler compiler;
+    private final List<File> classpath;
+    private final ConcurrentLinkedDeque<StandardJavaFileManager> fileManagers = new ConcurrentLinkedDeque<>();
+
+    FlowJavaCompiler() {
+        this.compiler = ToolProvider.getSystemJavaCompiler();
+        this.classpath = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                classpath.add(new File(entry));
+            }
+        }
+    }
+
+    /**
+     * Compiles sources against the classpath of this process.
+     *
+     * @param sources the sources to compile
+     * @param output receives anything javac writes besides its diagnostics
+     * @return the class files by binary class name
+     * @throws CompilationException if the sources do not compile
+     * @throws IOException if the classpath cannot be read
+     */
+    Map<String, byte[]> compile(List<JavaFileObject> sources, Consumer<String> output) throws IOException {
+        if (compiler == null) {
+            throw new CompilationException("No Java compiler available, the backend has to run on a JDK");
+        }
+        StandardJavaFileManager standardFileManager = borrowFileManager();
+        MemoryFileManager fileManager = new MemoryFileManager(standardFileManager);
+        boolean success;
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StringWriter compilerOutput = new StringWriter();
+        try {
+            success = compiler.getTask(compilerOutput, fileManager, diagnostics, OPTIONS, null, sources).call();
+        } finally {
+            fileManagers.push(standardFileManager);
+        }
+        if (compilerOutput.getBuffer().length() > 0) {
+            output.accept(compilerOutput.toString());
+        }
+
+        // Check for compilation errors
+        if (!success) {
+            StringBuilder errorMsg = new StringBuilder("Failed to compile flow: [");
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                errorMsg.append(diagnostic.getSource() != null ? diagnostic.getSource().getName() : null)
+                       .append(":")
+                       .append(diagnostic.getLineNumber())
+                       .append(": error: ")
+                       .append(diagnostic.getMessage(Locale.US))
+                       .append(", ");
+            }
+            errorMsg.append("]");
+            throw new CompilationException(errorMsg.toString());
+        }
+        return fileManager.getClassFiles();
+    }
+
+    private StandardJavaFileManager borrowFileManager() throws IOException {
+        StandardJavaFileManager fileManager = fileManagers.poll();
+        if (fileManager == null) {
+            fileManager = compiler.getStandardFileManager(null, Locale.US, null);
+            fileManager.setLocation(StandardLocation.CLASS_PATH, classpath);
+        }
+        return fileManager;
+    }
+
+    /**
+     * Keeps the class files javac writes in memory and reads everything else through the
+     * shared standard file manager.
+     */
+    private static final class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        private final Map<String, ByteArrayOutputStream> classFiles = new TreeMap<>();
+
+        MemoryFileManager(StandardJavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(JavaFileManager.Location location, String className,
+                                                   JavaFileObject.Kind kind, FileObject sibling) {
+            return new SimpleJavaFileObject(
+                    URI.create("memory:///" + className.replace('.', '/') + kind.extension), kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    synchronized (classFiles) {
+                        classFiles.put(className, bytes);
+                    }
+                    return bytes;
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            // The standard file manager stays open for the next compilation
+        }
+
+        Map<String, byte[]> getClassFiles() {
+            Map<String, byte[]> result = new TreeMap<>();
+            synchronized (classFiles) {
+                classFiles.forEach((className, bytes) -> result.put(className, bytes.toByteArray()));
+            }
+            return result;
+        }
+    }
+}
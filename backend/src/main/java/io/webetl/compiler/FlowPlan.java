@@ -0,0 +1,163 @@
+package io.webetl.compiler;
+
+import io.webetl.model.data.Schema;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * FlowPlan is what a flow class does, taken from the control and data flow of a sheet:
+ * the components it creates and their parameter values, the queues it connects, the
+ * sources it registers for checkpointing, the components it runs on worker threads and the
+ * schemas of the rows the components receive and send, where they are known, and the
+ * columns sources read when not all are used.
+ * The code generation backends of {@link FlowCompilerNG} all generate from a plan, so
+ * they generate the same flow.
+ */
+final class FlowPlan {
+    final List<Component> components;
+    final List<List<String>> dataFlowPaths;
+    final List<Source> sources;
+    final List<Worker> workers;
+    // node id -> schema, filled by the schema inference of the compiler
+    final Map<String, Schema> inputSchemas = new LinkedHashMap<>();
+    final Map<String, Schema> outputSchemas = new LinkedHashMap<>();
+    // node id -> columns, for sources some of whose columns are unused
+    final Map<String, Set<String>> requiredColumns = new LinkedHashMap<>();
+
+    FlowPlan(List<Component> components, List<List<String>> dataFlowPaths, List<Source> sources,
+             List<Worker> workers) {
+        this.components = components;
+        this.dataFlowPaths = dataFlowPaths;
+        this.sources = sources;
+        this.workers = workers;
+    }
+
+    /**
+     * Gets the queues to connect as pairs of node ids, each data flow edge once although
+     * several paths may pass it.
+     */
+    List<List<String>> connections() {
+        Set<List<String>> connections = new LinkedHashSet<>();
+        for (List<String> path : dataFlowPaths) {
+            for (int i = 0; i < path.size() - 1; i++) {
+                connections.add(List.of(path.get(i), path.get(i + 1)));
+            }
+        }
+        return new ArrayList<>(connections);
+    }
+
+    /**
+     * A component instance the flow class creates.
+     */
+    static final class Component {
+        final String nodeId;
+        final String implementationClass;
+        /** Whether the flow class calls the constructor directly instead of through reflection. */
+        final boolean directlyInstantiable;
+        final List<Parameter> parameters;
+
+        Component(String nodeId, String implementationClass, boolean directlyInstantiable,
+                  List<Parameter> parameters) {
+            this.nodeId = nodeId;
+            this.implementationClass = implementationClass;
+            this.directlyInstantiable = directlyInstantiable;
+            this.parameters = parameters;
+        }
+    }
+
+    /**
+     * A parameter value set on a component, as a Java literal.
+     */
+    static final class Parameter {
+        final String name;
+        final String literal;
+
+        Parameter(String name, String literal) {
+            this.name = name;
+            this.literal = literal;
+        }
+
+        /**
+         * Gets the value of the literal as javac would compile it: a String, Integer,
+         * Long, Double or Boolean.
+         *
+         * @throws CompilationException if the literal is not valid Java
+         */
+        Object constant() {
+            if (literal.length() >= 2 && literal.startsWith("\"") && literal.endsWith("\"")) {
+                return unescape(literal.substring(1, literal.length() - 1));
+            }
+            if (literal.equals("true") || literal.equals("false")) {
+                return Boolean.valueOf(literal);
+            }
+            try {
+                if (literal.matches("-?\\d+")) {
+                    return Integer.valueOf(literal);
+                }
+                if (literal.matches("-?\\d+L")) {
+                    return Long.valueOf(literal.substring(0, literal.length() - 1));
+                }
+                if (literal.matches("-?(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?")) {
+                    return Double.valueOf(literal);
+                }
+            } catch (NumberFormatException e) {
+                // out of range, javac rejects it as well
+            }
+            throw new CompilationException("Invalid value for parameter " + name + ": " + literal);
+        }
+
+        /**
+         * Reverses the escaping literals get, see {@code FlowCompilerNG.escapeJavaString}.
+         */
+        private static String unescape(String text) {
+            StringBuilder result = new StringBuilder(text.length());
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '\\' && i + 1 < text.length()) {
+                    char escaped = text.charAt(++i);
+                    switch (escaped) {
+                        case 'n': result.append('\n'); break;
+                        case 'r': result.append('\r'); break;
+                        case 't': result.append('\t'); break;
+                        default: result.append(escaped);
+                    }
+                } else {
+                    result.append(c);
+                }
+            }
+            return result.toString();
+        }
+    }
+
+    /**
+     * A source registered for checkpointing with the number of barrier acknowledgements
+     * completing one of its checkpoints, one for every route from it to a destination.
+     */
+    static final class Source {
+        final String nodeId;
+        final int ackCount;
+
+        Source(String nodeId, int ackCount) {
+            this.nodeId = nodeId;
+            this.ackCount = ackCount;
+        }
+    }
+
+    /**
+     * A component executed on a worker thread of its own.
+     */
+    static final class Worker {
+        final String nodeId;
+        final String componentName;
+
+        Worker(String nodeId, String componentName) {
+            this.nodeId = nodeId;
+            this.componentName = componentName;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package io.webetl.components;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses a BGZF file, as written by bgzip, on several threads. BGZF is gzip made of
+ * members of at most 64 KB, each recording its compressed size in a "BC" extra field. The
+ * blocks can therefore be read one after the other without inflating them. Blocks are
+ * inflated by a pool while a window of blocks ahead is read, and their bytes are returned
+ * in file order.
+ */
+final class BlockGzipInputStream extends InputStream {
+    private static final int HEADER_SIZE = 12;
+    private static final int TRAILER_SIZE = 8;
+    private static final int FLAG_EXTRA = 4;
+    // Blocks read ahead per thread
+    private static final int BLOCKS_AHEAD = 8;
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final InputStream in;
+    private final ExecutorService pool;
+    private final int window;
+    private final Queue<Future<byte[]>> pending = new ArrayDeque<>();
+    private byte[] current = new byte[0];
+    private int pos;
+    private boolean ended;
+
+    BlockGzipInputStream(InputStream in, int threads) {
+        this.in = in;
+        this.window = threads * BLOCKS_AHEAD;
+        this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "bgzf-inflater-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Checks whether a file starts with a BGZF block.
+     */
+    static boolean isBlockGzip(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] header = in.readNBytes(HEADER_SIZE);
+            if (header.length < HEADER_SIZE || (header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b
+                    || (header[3] & FLAG_EXTRA) == 0) {
+                return false;
+            }
+            return blockSize(in.readNBytes(unsignedShort(header, 10))) > 0;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (pos == current.length) {
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+        return current[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (pos == current.length) {
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+        int count = Math.min(length, current.length - pos);
+        System.arraycopy(current, pos, b, offset, count);
+        pos += count;
+        return count;
+    }
+
+    private boolean nextBlock() throws IOException {
+        while (!ended && pending.size() < window) {
+            byte[] block = readBlock();
+            if (block == null) {
+                ended = true;
+            } else {
+                pending.add(pool.submit(() -> inflate(block)));
+            }
+        }
+        Future<byte[]> next = pending.poll();
+        if (next == null) {
+            return false;
+        }
+        try {
+            current = next.get();
+            pos = 0;
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decompressing", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+                : new IOException("Decompressing a block failed", e.getCause());
+        }
+    }
+
+    /**
+     * Reads the next block as it is, null at the end of the file.
+     */
+    private byte[] readBlock() throws IOException {
+        byte[] header = in.readNBytes(HEADER_SIZE);
+        if (header.length == 0) {
+            return null;
+        }
+        if (header.length < HEADER_SIZE || (header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b
+                || (header[3] & FLAG_EXTRA) == 0) {
+            throw new IOException("Not a BGZF block, the file is not compressed with bgzip throughout");
+        }
+        int extraLength = unsignedShort(header, 10);
+        byte[] extra = in.readNBytes(extraLength);
+        int size = blockSize(extra);
+        if (size < HEADER_SIZE + extraLength + TRAILER_SIZE) {
+            throw new IOException("Not a BGZF block, the file is not compressed with bgzip throughout");
+        }
+        byte[] block = new byte[size];
+        System.arraycopy(header, 0, block, 0, HEADER_SIZE);
+        System.arraycopy(extra, 0, block, HEADER_SIZE, extraLength);
+        int rest = size - HEADER_SIZE - extraLength;
+        if (in.readNBytes(block, HEADER_SIZE + extraLength, rest) < rest) {
+            throw new EOFException("Truncated BGZF block");
+        }
+        return block;
+    }
+
+    private static byte[] inflate(byte[] block) throws IOException {
+        int dataStart = HEADER_SIZE + unsignedShort(block, 10);
+        int dataEnd = block.length - TRAILER_SIZE;
+        int size = (int) unsignedInt(block, dataEnd + 4);
+        byte[] data = new byte[size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(block, dataStart, dataEnd - dataStart);
+            int length = 0;
+            while (length < size && !inflater.finished()) {
+                int count = inflater.inflate(data, length, size - length);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += count;
+            }
+            if (length != size) {
+                throw new IOException("Corrupt BGZF block, " + length + " of " + size + " bytes inflated");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt BGZF block", e);
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        if (crc.getValue() != unsignedInt(block, dataEnd)) {
+            throw new IOException("Corrupt BGZF block, checksum mismatch");
+        }
+        return data;
+    }
+
+    /**
+     * Gets the size of a block from the "BC" subfield of its extra field, -1 without one.
+     */
+    private static int blockSize(byte[] extra) {
+        int i = 0;
+        while (i + 4 <= extra.length) {
+            int length = unsignedShort(extra, i + 2);
+            if (extra[i] == 'B' && extra[i + 1] == 'C' && length == 2 && i + 6 <= extra.length) {
+                return unsignedShort(extra, i + 4) + 1;
+            }
+            i += 4 + length;
+        }
+        return -1;
+    }
+
+    private static int unsignedShort(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+    }
+
+    private static long unsignedInt(byte[] bytes, int offset) {
+        return unsignedShort(bytes, offset) | (long) unsignedShort(bytes, offset + 2) << 16;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pool.shutdownNow();
+        in.close();
+    }
+}
@@ -0,0 +1,318 @@
+package io.webetl.components;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reads the records of a CSV file on several threads. The file is memory-mapped and split
+ * into chunks, each parsed on its own thread straight from the mapped bytes.
+ * <p>
+ * Chunks start at record boundaries, which takes two passes. The first pass counts the
+ * quotes and line feeds of every chunk and notes where its first record starts, both for
+ * the chunk beginning outside quotes and inside them. Whether a chunk begins inside quotes
+ * follows from the number of quotes before it, an escaped quote counting twice, so the
+ * second pass knows where the records of each chunk start and parses them with a
+ * {@link CsvTokenizer}. Quotes must therefore be escaped by doubling them. Records,
+ * including quoted line breaks, may run into the next chunk. Quotes are only allowed
+ * around fields; a file with other quotes fails to read rather than splitting records
+ * in the wrong places.
+ * <p>
+ * Delimiters, quotes and line feeds are found on the raw bytes, so the charset must encode
+ * them as in ASCII and never use their bytes within other characters, see {@link CsvTokenizer#supports}.
+ */
+final class ChunkedCsvReader {
+    // Mappings are limited to 2 GB, larger files are read in more chunks than threads
+    private static final long MAX_CHUNK_SIZE = 256L * 1024 * 1024;
+    // Smaller files are read in fewer chunks, starting threads would cost more than it saves
+    private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+    private static final int BATCH_SIZE = 1024;
+    // Batches a chunk parses ahead of the ones taken by the caller
+    private static final int QUEUE_CAPACITY = 16;
+    private static final List<CsvRecord> END = List.of();
+
+    private final Path path;
+    private final Charset charset;
+    private final byte delimiter;
+    private final int quote;
+    private final int threads;
+    private final boolean ordered;
+    private final boolean[] required;
+
+    private volatile boolean stopped;
+
+    /**
+     * A parsed record.
+     */
+    static final class CsvRecord {
+        /** The values by field index, null for fields the record lacks or that are not required. */
+        final String[] fields;
+        /** The number of the line the record starts on. */
+        final long line;
+        /** The number of the line the record ends on. */
+        final long lastLine;
+        /** The byte offset after the record. */
+        final long end;
+
+        CsvRecord(String[] fields, long line, long lastLine, long end) {
+            this.fields = fields;
+            this.line = line;
+            this.lastLine = lastLine;
+            this.end = end;
+        }
+    }
+
+    interface RecordHandler {
+        /**
+         * Handles a record.
+         *
+         * @return false to stop reading
+         */
+        boolean handle(CsvRecord record) throws Exception;
+    }
+
+    /**
+     * @param delimiter the delimiter, see {@link CsvTokenizer#byteOf}
+     * @param quote the quote, escaped by doubling it, or {@link CsvTokenizer#NONE}
+     * @param threads the number of threads parsing the file
+     * @param ordered whether records are handled in file order
+     * @param required the fields to decode by index, null for all
+     */
+    ChunkedCsvReader(Path path, Charset charset, byte delimiter, int quote, int threads, boolean ordered,
+                     boolean[] required) {
+        this.path = path;
+        this.charset = charset;
+        this.delimiter = delimiter;
+        this.quote = quote == CsvTokenizer.NONE ? CsvTokenizer.NONE : (byte) quote;
+        this.threads = threads;
+        this.ordered = ordered;
+        this.required = required;
+    }
+
+    /**
+     * Reads the records after a byte offset and passes them to the handler on the calling
+     * thread, in file order if the reader is ordered.
+     *
+     * @param start the byte offset of the first record
+     * @param linesBefore the number of lines before the offset
+     * @param fieldCount the number of fields to keep, further ones are ignored
+     */
+    void read(long start, long linesBefore, int fieldCount, RecordHandler handler) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (start >= size) {
+                return;
+            }
+            long length = size - start;
+            int chunkCount = (int) Math.min(Math.max(threads, (length + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE),
+                Math.max(1, length / MIN_CHUNK_SIZE));
+            long[] bounds = new long[chunkCount + 1];
+            for (int i = 0; i <= chunkCount; i++) {
+                bounds[i] = start + length * i / chunkCount;
+            }
+
+            // First pass: quotes, line feeds and possible record starts of the chunks
+            List<Future<Scan>> scans = new ArrayList<>();
+            for (int i = 0; i < chunkCount; i++) {
+                long from = bounds[i];
+                long to = bounds[i + 1];
+                scans.add(pool.submit(() -> scan(channel, from, to)));
+            }
+            List<Long> starts = new ArrayList<>();
+            List<Long> lines = new ArrayList<>();
+            long quotes = 0;
+            long lineFeeds = linesBefore;
+            for (int i = 0; i < chunkCount; i++) {
+                Scan scan = scans.get(i).get();
+                int inQuotes = (int) (quotes & 1);
+                if (i == 0) {
+                    starts.add(start);
+                    lines.add(lineFeeds);
+                } else if (scan.recordStart[inQuotes] >= 0) {
+                    starts.add(scan.recordStart[inQuotes]);
+                    lines.add(lineFeeds + scan.linesBefore[inQuotes]);
+                }
+                quotes += scan.quotes;
+                lineFeeds += scan.lineFeeds;
+            }
+            starts.add(size);
+
+            // Second pass: the records of each chunk, from its first record to the next chunk's
+            int parsed = starts.size() - 1;
+            List<BlockingQueue<List<CsvRecord>>> queues = new ArrayList<>();
+            BlockingQueue<List<CsvRecord>> shared = ordered ? null : new ArrayBlockingQueue<>(QUEUE_CAPACITY * threads);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            for (int i = 0; i < parsed; i++) {
+                BlockingQueue<List<CsvRecord>> queue = ordered ? new ArrayBlockingQueue<>(QUEUE_CAPACITY) : shared;
+                queues.add(queue);
+                long from = starts.get(i);
+                long to = starts.get(i + 1);
+                long chunkLines = lines.get(i);
+                boolean last = i == parsed - 1;
+                pool.submit(() -> {
+                    try {
+                        parse(channel, from, to, last, chunkLines, fieldCount, queue);
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                        stopped = true;
+                    }
+                    try {
+                        queue.put(END);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+
+            int ended = 0;
+            int current = 0;
+            while (ended < parsed && !stopped) {
+                List<CsvRecord> batch = queues.get(current).take();
+                if (batch == END) {
+                    ended++;
+                    if (ordered) {
+                        current++;
+                    }
+                    continue;
+                }
+                for (CsvRecord record : batch) {
+                    if (failure.get() != null || !handler.handle(record)) {
+                        stopped = true;
+                        break;
+                    }
+                }
+                if (stopped) {
+                    break;
+                }
+            }
+            Throwable error = failure.get();
+            if (error instanceof Exception) {
+                throw (Exception) error;
+            } else if (error != null) {
+                throw new IOException("Reading " + path + " failed", error);
+            }
+        } finally {
+            stopped = true;
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * What the first pass found in a chunk.
+     */
+    private static final class Scan {
+        long quotes;
+        long lineFeeds;
+        // Index 0 if the chunk begins outside quotes, 1 if inside
+        final long[] recordStart = {-1, -1};
+        final long[] linesBefore = new long[2];
+    }
+
+    private Scan scan(FileChannel channel, long from, long to) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        int limit = (int) (to - from);
+        Scan scan = new Scan();
+        int quotes = 0;
+        int lineFeeds = 0;
+        for (int i = 0; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == quote) {
+                quotes++;
+            } else if (b == '\n') {
+                lineFeeds++;
+                // Outside quotes if the quotes so far and those before the chunk are even
+                int outside = quotes & 1;
+                if (scan.recordStart[outside] < 0) {
+                    scan.recordStart[outside] = from + i + 1;
+                    scan.linesBefore[outside] = lineFeeds;
+                }
+            }
+        }
+        scan.quotes = quotes;
+        scan.lineFeeds = lineFeeds;
+        return scan;
+    }
+
+    private void parse(FileChannel channel, long from, long to, boolean last, long linesBefore, int fieldCount,
+                       BlockingQueue<List<CsvRecord>> queue) throws IOException, InterruptedException {
+        if (to - from > Integer.MAX_VALUE) {
+            throw new IOException("Record at byte " + from + " of " + path + " exceeds 2 GB");
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        CsvTokenizer tokenizer = new CsvTokenizer(new ByteBufferInputStream(buffer), charset, delimiter, quote, quote);
+        List<CsvRecord> batch = new ArrayList<>(BATCH_SIZE);
+        while (!stopped && tokenizer.next()) {
+            if (!last && !tokenizer.lineEnded()) {
+                throw new IOException("Unbalanced quotes in " + path + " before byte " + to
+                    + ", read the file with one thread");
+            }
+            String[] fields = new String[fieldCount];
+            for (int i = 0; i < fieldCount; i++) {
+                if (required == null || required[i]) {
+                    fields[i] = tokenizer.field(i);
+                }
+            }
+            batch.add(new CsvRecord(fields, linesBefore + tokenizer.line(), linesBefore + tokenizer.lastLine(),
+                from + tokenizer.getOffset()));
+            if (batch.size() == BATCH_SIZE) {
+                queue.put(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            queue.put(batch);
+        }
+    }
+
+    /**
+     * Reads a mapped chunk as a stream for the {@link CsvTokenizer}.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+
+    private static final class ThreadFactory implements java.util.concurrent.ThreadFactory {
+        private static final AtomicInteger COUNT = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "csv-reader-" + COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package io.webetl.components;
+
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Opens the files of file sources, decompressing them if their first bytes are the magic
+ * bytes of a compression format. Formats are detected and read with commons-compress, only
+ * formats with distinct magic bytes are detected so plain text is never taken for one.
+ * Concatenated members, as written by appending to a compressed file, are all read.
+ * Zstandard needs zstd-jni and XZ needs xz on the class path.
+ */
+final class CompressedInput {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Deflate and LZMA are left out, their headers are too short to tell them from text
+    private static final Set<String> FORMATS = Set.of(
+        CompressorStreamFactory.GZIP,
+        CompressorStreamFactory.BZIP2,
+        CompressorStreamFactory.XZ,
+        CompressorStreamFactory.ZSTANDARD,
+        CompressorStreamFactory.LZ4_FRAMED,
+        CompressorStreamFactory.SNAPPY_FRAMED,
+        CompressorStreamFactory.Z);
+
+    private CompressedInput() {
+    }
+
+    /**
+     * Detects the compression format of a file by its magic bytes.
+     *
+     * @return the commons-compress name of the format or null if the file is not compressed
+     */
+    static String detect(Path path) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            String format = CompressorStreamFactory.detect(in);
+            return FORMATS.contains(format) ? format : null;
+        } catch (CompressorException e) {
+            // No known magic bytes
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether a file is gzip made of BGZF blocks, which can be decompressed in parallel.
+     */
+    static boolean isBlockGzip(Path path, String format) throws IOException {
+        return CompressorStreamFactory.GZIP.equals(format) && BlockGzipInputStream.isBlockGzip(path);
+    }
+
+    /**
+     * Opens a file, decompressing it if it is compressed. The stream supports marks.
+     *
+     * @param format the format found by {@link #detect}, null for an uncompressed file
+     * @param threads the number of threads decompressing BGZF blocks
+     */
+    static InputStream open(Path path, String format, int threads) throws IOException {
+        if (format == null) {
+            return new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE);
+        }
+        if (threads > 1 && isBlockGzip(path, format)) {
+            return new BufferedInputStream(new BlockGzipInputStream(Files.newInputStream(path), threads), BUFFER_SIZE);
+        }
+        InputStream in = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE);
+        try {
+            InputStream decompressed = new CompressorStreamFactory(true).createCompressorInputStream(format, in);
+            if (CompressorStreamFactory.SNAPPY_FRAMED.equals(format)) {
+                decompressed = new SnappyFramedInputStream(decompressed, in);
+            }
+            return new BufferedInputStream(decompressed, BUFFER_SIZE);
+        } catch (CompressorException | RuntimeException | LinkageError e) {
+            in.close();
+            throw new IOException("Cannot decompress " + path + " as " + format, e);
+        }
+    }
+
+    /**
+     * Reads framed snappy past empty chunks. The decompressor returns the end of the stream
+     * after an empty chunk, as commons-compress itself writes first for data over 64 KB,
+     * so it is read again while the file has bytes left.
+     */
+    private static final class SnappyFramedInputStream extends FilterInputStream {
+        private final InputStream compressed;
+
+        SnappyFramedInputStream(InputStream in, InputStream compressed) {
+            super(in);
+            this.compressed = compressed;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int offset, int length) throws IOException {
+            int read = in.read(b, offset, length);
+            while (read < 0 && compressed.available() > 0) {
+                read = in.read(b, offset, length);
+            }
+            return read;
+        }
+    }
+}
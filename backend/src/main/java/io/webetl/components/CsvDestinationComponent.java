@@ -2,6 +2,7 @@ package io.webetl.components;
 
 import io.webetl.annotation.ETLComponentDefinition;
 import io.webetl.model.component.DestinationComponent;
+import io.webetl.model.component.Param;
 import io.webetl.model.component.parameter.StringParameter;
 import io.webetl.model.data.Row;
 import io.webetl.runtime.ExecutionContext;
@@ -14,6 +15,11 @@ import io.webetl.runtime.ExecutionContext;
     backgroundColor = "#e8f5e9"
 )
 public class CsvDestinationComponent extends DestinationComponent {
+    @Param("filepath")
+    private String filepath;
+    @Param("delimiter")
+    private String delimiter;
+
     public CsvDestinationComponent() {
         getParameters().add(StringParameter.builder()
             .name("filepath")
@@ -40,9 +46,6 @@ public class CsvDestinationComponent extends DestinationComponent {
             info(context, "Processing row: " + row);
             
             // Add actual CSV writing logic here
-            String filepath = getParameter("filepath", String.class);
-            String delimiter = getParameter("delimiter", String.class);
-            
             info(context, "Writing to file: " + filepath + " with delimiter: " + delimiter);
             
             // Implement actual file writing logic
@@ -55,12 +58,4 @@ public class CsvDestinationComponent extends DestinationComponent {
             throw e;
         }
     }
-    
-    private <T> T getParameter(String name, Class<T> type) {
-        return (T) getParameters().stream()
-            .filter(p -> p.getName().equals(name))
-            .findFirst()
-            .map(p -> p.getValue())
-            .orElse(null);
-    }
 } 
\ No newline at end of file
@@ -0,0 +1,380 @@
+package io.webetl.components;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits a byte stream into CSV records as described in RFC 4180, keeping track of the
+ * byte offset and line number of each record so file sources can checkpoint and resume.
+ * <p>
+ * Fields may be quoted, in which case they may contain delimiters, line breaks and quotes.
+ * A quote within a quoted field is written as two quotes, or preceded by the escape
+ * character if it differs from the quote; a distinct escape character also escapes the
+ * character after it outside quotes. Records end at a line feed, a carriage return before
+ * it is dropped. Lines of nothing but whitespace are skipped. The parser is lenient:
+ * characters after a closing quote are appended to the field and quotes within unquoted
+ * fields are kept as they are.
+ * <p>
+ * The bytes of a record are copied into a buffer reused for all records, only fields that
+ * are asked for are decoded into strings, by a {@link FieldDecoder}. Delimiter, quote and
+ * escape are matched on the raw bytes, so the charset must encode them as single bytes
+ * that never occur within other characters, see {@link #supports}.
+ */
+final class CsvTokenizer implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // No delimiter, quote or escape character, outside the range of bytes
+    static final int NONE = 0x100;
+
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    // A quote inside a quoted field, closing it unless another quote follows
+    private static final int QUOTE = 3;
+    // The escape character, the next byte is taken as it is
+    private static final int ESCAPED = 4;
+    private static final int ESCAPED_QUOTED = 5;
+
+    private final InputStream in;
+    private final FieldDecoder decoder;
+    private final int delimiter;
+    private final int quote;
+    private final int escape;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPos;
+    private int bufferLimit;
+    // offset of the first byte in the buffer
+    private long bufferOffset;
+    private long lines;
+
+    // the bytes of the current record's fields, one after the other
+    private byte[] data = new byte[1024];
+    private int length;
+    private int[] fieldEnds = new int[16];
+    private int fieldCount;
+    private long firstLine;
+    private long lastLine;
+    private boolean lineEnded;
+
+    /**
+     * @param delimiter the byte separating fields, {@link #NONE} for records of one field
+     * @param quote the byte quoting fields, {@link #NONE} if fields are never quoted
+     * @param escape the byte escaping a quote, the same as the quote if only doubled quotes are used
+     */
+    CsvTokenizer(InputStream in, Charset charset, int delimiter, int quote, int escape) {
+        this.in = in;
+        this.decoder = FieldDecoder.of(charset);
+        // Compared with signed bytes
+        this.delimiter = delimiter == NONE ? NONE : (byte) delimiter;
+        this.quote = quote == NONE ? NONE : (byte) quote;
+        this.escape = escape == NONE ? NONE : (byte) escape;
+    }
+
+    /**
+     * Checks whether files of a charset can be split on their bytes: UTF-8 and single-byte
+     * charsets encoding ASCII as ASCII.
+     */
+    static boolean supports(Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            return true;
+        }
+        if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1) {
+            return false;
+        }
+        String probe = "\t\n\r\"',;|\\";
+        return Arrays.equals(probe.getBytes(charset), probe.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Gets the byte of a delimiter, quote or escape character, which must be a single ASCII
+     * character other than a line break. The two characters {@code \t} stand for a tab, a
+     * backslash before any other character is dropped as delimiters used to be regular
+     * expressions.
+     *
+     * @return the byte or -1 if the text is no such character
+     */
+    static int byteOf(String text) {
+        if ("\\t".equals(text)) {
+            return '\t';
+        }
+        if (text != null && text.length() == 2 && text.charAt(0) == '\\') {
+            text = text.substring(1);
+        }
+        if (text == null || text.length() != 1) {
+            return -1;
+        }
+        char c = text.charAt(0);
+        return c < 0x80 && c != '\n' && c != '\r' ? c : -1;
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return false at the end of the stream
+     */
+    boolean next() throws IOException {
+        fieldCount = 0;
+        length = 0;
+        int fieldStart = 0;
+        // data up to here came from within quotes and is kept even if it is whitespace
+        int quotedEnd = 0;
+        int state = FIELD_START;
+        boolean blank = true;
+        firstLine = lines + 1;
+        while (true) {
+            if (bufferPos == bufferLimit && !fill()) {
+                if (blank) {
+                    return false;
+                }
+                endRecord(fieldStart, quotedEnd);
+                lastLine = lines + 1;
+                lineEnded = false;
+                return true;
+            }
+            byte b = buffer[bufferPos];
+            if (blank && (b & 0xff) > ' ') {
+                blank = false;
+            }
+            switch (state) {
+                case FIELD_START:
+                    if (b == quote) {
+                        bufferPos++;
+                        blank = false;
+                        state = QUOTED;
+                        continue;
+                    }
+                    state = UNQUOTED;
+                    // The byte is taken as the first of an unquoted field
+                    continue;
+                case UNQUOTED:
+                    // Copy everything up to the next special byte at once
+                    int run = bufferPos;
+                    while (run < bufferLimit) {
+                        byte c = buffer[run];
+                        if (c == delimiter || c == '\n' || c == escape && escape != quote) {
+                            break;
+                        }
+                        if (blank && (c & 0xff) > ' ') {
+                            blank = false;
+                        }
+                        run++;
+                    }
+                    append(buffer, bufferPos, run - bufferPos);
+                    bufferPos = run;
+                    if (run == bufferLimit) {
+                        continue;
+                    }
+                    b = buffer[bufferPos++];
+                    if (b == '\n') {
+                        lines++;
+                        if (blank) {
+                            // Nothing but whitespace on the line, start over on the next
+                            length = 0;
+                            fieldCount = 0;
+                            fieldStart = 0;
+                            quotedEnd = 0;
+                            state = FIELD_START;
+                            firstLine = lines + 1;
+                            continue;
+                        }
+                        endRecord(fieldStart, quotedEnd);
+                        lastLine = lines;
+                        lineEnded = true;
+                        return true;
+                    }
+                    if (b == delimiter) {
+                        endField();
+                        fieldStart = length;
+                        quotedEnd = length;
+                        state = FIELD_START;
+                        continue;
+                    }
+                    // The escape character
+                    blank = false;
+                    state = ESCAPED;
+                    continue;
+                case QUOTED:
+                    int quoted = bufferPos;
+                    while (quoted < bufferLimit) {
+                        byte c = buffer[quoted];
+                        if (c == quote || c == escape) {
+                            break;
+                        }
+                        if (c == '\n') {
+                            lines++;
+                        }
+                        quoted++;
+                    }
+                    append(buffer, bufferPos, quoted - bufferPos);
+                    bufferPos = quoted;
+                    quotedEnd = length;
+                    if (quoted == bufferLimit) {
+                        continue;
+                    }
+                    state = buffer[bufferPos++] == quote ? QUOTE : ESCAPED_QUOTED;
+                    continue;
+                case QUOTE:
+                    if (b == quote) {
+                        // Two quotes stand for one
+                        bufferPos++;
+                        append(b);
+                        quotedEnd = length;
+                        state = QUOTED;
+                        continue;
+                    }
+                    // The quote closed the field, the bytes up to the delimiter follow as they are
+                    state = UNQUOTED;
+                    continue;
+                default:
+                    bufferPos++;
+                    if (b == '\n') {
+                        lines++;
+                    }
+                    append(b);
+                    quotedEnd = length;
+                    state = state == ESCAPED_QUOTED ? QUOTED : UNQUOTED;
+                    continue;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of fields of the current record.
+     */
+    int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Decodes a field of the current record.
+     *
+     * @return the value or null if the record has fewer fields
+     */
+    String field(int index) {
+        if (index >= fieldCount) {
+            return null;
+        }
+        int start = index == 0 ? 0 : fieldEnds[index - 1];
+        return decoder.decode(data, start, fieldEnds[index] - start);
+    }
+
+    /**
+     * Decodes all fields of the current record.
+     */
+    String[] fields() {
+        String[] fields = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            fields[i] = field(i);
+        }
+        return fields;
+    }
+
+    /**
+     * @return the number of the line the current record starts on
+     */
+    long line() {
+        return firstLine;
+    }
+
+    /**
+     * @return the number of the line the current record ends on
+     */
+    long lastLine() {
+        return lastLine;
+    }
+
+    /**
+     * @return whether the current record ended with a line break rather than the stream
+     */
+    boolean lineEnded() {
+        return lineEnded;
+    }
+
+    /**
+     * @return the byte offset after the current record
+     */
+    long getOffset() {
+        return bufferOffset + bufferPos;
+    }
+
+    /**
+     * Skips forward to a byte offset, e.g. one restored from a checkpoint. Bytes past the
+     * buffer are skipped by the stream, which seeks rather than reads for files.
+     *
+     * @param target the offset of the next record to read
+     * @param linesBefore the number of lines before the offset
+     */
+    void skipTo(long target, long linesBefore) throws IOException {
+        if (target - getOffset() <= bufferLimit - bufferPos) {
+            bufferPos += (int) Math.max(0, target - getOffset());
+        } else {
+            long position = bufferOffset + bufferLimit;
+            while (position < target) {
+                long skipped = in.skip(target - position);
+                if (skipped <= 0) {
+                    // Streams stop skipping at their end, some before
+                    if (in.read() < 0) {
+                        throw new IOException("Offset " + target + " is beyond the end of the file");
+                    }
+                    skipped = 1;
+                }
+                position += skipped;
+            }
+            bufferOffset = position;
+            bufferPos = 0;
+            bufferLimit = 0;
+        }
+        lines = linesBefore;
+    }
+
+    private boolean fill() throws IOException {
+        bufferOffset += bufferLimit;
+        bufferPos = 0;
+        bufferLimit = 0;
+        int read = in.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        bufferLimit = read;
+        return true;
+    }
+
+    private void endRecord(int fieldStart, int quotedEnd) {
+        // A carriage return before the line feed belongs to the line break
+        if (length > Math.max(fieldStart, quotedEnd) && data[length - 1] == '\r') {
+            length--;
+        }
+        endField();
+    }
+
+    private void endField() {
+        if (fieldCount == fieldEnds.length) {
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+        }
+        fieldEnds[fieldCount++] = length;
+    }
+
+    private void append(byte b) {
+        if (length == data.length) {
+            data = Arrays.copyOf(data, length * 2);
+        }
+        data[length++] = b;
+    }
+
+    private void append(byte[] bytes, int offset, int count) {
+        if (length + count > data.length) {
+            data = Arrays.copyOf(data, Math.max(length + count, data.length * 2));
+        }
+        System.arraycopy(bytes, offset, data, length, count);
+        length += count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
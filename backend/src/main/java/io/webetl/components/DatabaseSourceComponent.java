@@ -2,27 +2,45 @@ package io.webetl.components;
 
 import io.webetl.annotation.ETLComponentDefinition;
 import io.webetl.model.component.SourceComponent;
+import io.webetl.model.component.ColumnProjection;
+import io.webetl.model.component.Param;
+import io.webetl.model.component.SchemaProvider;
+import io.webetl.model.component.parameter.NumberParameter;
 import io.webetl.model.component.parameter.StringParameter;
 import io.webetl.model.component.parameter.SelectParameter;
 import io.webetl.model.component.parameter.SecretParameter;
 import io.webetl.model.component.parameter.SQLParameter;
+import io.webetl.model.data.DataType;
 import io.webetl.model.data.Row;
+import io.webetl.model.data.Schema;
+import io.webetl.runtime.CheckpointCoordinator;
 import io.webetl.runtime.ExecutionContext;
 import io.webetl.compiler.ComponentDependencies;
 import io.webetl.compiler.Dependency;
 
+import java.math.BigDecimal;
 import java.sql.Connection;
+import java.sql.Date;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 @ETLComponentDefinition(
     id = "database-source",
@@ -33,16 +51,46 @@ import java.util.UUID;
 )
 @ComponentDependencies({
     @Dependency(groupId = "org.postgresql", artifactId = "postgresql", version = "42.6.0"),
-    @Dependency(groupId = "com.mysql", artifactId = "mysql-connector-j", version = "8.0.33")
+    @Dependency(groupId = "com.mysql", artifactId = "mysql-connector-j", version = "8.0.33"),
+    @Dependency(groupId = "com.h2database", artifactId = "h2", version = "2.3.232")
 })
-public class DatabaseSourceComponent extends SourceComponent {
-    
+public class DatabaseSourceComponent extends SourceComponent implements SchemaProvider, ColumnProjection {
     // Constants for database drivers and URL templates
     private static final String POSTGRES_DRIVER = "org.postgresql.Driver";
     private static final String MYSQL_DRIVER = "com.mysql.cj.jdbc.Driver";
+    private static final String H2_DRIVER = "org.h2.Driver";
     
     private static final String POSTGRES_URL_TEMPLATE = "jdbc:postgresql://%s:%s/%s";
     private static final String MYSQL_URL_TEMPLATE = "jdbc:mysql://%s:%s/%s";
+    // The database name is the H2 database URL, e.g. mem:orders or ./data/orders
+    private static final String H2_URL_TEMPLATE = "jdbc:h2:%s";
+    
+    // Rows fetched per round trip, so reading can stop without fetching the whole result
+    private static final int FETCH_SIZE = 1000;
+    // Limit for connecting and reading metadata while a sheet is compiled
+    private static final int SCHEMA_TIMEOUT_SECONDS = 5;
+
+    @Param("dbType")
+    private String dbType;
+    @Param("host")
+    private String host;
+    @Param("port")
+    private String port;
+    @Param("database")
+    private String database;
+    @Param("username")
+    private String username;
+    @Param("password")
+    private String password;
+    @Param("query")
+    private String query;
+    @Param("watermarkColumn")
+    private String watermarkColumn;
+    // 0 for all rows
+    @Param("limit")
+    private long limit;
+    // null to send all columns
+    private Set<String> requiredColumns;
     
     public DatabaseSourceComponent() {
         // Add database type parameter (dropdown)
@@ -50,7 +98,7 @@ public class DatabaseSourceComponent extends SourceComponent {
             .name("dbType")
             .label("Database Type")
             .description("Select the type of database to connect to")
-            .options(Arrays.asList("postgresql", "mysql"))
+            .options(Arrays.asList("postgresql", "mysql", "h2"))
             .defaultValue("postgresql")
             .required(true)
             .build();
@@ -59,6 +107,7 @@ public class DatabaseSourceComponent extends SourceComponent {
         dbTypeParam.setDisplayName("Database Engine");
         dbTypeParam.setOptionDisplayName("postgresql", "PostgreSQL");
         dbTypeParam.setOptionDisplayName("mysql", "MySQL");
+        dbTypeParam.setOptionDisplayName("h2", "H2");
         getParameters().add(dbTypeParam);
             
         // Add host parameter
@@ -111,7 +160,26 @@ public class DatabaseSourceComponent extends SourceComponent {
             .label("SQL Query")
             .description("SQL query to execute (SELECT statements only)")
             .required(true)
-            .maxRows(1000)
+            .maxRows(0)
+            .build());
+            
+        // Add watermark column parameter used for checkpointing
+        getParameters().add(StringParameter.builder()
+            .name("watermarkColumn")
+            .label("Watermark Column")
+            .description("Column of the query result with ascending values (e.g. id or updated_at), as the result names it, used to checkpoint and resume the query")
+            .required(false)
+            .maxLength(255)
+            .build());
+            
+        // Add row limit parameter, the compiler adds it to the query
+        getParameters().add(NumberParameter.builder()
+            .name("limit")
+            .label("Row Limit")
+            .description("Most rows to read from the query, 0 for all rows. With a watermark column the first rows by it")
+            .required(false)
+            .defaultValue(0)
+            .min(0)
             .build());
     }
 
@@ -120,14 +188,14 @@ public class DatabaseSourceComponent extends SourceComponent {
         // Log the start of execution
         info(context, "Starting database source component");
         
-        // Get parameters
-        String dbType = getParameter("dbType", String.class);
-        String host = getParameter("host", String.class);
-        String port = getParameter("port", String.class);
-        String database = getParameter("database", String.class);
-        String username = getParameter("username", String.class);
-        String password = getParameter("password", String.class);
-        String query = getParameter("query", String.class);
+        // Copy parameters, empty ones are replaced by defaults below
+        String dbType = this.dbType;
+        String host = this.host;
+        String port = this.port;
+        String database = this.database;
+        String username = this.username;
+        String password = this.password;
+        String query = this.query;
         
         // Set default values if parameters are null or empty
         if (dbType == null || dbType.isEmpty()) {
@@ -167,13 +235,55 @@ public class DatabaseSourceComponent extends SourceComponent {
             warn(context, "No query provided, using default query: " + query);
         }
         
+        // With a watermark column the query is ordered by it, so a resumed run
+        // can continue after the last key covered by a completed checkpoint
+        String watermarkColumn = this.watermarkColumn;
+        CheckpointCoordinator checkpoints = context.getCheckpointCoordinator();
+        boolean checkpointing = checkpoints.isEnabled(this) && watermarkColumn != null && !watermarkColumn.isEmpty();
+        Map<String, String> restored = checkpointing ? checkpoints.restore(this) : null;
+        
+        // Only select the columns used downstream, and the watermark column referred to below.
+        // Columns are named as the result labels them, quoted so they keep their case
+        String type = dbType;
+        if (requiredColumns != null) {
+            String columns = new TreeSet<>(requiredColumns).stream()
+                .map(column -> quoteIdentifier(type, column))
+                .collect(Collectors.joining(", "));
+            if (checkpointing && !requiredColumns.contains(watermarkColumn)) {
+                String watermark = quoteIdentifier(type, watermarkColumn);
+                columns = columns.isEmpty() ? watermark : columns + ", " + watermark;
+            }
+            query = "SELECT " + (columns.isEmpty() ? "1" : columns) + " FROM (" + query + ") webetl_columns";
+        }
+        
+        // The row limit counts the rows read before a resume, and applies after ordering
+        // by the watermark, so the rows of a resumed run follow those of the failed one
+        long rowsBefore = restored != null && restored.containsKey("rows") ? Long.parseLong(restored.get("rows")) : 0;
+        long limit = this.limit > 0 ? this.limit - rowsBefore : 0;
+        if (this.limit > 0 && limit <= 0) {
+            info(context, "Read all " + this.limit + " rows of the limit before resuming");
+            super.sendRow(Row.createTerminator());
+            return;
+        }
+        
+        if (checkpointing) {
+            String watermark = quoteIdentifier(type, watermarkColumn);
+            query = "SELECT * FROM (" + query + ") webetl_src"
+                + (restored != null ? " WHERE " + watermark + " > ?" : "")
+                + " ORDER BY " + watermark
+                + (limit > 0 ? " LIMIT " + limit : "");
+            if (restored != null) {
+                info(context, "Resuming after " + watermarkColumn + " = " + restored.get("watermark"));
+            }
+        }
+        
         // Build connection string
         String url = buildConnectionString(dbType, host, port, database);
         info(context, "Executing query: " + query);
         info(context, "Using connection URL: " + url);
         
         Connection connection = null;
-        Statement statement = null;
+        PreparedStatement statement = null;
         ResultSet resultSet = null;
         
         try {
@@ -184,36 +294,76 @@ public class DatabaseSourceComponent extends SourceComponent {
             info(context, "Establishing database connection...");
             connection = DriverManager.getConnection(url, username, password);
             
-            // Create and execute statement
-            statement = connection.createStatement();
-            resultSet = statement.executeQuery(query);
+            // Create and execute statement, streaming the result: PostgreSQL only uses a
+            // cursor in a transaction, MySQL streams rows with the minimum fetch size
+            if ("postgresql".equals(dbType)) {
+                connection.setAutoCommit(false);
+            }
+            statement = connection.prepareStatement(query);
+            statement.setFetchSize("mysql".equals(dbType) ? Integer.MIN_VALUE : FETCH_SIZE);
+            if (limit > 0) {
+                // the compiler or the checkpointing above limit the query already, this covers
+                // flows compiled without it
+                statement.setMaxRows((int) Math.min(limit, Integer.MAX_VALUE));
+            }
+            if (restored != null) {
+                bindWatermark(statement, 1, restored.get("watermark"), restored.get("watermarkType"));
+            }
+            resultSet = statement.executeQuery();
             
             ResultSetMetaData metaData = resultSet.getMetaData();
             int columnCount = metaData.getColumnCount();
             
-            // Get column names
+            // Get column labels, the names given in the query (with AS) rather than those in the tables
             List<String> columnNames = new ArrayList<>();
+            int watermarkIndex = -1;
             for (int i = 1; i <= columnCount; i++) {
-                columnNames.add(metaData.getColumnName(i));
+                columnNames.add(metaData.getColumnLabel(i));
+                if (checkpointing && metaData.getColumnLabel(i).equals(watermarkColumn)) {
+                    watermarkIndex = i;
+                }
+            }
+            if (checkpointing && watermarkIndex < 0) {
+                warn(context, "Watermark column " + watermarkColumn + " not found in result, checkpointing disabled");
             }
             
             info(context, "Query executed successfully. Processing results...");
             
             // Process result set and send rows
             int rowCount = 0;
+            int rowsSinceCheckpoint = 0;
+            Object lastWatermark = null;
             while (resultSet.next()) {
+                if (isCancelled()) {
+                    info(context, "No more rows needed downstream, stopping after " + rowCount + " rows");
+                    break;
+                }
+                
+                if (watermarkIndex > 0) {
+                    // Only checkpoint between different keys, rows sharing a key must not be split
+                    Object watermark = resultSet.getObject(watermarkIndex);
+                    if (lastWatermark != null && !lastWatermark.equals(watermark)
+                            && rowsSinceCheckpoint >= checkpoints.getInterval()) {
+                        super.sendRow(checkpoints.checkpoint(this, Map.of(
+                            "watermark", lastWatermark.toString(),
+                            "watermarkType", lastWatermark.getClass().getName(),
+                            "rows", String.valueOf(rowsBefore + rowCount))));
+                        rowsSinceCheckpoint = 0;
+                    }
+                    lastWatermark = watermark;
+                }
+                
                 Row row = new Row();
                 row.setId(UUID.randomUUID().toString());
                 
                 Map<String, Object> data = new HashMap<>();
                 for (int i = 1; i <= columnCount; i++) {
-                    String columnName = metaData.getColumnName(i);
-                    Object value = resultSet.getObject(i);
-                    data.put(columnName, value);
+                    data.put(columnNames.get(i - 1), resultSet.getObject(i));
                 }
                 
                 row.setData(data);
                 rowCount++;
+                rowsSinceCheckpoint++;
                 
                 if (rowCount % 100 == 0) {
                     info(context, "Processed " + rowCount + " rows");
@@ -239,13 +389,132 @@ public class DatabaseSourceComponent extends SourceComponent {
             error(context, "Error executing database query: " + e.getMessage(), e);
             throw e;
         } finally {
-            // Close resources
+            // Close resources, a query still running is cancelled rather than read to the end
+            if (statement != null && isCancelled()) {
+                try {
+                    statement.cancel();
+                } catch (SQLException e) {
+                    log.debug("Cannot cancel query: {}", e.getMessage());
+                }
+            }
             closeQuietly(resultSet);
             closeQuietly(statement);
             closeQuietly(connection);
         }
     }
     
+    /**
+     * Infers the schema from the metadata of the prepared query, without running it. The
+     * schema is unknown if the connection parameters are incomplete, the driver is not
+     * available to the compiler or the database cannot be reached within a few seconds.
+     */
+    @Override
+    public Schema inferOutputSchema(Schema input) throws Exception {
+        String type = (dbType == null || dbType.isEmpty()) ? "postgresql" : dbType;
+        if ((!"h2".equals(type) && (host == null || host.isEmpty())) || database == null || database.isEmpty()
+                || query == null || query.isEmpty()) {
+            return null;
+        }
+        String url = buildConnectionString(type, host,
+            (port == null || port.isEmpty()) ? ("postgresql".equals(type) ? "5432" : "3306") : port, database);
+        loadDatabaseDriver(type);
+        
+        Connection connection;
+        try {
+            connection = DriverManager.getConnection(url, schemaConnectionProperties(type));
+        } catch (SQLException e) {
+            log.warn("Cannot connect to {} to infer the schema: {}", url, e.getMessage());
+            return null;
+        }
+        try (connection;
+             PreparedStatement statement = connection.prepareStatement(query)) {
+            ResultSetMetaData metaData = statement.getMetaData();
+            if (metaData == null) {
+                return null;
+            }
+            Schema schema = new Schema();
+            boolean watermarkFound = false;
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                schema.column(metaData.getColumnLabel(i), dataType(metaData.getColumnType(i)));
+                watermarkFound |= metaData.getColumnLabel(i).equals(watermarkColumn);
+            }
+            if (watermarkColumn != null && !watermarkColumn.isEmpty() && !watermarkFound) {
+                throw new IllegalArgumentException("Watermark column " + watermarkColumn + " is not a column of the query");
+            }
+            return schema;
+        }
+    }
+    
+    /**
+     * Gets the properties of the connection used to infer the schema. Connecting and every
+     * read on it are limited, so an unreachable database does not stall the compilation.
+     * The limits are set per connection rather than through {@link DriverManager#setLoginTimeout},
+     * which would apply to every connection of the process. H2 rejects settings it does not
+     * know and needs none.
+     */
+    private Properties schemaConnectionProperties(String type) {
+        Properties properties = new Properties();
+        properties.setProperty("user", (username == null || username.isEmpty()) ? "postgres" : username);
+        properties.setProperty("password", password == null ? "" : password);
+        if ("mysql".equals(type)) {
+            // milliseconds
+            properties.setProperty("connectTimeout", String.valueOf(SCHEMA_TIMEOUT_SECONDS * 1000));
+            properties.setProperty("socketTimeout", String.valueOf(SCHEMA_TIMEOUT_SECONDS * 1000));
+        } else if ("postgresql".equals(type)) {
+            // seconds
+            properties.setProperty("connectTimeout", String.valueOf(SCHEMA_TIMEOUT_SECONDS));
+            properties.setProperty("loginTimeout", String.valueOf(SCHEMA_TIMEOUT_SECONDS));
+            properties.setProperty("socketTimeout", String.valueOf(SCHEMA_TIMEOUT_SECONDS));
+        }
+        return properties;
+    }
+    
+    @Override
+    public void setRequiredColumns(Set<String> columns) {
+        this.requiredColumns = columns;
+    }
+    
+    /**
+     * Quotes a column name, keeping its case
+     */
+    private static String quoteIdentifier(String dbType, String name) {
+        if ("mysql".equals(dbType)) {
+            return "`" + name.replace("`", "``") + "`";
+        }
+        return "\"" + name.replace("\"", "\"\"") + "\"";
+    }
+    
+    /**
+     * Maps a JDBC column type to the data type of the values {@code getObject} returns for it.
+     */
+    private static DataType dataType(int sqlType) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return DataType.INTEGER;
+            case Types.BIGINT:
+                return DataType.LONG;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return DataType.DOUBLE;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return DataType.DECIMAL;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return DataType.BOOLEAN;
+            case Types.DATE:
+                return DataType.DATE;
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return DataType.TIMESTAMP;
+            default:
+                return DataType.STRING;
+        }
+    }
+    
     /**
      * Build a connection string based on database type and parameters
      */
@@ -255,6 +524,9 @@ public class DatabaseSourceComponent extends SourceComponent {
             dbType = "postgresql";
         }
         
+        if ("h2".equals(dbType)) {
+            return String.format(H2_URL_TEMPLATE, database);
+        }
         String template = "postgresql".equals(dbType) ? POSTGRES_URL_TEMPLATE : MYSQL_URL_TEMPLATE;
         
         // Provide defaults for any null values
@@ -275,6 +547,8 @@ public class DatabaseSourceComponent extends SourceComponent {
             driverClass = POSTGRES_DRIVER;
         } else if ("mysql".equals(dbType)) {
             driverClass = MYSQL_DRIVER;
+        } else if ("h2".equals(dbType)) {
+            driverClass = H2_DRIVER;
         } else {
             throw new IllegalArgumentException("Unsupported database type: " + dbType);
         }
@@ -302,6 +576,50 @@ public class DatabaseSourceComponent extends SourceComponent {
         }
     }
     
+    /**
+     * Binds a watermark restored from a checkpoint with the type it was read with,
+     * so the comparison in the resume query works on typed columns
+     */
+    private void bindWatermark(PreparedStatement statement, int index, String value, String type) throws SQLException {
+        if (type == null) {
+            statement.setString(index, value);
+            return;
+        }
+        switch (type) {
+            case "java.lang.Integer":
+            case "java.lang.Long":
+            case "java.lang.Short":
+            case "java.lang.Byte":
+                statement.setLong(index, Long.parseLong(value));
+                break;
+            case "java.math.BigDecimal":
+            case "java.math.BigInteger":
+                statement.setBigDecimal(index, new BigDecimal(value));
+                break;
+            case "java.lang.Double":
+            case "java.lang.Float":
+                statement.setDouble(index, Double.parseDouble(value));
+                break;
+            case "java.sql.Timestamp":
+                statement.setTimestamp(index, Timestamp.valueOf(value));
+                break;
+            case "java.sql.Date":
+                statement.setDate(index, Date.valueOf(value));
+                break;
+            case "java.time.LocalDateTime":
+                statement.setObject(index, LocalDateTime.parse(value));
+                break;
+            case "java.time.LocalDate":
+                statement.setObject(index, LocalDate.parse(value));
+                break;
+            case "java.time.OffsetDateTime":
+                statement.setObject(index, OffsetDateTime.parse(value));
+                break;
+            default:
+                statement.setString(index, value);
+        }
+    }
+    
     /**
      * Close a resource quietly (without throwing exceptions)
      */
@@ -314,12 +632,4 @@ public class DatabaseSourceComponent extends SourceComponent {
             }
         }
     }
-    
-    private <T> T getParameter(String name, Class<T> type) {
-        return (T) getParameters().stream()
-            .filter(p -> p.getName().equals(name))
-            .findFirst()
-            .map(p -> p.getValue())
-            .orElse(null);
-    }
 } 
\ No newline at end of file
@@ -0,0 +1,60 @@
+package io.webetl.components;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes the bytes of fields into strings for a {@link CsvTokenizer}.
+ * <p>
+ * UTF-8, US-ASCII and ISO-8859-1 are decoded by the string constructor, which has fast
+ * paths for them. Other single-byte charsets are decoded with a table of the characters
+ * of all 256 bytes, as the string constructor creates a new charset decoder for every
+ * call; fields of ASCII bytes only are copied as they are.
+ */
+final class FieldDecoder {
+    private final Charset charset;
+    // characters by byte, null if the string constructor decodes the charset
+    private final char[] table;
+    private char[] chars;
+
+    private FieldDecoder(Charset charset, char[] table) {
+        this.charset = charset;
+        this.table = table;
+        this.chars = table == null ? null : new char[256];
+    }
+
+    /**
+     * Creates a decoder for a charset {@link CsvTokenizer#supports supported} by the tokenizer.
+     */
+    static FieldDecoder of(Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1) || charset.newEncoder().maxBytesPerChar() != 1) {
+            return new FieldDecoder(charset, null);
+        }
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return new FieldDecoder(charset, new String(bytes, charset).toCharArray());
+    }
+
+    String decode(byte[] bytes, int offset, int length) {
+        if (table == null) {
+            return new String(bytes, offset, length, charset);
+        }
+        int ascii = 0;
+        while (ascii < length && bytes[offset + ascii] >= 0) {
+            ascii++;
+        }
+        if (ascii == length) {
+            return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        }
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            chars[i] = table[bytes[offset + i] & 0xff];
+        }
+        return new String(chars, 0, length);
+    }
+}
@@ -1,18 +1,50 @@
 package io.webetl.components;
 
 import io.webetl.annotation.ETLComponentDefinition;
+import io.webetl.compiler.ComponentDependencies;
+import io.webetl.compiler.Dependency;
 import io.webetl.model.component.SourceComponent;
+import io.webetl.model.component.ColumnProjection;
+import io.webetl.model.component.Param;
+import io.webetl.model.component.SchemaProvider;
+import io.webetl.model.component.parameter.BooleanParameter;
+import io.webetl.model.component.parameter.NumberParameter;
 import io.webetl.model.component.parameter.StringParameter;
+import io.webetl.model.data.DataType;
 import io.webetl.model.data.Row;
+import io.webetl.model.data.RowMetadata;
+import io.webetl.model.data.Schema;
+import io.webetl.runtime.CheckpointCoordinator;
 import io.webetl.runtime.ExecutionContext;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
 
 /**
  * FileSourceComponent is a component that reads data from files.
@@ -24,13 +56,43 @@ import java.util.UUID;
     icon = "FileIcon",
     backgroundColor = "#f0f7ff"
 )
-public class FileSourceComponent extends SourceComponent {
+@ComponentDependencies({
+    @Dependency(groupId = "org.apache.commons", artifactId = "commons-compress", version = "1.24.0"),
+    @Dependency(groupId = "com.github.luben", artifactId = "zstd-jni", version = "1.5.5-5", optional = true),
+    @Dependency(groupId = "org.tukaani", artifactId = "xz", version = "1.9", optional = true)
+})
+public class FileSourceComponent extends SourceComponent implements SchemaProvider, ColumnProjection {
+    private static final byte[] UTF8_BYTE_ORDER_MARK = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+    private static final int FILE_BATCH_SIZE = 1024;
+    // Batches a file reader reads ahead of the rows sent
+    private static final int FILE_QUEUE_CAPACITY = 16;
+    // Bytes before the offset reached that are compared on the next incremental run
+    private static final int CHECKSUM_LENGTH = 4096;
     
+    @Param("filepath")
+    private String filepath;
+    @Param("delimiter")
+    private String delimiter;
+    @Param("encoding")
+    private String encoding;
+    @Param("quote")
+    private String quote;
+    @Param("escape")
+    private String escape;
+    @Param("readerThreads")
+    private int readerThreads = 1;
+    @Param("ordered")
+    private boolean ordered = true;
+    @Param("incremental")
+    private boolean incremental = false;
+    // null to send all columns
+    private Set<String> requiredColumns;
+
     public FileSourceComponent() {
         getParameters().add(StringParameter.builder()
             .name("filepath")
             .label("File Path")
-            .description("Path to the file to read")
+            .description("Path to the file to read, a directory or a glob pattern matching several files")
             .required(true)
             .build());
             
@@ -49,6 +111,48 @@ public class FileSourceComponent extends SourceComponent {
             .required(false)
             .defaultValue("UTF-8")
             .build());
+            
+        getParameters().add(StringParameter.builder()
+            .name("quote")
+            .label("Quote")
+            .description("Character quoting fields that contain delimiters or line breaks, empty for none")
+            .required(false)
+            .defaultValue("\"")
+            .build());
+            
+        getParameters().add(StringParameter.builder()
+            .name("escape")
+            .label("Escape")
+            .description("Character escaping quotes within quoted fields, the quote itself if they are doubled")
+            .required(false)
+            .defaultValue("\"")
+            .build());
+            
+        getParameters().add(NumberParameter.builder()
+            .name("readerThreads")
+            .label("Reader Threads")
+            .description("Threads parsing the file in parallel, or reading files if several match, 0 for one per core")
+            .required(false)
+            .defaultValue(1)
+            .min(0)
+            .max(256)
+            .build());
+            
+        getParameters().add(BooleanParameter.builder()
+            .name("ordered")
+            .label("Keep Row Order")
+            .description("Send the rows in file order, and files in path order, when read by several threads")
+            .required(false)
+            .defaultValue(true)
+            .build());
+            
+        getParameters().add(BooleanParameter.builder()
+            .name("incremental")
+            .label("Incremental")
+            .description("Read only the lines appended to the file since the last successful run")
+            .required(false)
+            .defaultValue(false)
+            .build());
     }
     
     @Override
@@ -56,45 +160,120 @@ public class FileSourceComponent extends SourceComponent {
         // Implementation for reading from file
         info(context, "Executing file source component");
         
-        // Get file configuration parameters
-        String filepath = getParameter("filepath", String.class);
-        String delimiter = getParameter("delimiter", String.class);
-        String encoding = getParameter("encoding", String.class);
-        
         info(context, "Reading file: " + filepath);
         info(context, "Using delimiter: '" + delimiter + "', encoding: " + encoding);
         
-        Path path = Paths.get(filepath);
+        List<Path> files = resolveFiles(filepath);
         
-        if (!Files.exists(path)) {
+        if (files.isEmpty() || !Files.exists(files.get(0))) {
             error(context, "File does not exist: " + filepath);
             throw new RuntimeException("File not found: " + filepath);
         }
         
+        CheckpointCoordinator checkpoints = context.getCheckpointCoordinator();
+        Map<String, String> restored = checkpoints.restore(this);
+        Charset charset = charset();
+        if (!CsvTokenizer.supports(charset)) {
+            info(context, "Transcoding " + charset.name() + " to UTF-8, offsets refer to the transcoded bytes");
+        }
+        int threads = readerThreads > 0 ? readerThreads : Runtime.getRuntime().availableProcessors();
+        
+        if (files.size() > 1) {
+            info(context, "Reading " + files.size() + " files with " + Math.min(threads, files.size()) + " threads"
+                + (ordered ? "" : ", rows out of order"));
+            try {
+                int rowCount = readFiles(context, files, charset, threads, restored);
+                info(context, "Completed reading files. Rows processed: " + rowCount);
+            } catch (Exception e) {
+                error(context, "Error reading files: " + filepath, e);
+                throw e;
+            }
+            sendRow(Row.createTerminator());
+            return;
+        }
+        
+        Path path = files.get(0);
+        // A checkpoint taken while other files matched does not apply
+        if (restored != null && restored.get("file") != null && !path.equals(Paths.get(restored.get("file")))) {
+            warn(context, "Checkpoint is for " + restored.get("file") + ", reading " + path + " from the start");
+            restored = null;
+        }
+        RowMetadata metadata = metadata(path);
+        String compression = CompressedInput.detect(path);
+        if (compression != null) {
+            boolean blocks = threads > 1 && CompressedInput.isBlockGzip(path, compression);
+            info(context, "Decompressing " + compression + (blocks ? " blocks with " + threads + " threads" : "")
+                + ", offsets refer to the decompressed bytes");
+        }
+        
+        if (incremental) {
+            if (compression != null || !CsvTokenizer.supports(charset)) {
+                warn(context, "Only uncompressed files in UTF-8 or a single-byte encoding are read incrementally, "
+                    + "reading the whole file");
+            } else if (!checkpoints.isEnabled(this)) {
+                warn(context, "Incremental reading keeps its position in the checkpoint directory of the runner, "
+                    + "none is set, reading the whole file");
+            } else {
+                try {
+                    int rowCount = readIncrementally(context, path, charset, restored);
+                    info(context, "Completed reading appended lines. Rows processed: " + rowCount);
+                } catch (Exception e) {
+                    error(context, "Error reading file: " + filepath, e);
+                    throw e;
+                }
+                sendRow(Row.createTerminator());
+                return;
+            }
+        }
+        
         int lineCount = 0;
         int rowCount = 0;
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(filepath))) {
-            String line;
+        try (CsvTokenizer tokenizer = open(path, charset, compression, threads)) {
             String[] headers = null;
             
-            // Read the first line as headers if it's a CSV/TSV file
-            if ((line = reader.readLine()) != null && delimiter != null) {
-                headers = line.split(delimiter);
-                lineCount++;
+            // Read the first record as headers if it's a CSV/TSV file
+            if (delimiter != null && tokenizer.next()) {
+                headers = tokenizer.fields();
+                lineCount = (int) tokenizer.lastLine();
                 debug(context, "Found headers: " + String.join(", ", headers));
             }
             
-            // Process the remaining lines
-            while ((line = reader.readLine()) != null) {
-                lineCount++;
-                
-                if (line.trim().isEmpty()) {
-                    debug(context, "Skipping empty line: " + lineCount);
-                    continue;
+            updateSchema(context, headers);
+            boolean[] required = requiredFields(context, headers);
+            
+            // Continue after the last line covered by a completed checkpoint
+            if (restored != null) {
+                long offset = Long.parseLong(restored.get("offset"));
+                lineCount = Integer.parseInt(restored.get("line"));
+                info(context, "Resuming at byte offset " + offset + " (line " + lineCount + ")");
+                tokenizer.skipTo(offset, lineCount);
+            }
+            
+            // Large files are parsed by several threads, straight from the bytes
+            if (threads > 1 && compression == null && headers != null && escapeByte() == quoteByte()
+                    && CsvTokenizer.supports(charset)) {
+                info(context, "Reading with " + threads + " threads" + (ordered ? "" : ", rows out of order"));
+                rowCount = readInParallel(context, path, charset, threads, headers, required, metadata,
+                    tokenizer.getOffset(), lineCount);
+                info(context, "Completed reading file. Rows processed: " + rowCount);
+                sendRow(Row.createTerminator());
+                return;
+            }
+            if (threads > 1 && compression == null) {
+                warn(context, "Reading with one thread, several need a header, quotes escaped by doubling them "
+                    + "and UTF-8 or a single-byte encoding");
+            }
+            
+            // Process the remaining records
+            while (tokenizer.next()) {
+                if (isCancelled()) {
+                    info(context, "No more rows needed downstream, stopping at line " + lineCount);
+                    break;
                 }
+                lineCount = (int) tokenizer.lastLine();
                 
-                Row row = createRow(line, headers, delimiter, lineCount);
+                Row row = createRow(tokenizer, headers, required, metadata);
                 rowCount++;
                 
                 if (rowCount % 1000 == 0) {
@@ -103,6 +282,13 @@ public class FileSourceComponent extends SourceComponent {
                 
                 debug(context, "Sending row: " + row);
                 sendRow(row);
+                
+                if (checkpoints.isEnabled(this) && checkpoints.isCheckpointDue(rowCount)) {
+                    sendRow(checkpoints.checkpoint(this, Map.of(
+                        "file", path.toString(),
+                        "offset", Long.toString(tokenizer.getOffset()),
+                        "line", Integer.toString(lineCount))));
+                }
             }
             
             info(context, "Completed reading file. Total lines: " + lineCount + ", rows processed: " + rowCount);
@@ -117,37 +303,670 @@ public class FileSourceComponent extends SourceComponent {
         }
     }
     
-    private Row createRow(String line, String[] headers, String delimiter, int lineNumber) {
+    /**
+     * Reads the records after the header with a {@link ChunkedCsvReader}. Checkpoints are
+     * only taken if rows are sent in file order, the offset of a row then covers all before.
+     *
+     * @return the number of rows sent
+     */
+    private int readInParallel(ExecutionContext context, Path path, Charset charset, int threads, String[] headers,
+                               boolean[] required, RowMetadata metadata, long offset, int lineCount)
+            throws Exception {
+        CheckpointCoordinator checkpoints = context.getCheckpointCoordinator();
+        boolean checkpointing = checkpoints.isEnabled(this) && ordered;
+        if (checkpoints.isEnabled(this) && !ordered) {
+            warn(context, "Rows are read out of order, no checkpoints are taken");
+        }
+        
+        int[] rowCount = {0};
+        new ChunkedCsvReader(path, charset, (byte) delimiterByte(), quoteByte(), threads, ordered, required)
+            .read(offset, lineCount, headers.length, record -> {
+                if (isCancelled()) {
+                    info(context, "No more rows needed downstream, stopping at line " + record.line);
+                    return false;
+                }
+                sendRow(createRow(record, headers, metadata));
+                rowCount[0]++;
+                
+                if (rowCount[0] % 1000 == 0) {
+                    info(context, "Processed " + rowCount[0] + " rows");
+                }
+                
+                if (checkpointing && checkpoints.isCheckpointDue(rowCount[0])) {
+                    sendRow(checkpoints.checkpoint(this, Map.of(
+                        "file", path.toString(),
+                        "offset", Long.toString(record.end),
+                        "line", Long.toString(record.lastLine))));
+                }
+                return true;
+            });
+        return rowCount[0];
+    }
+    
+    /**
+     * Reads the lines appended to a file since the last successful run, which kept the offset
+     * it reached and the identity of the file. A file that was rotated, i.e. renamed and
+     * replaced by a new one, is found by its identity in the same directory and its rest is
+     * read before the new file. A file that was truncated or rewritten is read from the start.
+     *
+     * @return the number of rows sent
+     */
+    private int readIncrementally(ExecutionContext context, Path path, Charset charset,
+                                  Map<String, String> restored) throws Exception {
+        CheckpointCoordinator checkpoints = context.getCheckpointCoordinator();
+        String fileKey = fileKey(path);
+        
+        // A checkpoint of the failed run is ahead of the state of the last successful one
+        Map<String, String> previous = restored != null && restored.get("fileKey") != null ? restored
+            : checkpoints.restoreRunState(this);
+        if (previous != null && !path.equals(Paths.get(previous.get("file")))) {
+            warn(context, "Last run read " + previous.get("file") + ", reading " + path + " from the start");
+            previous = null;
+        }
+        
+        int[] rowCount = {0};
+        String[][] headers = {null};
+        // The file read last, its key and the offset and line reached
+        Path endPath = path;
+        String endKey = fileKey;
+        long[] end = null;
+        if (previous != null) {
+            long offset = Long.parseLong(previous.get("offset"));
+            long lines = Long.parseLong(previous.get("line"));
+            if (fileKey.equals(previous.get("fileKey"))) {
+                if (isUnchangedUpTo(path, offset, previous.get("checksum"))) {
+                    info(context, "Resuming at byte offset " + offset + " (line " + lines + ")");
+                    end = readAppended(context, path, path, fileKey, charset, offset, lines, headers, rowCount);
+                } else {
+                    warn(context, path + " was truncated or rewritten since the last run, reading from the start");
+                }
+            } else {
+                Path rotated = findFile(path, previous.get("fileKey"));
+                if (rotated != null && isUnchangedUpTo(rotated, offset, previous.get("checksum"))) {
+                    info(context, path + " was rotated to " + rotated + ", reading its rest from byte offset "
+                        + offset + " first");
+                    long[] rotatedEnd = readAppended(context, path, rotated, previous.get("fileKey"), charset,
+                        offset, lines, headers, rowCount);
+                    if (isCancelled()) {
+                        // The next run continues in the rotated file
+                        endPath = rotated;
+                        endKey = previous.get("fileKey");
+                        end = rotatedEnd;
+                    }
+                } else {
+                    warn(context, path + " was replaced since the last run and the previous file was not found "
+                        + "unchanged next to it, reading the new file from the start");
+                }
+            }
+        }
+        if (end == null) {
+            end = readAppended(context, path, path, fileKey, charset, 0, 0, headers, rowCount);
+        }
+        
+        Map<String, String> state = new HashMap<>();
+        state.put("file", path.toString());
+        state.put("fileKey", endKey);
+        state.put("offset", Long.toString(end[0]));
+        state.put("line", Long.toString(end[1]));
+        state.put("checksum", checksum(endPath, end[0]));
+        checkpoints.keepRunState(this, state);
+        return rowCount[0];
+    }
+    
+    /**
+     * Sends the complete records of a file after an offset. A last record without its line
+     * break may still be being written, it is left for the next run.
+     *
+     * @param file the file read incrementally
+     * @param path the file to read, the file itself or the one it was rotated to
+     * @param headers the headers of the files read before, set to those of this file
+     * @return the offset and line after the last record sent
+     */
+    private long[] readAppended(ExecutionContext context, Path file, Path path, String fileKey, Charset charset,
+                                long offset, long lines, String[][] headers, int[] rowCount) throws Exception {
+        CheckpointCoordinator checkpoints = context.getCheckpointCoordinator();
+        // Not buffered, so skipping to the offset seeks in the file
+        try (CsvTokenizer tokenizer = tokenizer(Files.newInputStream(path), charset)) {
+            if (charset.equals(StandardCharsets.UTF_8)
+                    && Arrays.equals(readBytes(path, 0, UTF8_BYTE_ORDER_MARK.length), UTF8_BYTE_ORDER_MARK)) {
+                tokenizer.skipTo(UTF8_BYTE_ORDER_MARK.length, 0);
+            }
+            long lineCount = 0;
+            String[] fileHeaders = null;
+            if (delimiter != null) {
+                if (!tokenizer.next() || !tokenizer.lineEnded()) {
+                    // Nothing but a header that is still being written
+                    return new long[] {offset, lines};
+                }
+                fileHeaders = tokenizer.fields();
+                lineCount = tokenizer.lastLine();
+            }
+            if (headers[0] != null && !Arrays.equals(fileHeaders, headers[0])) {
+                throw new IOException("Columns of " + path + " differ from those of the file read before: "
+                    + String.join(", ", fileHeaders));
+            }
+            if (headers[0] == null) {
+                headers[0] = fileHeaders;
+                updateSchema(context, fileHeaders);
+            }
+            boolean[] required = requiredFields(context, fileHeaders);
+            if (offset > tokenizer.getOffset()) {
+                tokenizer.skipTo(offset, lines);
+                lineCount = lines;
+            }
+            
+            RowMetadata metadata = metadata(path);
+            long end = tokenizer.getOffset();
+            while (tokenizer.next() && tokenizer.lineEnded()) {
+                if (isCancelled()) {
+                    info(context, "No more rows needed downstream, stopping at line " + lineCount);
+                    break;
+                }
+                lineCount = tokenizer.lastLine();
+                end = tokenizer.getOffset();
+                sendRow(createRow(tokenizer, fileHeaders, required, metadata));
+                rowCount[0]++;
+                
+                if (rowCount[0] % 1000 == 0) {
+                    info(context, "Processed " + rowCount[0] + " rows");
+                }
+                
+                if (checkpoints.isCheckpointDue(rowCount[0])) {
+                    sendRow(checkpoints.checkpoint(this, Map.of(
+                        "file", file.toString(),
+                        "fileKey", fileKey,
+                        "offset", Long.toString(end),
+                        "line", Long.toString(lineCount))));
+                }
+            }
+            return new long[] {end, lineCount};
+        }
+    }
+    
+    /**
+     * Identifies a file across renames, by its inode on Unix.
+     */
+    private static String fileKey(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        return attributes.fileKey() != null ? attributes.fileKey().toString()
+            : attributes.creationTime().toString();
+    }
+    
+    /**
+     * Finds the file with the given key in the directory of another, null if there is none.
+     */
+    private static Path findFile(Path sibling, String fileKey) throws IOException {
+        Path directory = sibling.toAbsolutePath().getParent();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file) && fileKey.equals(fileKey(file))) {
+                    return file;
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Checks that a file still has the bytes before an offset it had when their checksum
+     * was taken.
+     */
+    private static boolean isUnchangedUpTo(Path path, long offset, String checksum) throws IOException {
+        return Files.size(path) >= offset && (checksum == null || checksum.equals(checksum(path, offset)));
+    }
+    
+    private static String checksum(Path path, long offset) throws IOException {
+        long start = Math.max(0, offset - CHECKSUM_LENGTH);
+        CRC32 crc = new CRC32();
+        crc.update(readBytes(path, start, (int) (offset - start)));
+        return Long.toHexString(crc.getValue());
+    }
+    
+    private static byte[] readBytes(Path path, long offset, int length) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        try (SeekableByteChannel channel = Files.newByteChannel(path)) {
+            channel.position(offset);
+            while (bytes.hasRemaining() && channel.read(bytes) > 0) {
+                // Read until the length or the end of the file
+            }
+        }
+        return Arrays.copyOf(bytes.array(), bytes.position());
+    }
+    
+    /**
+     * Reads several files, up to one per thread at a time. Each file is read by one thread
+     * into batches of rows, which are sent from the calling thread: in file order if the
+     * source is ordered, then checkpoints are taken too, else as they are read. All files
+     * must have the headers of the first one.
+     *
+     * @return the number of rows sent
+     */
+    private int readFiles(ExecutionContext context, List<Path> files, Charset charset, int threads,
+                          Map<String, String> restored) throws Exception {
+        CheckpointCoordinator checkpoints = context.getCheckpointCoordinator();
+        boolean checkpointing = checkpoints.isEnabled(this) && ordered;
+        if (checkpoints.isEnabled(this) && !ordered) {
+            warn(context, "Rows are read out of order, no checkpoints are taken");
+        }
+        
+        // Files before the one of the checkpoint have been read completely
+        int first = 0;
+        long offset = 0;
+        long lines = 0;
+        if (restored != null && checkpointing) {
+            int index = restored.get("file") == null ? -1 : files.indexOf(Paths.get(restored.get("file")));
+            if (index < 0) {
+                warn(context, "Checkpoint file " + restored.get("file") + " no longer matches, reading from the start");
+            } else {
+                first = index;
+                offset = Long.parseLong(restored.get("offset"));
+                lines = Long.parseLong(restored.get("line"));
+                info(context, "Resuming " + files.get(first) + " at byte offset " + offset + " (line " + lines + ")");
+            }
+        }
+        
+        // The headers of the first file that is not empty define the columns
+        String[] headers = null;
+        Path headerFile = null;
+        for (int i = first; delimiter != null && headers == null && i < files.size(); i++) {
+            try (CsvTokenizer tokenizer = open(files.get(i), charset, CompressedInput.detect(files.get(i)), 1)) {
+                if (tokenizer.next()) {
+                    headers = tokenizer.fields();
+                    headerFile = files.get(i);
+                }
+            }
+        }
+        updateSchema(context, headers);
+        boolean[] required = requiredFields(context, headers);
+        
+        int count = files.size() - first;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, count), runnable -> {
+            Thread thread = new Thread(runnable, "file-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicBoolean stopped = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<BlockingQueue<FileBatch>> queues = new ArrayList<>();
+        BlockingQueue<FileBatch> shared = ordered ? null : new ArrayBlockingQueue<>(FILE_QUEUE_CAPACITY * threads);
+        Path expectedFile = headerFile;
+        try {
+            for (int i = first; i < files.size(); i++) {
+                Path path = files.get(i);
+                BlockingQueue<FileBatch> queue = ordered ? new ArrayBlockingQueue<>(FILE_QUEUE_CAPACITY) : shared;
+                queues.add(queue);
+                String[] expected = headers;
+                long skip = i == first ? offset : 0;
+                long skipLines = i == first ? lines : 0;
+                pool.submit(() -> {
+                    try {
+                        readFile(path, charset, expected, required, expectedFile, skip, skipLines, queue, stopped);
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                        stopped.set(true);
+                    }
+                    try {
+                        queue.put(FileBatch.END);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            
+            int rowCount = 0;
+            int ended = 0;
+            int current = 0;
+            while (ended < count && !stopped.get()) {
+                FileBatch batch = queues.get(current).take();
+                if (batch == FileBatch.END) {
+                    ended++;
+                    if (ordered) {
+                        current++;
+                    }
+                    continue;
+                }
+                for (int i = 0; i < batch.rows.size(); i++) {
+                    if (isCancelled()) {
+                        info(context, "No more rows needed downstream, stopping in " + batch.path);
+                        stopped.set(true);
+                        break;
+                    }
+                    sendRow(batch.rows.get(i));
+                    rowCount++;
+                    
+                    if (rowCount % 1000 == 0) {
+                        info(context, "Processed " + rowCount + " rows");
+                    }
+                    
+                    if (checkpointing && checkpoints.isCheckpointDue(rowCount)) {
+                        sendRow(checkpoints.checkpoint(this, Map.of(
+                            "file", batch.path.toString(),
+                            "offset", Long.toString(batch.offsets[i]),
+                            "line", Long.toString(batch.lines[i]))));
+                    }
+                }
+            }
+            Throwable error = failure.get();
+            if (error instanceof Exception) {
+                throw (Exception) error;
+            } else if (error != null) {
+                throw new IOException("Reading " + filepath + " failed", error);
+            }
+            return rowCount;
+        } finally {
+            stopped.set(true);
+            pool.shutdownNow();
+        }
+    }
+    
+    /**
+     * Reads the records of one of several files into batches, see {@link #readFiles}.
+     *
+     * @param headers the headers the file must have, null if files have none
+     * @param headerFile the file the headers are from, for error messages
+     */
+    private void readFile(Path path, Charset charset, String[] headers, boolean[] required, Path headerFile,
+                          long offset, long lines, BlockingQueue<FileBatch> queue, AtomicBoolean stopped)
+            throws Exception {
+        try (CsvTokenizer tokenizer = open(path, charset, CompressedInput.detect(path), 1)) {
+            if (headers != null) {
+                if (!tokenizer.next()) {
+                    // An empty file has no rows to add
+                    return;
+                }
+                if (!Arrays.equals(tokenizer.fields(), headers)) {
+                    throw new IOException("Columns of " + path + " differ from those of " + headerFile + ": "
+                        + String.join(", ", tokenizer.fields()));
+                }
+            }
+            if (offset > 0) {
+                tokenizer.skipTo(offset, lines);
+            }
+            
+            RowMetadata metadata = metadata(path);
+            FileBatch batch = new FileBatch(path);
+            while (!stopped.get() && tokenizer.next()) {
+                Row row = createRow(tokenizer, headers, required, metadata);
+                batch.add(row, tokenizer.getOffset(), tokenizer.lastLine());
+                if (batch.rows.size() == FILE_BATCH_SIZE) {
+                    queue.put(batch);
+                    batch = new FileBatch(path);
+                }
+            }
+            if (!batch.rows.isEmpty()) {
+                queue.put(batch);
+            }
+        }
+    }
+    
+    /**
+     * Rows read from a file with the position after each, passed from a file reader thread.
+     */
+    private static final class FileBatch {
+        static final FileBatch END = new FileBatch(null);
+        
+        final Path path;
+        final List<Row> rows = new ArrayList<>(FILE_BATCH_SIZE);
+        final long[] offsets = new long[FILE_BATCH_SIZE];
+        final long[] lines = new long[FILE_BATCH_SIZE];
+        
+        FileBatch(Path path) {
+            this.path = path;
+        }
+        
+        void add(Row row, long offset, long line) {
+            offsets[rows.size()] = offset;
+            lines[rows.size()] = line;
+            rows.add(row);
+        }
+    }
+    
+    /**
+     * Finds the files to read: the file at the path, the files in it if it is a directory,
+     * or the files matching it if it is a glob pattern such as
+     * {@code /data/in/2026-10-*}{@code /part-*.csv}. They are sorted by path, so they are read
+     * in the same order in every run.
+     */
+    static List<Path> resolveFiles(String filepath) throws IOException {
+        int glob = indexOfGlob(filepath);
+        if (glob < 0) {
+            Path path = Paths.get(filepath);
+            if (!Files.isDirectory(path)) {
+                return List.of(path);
+            }
+            try (Stream<Path> files = Files.list(path)) {
+                return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+        }
+        
+        // Walk the directories from the last one before the pattern
+        int separator = Math.max(filepath.lastIndexOf('/', glob), filepath.lastIndexOf(File.separatorChar, glob));
+        Path base = Paths.get(separator < 0 ? "." : filepath.substring(0, separator + 1));
+        String pattern = filepath.substring(separator + 1);
+        if (!Files.isDirectory(base)) {
+            return List.of();
+        }
+        PathMatcher matcher = base.getFileSystem().getPathMatcher("glob:" + pattern);
+        int depth = pattern.contains("**") ? Integer.MAX_VALUE : pattern.split("/").length;
+        try (Stream<Path> files = Files.walk(base, depth)) {
+            return files.filter(Files::isRegularFile)
+                .filter(file -> matcher.matches(base.relativize(file)))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+    
+    private static int indexOfGlob(String path) {
+        for (int i = 0; i < path.length(); i++) {
+            if ("*?[{".indexOf(path.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Sets the output schema for the headers read, which may differ from those of the file
+     * the flow was compiled with.
+     */
+    private void updateSchema(ExecutionContext context, String[] headers) {
+        Schema schema = requiredColumns != null ? schemaOf(headers).select(requiredColumns) : schemaOf(headers);
+        if (getOutputSchema() != null && !getOutputSchema().getColumnNames().equals(schema.getColumnNames())) {
+            warn(context, "Columns of " + filepath + " differ from those the flow was compiled with, now "
+                + schema.getColumnNames());
+        }
+        setOutputSchema(schema);
+    }
+    
+    /**
+     * Gets which fields to decode by index, null without headers.
+     */
+    private boolean[] requiredFields(ExecutionContext context, String[] headers) {
+        if (headers == null) {
+            return null;
+        }
+        boolean[] required = new boolean[headers.length];
+        for (int i = 0; i < headers.length; i++) {
+            required[i] = isRequired(headers[i]);
+        }
+        if (requiredColumns != null) {
+            debug(context, "Reading columns " + requiredColumns);
+        }
+        return required;
+    }
+    
+    // Shared by the rows of a file
+    private static RowMetadata metadata(Path path) {
+        RowMetadata metadata = new RowMetadata();
+        metadata.setSourceId(path.toString());
+        metadata.setSourceType("file");
+        return metadata;
+    }
+    
+    /**
+     * Infers the schema from the header line of the file, if the file exists at compile time.
+     */
+    @Override
+    public Schema inferOutputSchema(Schema input) throws IOException {
+        if (filepath == null) {
+            return null;
+        }
+        List<Path> files = resolveFiles(filepath);
+        if (files.isEmpty() || !Files.isRegularFile(files.get(0))) {
+            return null;
+        }
+        String[] headers = null;
+        if (delimiter != null) {
+            Path path = files.get(0);
+            try (CsvTokenizer tokenizer = open(path, charset(), CompressedInput.detect(path), 1)) {
+                if (tokenizer.next()) {
+                    headers = tokenizer.fields();
+                }
+            }
+        }
+        return schemaOf(headers);
+    }
+    
+    /**
+     * Gets the schema of the rows created by {@link #createRow}.
+     */
+    private static Schema schemaOf(String[] headers) {
+        Schema schema = new Schema().column("_line", DataType.INTEGER);
+        if (headers == null) {
+            return schema.column("line", DataType.STRING);
+        }
+        for (String header : headers) {
+            schema.column(header, DataType.STRING);
+        }
+        return schema;
+    }
+    
+    @Override
+    public void setRequiredColumns(Set<String> columns) {
+        this.requiredColumns = columns;
+    }
+    
+    private boolean isRequired(String column) {
+        return requiredColumns == null || requiredColumns.contains(column);
+    }
+    
+    private Charset charset() {
+        return (encoding == null || encoding.isEmpty()) ? StandardCharsets.UTF_8 : Charset.forName(encoding);
+    }
+    
+    /**
+     * Opens the file with a tokenizer, decompressing it if it is compressed. A UTF-8 byte order
+     * mark is skipped, files in encodings the tokenizer cannot split on their bytes are
+     * transcoded to UTF-8.
+     *
+     * @param compression the compression format of the file, null if it is not compressed
+     * @param threads the number of threads decompressing the file, if its format allows
+     */
+    private CsvTokenizer open(Path path, Charset charset, String compression, int threads) throws IOException {
+        InputStream in = CompressedInput.open(path, compression, threads);
+        if (!CsvTokenizer.supports(charset)) {
+            return tokenizer(new TranscodingInputStream(in, charset), StandardCharsets.UTF_8);
+        }
+        boolean byteOrderMark = charset.equals(StandardCharsets.UTF_8) && startsWithByteOrderMark(in);
+        CsvTokenizer tokenizer = tokenizer(in, charset);
+        if (byteOrderMark) {
+            tokenizer.skipTo(UTF8_BYTE_ORDER_MARK.length, 0);
+        }
+        return tokenizer;
+    }
+    
+    private static boolean startsWithByteOrderMark(InputStream in) throws IOException {
+        in.mark(UTF8_BYTE_ORDER_MARK.length);
+        boolean found = Arrays.equals(in.readNBytes(UTF8_BYTE_ORDER_MARK.length), UTF8_BYTE_ORDER_MARK);
+        in.reset();
+        return found;
+    }
+    
+    /**
+     * Creates a tokenizer splitting records at the delimiter, or only into lines without one.
+     */
+    private CsvTokenizer tokenizer(InputStream in, Charset charset) {
+        if (delimiter == null) {
+            return new CsvTokenizer(in, charset, CsvTokenizer.NONE, CsvTokenizer.NONE, CsvTokenizer.NONE);
+        }
+        return new CsvTokenizer(in, charset, delimiterByte(), quoteByte(), escapeByte());
+    }
+    
+    private int delimiterByte() {
+        int b = CsvTokenizer.byteOf(delimiter);
+        if (b < 0) {
+            throw new IllegalArgumentException("Delimiter must be a single ASCII character: " + delimiter);
+        }
+        return b;
+    }
+    
+    // An empty quote turns quoting off, without a value the double quote is used
+    private int quoteByte() {
+        return specialByte("Quote", quote == null ? "\"" : quote);
+    }
+    
+    // Without a value quotes are escaped by doubling them
+    private int escapeByte() {
+        return escape == null ? quoteByte() : specialByte("Escape", escape);
+    }
+    
+    private int specialByte(String name, String value) {
+        if (value.isEmpty()) {
+            return CsvTokenizer.NONE;
+        }
+        int b = CsvTokenizer.byteOf(value);
+        if (b < 0 || value.equals(delimiter)) {
+            throw new IllegalArgumentException(name + " must be a single ASCII character other than the delimiter: "
+                + value);
+        }
+        return b;
+    }
+    
+    private Row createRow(ChunkedCsvReader.CsvRecord record, String[] headers, RowMetadata metadata) {
+        Row row = new Row();
+        row.setId(UUID.randomUUID().toString());
+        row.setMetadata(metadata);
+        
+        HashMap<String, Object> data = new HashMap<>();
+        if (isRequired("_line")) {
+            data.put("_line", (int) record.line);
+        }
+        for (int i = 0; i < headers.length; i++) {
+            // Null for fields the line lacks and those not required
+            if (record.fields[i] != null) {
+                data.put(headers[i], record.fields[i]);
+            }
+        }
+        
+        row.setData(data);
+        return row;
+    }
+    
+    private Row createRow(CsvTokenizer tokenizer, String[] headers, boolean[] required, RowMetadata metadata) {
         Row row = new Row();
         row.setId(UUID.randomUUID().toString());
+        row.setMetadata(metadata);
         
         HashMap<String, Object> data = new HashMap<>();
         
         // Add the line number
-        data.put("_line", lineNumber);
+        if (isRequired("_line")) {
+            data.put("_line", (int) tokenizer.line());
+        }
         
-        // If we have headers and delimiter, parse as structured data
-        if (headers != null && delimiter != null) {
-            String[] values = line.split(delimiter, -1); // -1 to include empty trailing fields
-            
-            // Map each value to its corresponding header
-            for (int i = 0; i < Math.min(headers.length, values.length); i++) {
-                data.put(headers[i], values[i]);
+        // If we have headers, map each required field to its header
+        if (headers != null) {
+            for (int i = 0; i < Math.min(headers.length, tokenizer.fieldCount()); i++) {
+                if (required[i]) {
+                    data.put(headers[i], tokenizer.field(i));
+                }
             }
-        } else {
+        } else if (isRequired("line")) {
             // Otherwise just store the raw line
-            data.put("line", line);
+            data.put("line", tokenizer.field(0));
         }
         
         row.setData(data);
         return row;
     }
-    
-    private <T> T getParameter(String name, Class<T> type) {
-        return (T) getParameters().stream()
-            .filter(p -> p.getName().equals(name))
-            .findFirst()
-            .map(p -> p.getValue())
-            .orElse(null);
-    }
 } 
\ No newline at end of file
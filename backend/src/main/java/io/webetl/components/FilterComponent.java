@@ -2,9 +2,15 @@ package io.webetl.components;
 
 import io.webetl.annotation.ETLComponentDefinition;
 import io.webetl.model.component.TransformComponent;
+import io.webetl.model.component.ColumnUsage;
+import io.webetl.model.component.Param;
+import io.webetl.model.component.SchemaProvider;
 import io.webetl.model.component.parameter.StringParameter;
 import io.webetl.model.data.Row;
+import io.webetl.model.data.Schema;
 import io.webetl.runtime.ExecutionContext;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 @ETLComponentDefinition(
     id = "filter",
@@ -13,11 +19,15 @@ import io.webetl.runtime.ExecutionContext;
     icon = "FilterIcon",
     backgroundColor = "#e3f2fd"
 )
-public class FilterComponent extends TransformComponent {
+public class FilterComponent extends TransformComponent implements SchemaProvider, ColumnUsage {
+    @Param("condition")
+    private String condition;
+
     public FilterComponent() {
         getParameters().add(StringParameter.builder()
             .name("condition")
             .label("Filter Condition")
+            .description("Condition rows must meet, e.g. country = 'DE' AND (amount >= 100 OR vip = TRUE)")
             .required(true)
             .build());
     }
@@ -27,8 +37,8 @@ public class FilterComponent extends TransformComponent {
         // Implementation for filtering
         info(context, "Executing filter component");
         
-        String condition = getParameter("condition", String.class);
         info(context, "Using filter condition: " + condition);
+        FilterCondition filter = FilterCondition.parse(condition);
         
         try {
             while (true) {
@@ -43,11 +53,7 @@ public class FilterComponent extends TransformComponent {
                 
                 debug(context, "Filtering row: " + row);
                 
-                // TODO: Implement actual filtering based on condition
-                // For now, we're passing all rows
-                boolean passes = evaluateCondition(row, condition);
-                
-                if (passes) {
+                if (filter.matches(row)) {
                     info(context, "Row passed filter, forwarding to next component");
                     sendRow(row);
                 } else {
@@ -64,17 +70,34 @@ public class FilterComponent extends TransformComponent {
         }
     }
     
-    private boolean evaluateCondition(Row row, String condition) {
-        // TODO: Implement actual condition evaluation
-        // This is a placeholder that passes all rows
-        return true;
+    /**
+     * Filtering passes rows on unchanged. The condition is checked against the input, so
+     * an invalid condition or one referring to a missing column fails the compilation.
+     */
+    @Override
+    public Schema inferOutputSchema(Schema input) {
+        FilterCondition filter = FilterCondition.parse(condition);
+        if (input != null) {
+            for (String column : filter.getColumns()) {
+                if (input.indexOf(column) < 0) {
+                    throw new IllegalArgumentException("Filter condition refers to column " + column
+                        + ", the input has " + input.getColumnNames());
+                }
+            }
+        }
+        return input;
     }
     
-    private <T> T getParameter(String name, Class<T> type) {
-        return (T) getParameters().stream()
-            .filter(p -> p.getName().equals(name))
-            .findFirst()
-            .map(p -> p.getValue())
-            .orElse(null);
+    /**
+     * The filter reads the columns of its condition besides those it passes on.
+     */
+    @Override
+    public Set<String> inputColumns(Set<String> outputColumns) {
+        if (outputColumns == null) {
+            return null;
+        }
+        Set<String> columns = new LinkedHashSet<>(outputColumns);
+        columns.addAll(FilterCondition.parse(condition).getColumns());
+        return columns;
     }
 } 
\ No newline at end of file
@@ -0,0 +1,670 @@
+package io.webetl.components;
+
+import io.webetl.model.data.ColumnDefinition;
+import io.webetl.model.data.DataType;
+import io.webetl.model.data.Row;
+import io.webetl.model.data.Schema;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * FilterCondition is the parsed condition of a {@link FilterComponent}: comparisons of
+ * columns with literals, combined with AND, OR, NOT and parentheses, for example
+ * {@code country = 'DE' AND (amount >= 100 OR vip = TRUE) AND email IS NOT NULL}.
+ * <p>
+ * Literals are strings in single quotes ({@code ''} escapes a quote), numbers and TRUE or
+ * FALSE; columns are identifiers or names in double quotes. Numbers compare numerically,
+ * with text values parsed as numbers; strings compare as text.
+ * <p>
+ * Conditions are evaluated with the three-valued logic of SQL: a comparison involving null
+ * is unknown, and a row only passes if the condition is true. Where the types of the columns
+ * are known, a condition can mean the same in a filter and in a WHERE clause, so the flow
+ * compiler can push it into the query of a database source, see
+ * {@link #isSqlExpressible(Schema, String)} and {@link #toSql(String)}.
+ */
+public final class FilterCondition {
+    private static final FilterCondition ALL = new FilterCondition(null);
+
+    // null for the empty condition, which every row passes
+    private final Node root;
+
+    private FilterCondition(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Parses a condition. A null or blank condition passes every row.
+     *
+     * @throws IllegalArgumentException if the condition is not valid
+     */
+    public static FilterCondition parse(String condition) {
+        if (condition == null || condition.isBlank()) {
+            return ALL;
+        }
+        Parser parser = new Parser(condition);
+        Node root = parser.parseOr();
+        parser.expectEnd();
+        return new FilterCondition(root);
+    }
+
+    /**
+     * Combines conditions with AND.
+     */
+    public static FilterCondition and(List<FilterCondition> conditions) {
+        List<Node> operands = new ArrayList<>();
+        for (FilterCondition condition : conditions) {
+            if (condition.root != null) {
+                operands.add(condition.root);
+            }
+        }
+        if (operands.isEmpty()) {
+            return ALL;
+        }
+        return new FilterCondition(operands.size() == 1 ? operands.get(0) : new And(operands));
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * Checks whether a row passes the condition.
+     */
+    public boolean matches(Row row) {
+        return matches(row.getData());
+    }
+
+    /**
+     * Checks whether the values of a row pass the condition, i.e. it is true for them.
+     */
+    public boolean matches(Map<String, Object> values) {
+        return root == null || Boolean.TRUE.equals(root.evaluate(values));
+    }
+
+    /**
+     * Splits the condition into the operands of its top-level AND; a condition without
+     * one is its only operand.
+     */
+    public List<FilterCondition> conjuncts() {
+        if (root == null) {
+            return List.of();
+        }
+        if (!(root instanceof And)) {
+            return List.of(this);
+        }
+        List<FilterCondition> conjuncts = new ArrayList<>();
+        for (Node operand : ((And) root).operands) {
+            conjuncts.add(new FilterCondition(operand));
+        }
+        return conjuncts;
+    }
+
+    /**
+     * Gets the names of the columns the condition refers to.
+     */
+    public Set<String> getColumns() {
+        Set<String> columns = new LinkedHashSet<>();
+        if (root != null) {
+            root.collectColumns(columns);
+        }
+        return Collections.unmodifiableSet(columns);
+    }
+
+    /**
+     * Checks whether {@link #toSql(String)} selects the same rows in a database of the given
+     * type as the condition does in a filter, for rows of the given schema. Every column
+     * must be in the schema, and every literal must be compared with a column of its own
+     * type: a filter compares text values with numbers numerically, a database does not.
+     * Strings are only compared for equality, as databases order them by their collation,
+     * and not at all on MySQL, whose default collations ignore case and trailing spaces.
+     *
+     * @param schema the schema of the rows the filter receives
+     * @param dbType the type of the database, as in the database source
+     */
+    public boolean isSqlExpressible(Schema schema, String dbType) {
+        return root != null && schema != null && root.isSqlExpressible(schema, "mysql".equals(dbType));
+    }
+
+    /**
+     * Formats the condition as a SQL boolean expression for a database of the given type.
+     * Columns are quoted, so they keep their case.
+     *
+     * @param dbType the type of the database, as in the database source
+     * @throws IllegalStateException if the condition is empty
+     */
+    public String toSql(String dbType) {
+        if (root == null) {
+            throw new IllegalStateException("The empty condition has no SQL form");
+        }
+        return root.format(column -> column.sql(dbType));
+    }
+
+    /**
+     * Formats the condition in the syntax {@link #parse} reads, the empty string for the
+     * empty condition.
+     */
+    @Override
+    public String toString() {
+        return root == null ? "" : root.format(Column::format);
+    }
+
+    private interface Node {
+        /**
+         * @return true, false, or null for unknown
+         */
+        Boolean evaluate(Map<String, Object> values);
+
+        String format(Function<Column, String> columns);
+
+        boolean isSqlExpressible(Schema schema, boolean mysql);
+
+        void collectColumns(Set<String> columns);
+    }
+
+    private static final class And implements Node {
+        final List<Node> operands;
+
+        And(List<Node> operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        public Boolean evaluate(Map<String, Object> values) {
+            boolean unknown = false;
+            for (Node operand : operands) {
+                Boolean value = operand.evaluate(values);
+                if (value == null) {
+                    unknown = true;
+                } else if (!value) {
+                    return false;
+                }
+            }
+            return unknown ? null : true;
+        }
+
+        @Override
+        public String format(Function<Column, String> columns) {
+            return join(operands, " AND ", columns);
+        }
+
+        @Override
+        public boolean isSqlExpressible(Schema schema, boolean mysql) {
+            return operands.stream().allMatch(operand -> operand.isSqlExpressible(schema, mysql));
+        }
+
+        @Override
+        public void collectColumns(Set<String> columns) {
+            operands.forEach(operand -> operand.collectColumns(columns));
+        }
+    }
+
+    private static final class Or implements Node {
+        final List<Node> operands;
+
+        Or(List<Node> operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        public Boolean evaluate(Map<String, Object> values) {
+            boolean unknown = false;
+            for (Node operand : operands) {
+                Boolean value = operand.evaluate(values);
+                if (value == null) {
+                    unknown = true;
+                } else if (value) {
+                    return true;
+                }
+            }
+            return unknown ? null : false;
+        }
+
+        @Override
+        public String format(Function<Column, String> columns) {
+            return "(" + join(operands, " OR ", columns) + ")";
+        }
+
+        @Override
+        public boolean isSqlExpressible(Schema schema, boolean mysql) {
+            return operands.stream().allMatch(operand -> operand.isSqlExpressible(schema, mysql));
+        }
+
+        @Override
+        public void collectColumns(Set<String> columns) {
+            operands.forEach(operand -> operand.collectColumns(columns));
+        }
+    }
+
+    private static final class Not implements Node {
+        final Node operand;
+
+        Not(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public Boolean evaluate(Map<String, Object> values) {
+            Boolean value = operand.evaluate(values);
+            return value == null ? null : !value;
+        }
+
+        @Override
+        public String format(Function<Column, String> columns) {
+            return "NOT (" + operand.format(columns) + ")";
+        }
+
+        @Override
+        public boolean isSqlExpressible(Schema schema, boolean mysql) {
+            return operand.isSqlExpressible(schema, mysql);
+        }
+
+        @Override
+        public void collectColumns(Set<String> columns) {
+            operand.collectColumns(columns);
+        }
+    }
+
+    private static final class Comparison implements Node {
+        final Column column;
+        final String operator;
+        final Object literal;
+
+        Comparison(Column column, String operator, Object literal) {
+            this.column = column;
+            this.operator = operator;
+            this.literal = literal;
+        }
+
+        @Override
+        public Boolean evaluate(Map<String, Object> values) {
+            Object value = values.get(column.name);
+            if (value == null) {
+                return null;
+            }
+            int comparison;
+            if (literal instanceof BigDecimal) {
+                BigDecimal number = toDecimal(value);
+                if (number == null) {
+                    return null;
+                }
+                comparison = number.compareTo((BigDecimal) literal);
+            } else if (literal instanceof Boolean) {
+                Boolean bool = toBoolean(value);
+                if (bool == null) {
+                    return null;
+                }
+                comparison = Boolean.compare(bool, (Boolean) literal);
+            } else {
+                comparison = value.toString().compareTo((String) literal);
+            }
+            switch (operator) {
+                case "=": return comparison == 0;
+                case "<>": return comparison != 0;
+                case "<": return comparison < 0;
+                case "<=": return comparison <= 0;
+                case ">": return comparison > 0;
+                default: return comparison >= 0;
+            }
+        }
+
+        @Override
+        public String format(Function<Column, String> columns) {
+            String value;
+            if (literal instanceof String) {
+                value = "'" + ((String) literal).replace("'", "''") + "'";
+            } else if (literal instanceof BigDecimal) {
+                value = ((BigDecimal) literal).toPlainString();
+            } else {
+                value = (Boolean) literal ? "TRUE" : "FALSE";
+            }
+            return columns.apply(column) + " " + operator + " " + value;
+        }
+
+        @Override
+        public boolean isSqlExpressible(Schema schema, boolean mysql) {
+            DataType type = column.type(schema);
+            if (type == null) {
+                return false;
+            }
+            if (literal instanceof BigDecimal) {
+                return type == DataType.INTEGER || type == DataType.LONG || type == DataType.DOUBLE
+                    || type == DataType.DECIMAL;
+            }
+            if (literal instanceof Boolean) {
+                return type == DataType.BOOLEAN;
+            }
+            return type == DataType.STRING && !mysql && (operator.equals("=") || operator.equals("<>"))
+                && ((String) literal).indexOf('\\') < 0;
+        }
+
+        @Override
+        public void collectColumns(Set<String> columns) {
+            columns.add(column.name);
+        }
+    }
+
+    private static final class NullCheck implements Node {
+        final Column column;
+        final boolean negated;
+
+        NullCheck(Column column, boolean negated) {
+            this.column = column;
+            this.negated = negated;
+        }
+
+        @Override
+        public Boolean evaluate(Map<String, Object> values) {
+            return (values.get(column.name) == null) != negated;
+        }
+
+        @Override
+        public String format(Function<Column, String> columns) {
+            return columns.apply(column) + (negated ? " IS NOT NULL" : " IS NULL");
+        }
+
+        @Override
+        public boolean isSqlExpressible(Schema schema, boolean mysql) {
+            return column.type(schema) != null;
+        }
+
+        @Override
+        public void collectColumns(Set<String> columns) {
+            columns.add(column.name);
+        }
+    }
+
+    private static final class Column {
+        final String name;
+        final boolean quoted;
+
+        Column(String name, boolean quoted) {
+            this.name = name;
+            this.quoted = quoted;
+        }
+
+        String format() {
+            return quoted ? quote('"') : name;
+        }
+
+        String sql(String dbType) {
+            return quote("mysql".equals(dbType) ? '`' : '"');
+        }
+
+        /**
+         * Gets the type of the column in a schema, null if the schema has no such column.
+         */
+        DataType type(Schema schema) {
+            ColumnDefinition definition = schema.getColumns().get(name);
+            return definition != null ? definition.getType() : null;
+        }
+
+        private String quote(char quote) {
+            String q = String.valueOf(quote);
+            return q + name.replace(q, q + q) + q;
+        }
+    }
+
+    private static String join(List<Node> operands, String operator, Function<Column, String> columns) {
+        StringBuilder text = new StringBuilder();
+        for (Node operand : operands) {
+            if (text.length() > 0) {
+                text.append(operator);
+            }
+            text.append(operand.format(columns));
+        }
+        return text.toString();
+    }
+
+    private static BigDecimal toDecimal(Object value) {
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        }
+        if (value instanceof BigInteger) {
+            return new BigDecimal((BigInteger) value);
+        }
+        if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            return Double.isFinite(d) ? BigDecimal.valueOf(d) : null;
+        }
+        if (value instanceof Number) {
+            return BigDecimal.valueOf(((Number) value).longValue());
+        }
+        try {
+            return new BigDecimal(value.toString().trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Boolean toBoolean(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        String text = value.toString().trim();
+        if (text.equalsIgnoreCase("true")) {
+            return true;
+        }
+        if (text.equalsIgnoreCase("false")) {
+            return false;
+        }
+        return null;
+    }
+
+    /**
+     * Recursive descent parser: or := and (OR and)*, and := not (AND not)*,
+     * not := NOT not | ( or ) | comparison.
+     */
+    private static final class Parser {
+        private final String text;
+        private int position;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Node parseOr() {
+            List<Node> operands = new ArrayList<>();
+            operands.add(parseAnd());
+            while (acceptKeyword("OR")) {
+                operands.add(parseAnd());
+            }
+            return operands.size() == 1 ? operands.get(0) : new Or(operands);
+        }
+
+        private Node parseAnd() {
+            List<Node> operands = new ArrayList<>();
+            operands.add(parseNot());
+            while (acceptKeyword("AND")) {
+                operands.add(parseNot());
+            }
+            return operands.size() == 1 ? operands.get(0) : new And(operands);
+        }
+
+        private Node parseNot() {
+            if (acceptKeyword("NOT")) {
+                return new Not(parseNot());
+            }
+            if (accept("(")) {
+                Node node = parseOr();
+                expect(")");
+                return node;
+            }
+            Column column = parseColumn();
+            if (acceptKeyword("IS")) {
+                boolean negated = acceptKeyword("NOT");
+                if (!acceptKeyword("NULL")) {
+                    throw error("Expected NULL");
+                }
+                return new NullCheck(column, negated);
+            }
+            String operator = parseOperator();
+            return new Comparison(column, operator, parseLiteral());
+        }
+
+        private Column parseColumn() {
+            skipWhitespace();
+            if (accept("\"")) {
+                StringBuilder name = new StringBuilder();
+                while (true) {
+                    if (position >= text.length()) {
+                        throw error("Unterminated column name");
+                    }
+                    char c = text.charAt(position++);
+                    if (c == '"') {
+                        if (position < text.length() && text.charAt(position) == '"') {
+                            position++;
+                        } else {
+                            return new Column(name.toString(), true);
+                        }
+                    }
+                    name.append(c);
+                }
+            }
+            String word = word();
+            if (word == null) {
+                throw error("Expected a column");
+            }
+            if (isKeyword(word)) {
+                throw error("Expected a column, found " + word);
+            }
+            position += word.length();
+            return new Column(word, false);
+        }
+
+        private String parseOperator() {
+            skipWhitespace();
+            for (String operator : new String[] {"<>", "!=", "<=", ">=", "=", "<", ">"}) {
+                if (text.startsWith(operator, position)) {
+                    position += operator.length();
+                    return operator.equals("!=") ? "<>" : operator;
+                }
+            }
+            throw error("Expected a comparison operator");
+        }
+
+        private Object parseLiteral() {
+            skipWhitespace();
+            if (accept("'")) {
+                StringBuilder value = new StringBuilder();
+                while (true) {
+                    if (position >= text.length()) {
+                        throw error("Unterminated string");
+                    }
+                    char c = text.charAt(position++);
+                    if (c == '\'') {
+                        if (position < text.length() && text.charAt(position) == '\'') {
+                            position++;
+                        } else {
+                            return value.toString();
+                        }
+                    }
+                    value.append(c);
+                }
+            }
+            if (acceptKeyword("TRUE")) {
+                return Boolean.TRUE;
+            }
+            if (acceptKeyword("FALSE")) {
+                return Boolean.FALSE;
+            }
+            int start = position;
+            if (position < text.length() && (text.charAt(position) == '-' || text.charAt(position) == '+')) {
+                position++;
+            }
+            while (position < text.length()
+                && (Character.isLetterOrDigit(text.charAt(position)) || text.charAt(position) == '.'
+                    || ((text.charAt(position) == '-' || text.charAt(position) == '+')
+                        && (text.charAt(position - 1) == 'e' || text.charAt(position - 1) == 'E')))) {
+                position++;
+            }
+            try {
+                return new BigDecimal(text.substring(start, position));
+            } catch (NumberFormatException e) {
+                position = start;
+                throw error("Expected a string, number, TRUE or FALSE");
+            }
+        }
+
+        void expectEnd() {
+            skipWhitespace();
+            if (position < text.length()) {
+                throw error("Unexpected input");
+            }
+        }
+
+        private void expect(String token) {
+            if (!accept(token)) {
+                throw error("Expected " + token);
+            }
+        }
+
+        private boolean accept(String token) {
+            skipWhitespace();
+            if (text.startsWith(token, position)) {
+                position += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean acceptKeyword(String keyword) {
+            skipWhitespace();
+            String word = word();
+            if (word != null && word.equalsIgnoreCase(keyword)) {
+                position += word.length();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Gets the identifier at the current position without consuming it.
+         */
+        private String word() {
+            int end = position;
+            while (end < text.length()
+                && (Character.isLetterOrDigit(text.charAt(end)) || text.charAt(end) == '_')) {
+                end++;
+            }
+            if (end == position || Character.isDigit(text.charAt(position))) {
+                return null;
+            }
+            return text.substring(position, end);
+        }
+
+        private static boolean isKeyword(String word) {
+            switch (word.toUpperCase(Locale.ROOT)) {
+                case "AND":
+                case "OR":
+                case "NOT":
+                case "IS":
+                case "NULL":
+                case "TRUE":
+                case "FALSE":
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + (position + 1)
+                + " of filter condition: " + text);
+        }
+    }
+}
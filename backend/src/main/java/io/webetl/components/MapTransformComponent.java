@@ -2,11 +2,18 @@ package io.webetl.components;
 
 import io.webetl.annotation.ETLComponentDefinition;
 import io.webetl.model.component.TransformComponent;
+import io.webetl.model.component.ColumnUsage;
+import io.webetl.model.component.Param;
+import io.webetl.model.component.SchemaProvider;
 import io.webetl.model.component.parameter.SQLParameter;
+import io.webetl.model.data.DataType;
 import io.webetl.model.data.Row;
+import io.webetl.model.data.Schema;
 import io.webetl.runtime.ExecutionContext;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 @ETLComponentDefinition(
     id = "map-transform",
@@ -15,8 +22,10 @@ import java.util.Map;
     icon = "MapIcon",
     backgroundColor = "#fff3e0"
 )
-public class MapTransformComponent extends TransformComponent {
-    
+public class MapTransformComponent extends TransformComponent implements SchemaProvider, ColumnUsage {
+    @Param("mappingExpression")
+    private String mappingExpression;
+
     public MapTransformComponent() {
         getParameters().add(SQLParameter.builder()
             .name("mappingExpression")
@@ -31,7 +40,6 @@ public class MapTransformComponent extends TransformComponent {
         // Implementation for mapping transformation
         info(context, "Executing map transform component");
         
-        String mappingExpression = getParameter("mappingExpression", String.class);
         info(context, "Using mapping expression: " + mappingExpression);
         
         try {
@@ -63,6 +71,33 @@ public class MapTransformComponent extends TransformComponent {
         }
     }
     
+    /**
+     * The transformed rows have the input columns and the {@code _transformed} marker,
+     * see {@link #transformRow}.
+     */
+    @Override
+    public Schema inferOutputSchema(Schema input) {
+        if (input == null) {
+            return null;
+        }
+        Schema output = new Schema();
+        output.getColumns().putAll(input.getColumns());
+        return output.column("_transformed", DataType.BOOLEAN);
+    }
+    
+    /**
+     * Each output column but the marker is copied from the input column of the same name.
+     */
+    @Override
+    public Set<String> inputColumns(Set<String> outputColumns) {
+        if (outputColumns == null) {
+            return null;
+        }
+        Set<String> columns = new HashSet<>(outputColumns);
+        columns.remove("_transformed");
+        return columns;
+    }
+    
     private Row transformRow(Row row, String mappingExpression) {
         // TODO: Implement actual transformation based on mapping expression
         // This is a placeholder implementation
@@ -78,12 +113,4 @@ public class MapTransformComponent extends TransformComponent {
         transformedRow.setData(newData);
         return transformedRow;
     }
-    
-    private <T> T getParameter(String name, Class<T> type) {
-        return (T) getParameters().stream()
-            .filter(p -> p.getName().equals(name))
-            .findFirst()
-            .map(p -> p.getValue())
-            .orElse(null);
-    }
 } 
\ No newline at end of file
@@ -0,0 +1,86 @@
+package io.webetl.components;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Transcodes a byte stream to UTF-8, for files in charsets a {@link CsvTokenizer} cannot
+ * split on their bytes, such as UTF-16. A byte order mark is dropped. Byte offsets of the
+ * transcoded stream differ from those of the file, but are the same in every run, so a
+ * checkpointed offset can still be skipped to.
+ */
+final class TranscodingInputStream extends InputStream {
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private final Reader reader;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE * 3);
+    private boolean started;
+    private boolean ended;
+
+    TranscodingInputStream(InputStream in, Charset charset) {
+        this.reader = new InputStreamReader(in, charset);
+        bytes.flip();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (!bytes.hasRemaining()) {
+            if (ended) {
+                return -1;
+            }
+            fill();
+        }
+        int count = Math.min(length, bytes.remaining());
+        bytes.get(b, offset, count);
+        return count;
+    }
+
+    private void fill() throws IOException {
+        int read = reader.read(chars);
+        chars.flip();
+        if (!started && chars.hasRemaining()) {
+            started = true;
+            if (chars.get(0) == BYTE_ORDER_MARK) {
+                chars.get();
+            }
+        }
+        bytes.clear();
+        if (read < 0) {
+            ended = true;
+            encoder.encode(chars, bytes, true);
+            encoder.flush(bytes);
+        } else {
+            // A high surrogate at the end stays in the buffer until its low surrogate is read
+            encoder.encode(chars, bytes, false);
+        }
+        chars.compact();
+        bytes.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
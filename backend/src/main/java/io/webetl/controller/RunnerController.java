@@ -2,6 +2,7 @@ package io.webetl.controller;
 
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import io.webetl.service.RunScheduler;
 import io.webetl.service.RunnerService;
 
 @RestController
@@ -16,10 +17,11 @@ public class RunnerController {
     @PostMapping("/sheets/{sheetId}/run")
     public ResponseEntity<?> runSheet(
         @PathVariable String sheetId,
-        @RequestParam String projectId
+        @RequestParam String projectId,
+        @RequestParam(defaultValue = "NORMAL") RunScheduler.Priority priority
     ) {
         try {
-            runnerService.runSheet(projectId, sheetId);
+            runnerService.runSheet(projectId, sheetId, priority);
             return ResponseEntity.accepted().build();
         } catch (Throwable e) {
             e.printStackTrace();
@@ -0,0 +1,17 @@
+package io.webetl.model.component;
+
+import java.util.Set;
+
+/**
+ * Implemented by sources that can leave out columns nothing downstream reads, see
+ * {@link ColumnUsage}. The flow class sets the columns before the flow runs; the output
+ * schema embedded with them has only those columns.
+ */
+public interface ColumnProjection {
+    /**
+     * Sets the columns the source sends, in rows and in its output schema.
+     *
+     * @param columns the column names, null to send all columns
+     */
+    void setRequiredColumns(Set<String> columns);
+}
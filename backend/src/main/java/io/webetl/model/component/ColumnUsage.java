@@ -0,0 +1,20 @@
+package io.webetl.model.component;
+
+import java.util.Set;
+
+/**
+ * Implemented by components that know at compile time which of their input columns they
+ * read. The flow compiler walks the data flow back from the destinations, asking each
+ * component which input columns it needs for the output columns its consumers need, so
+ * sources implementing {@link ColumnProjection} read only those. A component that does not
+ * implement this interface needs every column of its input.
+ */
+public interface ColumnUsage {
+    /**
+     * Gets the input columns the component reads to produce some of its output columns.
+     *
+     * @param outputColumns the output columns needed downstream, null if all of them are
+     * @return the input columns needed, null if all of them are
+     */
+    Set<String> inputColumns(Set<String> outputColumns);
+}
@@ -1,7 +1,9 @@
 package io.webetl.model.component;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import io.webetl.annotation.ETLComponentDefinition;
@@ -13,6 +15,7 @@ import io.webetl.model.data.Row;
  */
 public abstract class DestinationComponent extends ETLComponent implements InputQueueProvider {
     private final BlockingQueue<Row> inputQueue;
+    private final List<OutputQueueProvider> producers = new CopyOnWriteArrayList<>();
 
     public DestinationComponent() {
         super(null, null, null, null, "#f0fff4", new ArrayList<>());
@@ -50,11 +53,52 @@ public abstract class DestinationComponent extends ETLComponent implements Input
      
     /**
      * Take a row from the input queue.
+     * Checkpoint barriers are acknowledged and never returned. A destination
+     * has handled every row before the barrier once it asks for the next row.
      * @return the row
      * @throws InterruptedException if the thread is interrupted
          */
     protected Row takeInputRow() throws InterruptedException {
-        return inputQueue.take();
+        Row row = inputQueue.take();
+        while (row.isBarrier()) {
+            row.getBarrier().acknowledge();
+            row = inputQueue.take();
+        }
+        return row;
+    }
+
+    /**
+     * from InputQueueProvider
+     */
+    @Override
+    public void registerProducer(OutputQueueProvider producer) {
+        producers.add(producer);
+    }
+
+    /**
+     * from InputQueueProvider
+     */
+    @Override
+    public int getRouteCount() {
+        return 1;
+    }
+
+    /**
+     * Tell the components sending rows to this destination that it needs no more, e.g.
+     * because it only takes the first rows. Sources then stop reading. The rows still
+     * queued are dropped, and their checkpoint barriers acknowledged.
+     */
+    protected void stopInput() {
+        for (OutputQueueProvider producer : producers) {
+            producer.stopSending(this);
+        }
+        // The producers acknowledge the barriers they send from now on
+        Row row;
+        while ((row = inputQueue.poll()) != null) {
+            if (row.isBarrier()) {
+                row.getBarrier().acknowledge();
+            }
+        }
     }
 
     /**
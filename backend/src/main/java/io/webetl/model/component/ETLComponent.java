@@ -5,6 +5,7 @@ import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.webetl.model.component.parameter.Parameter;
+import io.webetl.model.data.Schema;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
@@ -42,6 +43,11 @@ public abstract class ETLComponent implements ExecutableComponent {
     private String implementationClass;  // Store just the implementation class
     @JsonProperty("parameters")
     private List<Parameter<?>> parameters = new ArrayList<>();
+    // Set by the flow class when the compiler could infer them, see SchemaProvider
+    @JsonIgnore
+    private Schema inputSchema;
+    @JsonIgnore
+    private Schema outputSchema;
 
     // Default constructor for Jackson
     public ETLComponent() {
@@ -59,12 +65,19 @@ public abstract class ETLComponent implements ExecutableComponent {
         this.parameters = parameters != null ? parameters : new ArrayList<>();
     }
 
+    /**
+     * Sets the value of a parameter and of the field bound to it with {@link Param}.
+     *
+     * @throws IllegalArgumentException if there is no such parameter or the value does
+     *         not fit the type of its field
+     */
     public void setParameter(String name, Object value) {
         @SuppressWarnings("unchecked")
         Parameter<Object> param = (Parameter<Object>) parameters.stream()
             .filter(p -> p.getName().equals(name))
             .findFirst()
             .orElseThrow(() -> new IllegalArgumentException("Parameter not found: " + name));
+        ParameterBinding.bind(this, name, value);
         param.setValue(value);
     }
 
@@ -201,6 +214,30 @@ public abstract class ETLComponent implements ExecutableComponent {
         this.implementationClass = implementationClass;
     }
 
+    /**
+     * Gets the schema of the rows the component receives, null if it is not known.
+     */
+    @JsonIgnore
+    public Schema getInputSchema() {
+        return inputSchema;
+    }
+
+    public void setInputSchema(Schema inputSchema) {
+        this.inputSchema = inputSchema;
+    }
+
+    /**
+     * Gets the schema of the rows the component sends, null if it is not known.
+     */
+    @JsonIgnore
+    public Schema getOutputSchema() {
+        return outputSchema;
+    }
+
+    public void setOutputSchema(Schema outputSchema) {
+        this.outputSchema = outputSchema;
+    }
+
     public boolean isSupportsControlFlow() {
         return supportsControlFlow;
     }
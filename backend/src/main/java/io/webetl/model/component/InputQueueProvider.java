@@ -21,4 +21,19 @@ public interface InputQueueProvider {
      * @param row the row to queue
      */
     public void putRow(Row row);
+
+    /**
+     * Register a component sending rows to this one, so this component can tell it when
+     * it needs no more rows, see {@link OutputQueueProvider#stopSending}.
+     * @param producer the component sending rows
+     */
+    public void registerProducer(OutputQueueProvider producer);
+
+    /**
+     * Get the number of routes from this component to a destination, each acknowledges the
+     * checkpoint barriers sent to this component. A producer that stops sending to this
+     * component acknowledges them for these routes instead.
+     * @return the number of routes, 1 for a destination
+     */
+    public int getRouteCount();
 }
@@ -17,4 +17,14 @@ public interface OutputQueueProvider {
      * @param row the row to send
      */
     void sendRow(Row row);
+
+    /**
+     * Stop sending rows to a registered input queue provider that needs no more.
+     * Once none of them needs more rows, the component stops producing rows and tells
+     * the components sending rows to it in turn. The checkpoint barriers sent from then on
+     * are acknowledged for the routes through the provider, see
+     * {@link InputQueueProvider#getRouteCount}.
+     * @param provider the input queue provider that is done
+     */
+    void stopSending(InputQueueProvider provider);
 } 
\ No newline at end of file
@@ -0,0 +1,24 @@
+package io.webetl.model.component;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds a field of a component to one of its parameters. Setting the parameter also sets
+ * the field, so components read their configuration from plain fields instead of looking
+ * it up in the parameter list.
+ * <p>
+ * Supported field types are String, int, long, double and boolean, boxed or not. The flow
+ * compiler checks parameter values against the field type and emits them as literals of
+ * that type, so a value that does not fit fails the compilation rather than the run.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Param {
+    /**
+     * The name of the parameter.
+     */
+    String value();
+}
@@ -0,0 +1,127 @@
+package io.webetl.model.component;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ParameterBinding finds the {@link Param} fields of component classes and converts
+ * parameter values to their types. It is used by {@link ETLComponent#setParameter} when a
+ * flow starts and by the flow compiler, which converts the values of a sheet at compile time.
+ */
+public final class ParameterBinding {
+    private static final ClassValue<Map<String, Field>> FIELDS = new ClassValue<>() {
+        @Override
+        protected Map<String, Field> computeValue(Class<?> type) {
+            Map<String, Field> fields = new LinkedHashMap<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    Param param = field.getAnnotation(Param.class);
+                    if (param == null || Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    if (Modifier.isFinal(field.getModifiers())) {
+                        throw new IllegalStateException("Parameter field " + c.getName() + "." + field.getName()
+                            + " must not be final");
+                    }
+                    field.setAccessible(true);
+                    // Fields of subclasses hide those of their superclasses
+                    fields.putIfAbsent(param.value(), field);
+                }
+            }
+            return Collections.unmodifiableMap(fields);
+        }
+    };
+
+    private ParameterBinding() {
+    }
+
+    /**
+     * Gets the fields of a component class bound to parameters, by parameter name.
+     */
+    public static Map<String, Field> fields(Class<?> componentClass) {
+        return FIELDS.get(componentClass);
+    }
+
+    /**
+     * Sets the field bound to a parameter, if there is one.
+     *
+     * @throws IllegalArgumentException if the value cannot be converted to the field type
+     */
+    static void bind(Object component, String name, Object value) {
+        Field field = fields(component.getClass()).get(name);
+        if (field == null) {
+            return;
+        }
+        try {
+            field.set(component, convert(name, value, field.getType()));
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot set parameter field " + field, e);
+        }
+    }
+
+    /**
+     * Converts a parameter value to the type of the field it is bound to.
+     *
+     * @param name the parameter name, for error messages
+     * @param value the value, null only for object fields
+     * @param type the field type
+     * @return the converted value
+     * @throws IllegalArgumentException if the value does not fit the type
+     */
+    public static Object convert(String name, Object value, Class<?> type) {
+        if (value == null) {
+            if (type.isPrimitive()) {
+                throw new IllegalArgumentException("Parameter " + name + " requires a value");
+            }
+            return null;
+        }
+        if (type == String.class) {
+            return value.toString();
+        }
+        try {
+            if (type == int.class || type == Integer.class) {
+                return value instanceof Number ? Integer.valueOf(Math.toIntExact(integral(value)))
+                    : Integer.valueOf(value.toString().trim());
+            }
+            if (type == long.class || type == Long.class) {
+                return value instanceof Number ? Long.valueOf(integral(value))
+                    : Long.valueOf(value.toString().trim());
+            }
+            if (type == double.class || type == Double.class) {
+                return value instanceof Number ? Double.valueOf(((Number) value).doubleValue())
+                    : Double.valueOf(value.toString().trim());
+            }
+        } catch (ArithmeticException | NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter " + name + " expects a value of type "
+                + type.getSimpleName() + ", got: " + value);
+        }
+        if (type == boolean.class || type == Boolean.class) {
+            if (value instanceof Boolean) {
+                return value;
+            }
+            String text = value.toString().trim();
+            if (text.equalsIgnoreCase("true") || text.equalsIgnoreCase("false")) {
+                return Boolean.valueOf(text);
+            }
+            throw new IllegalArgumentException("Parameter " + name + " expects a boolean, got: " + value);
+        }
+        throw new IllegalArgumentException("Parameter " + name + " is bound to a field of unsupported type "
+            + type.getName());
+    }
+
+    private static long integral(Object number) {
+        if (number instanceof Double || number instanceof Float) {
+            double value = ((Number) number).doubleValue();
+            if (value != Math.rint(value) || Double.isInfinite(value)) {
+                throw new ArithmeticException("not an integer");
+            }
+            if (value < Long.MIN_VALUE || value > Long.MAX_VALUE) {
+                throw new ArithmeticException("out of range");
+            }
+        }
+        return ((Number) number).longValue();
+    }
+}
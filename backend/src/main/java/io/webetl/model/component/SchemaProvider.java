@@ -0,0 +1,24 @@
+package io.webetl.model.component;
+
+import io.webetl.model.data.Schema;
+
+/**
+ * Implemented by components that know the schema of the rows they send at compile time.
+ * The flow compiler creates the component with the parameter values of the sheet, asks it
+ * for its output schema, and passes that schema on to the components it feeds. The schemas
+ * are embedded in the flow class and set on the components with
+ * {@link ETLComponent#setInputSchema} and {@link ETLComponent#setOutputSchema} before the
+ * flow runs, so components can resolve column names to positions once.
+ */
+public interface SchemaProvider {
+    /**
+     * Infers the schema of the rows the component sends.
+     *
+     * @param input the schema of the rows the component receives, null for sources
+     * @return the output schema, null if it cannot be known at compile time
+     * @throws IllegalArgumentException if the parameters refer to columns the input does
+     *         not have; the compilation fails with its message
+     * @throws Exception if inferring the schema failed, the schema is then unknown
+     */
+    Schema inferOutputSchema(Schema input) throws Exception;
+}
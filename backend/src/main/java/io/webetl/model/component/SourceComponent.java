@@ -13,6 +13,9 @@ public abstract class SourceComponent extends ETLComponent implements OutputQueu
     private String sourceType;
     private boolean supportsControlFlow;
     private final List<InputQueueProvider> outputQueues;
+    // routes to destinations through the output queues that stopped
+    private int stoppedRoutes;
+    private volatile boolean cancelled;
 
     public SourceComponent() {
         super(null, null, null, null, "#f0f7ff", new ArrayList<>());
@@ -36,13 +39,56 @@ public abstract class SourceComponent extends ETLComponent implements OutputQueu
     @Override
     public void registerInputQueue(InputQueueProvider provider) {
         outputQueues.add(provider);
+        provider.registerProducer(this);
+    }
+
+    @Override
+    public void stopSending(InputQueueProvider provider) {
+        // counted without holding the lock, the provider may ask its own outputs
+        int routes = provider.getRouteCount();
+        synchronized (this) {
+            if (outputQueues.remove(provider)) {
+                stoppedRoutes += routes;
+            }
+            if (outputQueues.isEmpty()) {
+                cancelled = true;
+            }
+        }
+    }
+
+    /**
+     * Checks whether none of the components this source sends rows to needs more of them.
+     * Sources check this while reading and stop reading once it is true.
+     */
+    protected boolean isCancelled() {
+        return cancelled;
     }
     
     @Override
     public void sendRow(Row row) {
+        if (row.isBarrier()) {
+            sendBarrier(row);
+            return;
+        }
         for (InputQueueProvider queue : outputQueues) {
             System.out.println("sending Row: " + row );
             queue.putRow(row);
         }
     }
+
+    /**
+     * Sends a checkpoint barrier to the output queues and acknowledges it for the routes
+     * through the queues that stopped. Synchronized with {@link #stopSending}, so a queue
+     * stopping meanwhile either gets the barrier or has it acknowledged here.
+     */
+    private void sendBarrier(Row barrier) {
+        int acknowledged;
+        synchronized (this) {
+            for (InputQueueProvider queue : outputQueues) {
+                queue.putRow(barrier);
+            }
+            acknowledged = stoppedRoutes;
+        }
+        barrier.getBarrier().acknowledge(acknowledged);
+    }
 } 
\ No newline at end of file
@@ -25,6 +25,15 @@ public abstract class TransformComponent extends ETLComponent implements InputQu
      * The output queues for the component.
      */
     private final List<InputQueueProvider> outputQueues;
+    /**
+     * The components sending rows to this one.
+     */
+    private final List<OutputQueueProvider> producers = new CopyOnWriteArrayList<>();
+    /**
+     * The routes to destinations through the output queues that stopped.
+     */
+    private int stoppedRoutes;
+    private volatile boolean cancelled;
 
     public TransformComponent() {
         super(null, null, null, null, "#fff7f0", new ArrayList<>());
@@ -67,11 +76,20 @@ public abstract class TransformComponent extends ETLComponent implements InputQu
 
     /**
      * Take a row from the input queue.
+     * Checkpoint barriers are forwarded to the output queues and never returned.
      * @return the row
      * @throws InterruptedException if the thread is interrupted
          */
     protected Row takeInputRow() throws InterruptedException {
-        return inputQueue.take();
+        if (cancelled) {
+            return Row.createTerminator();
+        }
+        Row row = inputQueue.take();
+        while (row.isBarrier()) {
+            sendRow(row);
+            row = inputQueue.take();
+        }
+        return row;
     }
 
     /**
@@ -83,12 +101,80 @@ public abstract class TransformComponent extends ETLComponent implements InputQu
         return inputQueue;
     }
 
+    /**
+     * from InputQueueProvider
+     */
+    @Override
+    public void registerProducer(OutputQueueProvider producer) {
+        producers.add(producer);
+    }
+
+    /**
+     * from InputQueueProvider
+     */
+    @Override
+    public int getRouteCount() {
+        int routes;
+        List<InputQueueProvider> outputs;
+        synchronized (this) {
+            routes = stoppedRoutes;
+            outputs = List.copyOf(outputQueues);
+        }
+        for (InputQueueProvider output : outputs) {
+            routes += output.getRouteCount();
+        }
+        return routes;
+    }
+
+    /**
+     * Tell the components sending rows to this one that it needs no more. The rows still
+     * queued are dropped, and their checkpoint barriers acknowledged for every route
+     * through this component.
+     */
+    protected void stopInput() {
+        for (OutputQueueProvider producer : producers) {
+            producer.stopSending(this);
+        }
+        // The producers acknowledge the barriers they send from now on
+        int routes = getRouteCount();
+        Row row;
+        while ((row = inputQueue.poll()) != null) {
+            if (row.isBarrier()) {
+                row.getBarrier().acknowledge(routes);
+            }
+        }
+    }
+
     /**
      * from OutputQueueProvider
      */
     @Override
     public void registerInputQueue(InputQueueProvider provider) {
         outputQueues.add(provider);
+        provider.registerProducer(this);
+    }
+
+    /**
+     * from OutputQueueProvider
+     * Once no output needs more rows, the input is stopped and {@link #takeInputRow}
+     * returns a terminator, so the component finishes.
+     */
+    @Override
+    public void stopSending(InputQueueProvider provider) {
+        // counted without holding the lock, the provider may ask its own outputs
+        int routes = provider.getRouteCount();
+        synchronized (this) {
+            if (outputQueues.remove(provider)) {
+                stoppedRoutes += routes;
+            }
+            if (!outputQueues.isEmpty() || cancelled) {
+                return;
+            }
+            cancelled = true;
+        }
+        stopInput();
+        // Wake up a thread waiting for input
+        inputQueue.offer(Row.createTerminator());
     }
 
     /**
@@ -96,9 +182,29 @@ public abstract class TransformComponent extends ETLComponent implements InputQu
      */
     @Override
     public void sendRow(Row row) {
+        if (row.isBarrier()) {
+            sendBarrier(row);
+            return;
+        }
         for (InputQueueProvider queue : outputQueues) {
             queue.putRow(row);
         }
     }
 
+    /**
+     * Sends a checkpoint barrier to the output queues and acknowledges it for the routes
+     * through the queues that stopped. Synchronized with {@link #stopSending}, so a queue
+     * stopping meanwhile either gets the barrier or has it acknowledged here.
+     */
+    private void sendBarrier(Row barrier) {
+        int acknowledged;
+        synchronized (this) {
+            for (InputQueueProvider queue : outputQueues) {
+                queue.putRow(barrier);
+            }
+            acknowledged = stoppedRoutes;
+        }
+        barrier.getBarrier().acknowledge(acknowledged);
+    }
+
 } 
\ No newline at end of file
@@ -10,6 +10,8 @@ import com.fasterxml.jackson.annotation.JsonTypeName;
 @EqualsAndHashCode(callSuper = true)
 @ToString(callSuper = true)
 public class SQLParameter extends Parameter<String> {
+    // Most rows the query returns, 0 for no limit. Flows do not apply it: sheets saved a
+    // default of 1000 for every query, a database source has its own row limit instead
     private int maxRows;
 
     public SQLParameter() {}
@@ -0,0 +1,56 @@
+package io.webetl.model.data;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CheckpointBarrier marks a consistent position in the output of a source.
+ * It travels through the queues inside a barrier {@link Row}, copied wherever rows
+ * fan out. Every destination acknowledges each copy it receives, and once all
+ * expected copies are acknowledged the checkpoint is complete and can be persisted.
+ */
+public class CheckpointBarrier {
+    private final String sourceId;
+    private final long checkpointId;
+    private final AtomicInteger pendingAcks;
+    private final Runnable onComplete;
+
+    public CheckpointBarrier(String sourceId, long checkpointId, int expectedAcks, Runnable onComplete) {
+        this.sourceId = sourceId;
+        this.checkpointId = checkpointId;
+        this.pendingAcks = new AtomicInteger(expectedAcks);
+        this.onComplete = onComplete;
+    }
+
+    public String getSourceId() {
+        return sourceId;
+    }
+
+    public long getCheckpointId() {
+        return checkpointId;
+    }
+
+    /**
+     * Acknowledge the barrier. Called by a destination for every copy it receives.
+     * The last acknowledgement completes the checkpoint.
+     */
+    public void acknowledge() {
+        acknowledge(1);
+    }
+
+    /**
+     * Acknowledge several copies of the barrier at once, for the routes to destinations
+     * that stopped taking rows and never receive them.
+     *
+     * @param copies the number of copies
+     */
+    public void acknowledge(int copies) {
+        if (copies > 0 && pendingAcks.addAndGet(-copies) == 0) {
+            onComplete.run();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CheckpointBarrier[source=" + sourceId + ", id=" + checkpointId + "]";
+    }
+}
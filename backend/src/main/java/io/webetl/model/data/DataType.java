@@ -7,7 +7,8 @@ public enum DataType {
     DOUBLE(Double.class),
     BOOLEAN(Boolean.class),
     DATE(java.util.Date.class),
-    TIMESTAMP(java.time.Instant.class);
+    TIMESTAMP(java.time.Instant.class),
+    DECIMAL(java.math.BigDecimal.class);
     
     private final Class<?> javaType;
     
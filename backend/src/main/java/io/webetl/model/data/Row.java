@@ -11,6 +11,7 @@ public class Row {
     private String id;
     private Map<String, Object> data;
     private boolean terminator = false;
+    private CheckpointBarrier barrier;   // set on checkpoint barrier rows only
     private RowMetadata metadata;        // optional: timestamp, source info, etc.
     private Schema schema;               // defines the structure of this row
 
@@ -49,6 +50,24 @@ public class Row {
     public boolean isTerminator() {
         return terminator;
     }
+
+    /**
+     * Create a barrier row that carries a checkpoint marker through the queues.
+     * Barrier rows hold no data and are acknowledged by destinations.
+     */
+    public static Row createBarrier(CheckpointBarrier barrier) {
+        Row row = new Row();
+        row.barrier = barrier;
+        return row;
+    }
+
+    public boolean isBarrier() {
+        return barrier != null;
+    }
+
+    public CheckpointBarrier getBarrier() {
+        return barrier;
+    }
     
     public String getId() {
         return id;
@@ -66,11 +85,22 @@ public class Row {
         this.data = data;
     }
     
+    public RowMetadata getMetadata() {
+        return metadata;
+    }
+    
+    public void setMetadata(RowMetadata metadata) {
+        this.metadata = metadata;
+    }
+    
     @Override
     public String toString() {
         if (isTerminator()) {
             return "Row[TERMINATOR]";
         }
+        if (isBarrier()) {
+            return "Row[BARRIER " + barrier.getCheckpointId() + "]";
+        }
         return "Row[id=" + id + ", data=" + data + "]";
     }
 } 
\ No newline at end of file
@@ -1,11 +1,15 @@
 package io.webetl.model.data;
 
 import lombok.Data;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
- * Schema is a collection of column definitions.
+ * Schema is a collection of column definitions. The columns are ordered, the position of
+ * a column is its index in the rows of the schema.
  */
 @Data
 public class Schema {
@@ -19,6 +23,55 @@ public class Schema {
     public void addColumn(String name, ColumnDefinition definition) {
         columns.put(name, definition);
     }
+
+    /**
+     * Adds a nullable column, for building schemas in generated code.
+     *
+     * @return this schema
+     */
+    public Schema column(String name, DataType type) {
+        ColumnDefinition definition = new ColumnDefinition();
+        definition.setName(name);
+        definition.setType(type);
+        definition.setNullable(true);
+        columns.put(name, definition);
+        return this;
+    }
+
+    /**
+     * Gets the position of a column.
+     *
+     * @return the index of the column, -1 if the schema has no such column
+     */
+    public int indexOf(String columnName) {
+        int index = 0;
+        for (String name : columns.keySet()) {
+            if (name.equals(columnName)) {
+                return index;
+            }
+            index++;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets a schema with the columns of this schema that are in the given collection,
+     * in the order of this schema.
+     */
+    public Schema select(Collection<String> columnNames) {
+        Schema selected = new Schema();
+        selected.setName(name);
+        columns.forEach((columnName, definition) -> {
+            if (columnNames.contains(columnName)) {
+                selected.addColumn(columnName, definition);
+            }
+        });
+        return selected;
+    }
+
+    public List<String> getColumnNames() {
+        return new ArrayList<>(columns.keySet());
+    }
     
     public boolean validateValue(String columnName, Object value) {
         ColumnDefinition def = columns.get(columnName);
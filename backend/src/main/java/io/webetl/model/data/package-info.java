@@ -9,6 +9,7 @@
  *   <li>{@link io.webetl.model.data.ColumnDefinition} - Specifies the properties of a single column</li>
  *   <li>{@link io.webetl.model.data.DataType} - Enumerates supported data types with validation</li>
  *   <li>{@link io.webetl.model.data.RowMetadata} - Contains metadata about row origin and processing</li>
+ *   <li>{@link io.webetl.model.data.CheckpointBarrier} - Marks a checkpoint position flowing between components</li>
  * </ul>
  * 
  * <p>The classes in this package enforce type safety and data validation throughout the ETL pipeline,
@@ -0,0 +1,233 @@
+package io.webetl.runtime;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.webetl.model.data.CheckpointBarrier;
+import io.webetl.model.data.Row;
+
+/**
+ * CheckpointCoordinator connects sources, destinations and the {@link CheckpointStore}.
+ * <p>
+ * The generated flow registers every source component together with its node id and
+ * the number of acknowledgements completing one of its checkpoints. Sources periodically
+ * call {@link #checkpoint} with their current position and send the returned barrier row
+ * downstream. Transforms copy the barrier to each of their outputs, so a destination
+ * receives and acknowledges it once for every route from the source to it. When all
+ * copies have been acknowledged, every route has drained the rows before the barrier
+ * and the position is persisted. The routes through a component that stopped taking rows
+ * acknowledge the barriers without delivering them. On the next
+ * run sources call {@link #restore} to continue from the last completed checkpoint.
+ * <p>
+ * Sources reading incrementally also keep a state from one successful run to the next,
+ * see {@link #restoreRunState} and {@link #keepRunState}.
+ */
+public class CheckpointCoordinator {
+    private static final Logger log = LoggerFactory.getLogger(CheckpointCoordinator.class);
+
+    /** System property holding the checkpoint directory of the running flow. */
+    public static final String DIR_PROPERTY = "webetl.checkpoint.dir";
+    /** System property holding the number of rows between two checkpoints. */
+    public static final String INTERVAL_PROPERTY = "webetl.checkpoint.interval";
+    public static final int DEFAULT_INTERVAL = 10000;
+
+    private final CheckpointStore store;
+    private final int interval;
+    private final Map<Object, String> sourceIds = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final Map<String, Integer> ackCounts = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastCompleted = new ConcurrentHashMap<>();
+    private final AtomicLong nextCheckpointId = new AtomicLong(1);
+    // saved when the run completes
+    private final Map<String, Map<String, String>> runStates = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a coordinator.
+     *
+     * @param store the store for completed checkpoints, null disables checkpointing
+     * @param interval the number of rows between two checkpoints
+     */
+    public CheckpointCoordinator(CheckpointStore store, int interval) {
+        this.store = store;
+        this.interval = interval > 0 ? interval : DEFAULT_INTERVAL;
+    }
+
+    /**
+     * Creates a coordinator that never takes checkpoints.
+     */
+    public static CheckpointCoordinator disabled() {
+        return new CheckpointCoordinator(null, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Creates a coordinator configured by the {@value #DIR_PROPERTY} and
+     * {@value #INTERVAL_PROPERTY} system properties. Checkpointing is disabled
+     * when no directory is set.
+     */
+    public static CheckpointCoordinator fromSystemProperties() {
+        String dir = System.getProperty(DIR_PROPERTY);
+        if (dir == null || dir.isEmpty()) {
+            return disabled();
+        }
+        int interval = Integer.getInteger(INTERVAL_PROPERTY, DEFAULT_INTERVAL);
+        return new CheckpointCoordinator(new CheckpointStore(Paths.get(dir)), interval);
+    }
+
+    public boolean isEnabled() {
+        return store != null;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Registers a source component. Called by the generated flow before the workers start.
+     *
+     * @param source the source component instance
+     * @param sourceId the stable id of the source (the node id in the sheet)
+     * @param ackCount the number of routes from this source to a destination, each
+     *        acknowledges the barriers of the source
+     */
+    public void registerSource(Object source, String sourceId, int ackCount) {
+        sourceIds.put(source, sourceId);
+        ackCounts.put(sourceId, ackCount);
+    }
+
+    /**
+     * Checks if a source takes part in checkpointing.
+     *
+     * @param source the source component instance
+     * @return true if checkpointing is enabled and the source is registered
+     */
+    public boolean isEnabled(Object source) {
+        return isEnabled() && sourceIds.containsKey(source);
+    }
+
+    /**
+     * Checks if a checkpoint is due after the given number of rows.
+     *
+     * @param rowCount the number of rows sent by the source so far
+     * @return true if the source should take a checkpoint now
+     */
+    public boolean isCheckpointDue(long rowCount) {
+        return rowCount > 0 && rowCount % interval == 0;
+    }
+
+    /**
+     * Loads the state of the last completed checkpoint of a source.
+     *
+     * @param source the source component instance
+     * @return the state to resume from or null to start from the beginning
+     * @throws IOException if the checkpoint cannot be read
+     */
+    public Map<String, String> restore(Object source) throws IOException {
+        if (!isEnabled(source)) {
+            return null;
+        }
+        String sourceId = sourceIds.get(source);
+        Map<String, String> state = store.load(sourceId);
+        if (state != null) {
+            log.info("Resuming source {} from checkpoint {}", sourceId, state);
+        }
+        return state;
+    }
+
+    /**
+     * Starts a checkpoint for a source. The returned barrier row must be sent to the
+     * output queues right after the last row covered by the state.
+     *
+     * @param source the source component instance
+     * @param state the position of the source after the rows sent so far
+     * @return the barrier row or null if the source takes no checkpoints
+     */
+    public Row checkpoint(Object source, Map<String, String> state) {
+        if (!isEnabled(source)) {
+            return null;
+        }
+        String sourceId = sourceIds.get(source);
+        long checkpointId = nextCheckpointId.getAndIncrement();
+        Map<String, String> snapshot = Map.copyOf(state);
+        int ackCount = ackCounts.getOrDefault(sourceId, 0);
+
+        CheckpointBarrier barrier = new CheckpointBarrier(sourceId, checkpointId, ackCount,
+            () -> complete(sourceId, checkpointId, snapshot));
+        if (ackCount == 0) {
+            // nothing downstream can lose rows, the position is safe right away
+            complete(sourceId, checkpointId, snapshot);
+        }
+        return Row.createBarrier(barrier);
+    }
+
+    /**
+     * Loads the state a source kept from the last successful run.
+     *
+     * @param source the source component instance
+     * @return the state or null if the source kept none or takes no checkpoints
+     * @throws IOException if the state cannot be read
+     */
+    public Map<String, String> restoreRunState(Object source) throws IOException {
+        if (!isEnabled(source)) {
+            return null;
+        }
+        return store.loadRunState(sourceIds.get(source));
+    }
+
+    /**
+     * Sets the state a source keeps for the next run. It is saved when this run completes
+     * successfully, so a failed run leaves the state of the last successful one.
+     *
+     * @param source the source component instance
+     * @param state the state to start the next run from
+     */
+    public void keepRunState(Object source, Map<String, String> state) {
+        if (isEnabled(source)) {
+            runStates.put(sourceIds.get(source), Map.copyOf(state));
+        }
+    }
+
+    /**
+     * Removes all checkpoints and saves the states sources keep for the next run. Called
+     * when the flow completed successfully so the next run starts from the beginning again,
+     * or where incremental sources stopped.
+     */
+    public void clear() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            store.clear();
+        } catch (IOException e) {
+            log.warn("Could not clear checkpoints in {}: {}", store.getDirectory(), e.getMessage());
+        }
+        runStates.forEach((sourceId, state) -> {
+            try {
+                store.saveRunState(sourceId, state);
+            } catch (IOException e) {
+                log.warn("Could not save the state of source {}: {}", sourceId, e.getMessage());
+            }
+        });
+    }
+
+    private synchronized void complete(String sourceId, long checkpointId, Map<String, String> state) {
+        // barriers of one source complete in order, but never let an older one win
+        Long previous = lastCompleted.get(sourceId);
+        if (previous != null && previous > checkpointId) {
+            return;
+        }
+        try {
+            store.save(sourceId, checkpointId, state);
+            lastCompleted.put(sourceId, checkpointId);
+            log.debug("Completed checkpoint {} of source {}: {}", checkpointId, sourceId, state);
+        } catch (IOException e) {
+            log.warn("Could not save checkpoint {} of source {}: {}", checkpointId, sourceId, e.getMessage());
+        }
+    }
+}
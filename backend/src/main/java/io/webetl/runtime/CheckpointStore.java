@@ -0,0 +1,200 @@
+package io.webetl.runtime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * CheckpointStore persists completed source checkpoints on local disk.
+ * Each source gets one properties file holding the id of its last completed
+ * checkpoint and the source specific state (byte offset, key watermark, ...).
+ * Files are written to a temp file first and renamed into place, so a crash
+ * never leaves a half written checkpoint behind.
+ * <p>
+ * Sources reading incrementally also keep a state between successful runs, e.g. how far
+ * they read an append-only file. It is stored the same way in the {@value #STATE_DIRECTORY}
+ * subdirectory, which outlives the checkpoints of a run.
+ */
+public class CheckpointStore {
+    private static final String SUFFIX = ".checkpoint";
+    private static final String CHECKPOINT_ID_KEY = "_checkpointId";
+    private static final String STATE_DIRECTORY = "state";
+    private static final String STATE_SUFFIX = ".state";
+    private static final String FLOW_FILE = "flow.properties";
+    private static final String JAR_HASH_KEY = "jarSha256";
+
+    private final Path directory;
+
+    /**
+     * Creates a store writing to the given directory.
+     *
+     * @param directory the directory holding the checkpoint files
+     */
+    public CheckpointStore(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Loads the last completed checkpoint of a source.
+     *
+     * @param sourceId the id of the source
+     * @return the stored state or null if the source has no checkpoint
+     * @throws IOException if the checkpoint cannot be read
+     */
+    public Map<String, String> load(String sourceId) throws IOException {
+        return read(fileFor(sourceId));
+    }
+
+    /**
+     * Loads the state a source kept from its last successful run.
+     *
+     * @param sourceId the id of the source
+     * @return the stored state or null if the source kept none
+     * @throws IOException if the state cannot be read
+     */
+    public Map<String, String> loadRunState(String sourceId) throws IOException {
+        return read(directory.resolve(STATE_DIRECTORY).resolve(fileName(sourceId) + STATE_SUFFIX));
+    }
+
+    /**
+     * Saves a completed checkpoint of a source, replacing the previous one.
+     *
+     * @param sourceId the id of the source
+     * @param checkpointId the id of the completed checkpoint
+     * @param state the source state to resume from
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public void save(String sourceId, long checkpointId, Map<String, String> state) throws IOException {
+        Properties properties = new Properties();
+        properties.putAll(state);
+        properties.setProperty(CHECKPOINT_ID_KEY, Long.toString(checkpointId));
+        write(fileFor(sourceId), properties, "WebETL checkpoint of source " + sourceId);
+    }
+
+    /**
+     * Saves the state a source keeps for its next run, replacing the previous one.
+     *
+     * @param sourceId the id of the source
+     * @param state the source state
+     * @throws IOException if the state cannot be written
+     */
+    public void saveRunState(String sourceId, Map<String, String> state) throws IOException {
+        Properties properties = new Properties();
+        properties.putAll(state);
+        write(directory.resolve(STATE_DIRECTORY).resolve(fileName(sourceId) + STATE_SUFFIX), properties,
+            "WebETL state of source " + sourceId);
+    }
+
+    /**
+     * Loads the hash of the flow jar whose run wrote the checkpoints.
+     *
+     * @return the SHA-256 of the jar or null if none was recorded
+     * @throws IOException if the file cannot be read
+     */
+    public String loadJarHash() throws IOException {
+        Map<String, String> flow = read(directory.resolve(FLOW_FILE));
+        return flow != null ? flow.get(JAR_HASH_KEY) : null;
+    }
+
+    /**
+     * Records the hash of the flow jar of the run starting, so a later run can tell whether
+     * the checkpoints were written by the same build of the flow. Removed by {@link #clear}.
+     *
+     * @param jarHash the SHA-256 of the jar
+     * @throws IOException if the file cannot be written
+     */
+    public void saveJarHash(String jarHash) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(JAR_HASH_KEY, jarHash);
+        write(directory.resolve(FLOW_FILE), properties, "WebETL flow jar of the checkpoints");
+    }
+
+    private static Map<String, String> read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+
+        Map<String, String> state = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (!CHECKPOINT_ID_KEY.equals(key)) {
+                state.put(key, properties.getProperty(key));
+            }
+        }
+        return state;
+    }
+
+    private static void write(Path file, Properties properties, String comment) throws IOException {
+        Files.createDirectories(file.getParent());
+
+        Path tempFile = Files.createTempFile(file.getParent(), file.getFileName().hashCode() + "-", ".tmp");
+        try (OutputStream out = Files.newOutputStream(tempFile)) {
+            properties.store(out, comment);
+        }
+
+        try {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Checks if any checkpoint is stored.
+     *
+     * @return true if at least one source has a checkpoint
+     * @throws IOException if the directory cannot be read
+     */
+    public boolean hasCheckpoints() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return false;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            return files.iterator().hasNext();
+        }
+    }
+
+    /**
+     * Removes all checkpoints, e.g. after the flow completed successfully. The state sources
+     * keep between runs is left alone.
+     *
+     * @throws IOException if a checkpoint file cannot be deleted
+     */
+    public void clear() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                if (!Files.isDirectory(file)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private Path fileFor(String sourceId) {
+        return directory.resolve(fileName(sourceId) + SUFFIX);
+    }
+
+    private static String fileName(String sourceId) {
+        // node ids are UUID-like, but keep the file name safe for any id
+        return sourceId.replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+}
@@ -1,7 +1,13 @@
 package io.webetl.runtime;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -14,6 +20,15 @@ public class ExecutionContext {
     // Store execution-wide variables
     private final Map<String, Object> variables;
     
+    // Coordinates source checkpoints for resumable runs
+    private CheckpointCoordinator checkpointCoordinator;
+    
+    // Failures reported by component workers
+    private final List<Throwable> failures = new CopyOnWriteArrayList<>();
+    
+    // Receives formatted log lines, standard out when not set
+    private Consumer<String> output;
+    
     // Thread-local tracking of the current component ID for multi-threaded logging
     private static final ThreadLocal<String> CURRENT_COMPONENT = new ThreadLocal<>();
     
@@ -31,9 +46,91 @@ public class ExecutionContext {
     // Default constructor
     public ExecutionContext() {
         this.variables = new HashMap<>();
+        this.checkpointCoordinator = CheckpointCoordinator.fromSystemProperties();
         CURRENT_COMPONENT.set("main");
     }
 
+    /**
+     * Get the checkpoint coordinator of this execution.
+     *
+     * @return the checkpoint coordinator, never null
+     */
+    public CheckpointCoordinator getCheckpointCoordinator() {
+        return checkpointCoordinator;
+    }
+
+    /**
+     * Set the checkpoint coordinator of this execution.
+     *
+     * @param checkpointCoordinator the checkpoint coordinator
+     */
+    public void setCheckpointCoordinator(CheckpointCoordinator checkpointCoordinator) {
+        this.checkpointCoordinator = checkpointCoordinator != null
+            ? checkpointCoordinator : CheckpointCoordinator.disabled();
+    }
+
+    /**
+     * Store checkpoints in the given directory. Only uses JDK types so hosts
+     * can call it reflectively on a context from another class loader.
+     *
+     * @param directory the checkpoint directory
+     */
+    public void setCheckpointDirectory(Path directory) {
+        setCheckpointCoordinator(new CheckpointCoordinator(new CheckpointStore(directory),
+            Integer.getInteger(CheckpointCoordinator.INTERVAL_PROPERTY, CheckpointCoordinator.DEFAULT_INTERVAL)));
+    }
+
+    /**
+     * Send log lines to the given consumer instead of standard out.
+     * Used when a flow runs inside a host process that streams its output.
+     *
+     * @param output the consumer of formatted log lines
+     */
+    public void setOutput(Consumer<String> output) {
+        this.output = output;
+    }
+    
+    /**
+     * Record a failure of a component. The flow is considered failed
+     * once at least one failure has been recorded. The stack trace goes to
+     * the output of the flow, like its other log lines.
+     *
+     * @param componentId the ID of the failed component
+     * @param e the exception
+     */
+    public void recordFailure(String componentId, Throwable e) {
+        failures.add(e);
+        log(LogLevel.ERROR, "Component " + componentId + " failed: " + e.getMessage());
+        log(LogLevel.DEBUG, stackTrace(e));
+    }
+
+    /**
+     * Check if any component failed.
+     *
+     * @return true if at least one failure has been recorded
+     */
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    /**
+     * Get the failures recorded so far.
+     *
+     * @return the recorded failures
+     */
+    public List<Throwable> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Mark the execution as successfully completed. Checkpoints are removed
+     * so the next run starts from the beginning, and the state incremental
+     * sources keep for the next run is saved.
+     */
+    public void markCompleted() {
+        checkpointCoordinator.clear();
+    }
+
     /**
      * Get a variable from the context.
      *
@@ -102,8 +199,13 @@ public class ExecutionContext {
         int sequence = messageSequence.getAndIncrement();
         
         // Format: [SEQ] TIMESTAMP [LEVEL] [COMPONENT] MESSAGE
-        System.out.println(String.format("[%06d] %s [%s] [%s] %s", 
-            sequence, timestamp, level, componentIdStr, message));
+        String line = String.format("[%06d] %s [%s] [%s] %s", 
+            sequence, timestamp, level, componentIdStr, message);
+        if (output != null) {
+            output.accept(line);
+        } else {
+            System.out.println(line);
+        }
     }
     
     /**
@@ -150,6 +252,12 @@ public class ExecutionContext {
      */
     public void error(String message, Throwable e) {
         log(LogLevel.ERROR, message + ": " + e.getMessage());
-        e.printStackTrace();
+        log(LogLevel.DEBUG, stackTrace(e));
+    }
+
+    private static String stackTrace(Throwable e) {
+        StringWriter trace = new StringWriter();
+        e.printStackTrace(new PrintWriter(trace));
+        return trace.toString().stripTrailing();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,287 @@
+package io.webetl.runtime;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ExtractedJarCache keeps jars extracted from flow jars on disk, so identical
+ * embedded jars (JDBC drivers, the runtime jar, ...) are extracted once and
+ * reused by later runs and by other processes.
+ * <p>
+ * Entries are addressed by content: the file name holds the CRC-32 and the size of
+ * the embedded jar as recorded in the outer jar's central directory, so a cache hit
+ * costs no read of the entry at all. Entries are extracted to a temp file and renamed
+ * into place, so concurrent launches never see a partially written jar. The cache is
+ * trimmed in least recently used order once it grows beyond its size limit.
+ */
+public class ExtractedJarCache {
+    private static final Logger log = LoggerFactory.getLogger(ExtractedJarCache.class);
+
+    /** System property overriding the cache directory. */
+    public static final String DIR_PROPERTY = "webetl.jar-cache.dir";
+    /** System property overriding the maximum cache size in bytes. */
+    public static final String MAX_BYTES_PROPERTY = "webetl.jar-cache.max-bytes";
+
+    private static final long DEFAULT_MAX_BYTES = 1024L * 1024 * 1024;
+    private static final String SUFFIX = ".jar";
+    // Entries used this recently are never evicted, another process may be about to open them
+    private static final long EVICTION_GRACE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static volatile ExtractedJarCache defaultCache;
+
+    private final Path directory;
+    private final long maxBytes;
+
+    /**
+     * Creates a cache in the given directory.
+     *
+     * @param directory the cache directory
+     * @param maxBytes the size above which least recently used entries are evicted
+     */
+    public ExtractedJarCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the cache shared by all class loaders of this process. It lives in
+     * {@code ~/.webetl/cache/jars} unless {@value #DIR_PROPERTY} is set.
+     */
+    public static ExtractedJarCache getDefault() {
+        if (defaultCache == null) {
+            synchronized (ExtractedJarCache.class) {
+                if (defaultCache == null) {
+                    String dir = System.getProperty(DIR_PROPERTY);
+                    Path directory = dir != null && !dir.isEmpty()
+                        ? Paths.get(dir)
+                        : Paths.get(System.getProperty("user.home"), ".webetl", "cache", "jars");
+                    defaultCache = new ExtractedJarCache(directory,
+                        Long.getLong(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES));
+                }
+            }
+        }
+        return defaultCache;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Opens the content of an embedded jar, it is only called on a cache miss.
+     */
+    @FunctionalInterface
+    public interface EntrySource {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * Returns the cached copy of an embedded jar, extracting it on a cache miss.
+     *
+     * @param jarFile the outer jar
+     * @param entry the embedded jar entry
+     * @return path to the extracted jar
+     * @throws IOException if the entry cannot be extracted
+     */
+    public Path extract(JarFile jarFile, JarEntry entry) throws IOException {
+        return extract(entry.getName(), entry.getCrc(), entry.getSize(), () -> jarFile.getInputStream(entry));
+    }
+
+    /**
+     * Returns the cached copy of an embedded jar, extracting it on a cache miss.
+     *
+     * @param entryName the name of the embedded jar entry
+     * @param expectedCrc the CRC-32 of the entry, -1 if unknown
+     * @param size the uncompressed size of the entry, -1 if unknown
+     * @param source opens the entry content
+     * @return path to the extracted jar
+     * @throws IOException if the entry cannot be extracted
+     */
+    public Path extract(String entryName, long expectedCrc, long size, EntrySource source) throws IOException {
+        Files.createDirectories(directory);
+        String baseName = baseName(entryName);
+
+        if (expectedCrc != -1 && size != -1) {
+            Path cached = directory.resolve(baseName + "-" + Long.toHexString(expectedCrc)
+                + "-" + size + SUFFIX);
+            if (Files.isRegularFile(cached) && Files.size(cached) == size) {
+                touch(cached);
+                return cached;
+            }
+            Path tempFile = Files.createTempFile(directory, baseName + "-", ".tmp");
+            try {
+                CRC32 crc = new CRC32();
+                try (InputStream in = new CheckedInputStream(source.open(), crc)) {
+                    Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+                if (crc.getValue() != expectedCrc) {
+                    throw new IOException("CRC mismatch while extracting " + entryName);
+                }
+                return publish(tempFile, cached);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+
+        // No checksum in the central directory, hash the content while extracting
+        Path tempFile = Files.createTempFile(directory, baseName + "-", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            try (InputStream in = new DigestInputStream(source.open(), digest)) {
+                Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest()).substring(0, 16);
+            Path cached = directory.resolve(baseName + "-" + hash + "-" + Files.size(tempFile) + SUFFIX);
+            if (Files.isRegularFile(cached)) {
+                touch(cached);
+                return cached;
+            }
+            return publish(tempFile, cached);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Returns the cached jar with the given key, creating it on a cache miss. Used for
+     * jars assembled at runtime, the key must identify their content.
+     *
+     * @param key the content key, used as file name
+     * @param source produces the jar content
+     * @return path to the cached jar
+     * @throws IOException if the jar cannot be written
+     */
+    public Path get(String key, EntrySource source) throws IOException {
+        Files.createDirectories(directory);
+        Path cached = directory.resolve(baseName(key) + SUFFIX);
+        if (Files.isRegularFile(cached)) {
+            touch(cached);
+            return cached;
+        }
+        Path tempFile = Files.createTempFile(directory, baseName(key) + "-", ".tmp");
+        try {
+            try (InputStream in = source.open()) {
+                Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return publish(tempFile, cached);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Evicts least recently used entries until the cache fits its size limit.
+     * Meant to run after a flow started or finished, off the startup path.
+     */
+    public void evictIfNeeded() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try {
+            List<Path> entries = new ArrayList<>();
+            long totalBytes = 0;
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+                for (Path file : files) {
+                    entries.add(file);
+                    totalBytes += Files.size(file);
+                }
+            }
+            if (totalBytes <= maxBytes) {
+                return;
+            }
+
+            entries.sort(Comparator.comparingLong(ExtractedJarCache::lastUsed));
+            long now = System.currentTimeMillis();
+            for (Path file : entries) {
+                if (totalBytes <= maxBytes || now - lastUsed(file) < EVICTION_GRACE_MILLIS) {
+                    break;
+                }
+                long size = Files.size(file);
+                if (Files.deleteIfExists(file)) {
+                    totalBytes -= size;
+                }
+            }
+        } catch (IOException e) {
+            // Eviction is best effort, a full cache only costs disk space
+            log.warn("Could not evict entries from {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * Moves a fully written temp file to its final name. Concurrent launches may publish
+     * the same entry at the same time; as the content is identical, either copy wins.
+     */
+    private Path publish(Path tempFile, Path target) throws IOException {
+        try {
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            try {
+                Files.move(tempFile, target);
+            } catch (FileAlreadyExistsException alreadyPublished) {
+                // published by a concurrent launch
+            }
+        } catch (IOException e) {
+            // the target may be held open by another process (e.g. on Windows)
+            if (!Files.isRegularFile(target)) {
+                throw e;
+            }
+        }
+        return target;
+    }
+
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // only affects eviction order
+        }
+    }
+
+    private static long lastUsed(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static String baseName(String entryName) {
+        String fileName = new File(entryName).getName();
+        if (fileName.endsWith(SUFFIX)) {
+            fileName = fileName.substring(0, fileName.length() - SUFFIX.length());
+        }
+        return fileName.replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+
+    private static MessageDigest sha256() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package io.webetl.runtime;
+
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * FlowExecutorPool runs compiled flow jars inside the current JVM.
+ * <p>
+ * Every run gets its own {@link FlowRunner} and therefore its own {@link JarClassLoader},
+ * so flows stay isolated from each other and from the host. The pool keeps a fixed set
+ * of executor threads, and the runners share their runtime classes through a
+ * {@link RuntimeLayer}, so a short flow starts without paying JVM startup or loading
+ * the runtime again.
+ */
+public class FlowExecutorPool implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(FlowExecutorPool.class);
+
+    private final ExecutorService executor;
+
+    /**
+     * Creates a pool.
+     *
+     * @param threads the number of flows that can run at the same time
+     */
+    public FlowExecutorPool(int threads) {
+        int size = Math.max(1, threads);
+        this.executor = Executors.newFixedThreadPool(size, namedThreads("flow-executor-"));
+        log.info("Flow executor pool started with {} executors", size);
+    }
+
+    /**
+     * Submits a flow jar for execution.
+     *
+     * @param jarPath path to the flow jar
+     * @param checkpointDirectory directory for source checkpoints, null disables checkpointing
+     * @param output consumer of the flow's log lines
+     * @return a future completing when the flow finished, exceptionally if it failed
+     */
+    public Future<?> submit(Path jarPath, Path checkpointDirectory, Consumer<String> output) {
+        return executor.submit(() -> {
+            try (FlowRunner runner = new FlowRunner()) {
+                runner.setCheckpointDirectory(checkpointDirectory);
+                runner.runFlow(jarPath, output);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void close() throws Exception {
+        executor.shutdown();
+        FlowRunner.releaseIdleLayers();
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -1,25 +1,46 @@
 package io.webetl.runtime;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * FlowRunner loads and executes CompiledFlow instances from jar files.
  * It handles the jar-in-jar loading mechanism to support self-contained flow jars.
+ * <p>
+ * Flows running in the same JVM share their runtime classes and libraries through a
+ * {@link RuntimeLayer}; each run only gets a thin child class loader for its generated
+ * class. FlowRunner keeps the layers and counts the runs using each of them. The most
+ * recently created layer is kept when idle, so the next run finds it warm; older layers
+ * are closed as soon as their last run finished.
+ * <p>
+ * Thin flow jars bring no runtime of their own; their layer is built from the runtime jar
+ * and libraries they refer to in the artifact store, see {@link ThinJar}.
  */
 public class FlowRunner implements AutoCloseable {
     private static final Logger log = LoggerFactory.getLogger(FlowRunner.class);
-    private final JarClassLoader classLoader;
+
+    private static final Map<String, RuntimeLayer> sharedLayers = new HashMap<>();
+    private static RuntimeLayer newestLayer;
+
+    private Path checkpointDirectory;
     
     /**
-     * Creates a new FlowRunner with a custom class loader.
+     * Sets the directory for source checkpoints. When set, sources record their
+     * position while the flow runs and a failed run resumes from the last
+     * completed checkpoint the next time it is started.
+     *
+     * @param checkpointDirectory the checkpoint directory, null disables checkpointing
      */
-    public FlowRunner() throws IOException {
-        this.classLoader = new JarClassLoader(getClass().getClassLoader());
+    public void setCheckpointDirectory(Path checkpointDirectory) {
+        this.checkpointDirectory = checkpointDirectory;
     }
     
     /**
@@ -29,48 +50,133 @@ public class FlowRunner implements AutoCloseable {
      * @throws Exception if loading or execution fails
      */
     public void runFlow(Path jarPath) throws Exception {
+        runFlow(jarPath, null);
+    }
+    
+    /**
+     * Loads a flow jar and executes it, sending the flow's log lines to the given consumer.
+     * The flow classes, including its ExecutionContext, come from the flow's class loader
+     * and runtime layer, not from ours, so the flow is driven reflectively through JDK types only.
+     *
+     * @param jarPath path to the flow jar
+     * @param output consumer of the flow's log lines, null for standard out
+     * @throws Exception if loading or execution fails
+     */
+    public void runFlow(Path jarPath, Consumer<String> output) throws Exception {
         log.info("Loading flow jar: {}", jarPath);
         
-        // Load the jar and its embedded dependencies
-        classLoader.loadJar(jarPath);
-        
-        // Set the context class loader for this thread
-        Thread.currentThread().setContextClassLoader(classLoader);
+        ThinJar thinJar = ThinJar.read(jarPath);
+        if (thinJar != null) {
+            runThinFlow(thinJar, output);
+            return;
+        }
         
-        // Find the flow class (either from manifest or by scanning)
-        String flowClassName = JarLauncher.getFlowClass(jarPath);
-        Class<?> flowClass;
+        NestedJarIndex index;
+        try {
+            index = NestedJarIndex.open(jarPath);
+        } catch (IOException e) {
+            log.warn("Could not index flow jar, running it without a shared runtime layer: {}", e.getMessage());
+            index = null;
+        }
         
-        if (flowClassName != null) {
-            log.info("Using flow class from manifest: {}", flowClassName);
-            flowClass = classLoader.loadClass(flowClassName);
-        } else {
-            // Find the flow class by scanning
-            flowClass = findFlowClass(classLoader);
-            if (flowClass == null) {
-                throw new IllegalArgumentException("No CompiledFlow implementation found in jar: " + jarPath);
+        RuntimeLayer layer = index != null ? acquireLayer(index) : null;
+        try (JarClassLoader classLoader = new JarClassLoader(
+                layer != null ? layer.getLoader() : getClass().getClassLoader())) {
+            // Load the jar and the embedded dependencies the layer does not provide
+            if (layer != null) {
+                classLoader.setParentFirstPackages(RuntimeLayer.SHARED_PACKAGES);
+                classLoader.loadIndex(index, layer.getLibraryEntries());
+            } else {
+                classLoader.loadJar(jarPath);
+            }
+            runFlow(jarPath, classLoader, output);
+        } finally {
+            if (layer != null) {
+                releaseLayer(layer);
             }
-            log.info("Found flow class by scanning: {}", flowClass.getName());
         }
+    }
+    
+    /**
+     * Runs a thin flow jar on a runtime layer made of the runtime jar and the libraries it
+     * refers to in the artifact store; the flow loader only holds the thin jar itself.
+     */
+    private void runThinFlow(ThinJar thinJar, Consumer<String> output) throws Exception {
+        RuntimeLayer layer = acquireLayer(thinJar);
+        try (JarClassLoader classLoader = new JarClassLoader(layer.getLoader())) {
+            classLoader.setParentFirstPackages(RuntimeLayer.SHARED_PACKAGES);
+            classLoader.loadJar(thinJar.getJarPath());
+            runFlow(thinJar.getJarPath(), classLoader, output);
+        } finally {
+            releaseLayer(layer);
+        }
+    }
+    
+    private void runFlow(Path jarPath, JarClassLoader classLoader, Consumer<String> output) throws Exception {
+        // Set the context class loader for this thread, the flow's worker threads inherit it
+        ClassLoader previousLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(classLoader);
         
-        // Create an execution context
-        ExecutionContext context = createExecutionContext();
-        
-        // Instantiate and execute the flow
-        log.info("Instantiating flow class: {}", flowClass.getName());
-        Object flowInstance = flowClass.getDeclaredConstructor().newInstance();
-        Method executeMethod = flowClass.getMethod("execute", ExecutionContext.class);
-        
-        log.info("Executing flow...");
-        executeMethod.invoke(flowInstance, context);
-        log.info("Flow execution completed successfully");
+        try {
+            // Find the flow class (either from manifest or by scanning)
+            String flowClassName = JarLauncher.getFlowClass(jarPath);
+            Class<?> flowClass;
+            
+            if (flowClassName != null) {
+                log.info("Using flow class from manifest: {}", flowClassName);
+                flowClass = classLoader.loadClass(flowClassName);
+            } else {
+                // Find the flow class by scanning
+                flowClass = findFlowClass(classLoader);
+                if (flowClass == null) {
+                    throw new IllegalArgumentException("No CompiledFlow implementation found in jar: " + jarPath);
+                }
+                log.info("Found flow class by scanning: {}", flowClass.getName());
+            }
+            
+            // Create an execution context
+            Object context = createExecutionContext(classLoader, output);
+            
+            // Instantiate and execute the flow
+            log.info("Instantiating flow class: {}", flowClass.getName());
+            Object flowInstance = flowClass.getDeclaredConstructor().newInstance();
+            Method executeMethod = flowClass.getMethod("execute", context.getClass());
+            
+            log.info("Executing flow...");
+            try {
+                executeMethod.invoke(flowInstance, context);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+            
+            // Only a successful run discards its checkpoints, a failed one resumes from them
+            context.getClass().getMethod("markCompleted").invoke(context);
+            log.info("Flow execution completed successfully");
+        } finally {
+            Thread.currentThread().setContextClassLoader(previousLoader);
+        }
     }
     
     /**
-     * Creates a new execution context for the flow.
+     * Creates a new execution context for the flow, using the ExecutionContext
+     * class the flow itself was compiled against.
      */
-    private ExecutionContext createExecutionContext() {
-        return new ExecutionContext();
+    private Object createExecutionContext(ClassLoader classLoader, Consumer<String> output) throws Exception {
+        Class<?> contextClass = classLoader.loadClass(ExecutionContext.class.getName());
+        Object context = contextClass.getDeclaredConstructor().newInstance();
+        if (output != null) {
+            contextClass.getMethod("setOutput", Consumer.class).invoke(context, output);
+        }
+        if (checkpointDirectory != null) {
+            if (new CheckpointStore(checkpointDirectory).hasCheckpoints()) {
+                log.info("Resuming from checkpoints in {}", checkpointDirectory);
+            }
+            contextClass.getMethod("setCheckpointDirectory", Path.class).invoke(context, checkpointDirectory);
+        }
+        return context;
     }
     
     /**
@@ -119,9 +225,96 @@ public class FlowRunner implements AutoCloseable {
         }
     }
     
+    /**
+     * Gets the runtime layer for a flow jar, creating it if no running or idle layer
+     * matches, and counts the flow as one of its users.
+     */
+    private static synchronized RuntimeLayer acquireLayer(NestedJarIndex index) throws IOException {
+        String fingerprint = RuntimeLayer.fingerprint(index);
+        RuntimeLayer layer = sharedLayers.get(fingerprint);
+        if (layer != null && !layer.accepts(index)) {
+            // The flow embeds other library versions than the shared layer, give it a private one
+            log.info("Flow {} conflicts with the libraries of runtime layer {}, using a private layer",
+                index.getJarPath().getFileName(), fingerprint);
+            layer = RuntimeLayer.create(index, fingerprint, FlowRunner.class.getClassLoader(),
+                ExtractedJarCache.getDefault());
+        } else if (layer == null) {
+            layer = RuntimeLayer.create(index, fingerprint, FlowRunner.class.getClassLoader(),
+                ExtractedJarCache.getDefault());
+            shareLayer(layer);
+        }
+        layer.addLibraries(index);
+        layer.retain();
+        return layer;
+    }
+    
+    /**
+     * Gets the runtime layer for a thin flow jar. Thin jars referring to the same runtime
+     * jar share a layer, as long as their libraries do not conflict.
+     */
+    private static synchronized RuntimeLayer acquireLayer(ThinJar thinJar) throws IOException {
+        String fingerprint = RuntimeLayer.fingerprint(thinJar);
+        RuntimeLayer layer = sharedLayers.get(fingerprint);
+        if (layer != null && !layer.accepts(thinJar)) {
+            log.info("Flow {} conflicts with the libraries of runtime layer {}, using a private layer",
+                thinJar.getJarPath().getFileName(), fingerprint);
+            layer = RuntimeLayer.create(thinJar, fingerprint, FlowRunner.class.getClassLoader(),
+                ExtractedJarCache.getDefault());
+        } else if (layer == null) {
+            layer = RuntimeLayer.create(thinJar, fingerprint, FlowRunner.class.getClassLoader(),
+                ExtractedJarCache.getDefault());
+            shareLayer(layer);
+        }
+        layer.addLibraries(thinJar);
+        layer.retain();
+        return layer;
+    }
+    
+    /**
+     * Registers a new layer for sharing. It becomes the newest layer, the previous one is
+     * closed if no flow uses it anymore.
+     */
+    private static void shareLayer(RuntimeLayer layer) {
+        sharedLayers.put(layer.getFingerprint(), layer);
+        RuntimeLayer previous = newestLayer;
+        newestLayer = layer;
+        if (previous != null && previous.release()) {
+            closeLayer(previous);
+        }
+        // The newest layer holds an extra reference, so it stays warm while idle
+        layer.retain();
+    }
+    
+    private static synchronized void releaseLayer(RuntimeLayer layer) {
+        if (layer.release()) {
+            closeLayer(layer);
+        }
+    }
+    
+    /**
+     * Closes the idle runtime layer kept for the next run, e.g. when the host shuts down.
+     * Layers still in use are closed when their last run finished.
+     */
+    public static synchronized void releaseIdleLayers() {
+        RuntimeLayer layer = newestLayer;
+        newestLayer = null;
+        if (layer != null && layer.release()) {
+            closeLayer(layer);
+        }
+    }
+    
+    private static void closeLayer(RuntimeLayer layer) {
+        sharedLayers.remove(layer.getFingerprint(), layer);
+        try {
+            layer.close();
+        } catch (IOException e) {
+            log.warn("Could not close runtime layer {}: {}", layer.getFingerprint(), e.getMessage());
+        }
+    }
+    
     @Override
     public void close() throws Exception {
-        classLoader.close();
+        ExtractedJarCache.getDefault().evictIfNeeded();
     }
     
     /**
@@ -2,36 +2,66 @@ package io.webetl.runtime;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 /**
  * Custom ClassLoader that can load classes from jars embedded within another jar.
  * This supports the jar-in-jar model where dependencies are packaged inside the flow jar.
+ * <p>
+ * Embedded jars stored uncompressed are read in place through a {@link NestedJarIndex}
+ * of the memory-mapped flow jar. Compressed embedded jars, as written by older
+ * compilers, are extracted to the {@link ExtractedJarCache} and loaded from there.
  */
 public class JarClassLoader extends URLClassLoader {
     private static final String LIB_DIR = "META-INF/lib/";
-    private final Path tempDir;
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private final ExtractedJarCache jarCache;
+    private final List<NestedJarIndex> indexes = new CopyOnWriteArrayList<>();
+    private final Map<Path, ProtectionDomain> protectionDomains = new ConcurrentHashMap<>();
+    // Embedded jars served by the parent loader instead, see loadJar(Path, Set)
+    private final Set<String> excludedJars = ConcurrentHashMap.newKeySet();
+    private volatile List<String> parentFirstPackages = Collections.emptyList();
     private boolean verbose = false;
 
     /**
-     * Creates a new JarClassLoader with the parent ClassLoader.
+     * Creates a new JarClassLoader with the parent ClassLoader,
+     * extracting embedded jars into the shared jar cache.
      *
      * @param parent the parent class loader
      */
     public JarClassLoader(ClassLoader parent) throws IOException {
+        this(parent, ExtractedJarCache.getDefault());
+    }
+
+    /**
+     * Creates a new JarClassLoader with the parent ClassLoader.
+     *
+     * @param parent the parent class loader
+     * @param jarCache the cache embedded jars are extracted to
+     */
+    public JarClassLoader(ClassLoader parent, ExtractedJarCache jarCache) throws IOException {
         super(new URL[0], parent);
-        this.tempDir = Files.createTempDirectory("jar-loader");
-        tempDir.toFile().deleteOnExit();
+        this.jarCache = jarCache;
     }
     
     /**
@@ -41,6 +71,16 @@ public class JarClassLoader extends URLClassLoader {
         this.verbose = verbose;
     }
 
+    /**
+     * Sets the packages loaded parent first. Used when the parent is a shared runtime
+     * layer, so flows use the layer's runtime classes instead of their own copies.
+     *
+     * @param packages package or class name prefixes, e.g. {@code io.webetl.runtime.}
+     */
+    public void setParentFirstPackages(List<String> packages) {
+        this.parentFirstPackages = List.copyOf(packages);
+    }
+
     /**
      * Loads a jar file and all its embedded jars.
      *
@@ -48,8 +88,32 @@ public class JarClassLoader extends URLClassLoader {
      * @throws IOException if an I/O error occurs
      */
     public void loadJar(Path jarPath) throws IOException {
+        loadJar(jarPath, Collections.emptySet());
+    }
+
+    /**
+     * Loads a jar file and its embedded jars, except the excluded ones.
+     *
+     * @param jarPath path to the main jar file
+     * @param excludedJars names of embedded jars (e.g. {@code META-INF/lib/foo.jar}) the parent provides
+     * @throws IOException if an I/O error occurs
+     */
+    public void loadJar(Path jarPath, Set<String> excludedJars) throws IOException {
         log("Loading JAR: " + jarPath);
         
+        NestedJarIndex index;
+        try {
+            index = NestedJarIndex.open(jarPath);
+        } catch (IOException e) {
+            log("Could not index JAR, extracting embedded JARs instead: " + e.getMessage());
+            index = null;
+        }
+        if (index != null) {
+            loadIndex(index, excludedJars);
+            return;
+        }
+        this.excludedJars.addAll(excludedJars);
+        
         // Add the main jar to the classpath
         addURL(jarPath.toUri().toURL());
         
@@ -65,6 +129,34 @@ public class JarClassLoader extends URLClassLoader {
         }
     }
 
+    /**
+     * Adds an already indexed jar, extracting only its compressed embedded jars.
+     *
+     * @param index the index of the jar
+     * @param excludedJars names of embedded jars the parent provides
+     * @throws IOException if an I/O error occurs
+     */
+    void loadIndex(NestedJarIndex index, Set<String> excludedJars) throws IOException {
+        this.excludedJars.addAll(excludedJars);
+        indexes.add(index);
+        log("Indexed " + index.size() + " entries");
+        for (NestedJarIndex.Entry entry : index.getCompressedJars()) {
+            if (this.excludedJars.contains(entry.name)) {
+                continue;
+            }
+            Path extractedJar = jarCache.extract(entry.name, entry.crc, entry.size, () -> index.open(entry));
+            log("Using compressed " + entry.name + " from " + extractedJar);
+            addURL(extractedJar.toUri().toURL());
+            if (entry.name.contains("runtime.jar")) {
+                try (JarFile nestedJar = new JarFile(extractedJar.toFile())) {
+                    for (URL url : extractEmbeddedJars(nestedJar)) {
+                        addURL(url);
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Extracts embedded jars from a jar file and returns their URLs.
      *
@@ -78,7 +170,8 @@ public class JarClassLoader extends URLClassLoader {
 
         while (entries.hasMoreElements()) {
             JarEntry entry = entries.nextElement();
-            if (entry.getName().startsWith(LIB_DIR) && entry.getName().endsWith(".jar")) {
+            if (entry.getName().startsWith(LIB_DIR) && entry.getName().endsWith(".jar")
+                    && !excludedJars.contains(entry.getName())) {
                 // Extract the embedded jar to a temp file
                 Path extractedJar = extractJarEntry(jarFile, entry);
                 jarUrls.add(extractedJar.toUri().toURL());
@@ -98,7 +191,7 @@ public class JarClassLoader extends URLClassLoader {
     }
 
     /**
-     * Extracts a jar entry to a temporary file.
+     * Extracts a jar entry, reusing a previously extracted copy with the same content.
      *
      * @param jarFile the jar file containing the entry
      * @param entry the jar entry to extract
@@ -106,16 +199,8 @@ public class JarClassLoader extends URLClassLoader {
      * @throws IOException if an I/O error occurs
      */
     private Path extractJarEntry(JarFile jarFile, JarEntry entry) throws IOException {
-        String fileName = new File(entry.getName()).getName();
-        Path extractedPath = tempDir.resolve(fileName);
-        
-        log("Extracting: " + entry.getName() + " to " + extractedPath);
-        
-        try (InputStream in = jarFile.getInputStream(entry)) {
-            Files.copy(in, extractedPath, StandardCopyOption.REPLACE_EXISTING);
-        }
-        
-        extractedPath.toFile().deleteOnExit();
+        Path extractedPath = jarCache.extract(jarFile, entry);
+        log("Using: " + entry.getName() + " from " + extractedPath);
         return extractedPath;
     }
     
@@ -130,55 +215,67 @@ public class JarClassLoader extends URLClassLoader {
             return loadedClass;
         }
 
-        // First try to find the class in our classloader
-        try {
-            if (verbose) {
-                log("Attempting to load from our classloader: " + name);
-            }
-            // Use findLoadedClass to check if we've already loaded this class
+        synchronized (getClassLoadingLock(name)) {
+            // Another thread may have defined the class while we waited for the lock
             Class<?> c = findLoadedClass(name);
             if (c != null) {
-                if (verbose) {
-                    log("Found already loaded class in our classloader: " + name);
+                return c;
+            }
+            if (isParentFirst(name) && getParent() != null) {
+                try {
+                    return getParent().loadClass(name);
+                } catch (ClassNotFoundException e) {
+                    // not shared by the parent, use our own copy
                 }
+            }
+            c = findLocalClass(name);
+            if (c != null) {
                 return c;
             }
+            return loadFromParent(name);
+        }
+    }
 
-            // Try to find the class in our JARs
-            String classPath = name.replace('.', '/') + ".class";
-            for (URL url : getURLs()) {
-                if (url.getProtocol().equals("file")) {
-                    try {
-                        JarFile jarFile = new JarFile(new File(url.toURI()));
-                        JarEntry entry = jarFile.getJarEntry(classPath);
-                        if (entry != null) {
-                            if (verbose) {
-                                log("Found class file in JAR: " + url);
-                            }
-                            // Load the class from the JAR
-                            try (InputStream is = jarFile.getInputStream(entry)) {
-                                byte[] classData = is.readAllBytes();
-                                c = defineClass(name, classData, 0, classData.length);
-                                if (verbose) {
-                                    log("Successfully defined class: " + name + " from " + url);
-                                }
-                                return c;
-                            }
-                        }
-                        jarFile.close();
-                    } catch (Exception e) {
-                        if (verbose) {
-                            log("Error checking JAR " + url + ": " + e.getMessage());
-                        }
-                    }
+    /**
+     * Finds a class in the indexed flow jars, then in the jars on the URL classpath.
+     *
+     * @return the class or null if none of our jars contains it
+     */
+    private Class<?> findLocalClass(String name) {
+        if (verbose) {
+            log("Attempting to load from our classloader: " + name);
+        }
+        String classPath = name.replace('.', '/') + ".class";
+        for (NestedJarIndex index : indexes) {
+            NestedJarIndex.Entry entry = findIncluded(index, classPath);
+            if (entry == null) {
+                continue;
+            }
+            try {
+                definePackageFor(name);
+                Class<?> c = defineClass(name, index.read(entry), protectionDomain(index));
+                if (verbose) {
+                    log("Successfully defined class: " + name + " from " + entry.location);
+                }
+                return c;
+            } catch (IOException e) {
+                if (verbose) {
+                    log("Error reading " + classPath + " from " + entry.location + ": " + e.getMessage());
                 }
             }
-        } catch (Exception e) {
+        }
+        try {
+            Class<?> c = findClass(name);
             if (verbose) {
-                log("Error loading from our classloader: " + e.getMessage());
+                log("Found class file in JAR on classpath: " + name);
             }
+            return c;
+        } catch (ClassNotFoundException e) {
+            return null;
         }
+    }
 
+    private Class<?> loadFromParent(String name) throws ClassNotFoundException {
         // If we get here, try the parent classloader
         ClassLoader parent = getParent();
         if (parent != null) {
@@ -238,6 +335,56 @@ public class JarClassLoader extends URLClassLoader {
         throw new ClassNotFoundException(name);
     }
 
+    private boolean isParentFirst(String name) {
+        for (String prefix : parentFirstPackages) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the first entry with the given name that is not in an excluded jar.
+     */
+    private NestedJarIndex.Entry findIncluded(NestedJarIndex index, String name) {
+        for (NestedJarIndex.Entry entry : index.findAll(name)) {
+            if (!excludedJars.contains(entry.location)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Defines the package of a class read from an index, unless it is already defined.
+     */
+    private void definePackageFor(String className) {
+        int lastDot = className.lastIndexOf('.');
+        if (lastDot < 0) {
+            return;
+        }
+        String packageName = className.substring(0, lastDot);
+        if (getDefinedPackage(packageName) == null) {
+            try {
+                definePackage(packageName, null, null, null, null, null, null, null);
+            } catch (IllegalArgumentException e) {
+                // defined concurrently by another thread
+            }
+        }
+    }
+
+    private ProtectionDomain protectionDomain(NestedJarIndex index) {
+        return protectionDomains.computeIfAbsent(index.getJarPath(), jarPath -> {
+            try {
+                CodeSource codeSource = new CodeSource(jarPath.toUri().toURL(), (CodeSigner[]) null);
+                return new ProtectionDomain(codeSource, null, this, null);
+            } catch (MalformedURLException e) {
+                return null;
+            }
+        });
+    }
+
     /**
      * Override to log resource loading attempts
      */
@@ -246,7 +393,10 @@ public class JarClassLoader extends URLClassLoader {
         if (verbose) {
             log("Finding resource: " + name);
         }
-        URL url = super.findResource(name);
+        URL url = findIndexedResource(name);
+        if (url == null) {
+            url = super.findResource(name);
+        }
         if (verbose) {
             if (url != null) {
                 log("Found resource: " + name + " at " + url);
@@ -265,18 +415,40 @@ public class JarClassLoader extends URLClassLoader {
         if (verbose) {
             log("Finding resources: " + name);
         }
-        Enumeration<URL> urls = super.findResources(name);
+        List<URL> urls = new ArrayList<>();
+        for (NestedJarIndex index : indexes) {
+            for (NestedJarIndex.Entry entry : index.findAll(name)) {
+                if (!excludedJars.contains(entry.location)) {
+                    urls.add(index.toUrl(entry));
+                }
+            }
+        }
+        urls.addAll(Collections.list(super.findResources(name)));
         if (verbose) {
-            if (urls.hasMoreElements()) {
+            if (!urls.isEmpty()) {
                 log("Found resources: " + name);
-                while (urls.hasMoreElements()) {
-                    log("  - " + urls.nextElement());
+                for (URL url : urls) {
+                    log("  - " + url);
                 }
             } else {
                 log("No resources found: " + name);
             }
         }
-        return urls;
+        return Collections.enumeration(urls);
+    }
+
+    private URL findIndexedResource(String name) {
+        for (NestedJarIndex index : indexes) {
+            NestedJarIndex.Entry entry = findIncluded(index, name);
+            if (entry != null) {
+                try {
+                    return index.toUrl(entry);
+                } catch (IOException e) {
+                    log("Error creating URL for " + name + ": " + e.getMessage());
+                }
+            }
+        }
+        return null;
     }
 
     /**
@@ -294,7 +466,9 @@ public class JarClassLoader extends URLClassLoader {
     @Override
     public void close() throws IOException {
         super.close();
-        // Additional cleanup can be added here if needed
+        // The mappings are released once the indexes are garbage collected
+        indexes.clear();
+        protectionDomains.clear();
     }
 
     /**
@@ -303,6 +477,9 @@ public class JarClassLoader extends URLClassLoader {
      */
     public void printClasspath() {
         log("JarClassLoader classpath:");
+        for (NestedJarIndex index : indexes) {
+            log("  - " + index.getJarPath() + " (indexed)");
+        }
         for (URL url : getURLs()) {
             log("  - " + url.toString());
         }
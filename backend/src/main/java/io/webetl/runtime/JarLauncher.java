@@ -65,6 +65,13 @@ public class JarLauncher {
                 error("Unable to determine JAR path");
                 System.exit(1);
             }
+            if (getFlowClass(Paths.get(jarPath)) == null) {
+                // A thin flow jar, the launcher was loaded from the runtime jar on its Class-Path
+                String launchedJarPath = findLaunchedJarPath();
+                if (launchedJarPath != null) {
+                    jarPath = launchedJarPath;
+                }
+            }
             
             info("Launching JAR: " + jarPath);
             runJar(jarPath, args);
@@ -105,6 +112,17 @@ public class JarLauncher {
         return null;
     }
     
+    /**
+     * Finds the jar started with {@code java -jar}, the first entry of the class path.
+     *
+     * @return path to the jar or null if not started from a jar
+     */
+    private static String findLaunchedJarPath() {
+        String classPath = System.getProperty("java.class.path", "");
+        String first = classPath.split(File.pathSeparator)[0];
+        return first.endsWith(".jar") ? first : null;
+    }
+    
     /**
      * Runs a jar using the FlowRunner.
      * 
@@ -123,6 +141,14 @@ public class JarLauncher {
             
             debug("Checking JAR manifest");
             
+            // A thin jar runs on artifacts from the store, make sure they are the ones it was compiled with
+            ThinJar thinJar = ThinJar.read(jarPathObj);
+            if (thinJar != null) {
+                info("Thin flow jar, verifying runtime " + thinJar.getRuntime() + " and "
+                    + thinJar.getDependencies().size() + " libraries");
+                thinJar.resolveAll();
+            }
+            
             // Extract flow class from jar manifest
             String flowClass = getFlowClass(jarPathObj);
             if (flowClass != null) {
@@ -151,7 +177,9 @@ public class JarLauncher {
         log("INFO", "Running with flow class: " + flowClassName);
         // Create a new class loader for the jar and its dependencies
         log("INFO", "Creating new class loader");
-        JarClassLoader loader = new JarClassLoader(ClassLoader.getSystemClassLoader());  // Use system classloader as parent for JRE access
+        ExtractedJarCache jarCache = ExtractedJarCache.getDefault();
+        debug("Using jar cache: " + jarCache.getDirectory());
+        JarClassLoader loader = new JarClassLoader(ClassLoader.getSystemClassLoader(), jarCache);  // Use system classloader as parent for JRE access
         
         try {
             // Enable verbose mode if requested
@@ -226,9 +254,14 @@ public class JarLauncher {
             
             info("Executing flow class: " + flowClassName);
             executeMethod.invoke(flowInstance, context);
+            
+            // Discard checkpoints only after a successful run
+            contextClass.getMethod("markCompleted").invoke(context);
             info("Flow execution completed successfully");
         } finally {
             loader.close();
+            // Trim the jar cache after the run, not on the startup path
+            jarCache.evictIfNeeded();
         }
     }
     
@@ -275,7 +308,8 @@ public class JarLauncher {
      */
     private static void runWithDirectExecution(Path jarPath) throws Exception {
         // Use JarClassLoader to ensure all dependencies are loaded
-        try (JarClassLoader loader = new JarClassLoader(JarLauncher.class.getClassLoader())) {
+        ExtractedJarCache jarCache = ExtractedJarCache.getDefault();
+        try (JarClassLoader loader = new JarClassLoader(JarLauncher.class.getClassLoader(), jarCache)) {
             // Enable verbose mode if requested
             loader.setVerbose(verbose);
             
@@ -321,10 +355,13 @@ public class JarLauncher {
             if (executeMethod != null) {
                 info("Executing flow class: " + flowClassName);
                 executeMethod.invoke(flowInstance, context);
+                context.markCompleted();
                 info("Flow execution completed successfully");
             } else {
                 throw new NoSuchMethodException("execute(io.webetl.runtime.ExecutionContext)");
             }
+        } finally {
+            jarCache.evictIfNeeded();
         }
     }
     
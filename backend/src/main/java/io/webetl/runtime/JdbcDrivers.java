@@ -0,0 +1,40 @@
+package io.webetl.runtime;
+
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Collections;
+
+/**
+ * Deregisters the JDBC drivers loaded by a flow class loader when the loader is discarded,
+ * otherwise DriverManager keeps the drivers and with them the whole loader alive.
+ * <p>
+ * DriverManager only lets code deregister drivers its own class loader can see, so this
+ * class is loaded through the class loader being discarded and invoked reflectively.
+ */
+public final class JdbcDrivers {
+
+    private JdbcDrivers() {
+    }
+
+    /**
+     * Deregisters all drivers loaded by the class loader of this class.
+     *
+     * @return the number of deregistered drivers
+     */
+    public static int deregisterDrivers() {
+        ClassLoader loader = JdbcDrivers.class.getClassLoader();
+        int count = 0;
+        for (Driver driver : Collections.list(DriverManager.getDrivers())) {
+            if (driver.getClass().getClassLoader() == loader) {
+                try {
+                    DriverManager.deregisterDriver(driver);
+                    count++;
+                } catch (SQLException e) {
+                    // nothing left to clean up for this driver
+                }
+            }
+        }
+        return count;
+    }
+}
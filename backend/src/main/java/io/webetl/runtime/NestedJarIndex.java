@@ -0,0 +1,301 @@
+package io.webetl.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * NestedJarIndex memory-maps a flow jar and indexes the entries of the jar itself and
+ * of every jar stored uncompressed in its {@code META-INF/lib} directory, recursively.
+ * <p>
+ * The index is built once from the central directories and maps each entry name to the
+ * position of its data in the mapped file, so looking up a class is a map lookup and its
+ * bytes are read straight from the mapping without extracting anything to disk. Entries
+ * are kept in classpath order: the flow jar first, then the embedded jars in the order
+ * they appear in the flow jar.
+ * <p>
+ * Embedded jars that were written compressed (flow jars built by older compilers) cannot
+ * be addressed in place; they are reported by {@link #getCompressedJars()} so the caller
+ * can extract them instead.
+ */
+class NestedJarIndex {
+    private static final String LIB_DIR = "META-INF/lib/";
+
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int END_SIZE = 22;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    /**
+     * An entry of the flow jar or of one of its embedded jars.
+     */
+    static final class Entry {
+        final String name;
+        final String location;
+        final long crc;
+        final int size;
+        private final ByteBuffer jar;
+        private final int offset;
+        private final int compressedSize;
+        private final int method;
+
+        private Entry(String name, String location, ByteBuffer jar, int offset,
+                      int compressedSize, int size, int method, long crc) {
+            this.name = name;
+            this.location = location;
+            this.jar = jar;
+            this.offset = offset;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.method = method;
+            this.crc = crc;
+        }
+    }
+
+    private final Path jarPath;
+    private final String location;
+    private final Map<String, List<Entry>> entries = new LinkedHashMap<>();
+    private final List<Entry> orderedEntries = new ArrayList<>();
+    private final List<Entry> compressedJars = new ArrayList<>();
+
+    private NestedJarIndex(Path jarPath) {
+        this.jarPath = jarPath;
+        this.location = jarPath.getFileName().toString();
+    }
+
+    /**
+     * Maps a jar file and builds the index of it and its embedded jars.
+     *
+     * @param jarPath the flow jar
+     * @return the index
+     * @throws IOException if the jar cannot be mapped or is not a plain (non ZIP64) jar
+     */
+    static NestedJarIndex open(Path jarPath) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(jarPath, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Jar too large to map: " + jarPath);
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        NestedJarIndex index = new NestedJarIndex(jarPath);
+        index.indexJar(mapped, index.location);
+        return index;
+    }
+
+    /**
+     * Gets the first entry with the given name in classpath order.
+     *
+     * @param name the entry name, e.g. {@code io/webetl/runtime/Foo.class}
+     * @return the entry or null if no indexed jar contains it
+     */
+    Entry find(String name) {
+        List<Entry> found = entries.get(name);
+        return found != null ? found.get(0) : null;
+    }
+
+    /**
+     * Gets all entries with the given name in classpath order.
+     */
+    List<Entry> findAll(String name) {
+        return entries.getOrDefault(name, Collections.emptyList());
+    }
+
+    /**
+     * Gets the entries of the flow jar itself, without those of its embedded jars.
+     */
+    List<Entry> getTopLevelEntries() {
+        List<Entry> topLevel = new ArrayList<>();
+        for (Entry entry : orderedEntries) {
+            if (entry.location.equals(location)) {
+                topLevel.add(entry);
+            }
+        }
+        return topLevel;
+    }
+
+    /**
+     * Gets the embedded jars that are compressed and therefore not indexed.
+     */
+    List<Entry> getCompressedJars() {
+        return compressedJars;
+    }
+
+    Path getJarPath() {
+        return jarPath;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the content of an entry. Stored entries are returned as a view of the
+     * mapped file, compressed ones are inflated from it.
+     */
+    ByteBuffer read(Entry entry) throws IOException {
+        ByteBuffer data = entry.jar.slice(entry.offset, entry.compressedSize);
+        if (entry.method == STORED) {
+            return data;
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            byte[] content = new byte[entry.size];
+            int length = 0;
+            while (length < content.length && !inflater.finished()) {
+                int read = inflater.inflate(content, length, content.length - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated entry " + entry.name + " in " + entry.location);
+                }
+                length += read;
+            }
+            return ByteBuffer.wrap(content, 0, length);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt entry " + entry.name + " in " + entry.location, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Opens the content of an entry as a stream.
+     */
+    InputStream open(Entry entry) throws IOException {
+        ByteBuffer data = read(entry);
+        byte[] content = new byte[data.remaining()];
+        data.get(content);
+        return new ByteArrayInputStream(content);
+    }
+
+    /**
+     * Creates a URL for an entry. The URL reads from the mapped jar, so resources of
+     * embedded jars work without extracting them.
+     */
+    URL toUrl(Entry entry) throws IOException {
+        String spec = jarPath.toUri() + "!/" + entry.location + "!/" + entry.name;
+        return new URL(null, "webetl-nested:" + spec, new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(URL url) {
+                return new URLConnection(url) {
+                    @Override
+                    public void connect() {
+                        connected = true;
+                    }
+
+                    @Override
+                    public InputStream getInputStream() throws IOException {
+                        return open(entry);
+                    }
+
+                    @Override
+                    public long getContentLengthLong() {
+                        return entry.size;
+                    }
+                };
+            }
+        });
+    }
+
+    private void indexJar(ByteBuffer jar, String location) throws IOException {
+        jar.order(ByteOrder.LITTLE_ENDIAN);
+        int end = findEndOfCentralDirectory(jar, location);
+        int count = Short.toUnsignedInt(jar.getShort(end + 10));
+        long directoryOffset = Integer.toUnsignedLong(jar.getInt(end + 16));
+        if (directoryOffset >= jar.limit()) {
+            throw new IOException("ZIP64 or corrupt central directory in " + location);
+        }
+
+        List<Entry> nestedJars = new ArrayList<>();
+        int position = (int) directoryOffset;
+        for (int i = 0; i < count; i++) {
+            if (jar.getInt(position) != CENTRAL_SIGNATURE) {
+                throw new IOException("Corrupt central directory in " + location);
+            }
+            int method = Short.toUnsignedInt(jar.getShort(position + 10));
+            long crc = Integer.toUnsignedLong(jar.getInt(position + 16));
+            long compressedSize = Integer.toUnsignedLong(jar.getInt(position + 20));
+            long size = Integer.toUnsignedLong(jar.getInt(position + 24));
+            int nameLength = Short.toUnsignedInt(jar.getShort(position + 28));
+            int extraLength = Short.toUnsignedInt(jar.getShort(position + 30));
+            int commentLength = Short.toUnsignedInt(jar.getShort(position + 32));
+            long localOffset = Integer.toUnsignedLong(jar.getInt(position + 42));
+            byte[] nameBytes = new byte[nameLength];
+            jar.get(position + CENTRAL_HEADER_SIZE, nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+            position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+
+            if (name.endsWith("/")) {
+                continue;
+            }
+            if (localOffset >= jar.limit() || compressedSize > Integer.MAX_VALUE || size > Integer.MAX_VALUE) {
+                throw new IOException("ZIP64 entry " + name + " in " + location);
+            }
+            if (method != STORED && method != DEFLATED) {
+                continue;
+            }
+            Entry entry = new Entry(name, location, jar, dataOffset(jar, (int) localOffset, location),
+                (int) compressedSize, (int) size, method, crc);
+            entries.computeIfAbsent(name, key -> new ArrayList<>(1)).add(entry);
+            orderedEntries.add(entry);
+
+            if (name.startsWith(LIB_DIR) && name.endsWith(".jar")) {
+                nestedJars.add(entry);
+            }
+        }
+
+        // Embedded jars come after the jar's own entries on the classpath
+        for (Entry nested : nestedJars) {
+            if (nested.method != STORED) {
+                compressedJars.add(nested);
+                continue;
+            }
+            try {
+                indexJar(nested.jar.slice(nested.offset, nested.size), nested.name);
+            } catch (IOException | IndexOutOfBoundsException e) {
+                compressedJars.add(nested);
+            }
+        }
+    }
+
+    private static int findEndOfCentralDirectory(ByteBuffer jar, String location) throws IOException {
+        // The end record is followed by a comment of at most 64k
+        int lowest = Math.max(0, jar.limit() - END_SIZE - 0xFFFF);
+        for (int position = jar.limit() - END_SIZE; position >= lowest; position--) {
+            if (jar.getInt(position) == END_SIGNATURE) {
+                return position;
+            }
+        }
+        throw new IOException("No central directory in " + location);
+    }
+
+    private static int dataOffset(ByteBuffer jar, int localOffset, String location) throws IOException {
+        if (jar.getInt(localOffset) != LOCAL_SIGNATURE) {
+            throw new IOException("Corrupt local header in " + location);
+        }
+        int nameLength = Short.toUnsignedInt(jar.getShort(localOffset + 26));
+        int extraLength = Short.toUnsignedInt(jar.getShort(localOffset + 28));
+        return localOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+    }
+}
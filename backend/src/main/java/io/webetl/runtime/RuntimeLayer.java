@@ -0,0 +1,311 @@
+package io.webetl.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RuntimeLayer is a class loader shared by flows running in the same JVM. It holds the
+ * WebETL runtime classes and the libraries (SLF4J, logback, JDBC drivers, ...) the flows
+ * embed, so co-hosted flows share one copy of them; each flow only adds a thin child
+ * loader for its generated class.
+ * <p>
+ * A layer is created for a runtime fingerprint: the CRCs of the runtime classes a flow jar
+ * embeds. Flows compiled by the same compiler version share a layer. Libraries are added
+ * as flows bring them; a flow embedding a different version of a library the layer already
+ * holds cannot share it. Layers are created, shared and released by {@link FlowRunner}.
+ * <p>
+ * The layer of a thin flow jar is made of the runtime jar and the libraries the flow
+ * refers to in the artifact store, which are loaded in place.
+ */
+class RuntimeLayer implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(RuntimeLayer.class);
+
+    private static final String LIB_DIR = "META-INF/lib/";
+    /** Entries of a flow jar that belong to the shared runtime. */
+    private static final List<String> SHARED_ENTRIES = List.of(
+        "io/webetl/runtime/",
+        "io/webetl/model/",
+        "io/webetl/components/",
+        "io/webetl/compiler/CompiledFlow",
+        "org/slf4j/",
+        "logback.xml"
+    );
+    /** Class name prefixes a flow loader takes from its layer, matching {@link #SHARED_ENTRIES}. */
+    static final List<String> SHARED_PACKAGES = List.of(
+        "io.webetl.runtime.",
+        "io.webetl.model.",
+        "io.webetl.components.",
+        "io.webetl.compiler.CompiledFlow",
+        "org.slf4j.",
+        "ch.qos.logback."
+    );
+    /**
+     * Class name prefixes a layer takes from the host when it has them. Logging is
+     * configured once per JVM; a second logback would also find the service providers of
+     * the host through the context class loader and fail to load them.
+     */
+    static final List<String> HOST_PACKAGES = List.of(
+        "org.slf4j.",
+        "ch.qos.logback."
+    );
+    private static final Pattern VERSIONED_JAR = Pattern.compile("(.+?)-\\d.*\\.jar");
+
+    private final String fingerprint;
+    private final JarClassLoader loader;
+    private final ExtractedJarCache jarCache;
+    // artifact name -> entry name and CRC of the library the layer holds for it
+    private final Map<String, String> libraries = new ConcurrentHashMap<>();
+    private final Set<String> libraryEntries = ConcurrentHashMap.newKeySet();
+    private int references;
+
+    private RuntimeLayer(String fingerprint, JarClassLoader loader, ExtractedJarCache jarCache) {
+        this.fingerprint = fingerprint;
+        this.loader = loader;
+        this.jarCache = jarCache;
+    }
+
+    /**
+     * Computes the runtime fingerprint of a flow jar from its central directory.
+     */
+    static String fingerprint(NestedJarIndex index) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+        for (NestedJarIndex.Entry entry : sharedEntries(index)) {
+            digest.update((entry.name + ':' + entry.crc + ':' + entry.size + '\n').getBytes(StandardCharsets.UTF_8));
+        }
+        return HexFormat.of().formatHex(digest.digest()).substring(0, 16);
+    }
+
+    /**
+     * Creates a layer holding the runtime classes of a flow jar. The runtime classes are
+     * copied to a jar in the jar cache, so the layer does not depend on the flow jar,
+     * which may be recompiled while the layer is in use.
+     */
+    static RuntimeLayer create(NestedJarIndex index, String fingerprint, ClassLoader parent,
+                               ExtractedJarCache jarCache) throws IOException {
+        List<NestedJarIndex.Entry> entries = sharedEntries(index);
+        Path runtimeJar = jarCache.get("webetl-runtime-" + fingerprint, () -> {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (JarOutputStream jar = new JarOutputStream(bytes)) {
+                for (NestedJarIndex.Entry entry : entries) {
+                    ByteBuffer content = index.read(entry);
+                    JarEntry jarEntry = new JarEntry(entry.name);
+                    jarEntry.setMethod(JarEntry.STORED);
+                    jarEntry.setSize(content.remaining());
+                    jarEntry.setCompressedSize(content.remaining());
+                    jarEntry.setCrc(entry.crc);
+                    jar.putNextEntry(jarEntry);
+                    byte[] data = new byte[content.remaining()];
+                    content.get(data);
+                    jar.write(data);
+                    jar.closeEntry();
+                }
+            }
+            return new ByteArrayInputStream(bytes.toByteArray());
+        });
+        JarClassLoader loader = new JarClassLoader(parent, jarCache);
+        loader.setParentFirstPackages(HOST_PACKAGES);
+        loader.loadJar(runtimeJar);
+        log.info("Created runtime layer {} with {} runtime entries", fingerprint, entries.size());
+        return new RuntimeLayer(fingerprint, loader, jarCache);
+    }
+
+    /**
+     * Computes the runtime fingerprint of a thin flow jar, the checksum of its runtime jar.
+     */
+    static String fingerprint(ThinJar thinJar) {
+        return "thin-" + thinJar.getRuntime().getSha256().substring(0, 16);
+    }
+
+    /**
+     * Creates a layer holding the runtime jar a thin flow jar refers to. The jar is loaded
+     * from the artifact store as it is, after checking its checksum.
+     */
+    static RuntimeLayer create(ThinJar thinJar, String fingerprint, ClassLoader parent,
+                               ExtractedJarCache jarCache) throws IOException {
+        Path runtimeJar = ThinJar.resolve(thinJar.getRuntime());
+        JarClassLoader loader = new JarClassLoader(parent, jarCache);
+        loader.setParentFirstPackages(HOST_PACKAGES);
+        loader.loadJar(runtimeJar);
+        log.info("Created runtime layer {} from {}", fingerprint, runtimeJar);
+        return new RuntimeLayer(fingerprint, loader, jarCache);
+    }
+
+    String getFingerprint() {
+        return fingerprint;
+    }
+
+    ClassLoader getLoader() {
+        return loader;
+    }
+
+    /**
+     * Gets the names of the embedded jars the layer provides, the flow loader skips them.
+     */
+    Set<String> getLibraryEntries() {
+        return libraryEntries;
+    }
+
+    /**
+     * Checks whether the layer can provide all libraries of a flow jar, i.e. it holds no
+     * other version of any of them.
+     */
+    synchronized boolean accepts(NestedJarIndex index) {
+        for (NestedJarIndex.Entry library : libraryJars(index)) {
+            String present = libraries.get(artifact(library.name));
+            if (present != null && !present.equals(identity(library))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the libraries of a flow jar the layer does not hold yet.
+     */
+    synchronized void addLibraries(NestedJarIndex index) throws IOException {
+        for (NestedJarIndex.Entry library : libraryJars(index)) {
+            if (libraries.putIfAbsent(artifact(library.name), identity(library)) == null) {
+                Path jar = jarCache.extract(library.name, library.crc, library.size, () -> index.open(library));
+                loader.loadJar(jar);
+                libraryEntries.add(library.name);
+                log.debug("Added {} to runtime layer {}", library.name, fingerprint);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the layer can provide all libraries a thin flow jar refers to.
+     */
+    synchronized boolean accepts(ThinJar thinJar) {
+        for (ThinJar.Artifact library : thinJar.getDependencies()) {
+            String present = libraries.get(library.getArtifactId());
+            if (present != null && !present.equals(identity(library))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the libraries a thin flow jar refers to that the layer does not hold yet,
+     * checking their checksums.
+     */
+    synchronized void addLibraries(ThinJar thinJar) throws IOException {
+        for (ThinJar.Artifact library : thinJar.getDependencies()) {
+            if (!libraries.containsKey(library.getArtifactId())) {
+                loader.loadJar(ThinJar.resolve(library));
+                libraries.put(library.getArtifactId(), identity(library));
+                log.debug("Added {} to runtime layer {}", library, fingerprint);
+            }
+        }
+    }
+
+    synchronized void retain() {
+        references++;
+    }
+
+    /**
+     * @return true if the layer is no longer used by any flow
+     */
+    synchronized boolean release() {
+        return --references <= 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        deregisterDrivers(loader);
+        loader.close();
+        log.info("Closed runtime layer {}", fingerprint);
+    }
+
+    /**
+     * Deregisters the JDBC drivers a class loader registered, through the loader's own
+     * copy of {@link JdbcDrivers}. Flow jars built before it existed have none, their
+     * drivers stay registered.
+     */
+    static void deregisterDrivers(ClassLoader loader) {
+        try {
+            Class<?> drivers = loader.loadClass(JdbcDrivers.class.getName());
+            if (drivers.getClassLoader() != loader) {
+                return;
+            }
+            Method deregister = drivers.getMethod("deregisterDrivers");
+            Object count = deregister.invoke(null);
+            log.debug("Deregistered {} JDBC drivers", count);
+        } catch (ReflectiveOperationException e) {
+            log.debug("Could not deregister JDBC drivers: {}", e.getMessage());
+        }
+    }
+
+    private static List<NestedJarIndex.Entry> sharedEntries(NestedJarIndex index) {
+        List<NestedJarIndex.Entry> shared = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (NestedJarIndex.Entry entry : index.getTopLevelEntries()) {
+            if (isShared(entry.name) && seen.add(entry.name)) {
+                shared.add(entry);
+            }
+        }
+        return shared;
+    }
+
+    private static List<NestedJarIndex.Entry> libraryJars(NestedJarIndex index) {
+        List<NestedJarIndex.Entry> jars = new ArrayList<>();
+        for (NestedJarIndex.Entry entry : index.getTopLevelEntries()) {
+            if (entry.name.startsWith(LIB_DIR) && entry.name.endsWith(".jar")) {
+                jars.add(entry);
+            }
+        }
+        return jars;
+    }
+
+    private static boolean isShared(String name) {
+        for (String prefix : SHARED_ENTRIES) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the artifact name of a library jar, its file name without the version.
+     */
+    private static String artifact(String entryName) {
+        String fileName = entryName.substring(entryName.lastIndexOf('/') + 1);
+        Matcher matcher = VERSIONED_JAR.matcher(fileName);
+        return matcher.matches() ? matcher.group(1) : fileName;
+    }
+
+    private static String identity(NestedJarIndex.Entry library) {
+        return library.name + ':' + library.crc;
+    }
+
+    private static String identity(ThinJar.Artifact library) {
+        return library.getJarFilename() + ':' + library.getSha256();
+    }
+}
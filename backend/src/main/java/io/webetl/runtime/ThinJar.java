@@ -0,0 +1,223 @@
+package io.webetl.runtime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * ThinJar describes a thin flow jar: a jar holding only the generated flow class, whose
+ * manifest lists the runtime jar and the libraries the flow needs by Maven coordinates and
+ * SHA-256 checksum. They are taken from the local artifact store when the flow is launched,
+ * so a thin jar is only runnable on a machine whose store holds them, normally the one that
+ * compiled it. Fat jars embed everything and stay the portable format.
+ * <p>
+ * The manifest also lists the store files in {@code Class-Path}, so {@code java -jar} puts
+ * them on the classpath by itself.
+ */
+public class ThinJar {
+    /** Manifest attribute marking the jar layout, {@value #LAYOUT_THIN} for thin jars. */
+    public static final String LAYOUT_ATTRIBUTE = "Flow-Layout";
+    public static final String LAYOUT_THIN = "thin";
+    /** Manifest attribute with the runtime artifact. */
+    public static final String RUNTIME_ATTRIBUTE = "Flow-Runtime";
+    /** Manifest attribute with the library artifacts, separated by spaces. */
+    public static final String DEPENDENCIES_ATTRIBUTE = "Flow-Dependencies";
+    /** System property overriding the artifact store directory. */
+    public static final String STORE_PROPERTY = "webetl.artifacts.dir";
+
+    // Files whose checksum was verified, by path, with the size and modification time verified
+    private static final Map<Path, String> verified = new ConcurrentHashMap<>();
+
+    private final Path jarPath;
+    private final Artifact runtime;
+    private final List<Artifact> dependencies;
+
+    /**
+     * An artifact a thin jar refers to, written as {@code groupId:artifactId:version:sha256}.
+     */
+    public static final class Artifact {
+        private final String groupId;
+        private final String artifactId;
+        private final String version;
+        private final String sha256;
+
+        public Artifact(String groupId, String artifactId, String version, String sha256) {
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.version = version;
+            this.sha256 = sha256;
+        }
+
+        static Artifact parse(String value) throws IOException {
+            String[] parts = value.split(":");
+            if (parts.length != 4) {
+                throw new IOException("Invalid artifact reference in thin jar manifest: " + value);
+            }
+            return new Artifact(parts[0], parts[1], parts[2], parts[3]);
+        }
+
+        public String getArtifactId() {
+            return artifactId;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        /**
+         * Gets the file name of the artifact, e.g. {@code postgresql-42.6.0.jar}.
+         */
+        public String getJarFilename() {
+            return artifactId + "-" + version + ".jar";
+        }
+
+        /**
+         * Gets the path of the artifact in Maven repository layout.
+         */
+        public String getMavenPath() {
+            return groupId.replace('.', '/') + "/" + artifactId + "/" + version + "/" + getJarFilename();
+        }
+
+        @Override
+        public String toString() {
+            return groupId + ":" + artifactId + ":" + version + ":" + sha256;
+        }
+    }
+
+    private ThinJar(Path jarPath, Artifact runtime, List<Artifact> dependencies) {
+        this.jarPath = jarPath;
+        this.runtime = runtime;
+        this.dependencies = dependencies;
+    }
+
+    /**
+     * Reads the thin jar description of a flow jar.
+     *
+     * @return the description, null if the jar is a fat jar
+     * @throws IOException if the jar cannot be read
+     */
+    public static ThinJar read(Path jarPath) throws IOException {
+        Manifest manifest;
+        try (JarFile jar = new JarFile(jarPath.toFile())) {
+            manifest = jar.getManifest();
+        }
+        if (manifest == null) {
+            return null;
+        }
+        Attributes attributes = manifest.getMainAttributes();
+        if (!LAYOUT_THIN.equals(attributes.getValue(LAYOUT_ATTRIBUTE))) {
+            return null;
+        }
+        String runtime = attributes.getValue(RUNTIME_ATTRIBUTE);
+        if (runtime == null) {
+            throw new IOException("Thin jar " + jarPath + " has no " + RUNTIME_ATTRIBUTE + " attribute");
+        }
+        List<Artifact> dependencies = new ArrayList<>();
+        String dependencyList = attributes.getValue(DEPENDENCIES_ATTRIBUTE);
+        if (dependencyList != null) {
+            for (String dependency : dependencyList.trim().split("\\s+")) {
+                if (!dependency.isEmpty()) {
+                    dependencies.add(Artifact.parse(dependency));
+                }
+            }
+        }
+        return new ThinJar(jarPath, Artifact.parse(runtime.trim()), Collections.unmodifiableList(dependencies));
+    }
+
+    /**
+     * Gets the artifact store, {@code ~/.webetl/artifacts} unless {@value #STORE_PROPERTY} is set.
+     */
+    public static Path getStore() {
+        String dir = System.getProperty(STORE_PROPERTY);
+        return dir != null && !dir.isEmpty()
+            ? Paths.get(dir)
+            : Paths.get(System.getProperty("user.home"), ".webetl", "artifacts");
+    }
+
+    public Path getJarPath() {
+        return jarPath;
+    }
+
+    public Artifact getRuntime() {
+        return runtime;
+    }
+
+    public List<Artifact> getDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * Resolves an artifact in the store and checks its checksum. A file is hashed once
+     * per process as long as its size and modification time do not change.
+     *
+     * @return the artifact file
+     * @throws IOException if the store does not hold the artifact or holds another version of it
+     */
+    public static Path resolve(Artifact artifact) throws IOException {
+        Path path = getStore().resolve(artifact.getMavenPath());
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new IOException("Artifact " + artifact + " is missing from the artifact store "
+                + getStore() + ", recompile the flow", e);
+        }
+        String stamp = attributes.size() + ":" + attributes.lastModifiedTime().toMillis();
+        if (!(stamp + ":" + artifact.getSha256()).equals(verified.get(path))) {
+            String sha256 = sha256(path);
+            if (!sha256.equals(artifact.getSha256())) {
+                throw new IOException("Artifact " + path + " does not match the checksum recorded in the flow jar, "
+                    + "recompile the flow");
+            }
+            verified.put(path, stamp + ":" + sha256);
+        }
+        return path;
+    }
+
+    /**
+     * Resolves the runtime and all dependencies.
+     *
+     * @return the runtime jar followed by the library jars
+     * @throws IOException if an artifact is missing or does not match its checksum
+     */
+    public List<Path> resolveAll() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        paths.add(resolve(runtime));
+        for (Artifact dependency : dependencies) {
+            paths.add(resolve(dependency));
+        }
+        return paths;
+    }
+
+    /**
+     * Computes the SHA-256 checksum of a file as lowercase hex.
+     */
+    public static String sha256(Path path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+        try (InputStream in = new DigestInputStream(Files.newInputStream(path), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
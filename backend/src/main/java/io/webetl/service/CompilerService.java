@@ -4,116 +4,125 @@ import org.springframework.stereotype.Service;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import java.nio.file.Path;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.io.PrintStream;
-import java.io.ByteArrayOutputStream;
 import org.springframework.beans.factory.annotation.Value;
-import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 import io.webetl.compiler.CompilationException;
 import io.webetl.compiler.FlowCompilerCLI;
+import io.webetl.compiler.FlowCompilerNG;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 @Service
 @Slf4j
 public class CompilerService {
     private final Path dataDirectory;
     private final SimpMessagingTemplate messagingTemplate;
+    private final LogStreamer logStreamer;
+    private final FlowCompilerNG flowCompiler;
     private final boolean useNewCompiler;
+    private final FlowCompilerNG.JarLayout jarLayout;
+    // Compilations run here instead of on the common pool the backend itself uses
+    private final ThreadPoolExecutor compileExecutor;
 
     public CompilerService(
         Path dataDirectory, 
         SimpMessagingTemplate messagingTemplate,
-        @Value("${compiler.use-new-implementation:false}") boolean useNewCompiler
+        LogStreamer logStreamer,
+        FlowCompilerNG flowCompiler,
+        @Value("${compiler.use-new-implementation:false}") boolean useNewCompiler,
+        @Value("${compiler.jar-layout:fat}") String jarLayout,
+        @Value("${compiler.max-concurrent:0}") int maxConcurrent,
+        @Value("${compiler.max-queued:50}") int maxQueued
     ) {
         this.dataDirectory = dataDirectory;
         this.messagingTemplate = messagingTemplate;
+        this.logStreamer = logStreamer;
+        this.flowCompiler = flowCompiler;
         this.useNewCompiler = useNewCompiler;
+        this.jarLayout = FlowCompilerNG.JarLayout.valueOf(jarLayout.trim().toUpperCase(Locale.ROOT));
+        // 0 compiles as many sheets at once as there are processors
+        int workers = maxConcurrent > 0 ? maxConcurrent : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.compileExecutor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(Math.max(1, maxQueued)), runnable -> {
+                Thread thread = new Thread(runnable, "flow-compile-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
         log.info("Using new compiler: {}", useNewCompiler);
+        log.info("Flow jar layout: {}", this.jarLayout);
         log.info("Data directory: {}", dataDirectory);
         log.info("Messaging template: {}", messagingTemplate);
-        log.info("Compiler service initialized");
+        log.info("Compiler service initialized with {} compile workers", workers);
     }
 
-    public CompletableFuture<Void> compileSheet(String projectId, String sheetId) {
-        return CompletableFuture.runAsync(() -> {
-            try {
-                Path projectDir = dataDirectory.resolve("projects").resolve(projectId);
-                Path compiledDir = projectDir.resolve("compiled");
-                compiledDir.toFile().mkdirs();
-                log.info("Compiled directory: {}", compiledDir);
+    @PreDestroy
+    public void shutdown() {
+        compileExecutor.shutdownNow();
+    }
 
-                // Create a sequence counter for this compilation session
-                AtomicInteger sequenceCounter = new AtomicInteger(0);
+    public CompletableFuture<Void> compileSheet(String projectId, String sheetId) {
+        try {
+            return CompletableFuture.runAsync(() -> compile(projectId, sheetId), compileExecutor);
+        } catch (RejectedExecutionException e) {
+            sendError(sheetId, "Compilation error: too many compilations are waiting, try again later");
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 
-                // Capture compiler output
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                PrintStream ps = new PrintStream(baos);
-                PrintStream oldOut = System.out;
-                System.setOut(ps);
+    private void compile(String projectId, String sheetId) {
+        try {
+            Path projectDir = dataDirectory.resolve("projects").resolve(projectId);
+            Path compiledDir = projectDir.resolve("compiled");
+            compiledDir.toFile().mkdirs();
+            log.info("Compiled directory: {}", compiledDir);
 
-                try {
-                    log.info("Compiling sheet: {}", sheetId);
-                    // Call compiler directly
-                    FlowCompilerCLI.compileSheet(
-                        projectDir.resolve("sheets").resolve(sheetId + ".json").toString(),
-                        compiledDir.resolve(sheetId + ".jar").toString(),
-                        true,
-                        useNewCompiler
-                    );
-                    log.info("Compilation completed successfully");
-                    // Send captured output with sequence numbers
-                    String output = baos.toString();
-                    for (String line : output.split("\\R")) {
-                        sendSequencedMessage(line, sequenceCounter.getAndIncrement(), sheetId);
-                    }
-                    
-                    // Final success message
-                    sendSequencedMessage("Compilation completed successfully", 
-                        sequenceCounter.getAndIncrement(), sheetId);
-                    
-                } catch (CompilationException | IllegalStateException e) {
-                    sendSequencedMessage("Compilation error: " + e.getMessage(), 
-                        sequenceCounter.getAndIncrement(), sheetId);
-                } catch (Throwable e) {
-                    sendSequencedMessage("Unexpected error during compilation: " + e.getMessage(), 
-                        sequenceCounter.getAndIncrement(), sheetId);
-                    e.printStackTrace();
-                } finally {
-                    System.setOut(oldOut);
+            // The output stream of this compilation session numbers its messages from 0
+            LogStreamer.Stream stream = logStreamer.open("/topic/compiler/" + sheetId);
+            try {
+                log.info("Compiling sheet: {}", sheetId);
+                String sheetFile = projectDir.resolve("sheets").resolve(sheetId + ".json").toString();
+                String jarFile = compiledDir.resolve(sheetId + ".jar").toString();
+                // The compiler output of this compilation goes to its own stream
+                if (useNewCompiler) {
+                    FlowCompilerCLI.compileSheet(flowCompiler, sheetFile, jarFile, true, jarLayout, stream::send);
+                } else {
+                    FlowCompilerCLI.compileSheet(sheetFile, jarFile, true, stream::send);
                 }
+                log.info("Compilation completed successfully");
+
+                // Final success message
+                stream.send("Compilation completed successfully");
+
+            } catch (CompilationException | IllegalStateException e) {
+                stream.send("Compilation error: " + e.getMessage());
             } catch (Throwable e) {
-                // For uncaught exceptions, we don't have a sequence counter, so just send directly
-                messagingTemplate.convertAndSend(
-                    "/topic/compiler/" + sheetId,
-                    Map.of(
-                        "sequence", -1,
-                        "content", "Compilation error: " + e.getMessage(),
-                        "timestamp", System.currentTimeMillis()
-                    )
-                );
+                stream.send("Unexpected error during compilation: " + e.getMessage());
                 e.printStackTrace();
+            } finally {
+                stream.close();
             }
-        });
-    }
-    
-    /**
-     * Sends a message to the websocket with sequence information to ensure
-     * messages can be ordered correctly on the client side.
-     */
-    private void sendSequencedMessage(String content, int sequence, String sheetId) {
-        Map<String, Object> message = new HashMap<>();
-        message.put("sequence", sequence);
-        message.put("content", content);
-        message.put("timestamp", System.currentTimeMillis());
-        
-        messagingTemplate.convertAndSend("/topic/compiler/" + sheetId, message);
-        
-        // Small delay to help with network packet ordering
-        try {
-            Thread.sleep(5);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+        } catch (Throwable e) {
+            // For uncaught exceptions, we don't have a stream, so just send directly
+            sendError(sheetId, "Compilation error: " + e.getMessage());
+            e.printStackTrace();
         }
     }
-} 
\ No newline at end of file
+
+    private void sendError(String sheetId, String content) {
+        messagingTemplate.convertAndSend(
+            "/topic/compiler/" + sheetId,
+            Map.of(
+                "sequence", -1,
+                "content", content,
+                "timestamp", System.currentTimeMillis()
+            )
+        );
+    }
+}
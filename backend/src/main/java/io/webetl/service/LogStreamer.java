@@ -0,0 +1,300 @@
+package io.webetl.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * LogStreamer sends compiler and runner output to the WebSocket topics in frames instead
+ * of one message per line.
+ * <p>
+ * Lines are coalesced until {@code maxLines} lines are pending or the first of them waited
+ * {@code maxDelayMillis}. A frame is sent as one sequenced message whose content holds
+ * the lines separated by newlines, so clients order frames by sequence as before.
+ * <p>
+ * Frames are sent by sender threads, one frame of a stream at a time and never while
+ * holding the stream, so producers never wait for subscribers. The frame rate follows the
+ * subscribers: a sender sends frames of up to {@code maxLines} pending lines back to back
+ * until none is pending, so lines produced while one frame goes out make up the next
+ * ones. Only when sending falls behind by {@code maxPendingLines}
+ * lines are further lines dropped, and replaced by a summary line once there is room
+ * again, so a fast flow cannot flood slow subscribers.
+ */
+@Service
+@Slf4j
+public class LogStreamer {
+    private final int maxLines;
+    private final long maxDelayMillis;
+    private final int maxPendingLines;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService sender;
+
+    public LogStreamer(
+        SimpMessagingTemplate messagingTemplate,
+        @Value("${log-stream.max-lines:200}") int maxLines,
+        @Value("${log-stream.max-delay-ms:100}") long maxDelayMillis,
+        @Value("${log-stream.max-pending-lines:10000}") int maxPendingLines
+    ) {
+        this.messagingTemplate = messagingTemplate;
+        this.maxLines = Math.max(1, maxLines);
+        this.maxDelayMillis = Math.max(0, maxDelayMillis);
+        this.maxPendingLines = Math.max(this.maxLines, maxPendingLines);
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "log-stream-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger senderCounter = new AtomicInteger();
+        this.sender = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "log-stream-sender-" + senderCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdown();
+        sender.shutdown();
+    }
+
+    /**
+     * Opens a stream to a topic, e.g. {@code /topic/runner/<sheetId>}. Every stream
+     * numbers its frames from 0.
+     */
+    public Stream open(String destination) {
+        return new Stream(destination);
+    }
+
+    /**
+     * The output of one compilation or run.
+     */
+    public class Stream implements AutoCloseable {
+        private final String destination;
+        private final List<String> pending = new ArrayList<>();
+        private int sequence;
+        private long dropped;
+        private ScheduledFuture<?> scheduledFlush;
+        // A frame of this stream is being sent, others wait for it to keep the sequence order
+        private boolean sending;
+        private boolean closed;
+
+        private Stream(String destination) {
+            this.destination = destination;
+        }
+
+        /**
+         * Queues a line for the next frame.
+         */
+        public synchronized void send(String line) {
+            if (closed) {
+                return;
+            }
+            if (pending.size() >= maxPendingLines) {
+                dropped++;
+                return;
+            }
+            addDropSummary();
+            pending.add(line);
+            if (sending) {
+                return;
+            }
+            if (pending.size() >= maxLines) {
+                startSending();
+            } else {
+                scheduleFlush();
+            }
+        }
+
+        /**
+         * Sends the pending lines and then a message with extra fields right away,
+         * e.g. a status clients react to.
+         *
+         * @param content the message content
+         * @param fields extra message fields
+         */
+        public void sendNow(String content, Map<String, Object> fields) {
+            List<Map<String, Object>> messages;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                awaitSent();
+                messages = takeFrames();
+                Map<String, Object> message = frame(List.of(content));
+                message.putAll(fields);
+                messages.add(message);
+                sending = true;
+            }
+            publishAll(messages);
+            synchronized (this) {
+                sending = false;
+                notifyAll();
+                if (pending.size() >= maxLines) {
+                    startSending();
+                } else if (!pending.isEmpty()) {
+                    scheduleFlush();
+                }
+            }
+        }
+
+        /**
+         * Sends all pending lines and ends the stream.
+         */
+        @Override
+        public void close() {
+            List<Map<String, Object>> messages;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                awaitSent();
+                closed = true;
+                messages = takeFrames();
+            }
+            publishAll(messages);
+        }
+
+        /**
+         * Waits until the frame being sent went out.
+         */
+        private void awaitSent() {
+            while (sending) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Takes all pending lines as frames, cancelling the scheduled flush.
+         */
+        private List<Map<String, Object>> takeFrames() {
+            cancelScheduledFlush();
+            List<Map<String, Object>> frames = new ArrayList<>();
+            addDropSummary();
+            while (!pending.isEmpty()) {
+                frames.add(takeFrame());
+            }
+            return frames;
+        }
+
+        private void startSending() {
+            cancelScheduledFlush();
+            sending = true;
+            try {
+                sender.execute(this::sendPending);
+            } catch (RejectedExecutionException e) {
+                // shutting down, the lines are not sent anymore
+                sending = false;
+                pending.clear();
+            }
+        }
+
+        /**
+         * Sends frames until no line is pending. Runs on a sender thread, the stream is
+         * only held to take the next frame.
+         */
+        private void sendPending() {
+            while (true) {
+                Map<String, Object> frame;
+                synchronized (this) {
+                    addDropSummary();
+                    if (pending.isEmpty() || closed) {
+                        sending = false;
+                        notifyAll();
+                        return;
+                    }
+                    frame = takeFrame();
+                }
+                publish(frame);
+            }
+        }
+
+        private synchronized void scheduledFlush() {
+            scheduledFlush = null;
+            if (!closed && !sending && !pending.isEmpty()) {
+                startSending();
+            }
+        }
+
+        private void scheduleFlush() {
+            if (scheduledFlush != null || timer.isShutdown()) {
+                return;
+            }
+            try {
+                scheduledFlush = timer.schedule(this::scheduledFlush, maxDelayMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // shutting down
+            }
+        }
+
+        private void cancelScheduledFlush() {
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+        }
+
+        /**
+         * Puts a summary of the dropped lines where they were dropped, once there is room again.
+         */
+        private void addDropSummary() {
+            if (dropped > 0 && pending.size() < maxPendingLines) {
+                pending.add("[" + dropped + " lines dropped, output is produced faster than it can be streamed]");
+                dropped = 0;
+            }
+        }
+
+        /**
+         * Takes the first pending lines as a frame, at most {@code maxLines} of them.
+         */
+        private Map<String, Object> takeFrame() {
+            List<String> taken = pending.subList(0, Math.min(maxLines, pending.size()));
+            List<String> lines = new ArrayList<>(taken);
+            taken.clear();
+            return frame(lines);
+        }
+
+        private Map<String, Object> frame(List<String> lines) {
+            Map<String, Object> message = new HashMap<>();
+            message.put("sequence", sequence++);
+            message.put("content", String.join("\n", lines));
+            message.put("lines", lines.size());
+            message.put("timestamp", System.currentTimeMillis());
+            return message;
+        }
+
+        private void publishAll(List<Map<String, Object>> messages) {
+            for (Map<String, Object> message : messages) {
+                publish(message);
+            }
+        }
+
+        private void publish(Map<String, Object> message) {
+            try {
+                messagingTemplate.convertAndSend(destination, message);
+            } catch (RuntimeException e) {
+                log.warn("Could not send log frame to {}: {}", destination, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package io.webetl.service;
+
+import org.springframework.stereotype.Service;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * ProcessOutputReader reads the output of all flow processes on one shared thread
+ * instead of blocking a thread per process.
+ * <p>
+ * The reader polls each pipe for the bytes available without blocking and hands complete
+ * lines to the process' consumer. When none of the pipes had data, it backs off from
+ * polling, so idle processes cost next to nothing.
+ */
+@Service
+@Slf4j
+public class ProcessOutputReader {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final long MIN_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final List<Pipe> pipes = new CopyOnWriteArrayList<>();
+    private final Thread readerThread;
+    private volatile boolean running = true;
+
+    public ProcessOutputReader() {
+        this.readerThread = new Thread(this::readLoop, "process-output-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(readerThread);
+    }
+
+    /**
+     * Reads the standard output of a process line by line until the process ended.
+     *
+     * @param process the process, with its error stream redirected to its output if wanted
+     * @param lines consumer of the output lines, called on the reader thread
+     * @return a future completing after the last line was consumed
+     */
+    public CompletableFuture<Void> read(Process process, Consumer<String> lines) {
+        Pipe pipe = new Pipe(process, lines);
+        pipes.add(pipe);
+        LockSupport.unpark(readerThread);
+        return pipe.done;
+    }
+
+    private void readLoop() {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        long idleNanos = MIN_IDLE_NANOS;
+        while (running) {
+            boolean readAny = false;
+            for (Pipe pipe : pipes) {
+                try {
+                    readAny |= pipe.poll(chunk);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Could not read process output: {}", e.getMessage());
+                    pipe.finish();
+                }
+                if (pipe.done.isDone()) {
+                    pipes.remove(pipe);
+                }
+            }
+            if (readAny) {
+                idleNanos = MIN_IDLE_NANOS;
+            } else {
+                LockSupport.parkNanos(idleNanos);
+                idleNanos = Math.min(idleNanos * 2, MAX_IDLE_NANOS);
+            }
+        }
+        for (Pipe pipe : pipes) {
+            pipe.finish();
+        }
+    }
+
+    private static final class Pipe {
+        private final Process process;
+        private final InputStream in;
+        private final Consumer<String> lines;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private final Charset charset = Charset.defaultCharset();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pipe(Process process, Consumer<String> lines) {
+            this.process = process;
+            this.in = process.getInputStream();
+            this.lines = lines;
+        }
+
+        /**
+         * Reads what is available without blocking.
+         *
+         * @return true if any bytes were read
+         */
+        boolean poll(byte[] chunk) throws IOException {
+            int available = in.available();
+            if (available == 0) {
+                // A process that ended has written everything, so an empty pipe is the end
+                if (!process.isAlive() && in.available() == 0) {
+                    finish();
+                }
+                return false;
+            }
+            int read = in.read(chunk, 0, Math.min(available, chunk.length));
+            if (read < 0) {
+                finish();
+                return false;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = chunk[i];
+                if (b == '\n') {
+                    emitLine();
+                } else {
+                    line.write(b);
+                }
+            }
+            return true;
+        }
+
+        void finish() {
+            if (done.isDone()) {
+                return;
+            }
+            if (line.size() > 0) {
+                emitLine();
+            }
+            try {
+                in.close();
+            } catch (IOException e) {
+                // the process is gone anyway
+            }
+            done.complete(null);
+        }
+
+        private void emitLine() {
+            String text = line.toString(charset);
+            line.reset();
+            if (text.endsWith("\r")) {
+                text = text.substring(0, text.length() - 1);
+            }
+            try {
+                lines.accept(text);
+            } catch (RuntimeException e) {
+                log.warn("Process output consumer failed: {}", e.getMessage());
+            }
+        }
+    }
+}
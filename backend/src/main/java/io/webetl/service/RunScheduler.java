@@ -0,0 +1,340 @@
+package io.webetl.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.LongSupplier;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * RunScheduler queues flow runs and starts them on its own bounded set of threads, so a
+ * burst of run requests neither competes with the backend for the common pool nor starts
+ * more flows than the machine can take.
+ * <p>
+ * A queued run starts when a slot is free, its project is below its quota and enough
+ * memory is available. Among the runs that may start, higher priorities go first and
+ * runs of the same priority start in submission order. Runs waiting in the queue are
+ * told their position whenever it changes.
+ */
+@Service
+@Slf4j
+public class RunScheduler {
+
+    public enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    private static final long MB = 1024L * 1024;
+    // How often a queue blocked by memory admission is re-checked
+    private static final long ADMISSION_RETRY_MILLIS = 1000;
+    private static final Path MEMINFO = Paths.get("/proc/meminfo");
+
+    private final int maxConcurrentRuns;
+    private final int maxRunsPerProject;
+    private final int maxQueuedRuns;
+    private final long minFreeMemoryBytes;
+    private final LongSupplier availableMemory;
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService admissionTimer;
+    private final AtomicInteger submissionCounter = new AtomicInteger();
+
+    // Guarded by this
+    private final PriorityQueue<QueuedRun> queue = new PriorityQueue<>(
+        Comparator.comparing((QueuedRun run) -> run.priority).thenComparingInt(run -> run.submission));
+    private final Map<String, Integer> runningPerProject = new HashMap<>();
+    private int running;
+    private boolean retryScheduled;
+    private long dispatchGeneration;
+
+    public RunScheduler(
+        @Value("${runner.scheduler.max-concurrent-runs:2}") int maxConcurrentRuns,
+        @Value("${runner.scheduler.max-runs-per-project:1}") int maxRunsPerProject,
+        @Value("${runner.scheduler.max-queued-runs:50}") int maxQueuedRuns,
+        @Value("${runner.scheduler.min-free-memory-mb:256}") long minFreeMemoryMb
+    ) {
+        this(maxConcurrentRuns, maxRunsPerProject, maxQueuedRuns, minFreeMemoryMb, RunScheduler::availablePhysicalMemory);
+    }
+
+    /**
+     * Creates a scheduler measuring the physical memory available to new runs with the
+     * given function, in bytes.
+     */
+    RunScheduler(int maxConcurrentRuns, int maxRunsPerProject, int maxQueuedRuns, long minFreeMemoryMb,
+                 LongSupplier availableMemory) {
+        this.availableMemory = availableMemory;
+        this.maxConcurrentRuns = Math.max(1, maxConcurrentRuns);
+        this.maxRunsPerProject = Math.max(1, maxRunsPerProject);
+        this.maxQueuedRuns = Math.max(0, maxQueuedRuns);
+        this.minFreeMemoryBytes = Math.max(0, minFreeMemoryMb) * MB;
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.maxConcurrentRuns, runnable -> {
+            Thread thread = new Thread(runnable, "flow-run-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.admissionTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "flow-run-admission");
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Run scheduler: {} concurrent runs, {} per project, {} queued, {} MB free memory required",
+            this.maxConcurrentRuns, this.maxRunsPerProject, this.maxQueuedRuns, minFreeMemoryMb);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        admissionTimer.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues a run.
+     *
+     * @param projectId the project the run counts against
+     * @param priority the priority of the run
+     * @param positionListener told the 1-based queue position whenever it changes, 0 when the run starts
+     * @param task the run itself
+     * @return a future completing when the run finished, exceptionally with a
+     *         {@link RejectedExecutionException} if the queue is full
+     */
+    public CompletableFuture<Void> submit(String projectId, Priority priority, IntConsumer positionListener,
+                                          Runnable task) {
+        QueuedRun run = new QueuedRun(projectId, priority, submissionCounter.incrementAndGet(),
+            positionListener, task);
+        synchronized (this) {
+            if (queue.size() >= maxQueuedRuns && !canStart(run)) {
+                run.future.completeExceptionally(new RejectedExecutionException(
+                    "Run queue is full (" + queue.size() + " runs waiting)"));
+                return run.future;
+            }
+            queue.add(run);
+        }
+        dispatch();
+        return run.future;
+    }
+
+    /**
+     * Gets the number of runs waiting for a slot.
+     */
+    public synchronized int getQueuedRuns() {
+        return queue.size();
+    }
+
+    /**
+     * Gets the number of runs currently executing.
+     */
+    public synchronized int getRunningRuns() {
+        return running;
+    }
+
+    /**
+     * Starts every queued run that may start and reports the new positions of the others.
+     */
+    private void dispatch() {
+        List<QueuedRun> started = new ArrayList<>();
+        List<QueuedRun> waiting = new ArrayList<>();
+        long generation;
+        synchronized (this) {
+            generation = ++dispatchGeneration;
+            boolean blockedByMemory = false;
+            List<QueuedRun> ordered = new ArrayList<>(queue);
+            ordered.sort(queue.comparator());
+            for (QueuedRun run : ordered) {
+                if (running >= maxConcurrentRuns) {
+                    break;
+                }
+                if (projectRunning(run.projectId) >= maxRunsPerProject) {
+                    continue;
+                }
+                if (!hasFreeMemory()) {
+                    blockedByMemory = true;
+                    break;
+                }
+                queue.remove(run);
+                running++;
+                runningPerProject.merge(run.projectId, 1, Integer::sum);
+                started.add(run);
+            }
+            waiting.addAll(queue);
+            waiting.sort(queue.comparator());
+            if (blockedByMemory && !retryScheduled && !admissionTimer.isShutdown()) {
+                retryScheduled = true;
+                admissionTimer.schedule(this::retryAdmission, ADMISSION_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        for (QueuedRun run : started) {
+            run.reportPosition(0, generation);
+            try {
+                executor.execute(() -> execute(run));
+            } catch (RejectedExecutionException e) {
+                finished(run);
+                run.future.completeExceptionally(e);
+            }
+        }
+        for (int i = 0; i < waiting.size(); i++) {
+            waiting.get(i).reportPosition(i + 1, generation);
+        }
+    }
+
+    private void retryAdmission() {
+        synchronized (this) {
+            retryScheduled = false;
+        }
+        dispatch();
+    }
+
+    private void execute(QueuedRun run) {
+        Throwable failure = null;
+        try {
+            run.task.run();
+        } catch (Throwable e) {
+            failure = e;
+        }
+        // Free the slot before completing, callers may submit the next run from the future
+        finished(run);
+        if (failure != null) {
+            run.future.completeExceptionally(failure);
+        } else {
+            run.future.complete(null);
+        }
+        dispatch();
+    }
+
+    private synchronized void finished(QueuedRun run) {
+        running--;
+        runningPerProject.computeIfPresent(run.projectId, (project, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private boolean canStart(QueuedRun run) {
+        return running < maxConcurrentRuns && projectRunning(run.projectId) < maxRunsPerProject;
+    }
+
+    private int projectRunning(String projectId) {
+        return runningPerProject.getOrDefault(projectId, 0);
+    }
+
+    /**
+     * Memory admission. Runs execute in this JVM or in child JVMs, so both the heap
+     * headroom and the available physical memory have to cover a new run. The first run is
+     * always admitted, nothing else would free memory for it.
+     */
+    private boolean hasFreeMemory() {
+        if (running == 0 || minFreeMemoryBytes == 0) {
+            return true;
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long heapHeadroom = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        if (heapHeadroom < minFreeMemoryBytes) {
+            return false;
+        }
+        long available = availableMemory.getAsLong();
+        return available < 0 || available >= minFreeMemoryBytes;
+    }
+
+    /**
+     * Gets the physical memory a new process can use without swapping. On Linux this is
+     * MemAvailable, which unlike MemFree counts the page cache the kernel gives back on
+     * demand; a busy machine has little MemFree however much memory is available.
+     *
+     * @return the available memory in bytes, -1 if unknown
+     */
+    static long availablePhysicalMemory() {
+        if (Files.isReadable(MEMINFO)) {
+            try {
+                long available = parseMemAvailable(Files.readAllLines(MEMINFO));
+                if (available >= 0) {
+                    return available;
+                }
+            } catch (IOException e) {
+                log.debug("Could not read {}: {}", MEMINFO, e.getMessage());
+            }
+        }
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getFreeMemorySize();
+        }
+        return -1;
+    }
+
+    /**
+     * Finds MemAvailable in the lines of /proc/meminfo.
+     *
+     * @return the available memory in bytes, -1 if not listed (kernels before 3.14)
+     */
+    static long parseMemAvailable(List<String> meminfo) {
+        for (String line : meminfo) {
+            if (!line.startsWith("MemAvailable:")) {
+                continue;
+            }
+            String[] fields = line.substring("MemAvailable:".length()).trim().split("\\s+");
+            try {
+                long value = Long.parseLong(fields[0]);
+                return fields.length > 1 && fields[1].equalsIgnoreCase("kB") ? value * 1024 : value;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static final class QueuedRun {
+        final String projectId;
+        final Priority priority;
+        final int submission;
+        final IntConsumer positionListener;
+        final Runnable task;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        // Last reported position, -1 before the first report
+        private int reportedPosition = -1;
+        private long reportedGeneration;
+
+        QueuedRun(String projectId, Priority priority, int submission, IntConsumer positionListener, Runnable task) {
+            this.projectId = projectId;
+            this.priority = priority;
+            this.submission = submission;
+            this.positionListener = positionListener;
+            this.task = task;
+        }
+
+        synchronized void reportPosition(int position, long generation) {
+            // Concurrent dispatches may report out of order, only the latest one counts
+            if (generation < reportedGeneration || reportedPosition == 0 || positionListener == null) {
+                return;
+            }
+            reportedGeneration = generation;
+            if (position == reportedPosition) {
+                return;
+            }
+            reportedPosition = position;
+            try {
+                positionListener.accept(position);
+            } catch (RuntimeException e) {
+                log.warn("Queue position listener failed: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -4,115 +4,171 @@ import org.springframework.stereotype.Service;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import java.nio.file.Path;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.io.PrintStream;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import org.springframework.beans.factory.annotation.Value;
-import java.util.HashMap;
 import java.util.Map;
 
+import io.webetl.runtime.CheckpointCoordinator;
+import io.webetl.runtime.CheckpointStore;
+import io.webetl.runtime.FlowExecutorPool;
 import io.webetl.runtime.FlowRunner;
+import io.webetl.runtime.ThinJar;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 
 @Service
+@Slf4j
 public class RunnerService {
     private final Path dataDirectory;
     private final SimpMessagingTemplate messagingTemplate;
+    private final RunScheduler runScheduler;
+    private final LogStreamer logStreamer;
+    private final ProcessOutputReader processOutputReader;
+    // Pool of warm in-process executors, null when every run gets its own JVM
+    private final FlowExecutorPool executorPool;
 
     public RunnerService(
         Path dataDirectory, 
-        SimpMessagingTemplate messagingTemplate
+        SimpMessagingTemplate messagingTemplate,
+        RunScheduler runScheduler,
+        LogStreamer logStreamer,
+        ProcessOutputReader processOutputReader,
+        @Value("${runner.execution-mode:process}") String executionMode,
+        @Value("${runner.in-process.pool-size:2}") int poolSize
     ) {
         this.dataDirectory = dataDirectory;
         this.messagingTemplate = messagingTemplate;
+        this.runScheduler = runScheduler;
+        this.logStreamer = logStreamer;
+        this.processOutputReader = processOutputReader;
+        this.executorPool = "in-process".equals(executionMode) ? new FlowExecutorPool(poolSize) : null;
+        log.info("Runner execution mode: {}", executorPool != null ? "in-process" : "process");
+    }
+
+    @PreDestroy
+    public void shutdown() throws Exception {
+        if (executorPool != null) {
+            executorPool.close();
+        }
     }
 
     public CompletableFuture<Void> runSheet(String projectId, String sheetId) {
-        return CompletableFuture.runAsync(() -> {
-            try {
-                Path projectDir = dataDirectory.resolve("projects").resolve(projectId);
-                Path compiledDir = projectDir.resolve("compiled");
-                Path jarPath = compiledDir.resolve(sheetId + ".jar");
-                
-                if (!jarPath.toFile().exists()) {
-                    sendMessage("Error: Compiled JAR not found. Please compile the flow first.", sheetId);
-                    return;
-                }
+        return runSheet(projectId, sheetId, RunScheduler.Priority.NORMAL);
+    }
 
-                // Create a sequence counter for this execution session
-                AtomicInteger sequenceCounter = new AtomicInteger(0);
-                
-                sendMessage("Starting flow execution...", sequenceCounter.getAndIncrement(), sheetId);
-                sendMessage("Using JAR: " + jarPath, sequenceCounter.getAndIncrement(), sheetId);
-                
-                // Run the flow in a separate process
-                ProcessBuilder processBuilder = new ProcessBuilder(
-                    "java", 
-                    "-jar", 
-                    jarPath.toString()
-                );
-                
-                // Redirect error stream to output stream
-                processBuilder.redirectErrorStream(true);
-                
-                // Start the process
-                Process process = processBuilder.start();
-                
-                // Read the output stream
-                try (BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(process.getInputStream()))) {
-                    
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        sendMessage(line, sequenceCounter.getAndIncrement(), sheetId);
-                    }
+    /**
+     * Queues a run of a compiled sheet. The run starts once the scheduler admits it,
+     * until then its queue position is reported over the sheet's runner topic.
+     */
+    public CompletableFuture<Void> runSheet(String projectId, String sheetId, RunScheduler.Priority priority) {
+        Path jarPath = dataDirectory.resolve("projects").resolve(projectId)
+            .resolve("compiled").resolve(sheetId + ".jar");
+        if (!jarPath.toFile().exists()) {
+            sendMessage("Error: Compiled JAR not found. Please compile the flow first.", sheetId);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // The output stream of this execution session numbers its messages from 0
+        LogStreamer.Stream output = logStreamer.open("/topic/runner/" + sheetId);
+        
+        CompletableFuture<Void> run = runScheduler.submit(projectId, priority,
+            position -> {
+                if (position > 0) {
+                    output.sendNow("Waiting for a free runner, queue position " + position,
+                        Map.of("queuePosition", position));
                 }
-                
-                // Wait for the process to complete
-                int exitCode = process.waitFor();
-                
-                if (exitCode == 0) {
-                    sendMessage("Flow execution completed successfully", sequenceCounter.getAndIncrement(), sheetId);
+            },
+            () -> executeSheet(projectId, sheetId, output));
+        run.whenComplete((result, e) -> {
+            if (e instanceof RejectedExecutionException) {
+                output.send("Run rejected: " + e.getMessage());
+            }
+            output.close();
+        });
+        return run;
+    }
+
+    private void executeSheet(String projectId, String sheetId, LogStreamer.Stream output) {
+        try {
+            Path projectDir = dataDirectory.resolve("projects").resolve(projectId);
+            Path compiledDir = projectDir.resolve("compiled");
+            Path jarPath = compiledDir.resolve(sheetId + ".jar");
+            
+            output.send("Starting flow execution...");
+            output.send("Using JAR: " + jarPath);
+            
+            // Checkpoints of a failed run are picked up by the next one, unless the flow was recompiled
+            // into another jar since. Recompiling an unchanged sheet reuses its cached jar.
+            Path checkpointDir = projectDir.resolve("checkpoints").resolve(sheetId);
+            CheckpointStore checkpointStore = new CheckpointStore(checkpointDir);
+            String jarHash = ThinJar.sha256(jarPath);
+            if (checkpointStore.hasCheckpoints()) {
+                if (!jarHash.equals(checkpointStore.loadJarHash())) {
+                    output.send("Discarding checkpoints of a previous build of this flow");
+                    checkpointStore.clear();
                 } else {
-                    sendMessage("Flow execution failed with exit code: " + exitCode, sequenceCounter.getAndIncrement(), sheetId);
+                    output.send("Resuming from last completed checkpoint");
                 }
-                
-            } catch (Throwable e) {
-                // For uncaught exceptions, we don't have a sequence counter, so just send directly
-                messagingTemplate.convertAndSend(
-                    "/topic/runner/" + sheetId,
-                    Map.of(
-                        "sequence", -1,
-                        "content", "Execution error: " + e.getMessage(),
-                        "timestamp", System.currentTimeMillis()
-                    )
-                );
-                e.printStackTrace();
             }
-        });
+            checkpointStore.saveJarHash(jarHash);
+            
+            if (executorPool != null) {
+                runInProcess(jarPath, checkpointDir, output);
+            } else {
+                runInSeparateProcess(jarPath, checkpointDir, output);
+            }
+            
+        } catch (Throwable e) {
+            output.send("Execution error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Runs the flow in one of the warm executors of this JVM. The flow gets its own
+     * class loader, so it is isolated from the backend and from other flows.
+     */
+    private void runInProcess(Path jarPath, Path checkpointDir, LogStreamer.Stream output)
+            throws InterruptedException {
+        try {
+            executorPool.submit(jarPath, checkpointDir, output::send).get();
+            output.send("Flow execution completed successfully");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            output.send("Flow execution failed: " + cause.getMessage());
+        }
     }
     
     /**
-     * Sends a message to the websocket with sequence information to ensure
-     * messages can be ordered correctly on the client side.
+     * Runs the flow in a separate JVM, the fully isolated execution mode.
      */
-    private void sendMessage(String content, int sequence, String sheetId) {
-        Map<String, Object> message = new HashMap<>();
-        message.put("sequence", sequence);
-        message.put("content", content);
-        message.put("timestamp", System.currentTimeMillis());
+    private void runInSeparateProcess(Path jarPath, Path checkpointDir, LogStreamer.Stream output)
+            throws IOException, InterruptedException, ExecutionException {
+        ProcessBuilder processBuilder = new ProcessBuilder(
+            "java", 
+            "-D" + CheckpointCoordinator.DIR_PROPERTY + "=" + checkpointDir,
+            "-jar", 
+            jarPath.toString()
+        );
         
-        messagingTemplate.convertAndSend("/topic/runner/" + sheetId, message);
+        // Redirect error stream to output stream
+        processBuilder.redirectErrorStream(true);
         
-        // Small delay to help with network packet ordering
-        try {
-            Thread.sleep(5);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+        // Start the process
+        Process process = processBuilder.start();
+        
+        // Stream the output from the shared reader thread until the process is done
+        processOutputReader.read(process, output::send).get();
+        
+        // Wait for the process to complete
+        int exitCode = process.waitFor();
+        
+        if (exitCode == 0) {
+            output.send("Flow execution completed successfully");
+        } else {
+            output.send("Flow execution failed with exit code: " + exitCode);
         }
     }
     
@@ -42,6 +42,8 @@ public class SheetRunnerService {
         // Use the FlowRunner to execute the jar
         try (FlowRunner runner = new FlowRunner()) {
             runner.runFlow(jarFile.toPath());
+        } finally {
+            compiler.discard(jarFile);
         }
         
         log.info("Sheet execution completed: {}", sheet.getName());
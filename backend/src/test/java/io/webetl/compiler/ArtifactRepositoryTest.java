@@ -0,0 +1,110 @@
+package io.webetl.compiler;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArtifactRepositoryTest {
+    private static final DependencyEntry DRIVER = new DependencyEntry("org.example", "driver", "1.0");
+    private static final DependencyEntry CACHED = new DependencyEntry("org.example", "cached", "2.1");
+    private static final DependencyEntry MIRRORED = new DependencyEntry("org.example", "mirrored", "3.0");
+    private static final DependencyEntry MISSING = new DependencyEntry("org.example", "missing", "1.0");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void resolvesFromLocalRepositoriesGradleCacheAndMirror() throws Exception {
+        Path store = directory.resolve("store");
+        Path maven = directory.resolve("m2");
+        Path gradle = directory.resolve("gradle");
+        Path mirror = directory.resolve("mirror");
+        Path driver = write(maven.resolve(DRIVER.getMavenPath()), "driver");
+        Path cached = write(gradle.resolve("org.example/cached/2.1/0123abcd/cached-2.1.jar"), "cached");
+        write(mirror.resolve(MIRRORED.getMavenPath()), "mirrored");
+
+        ArtifactRepository repository = new ArtifactRepository(store, List.of(maven), gradle, mirror, null);
+        Map<DependencyEntry, ArtifactRepository.Artifact> resolved =
+            repository.resolveAll(List.of(DRIVER, CACHED, MIRRORED, MISSING));
+
+        assertEquals(List.of(DRIVER, CACHED, MIRRORED), List.copyOf(resolved.keySet()));
+        assertEquals(driver, resolved.get(DRIVER).getPath());
+        assertEquals(cached, resolved.get(CACHED).getPath());
+        // Copied from the mirror into the store
+        assertEquals(store.resolve(MIRRORED.getMavenPath()), resolved.get(MIRRORED).getPath());
+        assertEquals("mirrored", Files.readString(resolved.get(MIRRORED).getPath()));
+    }
+
+    @Test
+    void indexSurvivesRestartsAndNoticesChangedFiles() throws Exception {
+        Path store = directory.resolve("store");
+        Path maven = directory.resolve("m2");
+        Path driver = write(maven.resolve(DRIVER.getMavenPath()), "driver");
+        new ArtifactRepository(store, List.of(maven), null, null, null).resolveAll(List.of(DRIVER));
+
+        // Found through the index, even if the repository is no longer searched
+        ArtifactRepository restarted = new ArtifactRepository(store, List.of(), null, null, null);
+        ArtifactRepository.Artifact indexed = restarted.resolve(DRIVER);
+        assertEquals(driver, indexed.getPath());
+
+        Files.writeString(driver, "driver 1.0 rebuilt");
+        Files.setLastModifiedTime(driver, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+        ArtifactRepository afterChange = new ArtifactRepository(store, List.of(), null, null, null);
+        assertNull(afterChange.resolve(DRIVER));
+    }
+
+    @Test
+    void installsArtifactsIntoTheStore() throws Exception {
+        Path store = directory.resolve("store");
+        Path jar = write(directory.resolve("driver.jar"), "driver");
+        ArtifactRepository repository = new ArtifactRepository(store, List.of(), null, null, null);
+
+        assertNull(repository.getInstalled(DRIVER));
+        ArtifactRepository.Artifact installed = repository.install(DRIVER, jar);
+
+        assertEquals(store.resolve(DRIVER.getMavenPath()), installed.getPath());
+        assertEquals(6, installed.getSize());
+        assertEquals(64, installed.getSha256().length());
+        assertEquals(installed.getPath(), repository.getInstalled(DRIVER).getPath());
+    }
+
+    @Test
+    void downloadsOnlyArtifactsMatchingTheirPublishedChecksum() throws Exception {
+        Path store = directory.resolve("store");
+        Path remote = directory.resolve("remote");
+        write(remote.resolve(DRIVER.getMavenPath()), "driver");
+        // SHA-1 of "driver", followed by the file name as sha1sum writes it
+        write(remote.resolve(DRIVER.getMavenPath() + ".sha1"),
+            "fdda0c46f953c1a45bdc520849be1e4edf4e228c  driver-1.0.jar");
+        write(remote.resolve(CACHED.getMavenPath()), "cached, but tampered with");
+        write(remote.resolve(CACHED.getMavenPath() + ".sha256"),
+            "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef");
+        write(remote.resolve(MIRRORED.getMavenPath()), "mirrored");
+        ArtifactRepository repository =
+            new ArtifactRepository(store, List.of(), null, null, remote.toUri().toString());
+
+        assertEquals("driver", Files.readString(repository.resolve(DRIVER).getPath()));
+        assertThrows(IOException.class, () -> repository.resolve(CACHED));
+        assertFalse(Files.exists(store.resolve(CACHED.getMavenPath())));
+        try (Stream<Path> files = Files.list(store.resolve(CACHED.getMavenPath()).getParent())) {
+            assertEquals(0, files.count());
+        }
+        // nothing to check it against
+        assertThrows(IOException.class, () -> repository.resolve(MIRRORED));
+        assertFalse(Files.exists(store.resolve(MIRRORED.getMavenPath())));
+    }
+
+    private static Path write(Path path, String content) throws Exception {
+        Files.createDirectories(path.getParent());
+        return Files.writeString(path, content);
+    }
+}
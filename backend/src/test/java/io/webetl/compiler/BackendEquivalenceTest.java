@@ -0,0 +1,134 @@
+package io.webetl.compiler;
+
+import io.webetl.components.FileSourceComponent;
+import io.webetl.model.Sheet;
+import io.webetl.runtime.ExecutionContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the same sheets compiled by the javac and the bytecode backend and compares what
+ * their destinations received.
+ */
+@Timeout(60)
+class BackendEquivalenceTest {
+    private static final int ROWS = 100;
+    private static final List<String> SINKS = new ArrayList<>();
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void clearSinks() {
+        SINKS.forEach(RecordingDestination::clear);
+        SINKS.clear();
+    }
+
+    @Test
+    void linearSheet() throws Exception {
+        Path file = writeFile("rows.csv", 1);
+        assertSameRows(backend -> TestSheets.sheet("equivalence-linear-" + backend)
+            .source("source", FileSourceComponent.class, "filepath", file.toString(), "delimiter", ",")
+            .transform("tag", TagTransform.class, "tag", "linear")
+            .destination("sink", RecordingDestination.class, "sink", sink(backend, "linear"))
+            .flow("source", "tag")
+            .flow("tag", "sink")
+            .build(), "linear");
+    }
+
+    @Test
+    void fanOutSheet() throws Exception {
+        Path file = writeFile("rows.csv", 1);
+        assertSameRows(backend -> TestSheets.sheet("equivalence-fan-out-" + backend)
+            .source("source", FileSourceComponent.class, "filepath", file.toString(), "delimiter", ",")
+            .transform("left", TagTransform.class, "tag", "left")
+            .transform("right", TagTransform.class, "tag", "right")
+            .destination("left-sink", RecordingDestination.class, "sink", sink(backend, "left"))
+            .destination("right-sink", RecordingDestination.class, "sink", sink(backend, "right"))
+            .flow("source", "left")
+            .flow("source", "right")
+            .flow("left", "left-sink")
+            .flow("right", "right-sink")
+            .build(), "left", "right");
+    }
+
+    @Test
+    void controlFlowOfTwoSources() throws Exception {
+        Path first = writeFile("first.csv", 1);
+        Path second = writeFile("second.csv", ROWS + 1);
+        assertSameRows(backend -> TestSheets.sheet("equivalence-control-flow-" + backend)
+            .source("first", FileSourceComponent.class, "filepath", first.toString(), "delimiter", ",")
+            .source("second", FileSourceComponent.class, "filepath", second.toString(), "delimiter", ",")
+            .destination("first-sink", RecordingDestination.class, "sink", sink(backend, "first"))
+            .destination("second-sink", RecordingDestination.class, "sink", sink(backend, "second"))
+            .flow("first", "first-sink")
+            .flow("second", "second-sink")
+            .build(), "first", "second");
+    }
+
+    @Test
+    void failingDestinationFailsBothFlows() throws Exception {
+        Path file = writeFile("rows.csv", 1);
+        for (FlowCompilerNG.Backend backend : FlowCompilerNG.Backend.values()) {
+            Sheet sheet = TestSheets.sheet("equivalence-failure-" + backend)
+                .source("source", FileSourceComponent.class, "filepath", file.toString(), "delimiter", ",")
+                .destination("sink", RecordingDestination.class, "sink", sink(backend, "failure"), "failAfter", 10)
+                .flow("source", "sink")
+                .build();
+            ExecutionContext context = new ExecutionContext();
+            File jar = TestFlows.compile(sheet, backend);
+            assertThrows(IllegalStateException.class, () -> TestFlows.run(jar, sheet, context), backend.name());
+            assertTrue(context.hasFailures(), backend.name());
+        }
+    }
+
+    private void assertSameRows(Function<FlowCompilerNG.Backend, Sheet> sheets, String... sinks) throws Exception {
+        for (FlowCompilerNG.Backend backend : FlowCompilerNG.Backend.values()) {
+            Sheet sheet = sheets.apply(backend);
+            TestFlows.run(TestFlows.compile(sheet, backend), sheet, new ExecutionContext());
+        }
+        for (String name : sinks) {
+            List<Map<String, Object>> expected = sorted(sink(FlowCompilerNG.Backend.JAVAC, name));
+            assertEquals(ROWS, expected.size(), name);
+            for (FlowCompilerNG.Backend backend : FlowCompilerNG.Backend.values()) {
+                assertEquals(expected, sorted(sink(backend, name)), backend + " " + name);
+            }
+        }
+    }
+
+    private static String sink(FlowCompilerNG.Backend backend, String name) {
+        String sink = backend + "-" + name;
+        if (!SINKS.contains(sink)) {
+            SINKS.add(sink);
+        }
+        return sink;
+    }
+
+    private static List<Map<String, Object>> sorted(String sink) {
+        List<Map<String, Object>> rows = new ArrayList<>(RecordingDestination.rows(sink));
+        rows.sort(Comparator.comparing(row -> (Integer) row.get("_line")));
+        return rows;
+    }
+
+    private Path writeFile(String name, int firstId) throws IOException {
+        StringBuilder content = new StringBuilder("id,name\n");
+        for (int i = firstId; i < firstId + ROWS; i++) {
+            content.append(i).append(",name ").append(i).append('\n');
+        }
+        return Files.writeString(directory.resolve(name), content);
+    }
+}
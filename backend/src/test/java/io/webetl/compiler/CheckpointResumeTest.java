@@ -0,0 +1,178 @@
+package io.webetl.compiler;
+
+import io.webetl.components.FileSourceComponent;
+import io.webetl.model.Sheet;
+import io.webetl.runtime.CheckpointCoordinator;
+import io.webetl.runtime.CheckpointStore;
+import io.webetl.runtime.ExecutionContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(60)
+class CheckpointResumeTest {
+    private static final int ROWS = 200;
+    private static final int INTERVAL = 25;
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void clearSinks() {
+        RecordingDestination.clear("diamond");
+        RecordingDestination.clear("failed");
+        RecordingDestination.clear("resumed");
+        RecordingDestination.clear("head");
+        RecordingDestination.clear("first");
+        RecordingDestination.clear("all");
+    }
+
+    @Test
+    void checkpointCompletesWhenEveryRouteOfADiamondDrained() throws Exception {
+        Path file = writeFile();
+        Sheet sheet = TestSheets.sheet("checkpoint-diamond")
+            .source("source", FileSourceComponent.class, "filepath", file.toString(), "delimiter", ",")
+            .transform("fast", TagTransform.class, "tag", "fast")
+            .transform("slow", TagTransform.class, "tag", "slow", "delayMillis", 1)
+            .destination("sink", RecordingDestination.class, "sink", "diamond", "inputs", 2)
+            .flow("source", "fast")
+            .flow("source", "slow")
+            .flow("fast", "sink")
+            .flow("slow", "sink")
+            .build();
+        // Snapshots what the destination holds whenever a checkpoint completes
+        List<String> violations = new CopyOnWriteArrayList<>();
+        List<Integer> completedLines = new CopyOnWriteArrayList<>();
+        CheckpointStore store = new CheckpointStore(directory.resolve("checkpoints")) {
+            @Override
+            public void save(String sourceId, long checkpointId, Map<String, String> state) throws IOException {
+                int line = Integer.parseInt(state.get("line"));
+                for (String branch : List.of("fast", "slow")) {
+                    Set<Integer> lines = linesOf(RecordingDestination.rows("diamond"), branch);
+                    for (int expected = 2; expected <= line; expected++) {
+                        if (!lines.contains(expected)) {
+                            violations.add("checkpoint at line " + line + " misses line " + expected + " of " + branch);
+                            break;
+                        }
+                    }
+                }
+                completedLines.add(line);
+                super.save(sourceId, checkpointId, state);
+            }
+        };
+        ExecutionContext context = new ExecutionContext();
+        context.setCheckpointCoordinator(new CheckpointCoordinator(store, INTERVAL));
+
+        TestFlows.compileAndRun(sheet, context);
+
+        assertEquals(List.of(), violations);
+        assertEquals(ROWS / INTERVAL, completedLines.size());
+        assertEquals(2 * ROWS, RecordingDestination.rows("diamond").size());
+    }
+
+    @Test
+    void checkpointsCompleteAfterRoutesStoppedTakingRows() throws Exception {
+        Path file = writeFile();
+        Sheet sheet = TestSheets.sheet("checkpoint-early-stop")
+            .source("source", FileSourceComponent.class, "filepath", file.toString(), "delimiter", ",")
+            .transform("tag", TagTransform.class, "tag", "tagged", "delayMillis", 1)
+            .destination("head", RecordingDestination.class, "sink", "head", "take", 3)
+            .destination("first", RecordingDestination.class, "sink", "first", "take", 5)
+            .destination("all", RecordingDestination.class, "sink", "all")
+            .flow("source", "head")
+            .flow("source", "tag")
+            .flow("tag", "first")
+            .flow("tag", "all")
+            .build();
+        List<Integer> completedLines = new CopyOnWriteArrayList<>();
+        List<Integer> linesTaken = new CopyOnWriteArrayList<>();
+        CheckpointStore store = new CheckpointStore(directory.resolve("checkpoints")) {
+            @Override
+            public void save(String sourceId, long checkpointId, Map<String, String> state) throws IOException {
+                completedLines.add(Integer.parseInt(state.get("line")));
+                linesTaken.add(RecordingDestination.rows("all").size() + 1);
+                super.save(sourceId, checkpointId, state);
+            }
+        };
+        ExecutionContext context = new ExecutionContext();
+        context.setCheckpointCoordinator(new CheckpointCoordinator(store, INTERVAL));
+
+        TestFlows.compileAndRun(sheet, context);
+
+        assertEquals(3, RecordingDestination.rows("head").size());
+        assertEquals(5, RecordingDestination.rows("first").size());
+        assertEquals(ROWS, RecordingDestination.rows("all").size());
+        assertEquals(ROWS / INTERVAL, completedLines.size());
+        // a checkpoint still waits for the route taking all rows
+        for (int i = 0; i < completedLines.size(); i++) {
+            assertTrue(linesTaken.get(i) >= completedLines.get(i),
+                "checkpoint at line " + completedLines.get(i) + " after line " + linesTaken.get(i));
+        }
+    }
+
+    @Test
+    void failedRunResumesAfterTheLastCheckpoint() throws Exception {
+        Path file = writeFile();
+        Path checkpoints = directory.resolve("checkpoints");
+        TestSheets builder = TestSheets.sheet("checkpoint-resume")
+            .source("source", FileSourceComponent.class, "filepath", file.toString(), "delimiter", ",")
+            .destination("sink", RecordingDestination.class, "sink", "failed", "failAfter", 120)
+            .flow("source", "sink");
+
+        ExecutionContext failing = new ExecutionContext();
+        failing.setCheckpointCoordinator(new CheckpointCoordinator(new CheckpointStore(checkpoints), INTERVAL));
+        assertThrows(IllegalStateException.class, () -> TestFlows.compileAndRun(builder.build(), failing));
+        Map<String, String> checkpoint = new CheckpointStore(checkpoints).load("source");
+        assertNotNull(checkpoint);
+        int checkpointLine = Integer.parseInt(checkpoint.get("line"));
+        assertEquals(101, checkpointLine);
+
+        Sheet resumed = builder
+            .parameter("sink", "sink", "resumed")
+            .parameter("sink", "failAfter", 0)
+            .build();
+        ExecutionContext resuming = new ExecutionContext();
+        resuming.setCheckpointCoordinator(new CheckpointCoordinator(new CheckpointStore(checkpoints), INTERVAL));
+        TestFlows.compileAndRun(resumed, resuming);
+
+        List<Integer> lines = new ArrayList<>();
+        RecordingDestination.rows("failed").stream()
+            .map(row -> (Integer) row.get("_line"))
+            .filter(line -> line <= checkpointLine)
+            .forEach(lines::add);
+        RecordingDestination.rows("resumed").forEach(row -> lines.add((Integer) row.get("_line")));
+        assertEquals(IntStream.rangeClosed(2, ROWS + 1).boxed().collect(Collectors.toList()), lines);
+        assertEquals(checkpointLine + 1, RecordingDestination.rows("resumed").get(0).get("_line"));
+        assertFalse(new CheckpointStore(checkpoints).hasCheckpoints());
+    }
+
+    private Path writeFile() throws IOException {
+        StringBuilder content = new StringBuilder("id,name\n");
+        for (int i = 1; i <= ROWS; i++) {
+            content.append(i).append(",name ").append(i).append('\n');
+        }
+        return Files.writeString(directory.resolve("rows.csv"), content);
+    }
+
+    private static Set<Integer> linesOf(List<Map<String, Object>> rows, String branch) {
+        return rows.stream()
+            .filter(row -> branch.equals(row.get("branch")))
+            .map(row -> (Integer) row.get("_line"))
+            .collect(Collectors.toCollection(TreeSet::new));
+    }
+}
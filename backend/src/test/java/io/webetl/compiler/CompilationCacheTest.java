@@ -0,0 +1,121 @@
+package io.webetl.compiler;
+
+import io.webetl.components.FileSourceComponent;
+import io.webetl.components.FilterComponent;
+import io.webetl.model.Sheet;
+import io.webetl.runtime.ExecutionContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(120)
+class CompilationCacheTest {
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void clearSinks() {
+        RecordingDestination.clear("cached");
+    }
+
+    @Test
+    void keySeparatesStructureFromParametersAndIgnoresEditorState() throws Exception {
+        CompilationCache cache = new CompilationCache(directory, Long.MAX_VALUE);
+        Sheet sheet = sheet("rows.csv").build();
+        Sheet moved = sheet("rows.csv").build();
+        moved.getNodes().get(1).put("position", Map.of("x", 100, "y", 40));
+        Sheet otherFile = sheet("other.csv").build();
+        Sheet otherStructure = sheet("rows.csv").transform("tag", TagTransform.class, "tag", "a").build();
+
+        CompilationCache.Key key = cache.key(sheet);
+        assertEquals(key.toString(), cache.key(moved).toString());
+        assertEquals(key.structure, cache.key(otherFile).structure);
+        assertNotEquals(key.parameters, cache.key(otherFile).parameters);
+        assertNotEquals(key.structure, cache.key(otherStructure).structure);
+        assertNotEquals(key.structure,
+            cache.key(sheet, Map.of(), FlowCompilerNG.JarLayout.FAT, FlowCompilerNG.Backend.BYTECODE).structure);
+    }
+
+    @Test
+    void findsJarsByKeyAndVariantsByStructure() throws Exception {
+        CompilationCache cache = new CompilationCache(directory.resolve("cache"), Long.MAX_VALUE);
+        CompilationCache.Key key = cache.key(sheet("rows.csv").build());
+        CompilationCache.Key variant = cache.key(sheet("other.csv").build());
+        Path jar = Files.writeString(directory.resolve("flow.jar"), "jar content");
+        Path target = directory.resolve("copy.jar");
+
+        assertFalse(cache.copyTo(key, target));
+        cache.put(key, jar.toFile());
+
+        assertTrue(cache.copyTo(key, target));
+        assertEquals("jar content", Files.readString(target));
+        assertFalse(cache.copyTo(variant, target));
+        assertTrue(cache.copyVariantTo(variant, target));
+    }
+
+    @Test
+    void recompilesOnlyTheFlowClassWhenParametersChanged() throws Exception {
+        Files.writeString(directory.resolve("rows.csv"), "id\nfirst\n");
+        Files.writeString(directory.resolve("other.csv"), "id\nsecond\n");
+        FlowCompilerNG compiler = new FlowCompilerNG();
+        List<String> output = new CopyOnWriteArrayList<>();
+
+        Sheet first = sheet("rows.csv").build();
+        compiler.compileToJar(first, false, output::add);
+        Sheet changed = sheet("other.csv").build();
+        output.clear();
+        File jar = compiler.compileToJar(changed, false, output::add);
+        assertTrue(output.contains("Only parameters changed, recompiling the flow class"), String.join("\n", output));
+        TestFlows.run(jar, changed, new ExecutionContext());
+        assertEquals("second", RecordingDestination.rows("cached").get(0).get("id"));
+
+        output.clear();
+        compiler.compileToJar(changed, false, output::add);
+        assertTrue(output.contains("Sheet unchanged since its last compilation, reusing the compiled flow"),
+            String.join("\n", output));
+    }
+
+    @Test
+    void checksTheSchemasOfTheSheetBeforeReusingAJar() throws Exception {
+        Path file = Files.writeString(directory.resolve("rows.csv"), "id,amount\n1,10\n");
+        FlowCompilerNG compiler = new FlowCompilerNG();
+        List<String> output = new CopyOnWriteArrayList<>();
+        Sheet sheet = TestSheets.sheet("cached-schema")
+            .source("source", FileSourceComponent.class, "filepath", file.toString(), "delimiter", ",")
+            .transform("filter", FilterComponent.class, "condition", "amount > 5")
+            .destination("sink", RecordingDestination.class, "sink", "cached")
+            .flow("source", "filter")
+            .flow("filter", "sink")
+            .build();
+        compiler.compileToJar(sheet, false, output::add);
+
+        Files.writeString(file, "id,price,amount\n1,3,10\n");
+        output.clear();
+        File jar = compiler.compileToJar(sheet, false, output::add);
+        assertTrue(output.contains("Only parameters changed, recompiling the flow class"), String.join("\n", output));
+        TestFlows.run(jar, sheet, new ExecutionContext());
+        assertEquals("3", RecordingDestination.rows("cached").get(0).get("price"));
+
+        // the filter refers to a column the file no longer has
+        Files.writeString(file, "id,price\n1,3\n");
+        assertThrows(CompilationException.class, () -> compiler.compileToJar(sheet, false, output::add));
+    }
+
+    private TestSheets sheet(String fileName) {
+        return TestSheets.sheet("cached-flow")
+            .source("source", FileSourceComponent.class, "filepath", directory.resolve(fileName).toString(),
+                "delimiter", ",")
+            .destination("sink", RecordingDestination.class, "sink", "cached")
+            .flow("source", "sink");
+    }
+}
@@ -0,0 +1,68 @@
+package io.webetl.compiler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsoleCaptureTest {
+    @Test
+    void sendsTheLinesEveryThreadPrintsToItsOwnSink() throws Exception {
+        int threads = 4;
+        CountDownLatch started = new CountDownLatch(threads);
+        List<List<String>> outputs = new ArrayList<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            List<String> output = Collections.synchronizedList(new ArrayList<>());
+            outputs.add(output);
+            String name = "thread " + t;
+            Thread worker = new Thread(() -> {
+                try (ConsoleCapture.Capture capture = ConsoleCapture.start(output::add)) {
+                    started.countDown();
+                    started.await();
+                    for (int i = 0; i < 100; i++) {
+                        System.out.println(name + " line " + i);
+                    }
+                    System.out.print("unfinished");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        for (int t = 0; t < threads; t++) {
+            List<String> output = outputs.get(t);
+            assertEquals(101, output.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals("thread " + t + " line " + i, output.get(i));
+            }
+            assertEquals("unfinished", output.get(100));
+        }
+    }
+
+    @Test
+    void restoresTheOuterCaptureWhenANestedOneIsClosed() {
+        List<String> outer = new ArrayList<>();
+        List<String> inner = new ArrayList<>();
+        try (ConsoleCapture.Capture capture = ConsoleCapture.start(outer::add)) {
+            System.out.println("before");
+            try (ConsoleCapture.Capture nested = ConsoleCapture.start(inner::add)) {
+                System.out.println("nested");
+            }
+            System.out.println("after");
+        }
+        System.out.println("to the console");
+
+        assertEquals(List.of("before", "after"), outer);
+        assertEquals(List.of("nested"), inner);
+    }
+}
@@ -0,0 +1,152 @@
+package io.webetl.compiler;
+
+import io.webetl.components.DatabaseSourceComponent;
+import io.webetl.model.Sheet;
+import io.webetl.runtime.CheckpointCoordinator;
+import io.webetl.runtime.CheckpointStore;
+import io.webetl.runtime.ExecutionContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(60)
+class DatabaseSourceResumeTest {
+    private static final String DATABASE = "mem:source_resume;DB_CLOSE_DELAY=-1";
+    private static final int ROWS = 50;
+    private static final int INTERVAL = 10;
+
+    @TempDir
+    Path directory;
+
+    private Connection connection;
+
+    @BeforeEach
+    void createTable() throws Exception {
+        connection = DriverManager.getConnection("jdbc:h2:" + DATABASE, "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE orders (id INT PRIMARY KEY, customer VARCHAR(20))");
+        }
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO orders VALUES (?, ?)")) {
+            for (int i = 1; i <= ROWS; i++) {
+                insert.setInt(1, i);
+                insert.setString(2, "customer " + i);
+                insert.executeUpdate();
+            }
+        }
+    }
+
+    @AfterEach
+    void dropTable() throws Exception {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE orders");
+        }
+        connection.close();
+        RecordingDestination.clear("orders-failed");
+        RecordingDestination.clear("orders-resumed");
+    }
+
+    @Test
+    void resumesAfterTheWatermarkOfAnAliasedColumn() throws Exception {
+        Path checkpoints = directory.resolve("checkpoints");
+        // the watermark is named by its label, which needs quoting
+        TestSheets builder = TestSheets.sheet("database-source-resume")
+            .source("source", DatabaseSourceComponent.class, "dbType", "h2", "database", DATABASE,
+                "username", "sa", "password", "",
+                "query", "SELECT id AS \"Order Id\", customer AS \"Customer\" FROM orders",
+                "watermarkColumn", "Order Id")
+            .destination("sink", RecordingDestination.class, "sink", "orders-failed", "failAfter", 25)
+            .flow("source", "sink");
+
+        ExecutionContext failing = new ExecutionContext();
+        failing.setCheckpointCoordinator(new CheckpointCoordinator(new CheckpointStore(checkpoints), INTERVAL));
+        assertThrows(IllegalStateException.class, () -> TestFlows.compileAndRun(builder.build(), failing));
+        Map<String, String> checkpoint = new CheckpointStore(checkpoints).load("source");
+        assertNotNull(checkpoint);
+        int watermark = Integer.parseInt(checkpoint.get("watermark"));
+        assertEquals(20, watermark);
+
+        Sheet resumed = builder
+            .parameter("sink", "sink", "orders-resumed")
+            .parameter("sink", "failAfter", 0)
+            .build();
+        ExecutionContext resuming = new ExecutionContext();
+        resuming.setCheckpointCoordinator(new CheckpointCoordinator(new CheckpointStore(checkpoints), INTERVAL));
+        TestFlows.compileAndRun(resumed, resuming);
+
+        assertEquals(Set.of("Order Id", "Customer"), RecordingDestination.rows("orders-resumed").get(0).keySet());
+        List<Integer> ids = new ArrayList<>();
+        RecordingDestination.rows("orders-failed").stream()
+            .map(row -> (Integer) row.get("Order Id"))
+            .filter(id -> id <= watermark)
+            .forEach(ids::add);
+        RecordingDestination.rows("orders-resumed").forEach(row -> ids.add((Integer) row.get("Order Id")));
+        assertEquals(IntStream.rangeClosed(1, ROWS).boxed().collect(Collectors.toList()), ids);
+    }
+
+    @Test
+    void limitTakesTheFirstRowsByTheWatermarkAcrossAResume() throws Exception {
+        Path checkpoints = directory.resolve("checkpoints");
+        // the table is read in the reverse order of the watermark
+        TestSheets builder = TestSheets.sheet("database-source-resume-limit")
+            .source("source", DatabaseSourceComponent.class, "dbType", "h2", "database", DATABASE,
+                "username", "sa", "password", "",
+                "query", "SELECT " + (ROWS + 1) + " - id AS \"Sequence\" FROM orders",
+                "watermarkColumn", "Sequence", "limit", 30)
+            .destination("sink", RecordingDestination.class, "sink", "orders-failed", "failAfter", 25)
+            .flow("source", "sink");
+
+        ExecutionContext failing = new ExecutionContext();
+        failing.setCheckpointCoordinator(new CheckpointCoordinator(new CheckpointStore(checkpoints), INTERVAL));
+        assertThrows(IllegalStateException.class, () -> TestFlows.compileAndRun(builder.build(), failing));
+        Map<String, String> checkpoint = new CheckpointStore(checkpoints).load("source");
+        assertEquals("20", checkpoint.get("watermark"));
+        assertEquals("20", checkpoint.get("rows"));
+
+        Sheet resumed = builder
+            .parameter("sink", "sink", "orders-resumed")
+            .parameter("sink", "failAfter", 0)
+            .build();
+        ExecutionContext resuming = new ExecutionContext();
+        resuming.setCheckpointCoordinator(new CheckpointCoordinator(new CheckpointStore(checkpoints), INTERVAL));
+        TestFlows.compileAndRun(resumed, resuming);
+
+        List<Integer> sequence = new ArrayList<>();
+        RecordingDestination.rows("orders-failed").stream()
+            .map(row -> ((Number) row.get("Sequence")).intValue())
+            .filter(value -> value <= 20)
+            .forEach(sequence::add);
+        RecordingDestination.rows("orders-resumed").forEach(row -> sequence.add(((Number) row.get("Sequence")).intValue()));
+        assertEquals(IntStream.rangeClosed(1, 30).boxed().collect(Collectors.toList()), sequence);
+    }
+
+    @Test
+    void schemaNamesColumnsByTheirLabels() throws Exception {
+        DatabaseSourceComponent source = new DatabaseSourceComponent();
+        source.setParameter("dbType", "h2");
+        source.setParameter("database", DATABASE);
+        source.setParameter("username", "sa");
+        source.setParameter("password", "");
+        source.setParameter("query", "SELECT id AS \"Order Id\", customer FROM orders");
+
+        assertEquals(List.of("Order Id", "CUSTOMER"), source.inferOutputSchema(null).getColumnNames());
+
+        source.setParameter("watermarkColumn", "order id");
+        assertThrows(IllegalArgumentException.class, () -> source.inferOutputSchema(null));
+    }
+}
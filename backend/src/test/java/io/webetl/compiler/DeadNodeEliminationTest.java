@@ -0,0 +1,111 @@
+package io.webetl.compiler;
+
+import io.webetl.components.FileSourceComponent;
+import io.webetl.model.Sheet;
+import io.webetl.runtime.ExecutionContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(60)
+class DeadNodeEliminationTest {
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void clearSinks() {
+        RecordingDestination.clear("dead-live");
+        RecordingDestination.clear("dead-idle");
+        RecordingDestination.clear("dead-unfed");
+    }
+
+    @Test
+    void nodesContributingToNoDestinationAreLeftOut() throws Exception {
+        Path file = Files.writeString(directory.resolve("rows.csv"), "id\n1\n2\n3\n");
+        // Each dead destination would wait forever for rows if it ran
+        Sheet sheet = TestSheets.sheet("dead-nodes")
+            .source("source", FileSourceComponent.class, "filepath", file.toString(), "delimiter", ",")
+            .transform("tag", TagTransform.class, "tag", "live")
+            .destination("sink", RecordingDestination.class, "sink", "dead-live")
+            .transform("dangling", TagTransform.class, "tag", "dangling")
+            .detachedSource("idle", FileSourceComponent.class, "filepath", file.toString(), "delimiter", ",")
+            .destination("idle-sink", RecordingDestination.class, "sink", "dead-idle")
+            .transform("unfed", TagTransform.class, "tag", "unfed")
+            .destination("unfed-sink", RecordingDestination.class, "sink", "dead-unfed")
+            .flow("source", "tag")
+            .flow("tag", "sink")
+            .flow("source", "dangling")
+            .flow("idle", "idle-sink")
+            .flow("unfed", "unfed-sink")
+            .build();
+        List<String> output = new ArrayList<>();
+
+        File jar = new FlowCompilerNG(FlowCompilerNG.Backend.JAVAC).compileToJar(sheet, false, output::add);
+        TestFlows.run(jar, sheet, new ExecutionContext());
+
+        assertTrue(output.contains("Warning: node dangling feeds no destination, leaving it out"), output.toString());
+        assertTrue(output.contains("Warning: node idle is not started by the control flow, leaving it out"),
+            output.toString());
+        assertTrue(output.contains("Warning: node idle-sink receives no rows from a started source, leaving it out"),
+            output.toString());
+        assertTrue(output.contains("Warning: node unfed receives no rows from a started source, leaving it out"),
+            output.toString());
+        assertTrue(output.contains("Warning: node unfed-sink receives no rows from a started source, leaving it out"),
+            output.toString());
+        assertEquals(5, output.stream().filter(line -> line.startsWith("Warning: node")).count(), output.toString());
+        assertEquals(3, RecordingDestination.rows("dead-live").size());
+        assertTrue(RecordingDestination.rows("dead-live").stream().allMatch(row -> "live".equals(row.get("branch"))));
+    }
+
+    @Test
+    void cycleInTheDataFlowFailsTheCompilation() throws Exception {
+        Path file = Files.writeString(directory.resolve("rows.csv"), "id\n1\n");
+        Sheet sheet = TestSheets.sheet("dead-nodes-cycle")
+            .source("source", FileSourceComponent.class, "filepath", file.toString(), "delimiter", ",")
+            .transform("first", TagTransform.class, "tag", "first")
+            .transform("second", TagTransform.class, "tag", "second")
+            .destination("sink", RecordingDestination.class, "sink", "dead-live")
+            .flow("source", "first")
+            .flow("first", "second")
+            .flow("second", "first")
+            .flow("second", "sink")
+            .build();
+
+        CompilationException e = assertThrows(CompilationException.class,
+            () -> TestFlows.compile(sheet, FlowCompilerNG.Backend.JAVAC));
+        assertTrue(e.getMessage().startsWith("The data flow has a cycle: "), e.getMessage());
+        assertTrue(e.getMessage().contains("first -> second -> first") || e.getMessage().contains("second -> first -> second"),
+            e.getMessage());
+    }
+
+    @Test
+    void cycleInADeadBranchIsOnlyAWarning() throws Exception {
+        Path file = Files.writeString(directory.resolve("rows.csv"), "id\n1\n");
+        Sheet sheet = TestSheets.sheet("dead-nodes-dead-cycle")
+            .source("source", FileSourceComponent.class, "filepath", file.toString(), "delimiter", ",")
+            .destination("sink", RecordingDestination.class, "sink", "dead-live")
+            .transform("first", TagTransform.class, "tag", "first")
+            .transform("second", TagTransform.class, "tag", "second")
+            .flow("source", "sink")
+            .flow("source", "first")
+            .flow("first", "second")
+            .flow("second", "first")
+            .build();
+        List<String> output = new ArrayList<>();
+
+        File jar = new FlowCompilerNG(FlowCompilerNG.Backend.JAVAC).compileToJar(sheet, false, output::add);
+        TestFlows.run(jar, sheet, new ExecutionContext());
+
+        assertTrue(output.contains("Warning: node first feeds no destination, leaving it out"), output.toString());
+        assertEquals(1, RecordingDestination.rows("dead-live").size());
+    }
+}
@@ -0,0 +1,68 @@
+package io.webetl.compiler;
+
+import io.webetl.components.CsvDestinationComponent;
+import io.webetl.model.Sheet;
+import io.webetl.runtime.ExecutionContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(60)
+class EarlyStopTest {
+    private static final int ROWS = 100;
+
+    @AfterEach
+    void clear() {
+        SequenceSource.clear("source");
+        RecordingDestination.clear("first");
+        RecordingDestination.clear("all");
+    }
+
+    @Test
+    void csvDestinationDoesNotStopItsSource() throws Exception {
+        Sheet sheet = TestSheets.sheet("early-stop-csv")
+            .source("source", SequenceSource.class, "name", "source", "rows", ROWS, "delayMillis", 2)
+            .destination("sink", CsvDestinationComponent.class, "filepath", "rows.csv", "delimiter", ",")
+            .flow("source", "sink")
+            .build();
+
+        TestFlows.compileAndRun(sheet, new ExecutionContext());
+
+        assertEquals(ROWS, SequenceSource.sent("source"));
+    }
+
+    @Test
+    void consumerTakingTheFirstRowsStopsTheSource() throws Exception {
+        Sheet sheet = TestSheets.sheet("early-stop-take")
+            .source("source", SequenceSource.class, "name", "source", "rows", ROWS, "delayMillis", 2)
+            .transform("tag", TagTransform.class, "tag", "first")
+            .destination("sink", RecordingDestination.class, "sink", "first", "take", 5)
+            .flow("source", "tag")
+            .flow("tag", "sink")
+            .build();
+
+        TestFlows.compileAndRun(sheet, new ExecutionContext());
+
+        assertEquals(5, RecordingDestination.rows("first").size());
+        assertTrue(SequenceSource.sent("source") < ROWS, "sent " + SequenceSource.sent("source"));
+    }
+
+    @Test
+    void sourceKeepsSendingToTheConsumersStillTakingRows() throws Exception {
+        Sheet sheet = TestSheets.sheet("early-stop-partial")
+            .source("source", SequenceSource.class, "name", "source", "rows", ROWS, "delayMillis", 2)
+            .destination("first", RecordingDestination.class, "sink", "first", "take", 5)
+            .destination("all", RecordingDestination.class, "sink", "all")
+            .flow("source", "first")
+            .flow("source", "all")
+            .build();
+
+        TestFlows.compileAndRun(sheet, new ExecutionContext());
+
+        assertEquals(5, RecordingDestination.rows("first").size());
+        assertEquals(ROWS, RecordingDestination.rows("all").size());
+        assertEquals(ROWS, SequenceSource.sent("source"));
+    }
+}
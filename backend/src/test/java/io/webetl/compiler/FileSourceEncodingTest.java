@@ -0,0 +1,67 @@
+package io.webetl.compiler;
+
+import io.webetl.components.FileSourceComponent;
+import io.webetl.model.Sheet;
+import io.webetl.runtime.ExecutionContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(60)
+class FileSourceEncodingTest {
+    private static final String CONTENT = "id,name\n1,\"Caf\u00e9, \u20ac5\"\n2,na\u00efve\n";
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void clearSink() {
+        RecordingDestination.clear("encoding");
+    }
+
+    @Test
+    void byteOrderMarkOfUtf8FilesIsSkipped() throws Exception {
+        byte[] bytes = ("\ufeff" + CONTENT).getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(expectedRows(), read(bytes, "UTF-8"));
+    }
+
+    @Test
+    void singleByteCharsetsAreDecoded() throws Exception {
+        assertEquals(expectedRows(), read(CONTENT.getBytes(Charset.forName("windows-1252")), "windows-1252"));
+    }
+
+    @Test
+    void charsetsNotSplitOnTheirBytesAreTranscoded() throws Exception {
+        assertEquals(expectedRows(), read(CONTENT.getBytes(StandardCharsets.UTF_16), "UTF-16"));
+    }
+
+    private List<Map<String, Object>> read(byte[] bytes, String encoding) throws Exception {
+        Path file = Files.write(directory.resolve("rows.csv"), bytes);
+        Sheet sheet = TestSheets.sheet("file-source-encoding")
+            .source("source", FileSourceComponent.class, "filepath", file.toString(), "delimiter", ",",
+                "encoding", encoding)
+            .destination("sink", RecordingDestination.class, "sink", "encoding")
+            .flow("source", "sink")
+            .build();
+        TestFlows.compileAndRun(sheet, new ExecutionContext());
+        return RecordingDestination.rows("encoding").stream()
+            .map(row -> Map.of("id", row.get("id"), "name", row.get("name")))
+            .collect(Collectors.toList());
+    }
+
+    private static List<Map<String, Object>> expectedRows() {
+        return List.of(Map.of("id", "1", "name", "Caf\u00e9, \u20ac5"), Map.of("id", "2", "name", "na\u00efve"));
+    }
+}
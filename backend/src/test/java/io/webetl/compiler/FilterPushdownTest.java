@@ -0,0 +1,126 @@
+package io.webetl.compiler;
+
+import io.webetl.components.DatabaseSourceComponent;
+import io.webetl.components.FilterComponent;
+import io.webetl.model.Sheet;
+import io.webetl.runtime.ExecutionContext;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs filters fed by an H2 database source once with the condition pushed into the query
+ * and once with the source and the filter apart, and compares the rows they let through.
+ */
+@Timeout(60)
+class FilterPushdownTest {
+    private static final String DATABASE = "mem:filter_pushdown;DB_CLOSE_DELAY=-1";
+    private static final String QUERY = "SELECT \"id\", \"name\", \"code\", \"active\", \"amount\" FROM items";
+    private static Connection connection;
+
+    @BeforeAll
+    static void createTable() throws Exception {
+        connection = DriverManager.getConnection("jdbc:h2:" + DATABASE, "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE items (\"id\" INT PRIMARY KEY, \"name\" VARCHAR(20), \"code\" VARCHAR(10),"
+                + " \"active\" BOOLEAN, \"amount\" DECIMAL(10, 2))");
+            statement.execute("INSERT INTO items VALUES"
+                + " (1, 'a', '10', TRUE, 1.50),"
+                + " (2, 'b', '9', FALSE, 5.50),"
+                + " (3, 'B', '010', TRUE, 10.00),"
+                + " (4, NULL, NULL, NULL, NULL),"
+                + " (5, 'b ', 'x', TRUE, 7.25),"
+                + " (6, 'it''s', '10.0', FALSE, 5.50),"
+                + " (7, 'c', '11', TRUE, 100.00)");
+        }
+    }
+
+    @AfterAll
+    static void dropTable() throws Exception {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE items");
+        }
+        connection.close();
+    }
+
+    @AfterEach
+    void clearSinks() {
+        RecordingDestination.clear("pushed");
+        RecordingDestination.clear("filtered");
+    }
+
+    @Test
+    void pushedConditionsSelectTheRowsTheFilterSelects() throws Exception {
+        assertSameRows("id > 3", true);
+        assertSameRows("name = 'b'", true);
+        assertSameRows("name <> 'b'", true);
+        assertSameRows("\"name\" = 'it''s'", true);
+        assertSameRows("active = TRUE AND amount >= 5.5", true);
+        assertSameRows("NOT (id = 2) OR name IS NULL", true);
+        assertSameRows("NOT (name = 'b' OR amount > 6)", true);
+    }
+
+    @Test
+    void conditionsTheDatabaseReadsDifferentlyStayInTheFilter() throws Exception {
+        // a text column compared with a number, orderings of strings
+        assertSameRows("code = 10", false);
+        assertSameRows("name < 'b'", false);
+        assertSameRows("code >= 10 AND id > 1", true);
+    }
+
+    private void assertSameRows(String condition, boolean pushedDown) throws Exception {
+        String id = "filter-pushdown-" + Integer.toHexString(condition.hashCode());
+        Sheet pushed = TestSheets.sheet(id)
+            .source("source", DatabaseSourceComponent.class, sourceParameters())
+            .transform("filter", FilterComponent.class, "condition", condition)
+            .destination("sink", RecordingDestination.class, "sink", "pushed")
+            .flow("source", "filter")
+            .flow("filter", "sink")
+            .build();
+        // the transform in between keeps the condition in the filter
+        Sheet filtered = TestSheets.sheet(id + "-apart")
+            .source("source", DatabaseSourceComponent.class, sourceParameters())
+            .transform("tag", TagTransform.class, "tag", "apart")
+            .transform("filter", FilterComponent.class, "condition", condition)
+            .destination("sink", RecordingDestination.class, "sink", "filtered")
+            .flow("source", "tag")
+            .flow("tag", "filter")
+            .flow("filter", "sink")
+            .build();
+
+        List<String> output = new ArrayList<>();
+        TestFlows.run(new FlowCompilerNG(FlowCompilerNG.Backend.JAVAC).compileToJar(pushed, false, output::add),
+            pushed, new ExecutionContext());
+        TestFlows.compileAndRun(filtered, new ExecutionContext());
+
+        assertEquals(pushedDown, output.stream().anyMatch(line -> line.startsWith("Pushed condition")),
+            condition + ": " + output);
+        List<Map<String, Object>> expected = sorted("filtered");
+        expected.forEach(row -> row.remove("branch"));
+        assertEquals(expected, sorted("pushed"), condition);
+        clearSinks();
+    }
+
+    private static Object[] sourceParameters() {
+        return new Object[] {"dbType", "h2", "database", DATABASE, "username", "sa", "password", "",
+            "query", QUERY};
+    }
+
+    private static List<Map<String, Object>> sorted(String sink) {
+        List<Map<String, Object>> rows = new ArrayList<>(RecordingDestination.rows(sink));
+        rows.sort(Comparator.comparing(row -> (Integer) row.get("id")));
+        return rows;
+    }
+}
@@ -0,0 +1,68 @@
+package io.webetl.compiler;
+
+import org.junit.jupiter.api.Test;
+
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlowJavaCompilerTest {
+    private final FlowJavaCompiler compiler = new FlowJavaCompiler();
+
+    @Test
+    void compilesAgainstTheClasspathIntoMemory() throws Exception {
+        JavaFileObject source = source("io.webetl.generated.Greeting",
+            "package io.webetl.generated;\n"
+            + "public class Greeting implements java.util.function.Supplier<String> {\n"
+            + "    static class Nested { String value() { return new io.webetl.model.data.Row(\"hello\").getValue(\"line\") + \"\"; } }\n"
+            + "    public String get() { return new Nested().value(); }\n"
+            + "}\n");
+
+        Map<String, byte[]> classFiles = compiler.compile(List.of(source), line -> { });
+
+        assertEquals(2, classFiles.size());
+        assertTrue(classFiles.containsKey("io.webetl.generated.Greeting$Nested"));
+        ClassLoader loader = new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                byte[] bytes = classFiles.get(name);
+                if (bytes == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+        };
+        @SuppressWarnings("unchecked")
+        Supplier<String> greeting = (Supplier<String>) loader.loadClass("io.webetl.generated.Greeting")
+            .getDeclaredConstructor().newInstance();
+        assertEquals("hello", greeting.get());
+    }
+
+    @Test
+    void reportsErrorsWithTheirLine() {
+        JavaFileObject source = source("io.webetl.generated.Broken",
+            "package io.webetl.generated;\n"
+            + "public class Broken {\n"
+            + "    int value() { return missing; }\n"
+            + "}\n");
+
+        CompilationException e = assertThrows(CompilationException.class,
+            () -> compiler.compile(List.of(source), line -> { }));
+        assertTrue(e.getMessage().contains(":3: error:"), e.getMessage());
+    }
+
+    private static JavaFileObject source(String className, String code) {
+        return new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/') + ".java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+}
@@ -0,0 +1,162 @@
+package io.webetl.compiler;
+
+import io.webetl.components.FileSourceComponent;
+import io.webetl.model.Sheet;
+import io.webetl.runtime.CheckpointCoordinator;
+import io.webetl.runtime.CheckpointStore;
+import io.webetl.runtime.ExecutionContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(60)
+class IncrementalFileSourceTest {
+    private static final int INTERVAL = 10;
+
+    @TempDir
+    Path directory;
+
+    private Path file;
+    private Sheet sheet;
+    private File jar;
+
+    @BeforeEach
+    void compileFlow() throws Exception {
+        file = directory.resolve("events.csv");
+        Files.writeString(file, "id\n");
+        sheet = TestSheets.sheet("incremental-file-source")
+            .source("source", FileSourceComponent.class, "filepath", file.toString(), "delimiter", ",",
+                "incremental", true)
+            .destination("sink", RecordingDestination.class, "sink", "incremental")
+            .flow("source", "sink")
+            .build();
+        jar = TestFlows.compile(sheet, FlowCompilerNG.Backend.JAVAC);
+    }
+
+    @AfterEach
+    void clearSink() {
+        RecordingDestination.clear("incremental");
+    }
+
+    @Test
+    void onlyAppendedLinesAreRead() throws Exception {
+        append(1, 30);
+        assertEquals(ids(1, 30), run());
+
+        append(31, 45);
+        List<Map<String, Object>> rows = runRows();
+        assertEquals(ids(31, 45), idsOf(rows));
+        // lines count on from the previous run
+        assertEquals(32L, ((Number) rows.get(0).get("_line")).longValue());
+
+        assertEquals(List.of(), run());
+    }
+
+    @Test
+    void lineStillBeingWrittenIsLeftForTheNextRun() throws Exception {
+        append(1, 5);
+        Files.writeString(file, "6", StandardOpenOption.APPEND);
+        assertEquals(ids(1, 5), run());
+
+        Files.writeString(file, "0\n7\n", StandardOpenOption.APPEND);
+        assertEquals(List.of("60", "7"), run());
+    }
+
+    @Test
+    void restOfARotatedFileIsReadBeforeTheNewFile() throws Exception {
+        append(1, 20);
+        assertEquals(ids(1, 20), run());
+
+        // rows written after the run, then the file is rotated
+        append(21, 25);
+        Files.move(file, directory.resolve("events.csv.1"));
+        Files.writeString(file, "id\n");
+        append(26, 40);
+        assertEquals(ids(21, 40), run());
+
+        append(41, 50);
+        assertEquals(ids(41, 50), run());
+    }
+
+    @Test
+    void truncatedFileIsReadFromTheStart() throws Exception {
+        append(1, 20);
+        assertEquals(ids(1, 20), run());
+
+        Files.writeString(file, "id\n");
+        append(101, 105);
+        assertEquals(ids(101, 105), run());
+
+        // rewritten with as many bytes as before
+        Files.writeString(file, Files.readString(file).replace("101", "201"));
+        assertEquals(List.of("201", "102", "103", "104", "105"), run());
+    }
+
+    @Test
+    void failedRunIsResumedWithoutLosingRows() throws Exception {
+        append(1, 10);
+        assertEquals(ids(1, 10), run());
+        append(11, 50);
+
+        Sheet failing = TestSheets.sheet("incremental-file-source")
+            .source("source", FileSourceComponent.class, "filepath", file.toString(), "delimiter", ",",
+                "incremental", true)
+            .destination("sink", RecordingDestination.class, "sink", "incremental", "failAfter", 25)
+            .flow("source", "sink")
+            .build();
+        assertThrows(IllegalStateException.class, () -> TestFlows.compileAndRun(failing, context()));
+        // the last checkpoint of the failed run completed after its 20th row
+        List<String> delivered = new ArrayList<>(idsOf(RecordingDestination.rows("incremental")).subList(0, 20));
+        delivered.addAll(run());
+
+        assertEquals(ids(11, 50), delivered);
+        assertEquals(List.of(), run());
+    }
+
+    private void append(int from, int to) throws IOException {
+        String lines = IntStream.rangeClosed(from, to).mapToObj(id -> id + "\n").collect(Collectors.joining());
+        Files.writeString(file, lines, StandardOpenOption.APPEND);
+    }
+
+    private List<String> run() throws Exception {
+        return idsOf(runRows());
+    }
+
+    private List<Map<String, Object>> runRows() throws Exception {
+        RecordingDestination.clear("incremental");
+        TestFlows.run(jar, sheet, context());
+        List<Map<String, Object>> rows = new ArrayList<>(RecordingDestination.rows("incremental"));
+        RecordingDestination.clear("incremental");
+        return rows;
+    }
+
+    private ExecutionContext context() {
+        ExecutionContext context = new ExecutionContext();
+        context.setCheckpointCoordinator(new CheckpointCoordinator(
+            new CheckpointStore(directory.resolve("checkpoints")), INTERVAL));
+        return context;
+    }
+
+    private static List<String> idsOf(List<Map<String, Object>> rows) {
+        return rows.stream().map(row -> (String) row.get("id")).collect(Collectors.toList());
+    }
+
+    private static List<String> ids(int from, int to) {
+        return IntStream.rangeClosed(from, to).mapToObj(String::valueOf).collect(Collectors.toList());
+    }
+}
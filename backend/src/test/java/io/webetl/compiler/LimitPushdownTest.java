@@ -0,0 +1,104 @@
+package io.webetl.compiler;
+
+import io.webetl.components.DatabaseSourceComponent;
+import io.webetl.model.Sheet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(60)
+class LimitPushdownTest {
+
+    @Test
+    void legacyMaxRowsOfTheQueryDoesNotLimitIt() throws Exception {
+        Sheet sheet = sheet("limit-legacy-max-rows").build();
+        setMaxRows(sheet, 1000);
+        List<String> output = new ArrayList<>();
+
+        File jar = compile(sheet, output);
+
+        assertTrue(output.stream().noneMatch(line -> line.startsWith("Limited the query")), output.toString());
+        assertFalse(flowClass(jar, sheet).contains("LIMIT"));
+    }
+
+    @Test
+    void rowLimitOfTheSourceLimitsItsQuery() throws Exception {
+        Sheet sheet = sheet("limit-row-limit").parameter("source", "limit", 25).build();
+        setMaxRows(sheet, 1000);
+        List<String> output = new ArrayList<>();
+
+        File jar = compile(sheet, output);
+
+        assertTrue(output.contains("Limited the query of node source to 25 rows"), output.toString());
+        assertTrue(flowClass(jar, sheet).contains("SELECT * FROM (SELECT id FROM items) webetl_limit LIMIT 25"));
+    }
+
+    @Test
+    void sourceWithAWatermarkLimitsItsQueryItself() throws Exception {
+        Sheet sheet = sheet("limit-watermark").parameter("source", "limit", 25)
+            .parameter("source", "watermarkColumn", "id").build();
+        List<String> output = new ArrayList<>();
+
+        File jar = compile(sheet, output);
+
+        assertTrue(output.stream().noneMatch(line -> line.startsWith("Limited the query")), output.toString());
+        assertFalse(flowClass(jar, sheet).contains("LIMIT"));
+    }
+
+    @Test
+    void fractionalRowLimitFailsTheCompilation() {
+        Sheet sheet = sheet("limit-fractional").parameter("source", "limit", 2.5).build();
+
+        assertThrows(CompilationException.class, () -> compile(sheet, new ArrayList<>()));
+    }
+
+    private static TestSheets sheet(String id) {
+        // nothing listens on the port, the schema of the source stays unknown
+        return TestSheets.sheet(id)
+            .source("source", DatabaseSourceComponent.class, "dbType", "postgresql", "host", "127.0.0.1",
+                "port", "1", "database", "webetl", "query", "SELECT id FROM items")
+            .destination("sink", RecordingDestination.class, "sink", "limit")
+            .flow("source", "sink");
+    }
+
+    private static File compile(Sheet sheet, List<String> output) throws Exception {
+        return new FlowCompilerNG(FlowCompilerNG.Backend.JAVAC).compileToJar(sheet, false, output::add);
+    }
+
+    /**
+     * Sets maxRows of the query parameter, as the editor saved it for every query.
+     */
+    @SuppressWarnings("unchecked")
+    private static void setMaxRows(Sheet sheet, int maxRows) {
+        for (Map<String, Object> node : sheet.getNodes()) {
+            if ("source".equals(node.get("id"))) {
+                Map<String, Object> data = (Map<String, Object>) node.get("data");
+                List<Map<String, Object>> parameters =
+                    (List<Map<String, Object>>) ((Map<String, Object>) data.get("componentData")).get("parameters");
+                parameters.stream()
+                    .filter(parameter -> "query".equals(parameter.get("name")))
+                    .forEach(parameter -> parameter.put("maxRows", maxRows));
+            }
+        }
+    }
+
+    /**
+     * Gets the content of the flow class, its string constants are readable in it.
+     */
+    private static String flowClass(File jar, Sheet sheet) throws IOException {
+        String entry = "io/webetl/generated/GeneratedFlow_" + sheet.getId().replaceAll("-", "_") + ".class";
+        try (JarFile jarFile = new JarFile(jar); InputStream in = jarFile.getInputStream(jarFile.getJarEntry(entry))) {
+            return new String(in.readAllBytes(), StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package io.webetl.compiler;
+
+import io.webetl.components.FileSourceComponent;
+import io.webetl.model.Sheet;
+import io.webetl.runtime.ExecutionContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(60)
+class MultiFileSourceTest {
+    private static final int FILES = 5;
+    private static final int ROWS = 300;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void writeFiles() throws Exception {
+        Files.createDirectories(directory.resolve("in"));
+        for (int i = 0; i < FILES; i++) {
+            int first = i * ROWS;
+            Files.writeString(directory.resolve("in/part-" + i + ".csv"), "id\n" + IntStream.range(first, first + ROWS)
+                .mapToObj(id -> id + "\n")
+                .collect(Collectors.joining()));
+        }
+    }
+
+    @AfterEach
+    void clearSink() {
+        RecordingDestination.clear("files");
+    }
+
+    @Test
+    void filesOfADirectoryAreReadInOrder() throws Exception {
+        List<Integer> ids = read(directory.resolve("in").toString(), true);
+
+        assertEquals(expectedIds(), ids);
+    }
+
+    @Test
+    void filesMatchingAGlobAreAllReadOutOfOrder() throws Exception {
+        List<Integer> ids = read(directory.resolve("in") + "/part-*.csv", false);
+
+        assertEquals(expectedIds(), ids.stream().sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    void filesWithOtherColumnsFailTheRun() throws Exception {
+        Files.writeString(directory.resolve("in/part-9.csv"), "other\n1\n");
+
+        assertThrows(Exception.class, () -> read(directory.resolve("in").toString(), true));
+    }
+
+    /**
+     * Reads the files with several threads.
+     *
+     * @return the ids of the rows, in the order they arrived
+     */
+    private List<Integer> read(String filepath, boolean ordered) throws Exception {
+        Sheet sheet = TestSheets.sheet("multi-file-source")
+            .source("source", FileSourceComponent.class, "filepath", filepath, "delimiter", ",",
+                "readerThreads", 3, "ordered", ordered)
+            .destination("sink", RecordingDestination.class, "sink", "files")
+            .flow("source", "sink")
+            .build();
+        TestFlows.compileAndRun(sheet, new ExecutionContext());
+        return RecordingDestination.rows("files").stream()
+            .map(row -> Integer.parseInt((String) row.get("id")))
+            .collect(Collectors.toList());
+    }
+
+    private static List<Integer> expectedIds() {
+        return IntStream.range(0, FILES * ROWS).boxed().collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,69 @@
+package io.webetl.compiler;
+
+import io.webetl.components.FileSourceComponent;
+import io.webetl.model.Sheet;
+import io.webetl.runtime.ExecutionContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(180)
+class ParallelCompilationTest {
+    private static final int SHEETS = 6;
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void clearSinks() {
+        for (int i = 0; i < SHEETS; i++) {
+            RecordingDestination.clear("parallel-" + i);
+        }
+    }
+
+    @Test
+    void oneCompilerCompilesSheetsInParallel() throws Exception {
+        FlowCompilerNG compiler = new FlowCompilerNG();
+        List<Sheet> sheets = new ArrayList<>();
+        for (int i = 0; i < SHEETS; i++) {
+            Path file = Files.writeString(directory.resolve("rows-" + i + ".csv"), "id\n" + i + "\n");
+            sheets.add(TestSheets.sheet("parallel-" + i)
+                .source("source", FileSourceComponent.class, "filepath", file.toString(), "delimiter", ",")
+                .destination("sink", RecordingDestination.class, "sink", "parallel-" + i)
+                .flow("source", "sink")
+                .build());
+        }
+
+        List<Future<File>> jars = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(SHEETS);
+        try {
+            for (Sheet sheet : sheets) {
+                jars.add(executor.submit(() -> compiler.compileToJar(sheet, false, line -> { })));
+            }
+            for (int i = 0; i < SHEETS; i++) {
+                TestFlows.run(jars.get(i).get(), sheets.get(i), new ExecutionContext());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        for (int i = 0; i < SHEETS; i++) {
+            List<Map<String, Object>> rows = RecordingDestination.rows("parallel-" + i);
+            assertEquals(1, rows.size());
+            assertEquals(String.valueOf(i), rows.get(0).get("id"));
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package io.webetl.compiler;
+
+import io.webetl.components.FileSourceComponent;
+import io.webetl.model.Sheet;
+import io.webetl.model.component.Param;
+import io.webetl.model.component.TransformComponent;
+import io.webetl.model.component.parameter.BooleanParameter;
+import io.webetl.model.component.parameter.NumberParameter;
+import io.webetl.model.component.parameter.StringParameter;
+import io.webetl.model.data.Row;
+import io.webetl.runtime.ExecutionContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.asm.ClassReader;
+import org.springframework.asm.ClassVisitor;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(60)
+class ParameterBindingCompileTest {
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void clearSinks() {
+        for (FlowCompilerNG.Backend backend : FlowCompilerNG.Backend.values()) {
+            RecordingDestination.clear("binding-" + backend);
+        }
+        TypedTransform.SEEN.clear();
+    }
+
+    @Test
+    void parametersReachTheirFieldsWithTheFieldTypes() throws Exception {
+        Path file = Files.writeString(directory.resolve("rows.csv"), "id\n1\n2\n");
+        for (FlowCompilerNG.Backend backend : FlowCompilerNG.Backend.values()) {
+            Sheet sheet = sheet(backend, file)
+                .parameter("typed", "count", "7")
+                .parameter("typed", "limit", 10_000_000_000L)
+                .parameter("typed", "ratio", 0.5)
+                .parameter("typed", "enabled", "TRUE")
+                .parameter("typed", "label", 42)
+                .build();
+            TestFlows.run(TestFlows.compile(sheet, backend), sheet, new ExecutionContext());
+
+            assertEquals(Map.of("count", 7, "limit", 10_000_000_000L, "ratio", 0.5, "enabled", true, "label", "42"),
+                TypedTransform.SEEN.get(backend.name()), backend.name());
+            assertEquals(2, RecordingDestination.rows("binding-" + backend).size(), backend.name());
+        }
+    }
+
+    @Test
+    void valueNotFittingItsFieldFailsTheCompilation() throws Exception {
+        Path file = Files.writeString(directory.resolve("rows.csv"), "id\n1\n");
+        for (FlowCompilerNG.Backend backend : FlowCompilerNG.Backend.values()) {
+            for (Object[] invalid : List.of(new Object[] {"count", "seven"}, new Object[] {"count", 2.5},
+                    new Object[] {"enabled", "yes"}, new Object[] {"limit", Double.POSITIVE_INFINITY})) {
+                Sheet sheet = sheet(backend, file).parameter("typed", (String) invalid[0], invalid[1]).build();
+                CompilationException e = assertThrows(CompilationException.class,
+                    () -> TestFlows.compile(sheet, backend), backend + " " + invalid[0] + "=" + invalid[1]);
+                assertTrue(e.getMessage().contains("typed"), e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    void visibleComponentsAreCreatedWithoutReflection() throws Exception {
+        Path file = Files.writeString(directory.resolve("rows.csv"), "id\n1\n");
+        for (FlowCompilerNG.Backend backend : FlowCompilerNG.Backend.values()) {
+            Sheet sheet = sheet(backend, file).build();
+            List<String> calls = constructorCalls(TestFlows.compile(sheet, backend), sheet);
+
+            assertTrue(calls.contains("new " + FileSourceComponent.class.getName()), backend + ": " + calls);
+            assertTrue(calls.contains("new " + RecordingDestination.class.getName()), backend + ": " + calls);
+            // nested in a class the flow class cannot see, so it is created by name
+            assertFalse(calls.contains("new " + TypedTransform.class.getName()), backend + ": " + calls);
+            assertEquals(1, calls.stream().filter("java.lang.Class.forName"::equals).count(), backend + ": " + calls);
+        }
+    }
+
+    private static TestSheets sheet(FlowCompilerNG.Backend backend, Path file) {
+        return TestSheets.sheet("parameter-binding-" + backend)
+            .source("source", FileSourceComponent.class, "filepath", file.toString(), "delimiter", ",")
+            .transform("typed", TypedTransform.class, "name", backend.name())
+            .destination("sink", RecordingDestination.class, "sink", "binding-" + backend)
+            .flow("source", "typed")
+            .flow("typed", "sink");
+    }
+
+    /**
+     * Lists the objects created and the methods called by the constructor of a flow class.
+     */
+    private static List<String> constructorCalls(File jar, Sheet sheet) throws IOException {
+        String entry = "io/webetl/generated/GeneratedFlow_" + sheet.getId().replaceAll("-", "_") + ".class";
+        List<String> calls = new ArrayList<>();
+        try (JarFile jarFile = new JarFile(jar); InputStream in = jarFile.getInputStream(jarFile.getJarEntry(entry))) {
+            new ClassReader(in).accept(new ClassVisitor(Opcodes.ASM9) {
+                @Override
+                public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                                                 String[] exceptions) {
+                    if (!name.equals("<init>")) {
+                        return null;
+                    }
+                    return new MethodVisitor(Opcodes.ASM9) {
+                        @Override
+                        public void visitTypeInsn(int opcode, String type) {
+                            if (opcode == Opcodes.NEW) {
+                                calls.add("new " + type.replace('/', '.'));
+                            }
+                        }
+
+                        @Override
+                        public void visitMethodInsn(int opcode, String owner, String name, String descriptor,
+                                                    boolean isInterface) {
+                            calls.add(owner.replace('/', '.') + "." + name);
+                        }
+                    };
+                }
+            }, ClassReader.SKIP_DEBUG);
+        }
+        return calls;
+    }
+
+    /**
+     * Passes rows on and keeps the values of its typed fields, by the name of the flow.
+     */
+    public static class TypedTransform extends TransformComponent {
+        static final Map<String, Map<String, Object>> SEEN = new ConcurrentHashMap<>();
+
+        @Param("name")
+        private String name;
+        @Param("count")
+        private int count;
+        @Param("limit")
+        private long limit;
+        @Param("ratio")
+        private double ratio;
+        @Param("enabled")
+        private boolean enabled;
+        @Param("label")
+        private String label;
+
+        public TypedTransform() {
+            getParameters().add(StringParameter.builder().name("name").label("Name").build());
+            getParameters().add(NumberParameter.builder().name("count").label("Count").build());
+            getParameters().add(NumberParameter.builder().name("limit").label("Limit").build());
+            getParameters().add(NumberParameter.builder().name("ratio").label("Ratio").build());
+            getParameters().add(BooleanParameter.builder().name("enabled").label("Enabled").build());
+            getParameters().add(StringParameter.builder().name("label").label("Label").build());
+        }
+
+        @Override
+        protected void executeComponent(ExecutionContext context) throws Exception {
+            Map<String, Object> seen = new ConcurrentHashMap<>();
+            seen.put("count", count);
+            seen.put("limit", limit);
+            seen.put("ratio", ratio);
+            seen.put("enabled", enabled);
+            if (label != null) {
+                seen.put("label", label);
+            }
+            SEEN.put(name, seen);
+            while (true) {
+                Row row = takeInputRow();
+                sendRow(row);
+                if (row.isTerminator()) {
+                    return;
+                }
+            }
+        }
+    }
+}
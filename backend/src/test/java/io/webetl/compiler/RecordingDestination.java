@@ -0,0 +1,92 @@
+package io.webetl.compiler;
+
+import io.webetl.model.component.DestinationComponent;
+import io.webetl.model.component.Param;
+import io.webetl.model.component.parameter.NumberParameter;
+import io.webetl.model.component.parameter.StringParameter;
+import io.webetl.model.data.Row;
+import io.webetl.runtime.ExecutionContext;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A destination keeping the data of the rows it receives in memory, under the name of its
+ * sink, so tests can check what a flow wrote. It can fail after some rows, like a
+ * destination losing its connection, or only take the first rows, like a preview.
+ */
+public class RecordingDestination extends DestinationComponent {
+    private static final Map<String, List<Map<String, Object>>> SINKS = new ConcurrentHashMap<>();
+
+    @Param("sink")
+    private String sink;
+    @Param("inputs")
+    private int inputs = 1;
+    @Param("failAfter")
+    private int failAfter = 0;
+    @Param("take")
+    private int take = 0;
+
+    public RecordingDestination() {
+        getParameters().add(StringParameter.builder()
+            .name("sink")
+            .label("Sink")
+            .required(true)
+            .build());
+        getParameters().add(NumberParameter.builder()
+            .name("inputs")
+            .label("Inputs")
+            .description("Components sending rows, each ends with a terminator")
+            .required(false)
+            .build());
+        getParameters().add(NumberParameter.builder()
+            .name("failAfter")
+            .label("Fail After")
+            .description("Rows to take before failing, 0 to never fail")
+            .required(false)
+            .build());
+        getParameters().add(NumberParameter.builder()
+            .name("take")
+            .label("Take")
+            .description("Rows to take before stopping the input, 0 to take all")
+            .required(false)
+            .build());
+    }
+
+    /**
+     * Gets the data of the rows written to a sink, in the order they arrived.
+     */
+    static List<Map<String, Object>> rows(String sink) {
+        return SINKS.computeIfAbsent(sink, name -> new CopyOnWriteArrayList<>());
+    }
+
+    static void clear(String sink) {
+        SINKS.remove(sink);
+    }
+
+    @Override
+    protected void executeComponent(ExecutionContext context) throws Exception {
+        List<Map<String, Object>> rows = rows(sink);
+        int terminators = 0;
+        int taken = 0;
+        while (terminators < inputs) {
+            Row row = takeInputRow();
+            if (row.isTerminator()) {
+                terminators++;
+                continue;
+            }
+            if (failAfter > 0 && taken == failAfter) {
+                throw new IllegalStateException("Failing after " + taken + " rows");
+            }
+            rows.add(new HashMap<>(row.getData()));
+            taken++;
+            if (take > 0 && taken == take) {
+                stopInput();
+                return;
+            }
+        }
+    }
+}
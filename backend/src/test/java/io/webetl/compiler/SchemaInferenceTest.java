@@ -0,0 +1,107 @@
+package io.webetl.compiler;
+
+import io.webetl.components.FileSourceComponent;
+import io.webetl.components.FilterComponent;
+import io.webetl.components.MapTransformComponent;
+import io.webetl.model.Sheet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(60)
+class SchemaInferenceTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void schemasFollowTheDataFlow() throws Exception {
+        Path file = Files.writeString(directory.resolve("orders.csv"), "id,amount\n1,10\n");
+        Sheet sheet = TestSheets.sheet("schema-inference")
+            .source("source", FileSourceComponent.class, "filepath", file.toString(), "delimiter", ",")
+            .transform("map", MapTransformComponent.class, "mappingExpression", "amount")
+            .transform("filter", FilterComponent.class, "condition", "amount > 5")
+            .transform("tag", TagTransform.class, "tag", "unknown")
+            .destination("sink", RecordingDestination.class, "sink", "schemas")
+            .flow("source", "map")
+            .flow("map", "filter")
+            .flow("filter", "tag")
+            .flow("tag", "sink")
+            .build();
+
+        List<String> output = compile(sheet);
+
+        assertTrue(output.contains("  source -> [_line, id, amount]"), output.toString());
+        assertTrue(output.contains("  map -> [_line, id, amount, _transformed]"), output.toString());
+        assertTrue(output.contains("  filter -> [_line, id, amount, _transformed]"), output.toString());
+        // inference stops at a component that declares no schema
+        assertTrue(output.stream().noneMatch(line -> line.startsWith("  tag -> ") || line.startsWith("  sink -> ")),
+            output.toString());
+    }
+
+    @Test
+    void filterOnAColumnTheInputLacksFailsTheCompilation() throws Exception {
+        Path file = Files.writeString(directory.resolve("orders.csv"), "id,amount\n1,10\n");
+        Sheet sheet = TestSheets.sheet("schema-inference-missing-column")
+            .source("source", FileSourceComponent.class, "filepath", file.toString(), "delimiter", ",")
+            .transform("filter", FilterComponent.class, "condition", "price > 5")
+            .destination("sink", RecordingDestination.class, "sink", "schemas")
+            .flow("source", "filter")
+            .flow("filter", "sink")
+            .build();
+
+        CompilationException e = assertThrows(CompilationException.class, () -> compile(sheet));
+        assertTrue(e.getMessage().startsWith("Node filter: "), e.getMessage());
+        assertTrue(e.getMessage().contains("price"), e.getMessage());
+    }
+
+    @Test
+    void nodeFedRowsOfDifferentSchemasGetsNone() throws Exception {
+        Path orders = Files.writeString(directory.resolve("orders.csv"), "id,amount\n1,10\n");
+        Path customers = Files.writeString(directory.resolve("customers.csv"), "id,name\n1,Ada\n");
+        Sheet sheet = TestSheets.sheet("schema-inference-mixed")
+            .source("orders", FileSourceComponent.class, "filepath", orders.toString(), "delimiter", ",")
+            .source("customers", FileSourceComponent.class, "filepath", customers.toString(), "delimiter", ",")
+            .transform("filter", FilterComponent.class, "condition", "id > 0")
+            .destination("sink", RecordingDestination.class, "sink", "schemas", "inputs", 2)
+            .flow("orders", "filter")
+            .flow("customers", "filter")
+            .flow("filter", "sink")
+            .build();
+
+        List<String> output = compile(sheet);
+
+        assertTrue(output.contains("Warning: node filter receives rows of different schemas"), output.toString());
+        assertTrue(output.contains("  orders -> [_line, id, amount]"), output.toString());
+        assertTrue(output.contains("  customers -> [_line, id, name]"), output.toString());
+        assertTrue(output.stream().noneMatch(line -> line.startsWith("  filter -> ")), output.toString());
+    }
+
+    @Test
+    void missingFileLeavesTheSchemaUnknown() throws Exception {
+        Sheet sheet = TestSheets.sheet("schema-inference-no-file")
+            .source("source", FileSourceComponent.class, "filepath", directory.resolve("later.csv").toString(),
+                "delimiter", ",")
+            .transform("filter", FilterComponent.class, "condition", "price > 5")
+            .destination("sink", RecordingDestination.class, "sink", "schemas")
+            .flow("source", "filter")
+            .flow("filter", "sink")
+            .build();
+
+        List<String> output = compile(sheet);
+
+        assertTrue(output.stream().noneMatch(line -> line.startsWith("  source -> ")), output.toString());
+    }
+
+    private static List<String> compile(Sheet sheet) throws Exception {
+        List<String> output = new ArrayList<>();
+        new FlowCompilerNG(FlowCompilerNG.Backend.JAVAC).compileToJar(sheet, true, output::add);
+        return output;
+    }
+}
@@ -0,0 +1,74 @@
+package io.webetl.compiler;
+
+import io.webetl.model.component.Param;
+import io.webetl.model.component.SourceComponent;
+import io.webetl.model.component.parameter.NumberParameter;
+import io.webetl.model.component.parameter.StringParameter;
+import io.webetl.model.data.Row;
+import io.webetl.runtime.ExecutionContext;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A source sending rows with an increasing "id" column, taking its time for every row. It
+ * stops when cancelled and keeps the number of rows it sent under its name, so tests can
+ * check whether the components downstream stopped it.
+ */
+public class SequenceSource extends SourceComponent {
+    private static final Map<String, Integer> SENT = new ConcurrentHashMap<>();
+
+    @Param("name")
+    private String name;
+    @Param("rows")
+    private int rows;
+    @Param("delayMillis")
+    private int delayMillis = 0;
+
+    public SequenceSource() {
+        getParameters().add(StringParameter.builder()
+            .name("name")
+            .label("Name")
+            .required(true)
+            .build());
+        getParameters().add(NumberParameter.builder()
+            .name("rows")
+            .label("Rows")
+            .required(true)
+            .build());
+        getParameters().add(NumberParameter.builder()
+            .name("delayMillis")
+            .label("Delay")
+            .description("Milliseconds to wait before every row")
+            .required(false)
+            .build());
+    }
+
+    /**
+     * Gets the number of rows a source sent before it finished or was cancelled.
+     */
+    static int sent(String name) {
+        return SENT.getOrDefault(name, 0);
+    }
+
+    static void clear(String name) {
+        SENT.remove(name);
+    }
+
+    @Override
+    protected void executeComponent(ExecutionContext context) throws Exception {
+        int sent = 0;
+        while (sent < rows && !isCancelled()) {
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+            Row row = new Row();
+            row.setId(String.valueOf(sent + 1));
+            row.setData(Map.of("id", sent + 1));
+            sendRow(row);
+            sent++;
+        }
+        SENT.put(name, sent);
+        sendRow(Row.createTerminator());
+    }
+}
@@ -0,0 +1,56 @@
+package io.webetl.compiler;
+
+import io.webetl.model.component.Param;
+import io.webetl.model.component.TransformComponent;
+import io.webetl.model.component.parameter.NumberParameter;
+import io.webetl.model.component.parameter.StringParameter;
+import io.webetl.model.data.Row;
+import io.webetl.runtime.ExecutionContext;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A transform adding a "branch" column with its tag to the rows, so tests can tell which
+ * route a row took. It can take its time for every row, to let one route fall behind.
+ */
+public class TagTransform extends TransformComponent {
+    @Param("tag")
+    private String tag;
+    @Param("delayMillis")
+    private int delayMillis = 0;
+
+    public TagTransform() {
+        getParameters().add(StringParameter.builder()
+            .name("tag")
+            .label("Tag")
+            .required(true)
+            .build());
+        getParameters().add(NumberParameter.builder()
+            .name("delayMillis")
+            .label("Delay")
+            .description("Milliseconds to wait for every row")
+            .required(false)
+            .build());
+    }
+
+    @Override
+    protected void executeComponent(ExecutionContext context) throws Exception {
+        while (true) {
+            Row row = takeInputRow();
+            if (row.isTerminator()) {
+                sendRow(row);
+                return;
+            }
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+            Map<String, Object> data = new HashMap<>(row.getData());
+            data.put("branch", tag);
+            Row tagged = new Row();
+            tagged.setId(row.getId());
+            tagged.setData(data);
+            sendRow(tagged);
+        }
+    }
+}
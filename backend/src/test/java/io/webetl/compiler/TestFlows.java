@@ -0,0 +1,44 @@
+package io.webetl.compiler;
+
+import io.webetl.model.Sheet;
+import io.webetl.runtime.ExecutionContext;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Compiles sheets and runs the flow classes in this JVM. Only the generated class is
+ * loaded from the jar, the components are those of the test classpath, so tests can look
+ * into them.
+ */
+public final class TestFlows {
+    private TestFlows() {
+    }
+
+    public static File compile(Sheet sheet, FlowCompilerNG.Backend backend) throws Exception {
+        return new FlowCompilerNG(backend).compileToJar(sheet, false);
+    }
+
+    /**
+     * Runs a compiled flow. Like the runner, a successful run marks the context completed.
+     *
+     * @throws Exception the failure of the flow
+     */
+    public static void run(File jar, Sheet sheet, ExecutionContext context) throws Exception {
+        String className = "io.webetl.generated.GeneratedFlow_" + sheet.getId().replaceAll("-", "_");
+        try (URLClassLoader loader = new URLClassLoader(new URL[] {jar.toURI().toURL()},
+                TestFlows.class.getClassLoader())) {
+            CompiledFlow flow = (CompiledFlow) loader.loadClass(className).getDeclaredConstructor().newInstance();
+            flow.execute(context);
+        }
+        context.markCompleted();
+    }
+
+    /**
+     * Compiles a sheet with the reference backend and runs it.
+     */
+    public static void compileAndRun(Sheet sheet, ExecutionContext context) throws Exception {
+        run(compile(sheet, FlowCompilerNG.Backend.JAVAC), sheet, context);
+    }
+}
@@ -0,0 +1,151 @@
+package io.webetl.compiler;
+
+import io.webetl.model.Sheet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds sheets the way the editor saves them: nodes with their component data and
+ * parameters, data flow edges between them and a control flow from a start node through
+ * the sources to a stop node.
+ */
+public final class TestSheets {
+    private final String id;
+    private final List<Map<String, Object>> nodes = new ArrayList<>();
+    private final List<Map<String, Object>> edges = new ArrayList<>();
+    // the last node of the control flow
+    private String controlFlowEnd = "start";
+
+    private TestSheets(String id) {
+        this.id = id;
+        nodes.add(controlNode("start"));
+    }
+
+    public static TestSheets sheet(String id) {
+        return new TestSheets(id);
+    }
+
+    /**
+     * Adds a source, started by the control flow after the sources added before.
+     *
+     * @param parameters parameter names and values, alternating
+     */
+    public TestSheets source(String nodeId, Class<?> component, Object... parameters) {
+        nodes.add(componentNode(nodeId, "source", component, parameters));
+        edges.add(edge(controlFlowEnd, nodeId, "control-flow-out", "control-flow-in"));
+        controlFlowEnd = nodeId;
+        return this;
+    }
+
+    /**
+     * Adds a source the control flow does not start.
+     */
+    public TestSheets detachedSource(String nodeId, Class<?> component, Object... parameters) {
+        nodes.add(componentNode(nodeId, "source", component, parameters));
+        return this;
+    }
+
+    public TestSheets transform(String nodeId, Class<?> component, Object... parameters) {
+        nodes.add(componentNode(nodeId, "transform", component, parameters));
+        return this;
+    }
+
+    public TestSheets destination(String nodeId, Class<?> component, Object... parameters) {
+        nodes.add(componentNode(nodeId, "destination", component, parameters));
+        return this;
+    }
+
+    /**
+     * Connects the data output of one node to the input of another.
+     */
+    public TestSheets flow(String source, String target) {
+        edges.add(edge(source, target, "data-source", "data-target"));
+        return this;
+    }
+
+    /**
+     * Sets a parameter of a node added before.
+     */
+    public TestSheets parameter(String nodeId, String name, Object value) {
+        Map<String, Object> node = nodes.stream()
+            .filter(candidate -> nodeId.equals(candidate.get("id")))
+            .findFirst()
+            .orElseThrow(() -> new IllegalArgumentException("No node " + nodeId));
+        List<Map<String, Object>> parameters = parameters(node);
+        parameters.removeIf(parameter -> name.equals(parameter.get("name")));
+        parameters.add(parameter(name, value));
+        return this;
+    }
+
+    public Sheet build() {
+        List<Map<String, Object>> sheetNodes = new ArrayList<>(nodes);
+        List<Map<String, Object>> sheetEdges = new ArrayList<>(edges);
+        sheetNodes.add(controlNode("stop"));
+        sheetEdges.add(edge(controlFlowEnd, "stop", "control-flow-out", "control-flow-in"));
+        Sheet sheet = new Sheet();
+        sheet.setId(id);
+        sheet.setNodes(sheetNodes);
+        sheet.setEdges(sheetEdges);
+        return sheet;
+    }
+
+    private static Map<String, Object> controlNode(String type) {
+        Map<String, Object> componentData = new HashMap<>();
+        componentData.put("id", type);
+        Map<String, Object> data = new HashMap<>();
+        data.put("componentData", componentData);
+        Map<String, Object> node = new HashMap<>();
+        node.put("id", type);
+        node.put("type", type);
+        node.put("data", data);
+        return node;
+    }
+
+    private static Map<String, Object> componentNode(String nodeId, String type, Class<?> component,
+                                                     Object[] parameters) {
+        List<Map<String, Object>> values = new ArrayList<>();
+        for (int i = 0; i < parameters.length; i += 2) {
+            values.add(parameter((String) parameters[i], parameters[i + 1]));
+        }
+        Map<String, Object> componentData = new HashMap<>();
+        componentData.put("id", nodeId);
+        componentData.put("implementationClass", component.getName());
+        componentData.put("parameters", values);
+        Map<String, Object> data = new HashMap<>();
+        data.put("componentData", componentData);
+        Map<String, Object> node = new HashMap<>();
+        node.put("id", nodeId);
+        node.put("type", type);
+        node.put("data", data);
+        return node;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> parameters(Map<String, Object> node) {
+        Map<String, Object> data = (Map<String, Object>) node.get("data");
+        return (List<Map<String, Object>>) ((Map<String, Object>) data.get("componentData")).get("parameters");
+    }
+
+    private static Map<String, Object> parameter(String name, Object value) {
+        Map<String, Object> parameter = new LinkedHashMap<>();
+        parameter.put("name", name);
+        parameter.put("value", value);
+        parameter.put("parameterType",
+            value instanceof Number ? "number" : value instanceof Boolean ? "boolean" : "string");
+        return parameter;
+    }
+
+    private static Map<String, Object> edge(String source, String target, String sourceHandle, String targetHandle) {
+        Map<String, Object> edge = new HashMap<>();
+        edge.put("id", source + "-" + target + "-" + sourceHandle);
+        edge.put("source", source);
+        edge.put("target", target);
+        edge.put("sourceHandle", sourceHandle);
+        edge.put("targetHandle", targetHandle);
+        return edge;
+    }
+}
@@ -0,0 +1,130 @@
+package io.webetl.components;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(60)
+class ChunkedCsvReaderTest {
+    private static final int THREADS = 4;
+
+    @TempDir
+    Path directory;
+
+    private Path file;
+    private byte[] content;
+
+    @BeforeEach
+    void writeFile() throws Exception {
+        // Mostly quoted bytes with line breaks and doubled quotes, chunk bounds fall inside quotes
+        StringBuilder csv = new StringBuilder("id,text,tail\n");
+        for (int i = 1; csv.length() < 5 * 1024 * 1024; i++) {
+            csv.append(i).append(",\"").append("x".repeat(i % 90)).append("\"\"quoted\"\"\r\n")
+                .append("y".repeat(i % 70)).append("\n,still ").append(i).append("\",tail ").append(i);
+            csv.append(i % 3 == 0 ? "\r\n" : "\n");
+            if (i % 1000 == 0) {
+                csv.append("\n");
+            }
+        }
+        content = csv.toString().getBytes(StandardCharsets.UTF_8);
+        file = Files.write(directory.resolve("records.csv"), content);
+    }
+
+    @Test
+    void chunksSplitInsideQuotesReadAsOneThread() throws Exception {
+        long length = content.length;
+        int insideQuotes = 0;
+        for (int i = 1; i < THREADS; i++) {
+            if (quotesBefore(length * i / THREADS) % 2 == 1) {
+                insideQuotes++;
+            }
+        }
+        assertTrue(insideQuotes > 0, "no chunk starts inside quotes");
+
+        List<ChunkedCsvReader.CsvRecord> single = read(1, true);
+        List<ChunkedCsvReader.CsvRecord> ordered = read(THREADS, true);
+        List<ChunkedCsvReader.CsvRecord> unordered = read(THREADS, false);
+        unordered.sort(Comparator.comparingLong(record -> record.line));
+
+        assertTrue(single.size() > 10_000, "only " + single.size() + " records");
+        assertEquals("id", single.get(0).fields[0]);
+        assertEquals("x\"quoted\"\r\ny\n,still 1", single.get(1).fields[1]);
+        assertEquals(2, single.get(1).line);
+        assertEquals(4, single.get(1).lastLine);
+        assertEquals(content.length, single.get(single.size() - 1).end);
+        assertRecordsEqual(single, ordered);
+        assertRecordsEqual(single, unordered);
+    }
+
+    @Test
+    void readsFromAnOffset() throws Exception {
+        List<ChunkedCsvReader.CsvRecord> all = read(1, true);
+        ChunkedCsvReader.CsvRecord resumeAfter = all.get(all.size() / 2);
+
+        List<ChunkedCsvReader.CsvRecord> rest = new ArrayList<>();
+        new ChunkedCsvReader(file, StandardCharsets.UTF_8, (byte) ',', '"', THREADS, true, null)
+            .read(resumeAfter.end, resumeAfter.lastLine, 3, rest::add);
+
+        assertRecordsEqual(all.subList(all.size() / 2 + 1, all.size()), rest);
+    }
+
+    @Test
+    void handlerStopsTheRead() throws Exception {
+        List<ChunkedCsvReader.CsvRecord> records = new ArrayList<>();
+        new ChunkedCsvReader(file, StandardCharsets.UTF_8, (byte) ',', '"', THREADS, true, null)
+            .read(0, 0, 3, record -> records.add(record) && records.size() < 10);
+
+        assertEquals(10, records.size());
+        assertEquals("9", records.get(9).fields[0]);
+    }
+
+    @Test
+    void onlyRequiredFieldsAreDecoded() throws Exception {
+        List<ChunkedCsvReader.CsvRecord> records = new ArrayList<>();
+        new ChunkedCsvReader(file, StandardCharsets.UTF_8, (byte) ',', '"', THREADS, true,
+            new boolean[] {true, false, true}).read(0, 0, 3, records::add);
+
+        assertTrue(records.stream().allMatch(record -> record.fields[0] != null && record.fields[1] == null));
+        assertEquals("tail 1", records.get(1).fields[2]);
+    }
+
+    private List<ChunkedCsvReader.CsvRecord> read(int threads, boolean ordered) throws Exception {
+        List<ChunkedCsvReader.CsvRecord> records = new ArrayList<>();
+        new ChunkedCsvReader(file, StandardCharsets.UTF_8, (byte) ',', '"', threads, ordered, null)
+            .read(0, 0, 3, records::add);
+        return records;
+    }
+
+    private long quotesBefore(long offset) {
+        long quotes = 0;
+        for (int i = 0; i < offset; i++) {
+            if (content[i] == '"') {
+                quotes++;
+            }
+        }
+        return quotes;
+    }
+
+    private static void assertRecordsEqual(List<ChunkedCsvReader.CsvRecord> expected,
+                                           List<ChunkedCsvReader.CsvRecord> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            ChunkedCsvReader.CsvRecord e = expected.get(i);
+            ChunkedCsvReader.CsvRecord a = actual.get(i);
+            assertArrayEquals(e.fields, a.fields, "record " + i);
+            assertEquals(e.line, a.line, "line of record " + i);
+            assertEquals(e.lastLine, a.lastLine, "last line of record " + i);
+            assertEquals(e.end, a.end, "end of record " + i);
+        }
+    }
+}
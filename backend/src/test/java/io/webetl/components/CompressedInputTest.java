@@ -0,0 +1,154 @@
+package io.webetl.components;
+
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(60)
+class CompressedInputTest {
+    private static byte[] content;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void createContent() {
+        StringBuilder csv = new StringBuilder("id,name,amount\n");
+        for (int i = 1; csv.length() < 1024 * 1024; i++) {
+            csv.append(i).append(",customer ").append(i * 7919 % 10007).append(',').append(i % 97).append('\n');
+        }
+        content = csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void formatsRoundTrip() throws Exception {
+        for (String format : List.of(CompressorStreamFactory.GZIP, CompressorStreamFactory.BZIP2,
+                CompressorStreamFactory.XZ, CompressorStreamFactory.ZSTANDARD, CompressorStreamFactory.LZ4_FRAMED,
+                CompressorStreamFactory.SNAPPY_FRAMED)) {
+            // the LZ4 compressor of commons-compress takes minutes for a megabyte
+            byte[] bytes = CompressorStreamFactory.LZ4_FRAMED.equals(format)
+                ? Arrays.copyOf(content, 32 * 1024)
+                : content;
+            Path file = Files.write(directory.resolve("rows." + format), compress(format, bytes));
+
+            assertEquals(format, CompressedInput.detect(file));
+            assertArrayEquals(bytes, read(file, format, 1), format);
+            assertArrayEquals(bytes, read(file, format, 4), format);
+        }
+    }
+
+    @Test
+    void concatenatedMembersAreAllRead() throws Exception {
+        int half = content.length / 2;
+        for (String format : List.of(CompressorStreamFactory.GZIP, CompressorStreamFactory.BZIP2,
+                CompressorStreamFactory.XZ)) {
+            ByteArrayOutputStream appended = new ByteArrayOutputStream();
+            appended.write(compress(format, Arrays.copyOfRange(content, 0, half)));
+            appended.write(compress(format, Arrays.copyOfRange(content, half, content.length)));
+            Path file = Files.write(directory.resolve("appended." + format), appended.toByteArray());
+
+            assertArrayEquals(content, read(file, CompressedInput.detect(file), 1), format);
+        }
+    }
+
+    @Test
+    void blockGzipIsReadInParallel() throws Exception {
+        Path file = Files.write(directory.resolve("rows.csv.gz"), blockGzip(content));
+        Path plain = Files.write(directory.resolve("plain.csv.gz"), compress(CompressorStreamFactory.GZIP, content));
+
+        assertEquals(CompressorStreamFactory.GZIP, CompressedInput.detect(file));
+        assertTrue(CompressedInput.isBlockGzip(file, CompressorStreamFactory.GZIP));
+        assertFalse(CompressedInput.isBlockGzip(plain, CompressorStreamFactory.GZIP));
+        assertArrayEquals(content, read(file, CompressorStreamFactory.GZIP, 4));
+        // as plain gzip its blocks are concatenated members
+        assertArrayEquals(content, read(file, CompressorStreamFactory.GZIP, 1));
+    }
+
+    @Test
+    void truncatedBlockGzipFails() throws Exception {
+        byte[] blocks = blockGzip(content);
+        Path file = Files.write(directory.resolve("truncated.csv.gz"),
+            Arrays.copyOf(blocks, blocks.length / 2));
+
+        assertThrows(IOException.class, () -> read(file, CompressorStreamFactory.GZIP, 4));
+    }
+
+    @Test
+    void textIsNotTakenForACompressionFormat() throws Exception {
+        for (String text : List.of("", "id\n", "BZ,h\n", "\u0004\"M,x\n", "\u001f,\n", "(\u00b5/,\n")) {
+            Path file = Files.write(directory.resolve("text.csv"), text.getBytes(StandardCharsets.ISO_8859_1));
+
+            assertNull(CompressedInput.detect(file), text);
+        }
+        Path file = Files.write(directory.resolve("rows.csv"), content);
+        assertNull(CompressedInput.detect(file));
+        assertArrayEquals(content, read(file, null, 4));
+    }
+
+    private static byte[] read(Path file, String format, int threads) throws IOException {
+        try (InputStream in = CompressedInput.open(file, format, threads)) {
+            assertTrue(in.markSupported());
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] compress(String format, byte[] bytes) throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = new CompressorStreamFactory().createCompressorOutputStream(format, compressed)) {
+            out.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Compresses bytes into BGZF blocks as bgzip writes them, ending with the empty block.
+     */
+    private static byte[] blockGzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int blockSize = 60_000;
+        for (int offset = 0; offset < bytes.length; offset += blockSize) {
+            writeBlock(out, bytes, offset, Math.min(blockSize, bytes.length - offset));
+        }
+        writeBlock(out, bytes, 0, 0);
+        return out.toByteArray();
+    }
+
+    private static void writeBlock(ByteArrayOutputStream out, byte[] bytes, int offset, int length) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(bytes, offset, length);
+        deflater.finish();
+        byte[] deflated = new byte[length + 1024];
+        int deflatedLength = deflater.deflate(deflated);
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        int total = 18 + deflatedLength + 8;
+        out.writeBytes(new byte[] {0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+            (byte) (total - 1), (byte) ((total - 1) >> 8)});
+        out.write(deflated, 0, deflatedLength);
+        writeInt(out, crc.getValue());
+        writeInt(out, length);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, long value) {
+        for (int i = 0; i < 4; i++) {
+            out.write((int) (value >> (8 * i)));
+        }
+    }
+}
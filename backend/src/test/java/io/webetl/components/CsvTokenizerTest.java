@@ -0,0 +1,171 @@
+package io.webetl.components;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvTokenizerTest {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Test
+    void quotedLineBreaksAreKeptAndCarriageReturnsBeforeLineEndsDropped() throws IOException {
+        CsvTokenizer tokenizer = tokenizer("\"a\r\nb\",c\r\nd,\"e\"\r\n");
+
+        assertTrue(tokenizer.next());
+        assertArrayEquals(new String[] {"a\r\nb", "c"}, tokenizer.fields());
+        assertEquals(1, tokenizer.line());
+        assertEquals(2, tokenizer.lastLine());
+        assertTrue(tokenizer.next());
+        assertArrayEquals(new String[] {"d", "e"}, tokenizer.fields());
+        assertEquals(3, tokenizer.line());
+        assertFalse(tokenizer.next());
+    }
+
+    @Test
+    void doubledQuoteSplitAcrossTheBufferBoundary() throws IOException {
+        // the first quote of the pair is the last byte of the first buffer
+        String filler = "x".repeat(BUFFER_SIZE - 4);
+        String content = filler + "\n\"a\"\"b\",c\n";
+        assertEquals('"', content.charAt(BUFFER_SIZE - 1));
+        assertEquals('"', content.charAt(BUFFER_SIZE));
+        CsvTokenizer tokenizer = tokenizer(content);
+
+        assertTrue(tokenizer.next());
+        assertEquals(filler, tokenizer.field(0));
+        assertTrue(tokenizer.next());
+        assertArrayEquals(new String[] {"a\"b", "c"}, tokenizer.fields());
+        assertEquals(content.length(), tokenizer.getOffset());
+        assertFalse(tokenizer.next());
+    }
+
+    @Test
+    void closingQuoteAtTheBufferBoundary() throws IOException {
+        String filler = "x".repeat(BUFFER_SIZE - 5);
+        String content = filler + "\n\"ab\",c\n";
+        assertEquals('"', content.charAt(BUFFER_SIZE - 1));
+        assertEquals(',', content.charAt(BUFFER_SIZE));
+        CsvTokenizer tokenizer = tokenizer(content);
+
+        assertTrue(tokenizer.next());
+        assertTrue(tokenizer.next());
+        assertArrayEquals(new String[] {"ab", "c"}, tokenizer.fields());
+    }
+
+    @Test
+    void blankLinesAreSkippedAndCounted() throws IOException {
+        CsvTokenizer tokenizer = tokenizer("a\n\n  \t\nb\n\"\"\n");
+
+        assertTrue(tokenizer.next());
+        assertEquals("a", tokenizer.field(0));
+        assertTrue(tokenizer.next());
+        assertEquals("b", tokenizer.field(0));
+        assertEquals(4, tokenizer.line());
+        // an empty quoted field is a value, not a blank line
+        assertTrue(tokenizer.next());
+        assertArrayEquals(new String[] {""}, tokenizer.fields());
+        assertEquals(5, tokenizer.line());
+        assertFalse(tokenizer.next());
+    }
+
+    @Test
+    void lastRecordWithoutLineEnd() throws IOException {
+        String content = "a,b\nc,\"d\"";
+        CsvTokenizer tokenizer = tokenizer(content);
+
+        assertTrue(tokenizer.next());
+        assertTrue(tokenizer.lineEnded());
+        assertEquals(4, tokenizer.getOffset());
+        assertTrue(tokenizer.next());
+        assertArrayEquals(new String[] {"c", "d"}, tokenizer.fields());
+        assertFalse(tokenizer.lineEnded());
+        assertEquals(2, tokenizer.lastLine());
+        assertEquals(content.length(), tokenizer.getOffset());
+        assertFalse(tokenizer.next());
+    }
+
+    @Test
+    void fieldsOfMissingIndexesAreNull() throws IOException {
+        CsvTokenizer tokenizer = tokenizer("a;b\n");
+
+        assertTrue(tokenizer.next());
+        assertEquals(1, tokenizer.fieldCount());
+        assertEquals("a;b", tokenizer.field(0));
+        assertNull(tokenizer.field(1));
+    }
+
+    @Test
+    void distinctEscapeEscapesQuotesAndDelimiters() throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(stream("\"a\\\"b\",c\\,d\n"), StandardCharsets.UTF_8,
+            ',', '"', '\\');
+
+        assertTrue(tokenizer.next());
+        assertArrayEquals(new String[] {"a\"b", "c,d"}, tokenizer.fields());
+    }
+
+    @Test
+    void skipToBeyondTheBufferContinuesAtTheTarget() throws IOException {
+        StringBuilder content = new StringBuilder();
+        long target = 0;
+        int targetLine = 0;
+        for (int i = 1; content.length() < 3 * BUFFER_SIZE; i++) {
+            if (target == 0 && content.length() > 2 * BUFFER_SIZE) {
+                target = content.length();
+                targetLine = i - 1;
+            }
+            content.append(i).append(",row ").append(i).append('\n');
+        }
+        CsvTokenizer tokenizer = tokenizer(content.toString());
+        assertTrue(tokenizer.next());
+        assertEquals("1", tokenizer.field(0));
+
+        tokenizer.skipTo(target, targetLine);
+
+        assertTrue(tokenizer.next());
+        assertEquals(String.valueOf(targetLine + 1), tokenizer.field(0));
+        assertEquals(targetLine + 1, tokenizer.line());
+        assertTrue(tokenizer.next());
+        assertEquals(String.valueOf(targetLine + 2), tokenizer.field(0));
+    }
+
+    @Test
+    void skipToWithinTheBuffer() throws IOException {
+        CsvTokenizer tokenizer = tokenizer("1\n2\n3\n");
+        assertTrue(tokenizer.next());
+
+        tokenizer.skipTo(4, 2);
+
+        assertTrue(tokenizer.next());
+        assertEquals("3", tokenizer.field(0));
+        assertEquals(3, tokenizer.line());
+    }
+
+    @Test
+    void skipToBeyondTheEndFails() throws IOException {
+        CsvTokenizer tokenizer = tokenizer("1\n".repeat(BUFFER_SIZE));
+        assertTrue(tokenizer.next());
+
+        assertThrows(IOException.class, () -> tokenizer.skipTo(4L * BUFFER_SIZE, 0));
+    }
+
+    @Test
+    void onlyCharsetsWithAsciiBytesCanBeSplit() {
+        assertTrue(CsvTokenizer.supports(StandardCharsets.UTF_8));
+        assertTrue(CsvTokenizer.supports(StandardCharsets.ISO_8859_1));
+        assertTrue(CsvTokenizer.supports(Charset.forName("windows-1252")));
+        assertFalse(CsvTokenizer.supports(StandardCharsets.UTF_16));
+        assertFalse(CsvTokenizer.supports(Charset.forName("Shift_JIS")));
+    }
+
+    private static CsvTokenizer tokenizer(String content) {
+        return new CsvTokenizer(stream(content), StandardCharsets.UTF_8, ',', '"', '"');
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
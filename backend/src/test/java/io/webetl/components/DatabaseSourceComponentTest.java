@@ -0,0 +1,71 @@
+package io.webetl.components;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(60)
+class DatabaseSourceComponentTest {
+
+    @Test
+    void schemaIsUnknownWhenTheDatabaseRefusesConnections() throws Exception {
+        int port;
+        try (ServerSocket closed = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = closed.getLocalPort();
+        }
+        for (String dbType : List.of("postgresql", "mysql")) {
+            assertNull(source(dbType, port).inferOutputSchema(null), dbType);
+        }
+    }
+
+    @Test
+    void schemaIsUnknownWhenTheDatabaseNeverAnswers() throws Exception {
+        // Accepts connections but never sends a byte, like a database stuck or behind a dead proxy
+        List<Socket> accepted = new CopyOnWriteArrayList<>();
+        try (ServerSocket silent = new ServerSocket(0, 10, InetAddress.getLoopbackAddress())) {
+            Thread acceptor = new Thread(() -> {
+                try {
+                    while (true) {
+                        accepted.add(silent.accept());
+                    }
+                } catch (IOException e) {
+                    // closed
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            for (String dbType : List.of("postgresql", "mysql")) {
+                long start = System.nanoTime();
+                assertNull(source(dbType, silent.getLocalPort()).inferOutputSchema(null), dbType);
+                long seconds = (System.nanoTime() - start) / 1_000_000_000L;
+                assertTrue(seconds < 20, dbType + " took " + seconds + "s");
+            }
+            assertFalse(accepted.isEmpty());
+        } finally {
+            for (Socket socket : accepted) {
+                socket.close();
+            }
+        }
+    }
+
+    private static DatabaseSourceComponent source(String dbType, int port) {
+        DatabaseSourceComponent source = new DatabaseSourceComponent();
+        source.setParameter("dbType", dbType);
+        source.setParameter("host", "127.0.0.1");
+        source.setParameter("port", String.valueOf(port));
+        source.setParameter("database", "webetl");
+        source.setParameter("username", "webetl");
+        source.setParameter("password", "secret");
+        source.setParameter("query", "SELECT id FROM items");
+        return source;
+    }
+}
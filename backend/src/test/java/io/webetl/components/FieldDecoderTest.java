@@ -0,0 +1,60 @@
+package io.webetl.components;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FieldDecoderTest {
+
+    @Test
+    void singleByteCharsetsDecodeLikeTheStringConstructor() {
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        for (String name : List.of("windows-1252", "ISO-8859-15", "KOI8-R", "ISO-8859-1", "US-ASCII")) {
+            Charset charset = Charset.forName(name);
+            FieldDecoder decoder = FieldDecoder.of(charset);
+            assertEquals(new String(bytes, charset), decoder.decode(bytes, 0, bytes.length), name);
+            for (int i = 0; i < bytes.length; i++) {
+                assertEquals(new String(bytes, i, 1, charset), decoder.decode(bytes, i, 1), name + " byte " + i);
+            }
+        }
+    }
+
+    @Test
+    void decodesOnlyTheGivenRange() {
+        Charset charset = Charset.forName("windows-1252");
+        byte[] bytes = "na\u00efve,caf\u00e9 \u20ac5,plain".getBytes(charset);
+        FieldDecoder decoder = FieldDecoder.of(charset);
+
+        assertEquals("na\u00efve", decoder.decode(bytes, 0, 5));
+        assertEquals("caf\u00e9 \u20ac5", decoder.decode(bytes, 6, 7));
+        assertEquals("plain", decoder.decode(bytes, 14, 5));
+        assertEquals("", decoder.decode(bytes, 0, 0));
+    }
+
+    @Test
+    void fieldsLongerThanTheFirstBufferAreDecoded() {
+        Charset charset = Charset.forName("windows-1252");
+        String field = "\u00e9\u20ac-".repeat(1000);
+        byte[] bytes = field.getBytes(charset);
+        FieldDecoder decoder = FieldDecoder.of(charset);
+
+        assertEquals("\u00e9", decoder.decode(bytes, 0, 1));
+        assertEquals(field, decoder.decode(bytes, 0, bytes.length));
+        assertEquals("\u20ac-", decoder.decode(bytes, 1, 2));
+    }
+
+    @Test
+    void utf8FieldsAreDecodedWhole() {
+        String field = "Gr\u00fc\u00dfe \u4e16\u754c \ud83d\ude00";
+        byte[] bytes = ("x," + field).getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(field, FieldDecoder.of(StandardCharsets.UTF_8).decode(bytes, 2, bytes.length - 2));
+    }
+}
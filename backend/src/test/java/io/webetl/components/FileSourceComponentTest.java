@@ -0,0 +1,72 @@
+package io.webetl.components;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileSourceComponentTest {
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void createFiles() throws IOException {
+        for (String name : List.of("in/b.csv", "in/a.csv", "in/notes.txt", "in/2026-10-01/part-1.csv",
+                "in/2026-10-01/part-0.csv", "in/2026-10-02/part-0.csv", "in/2026-11-01/part-0.csv",
+                "in/2026-10-02/deep/part-0.csv")) {
+            Path file = directory.resolve(name);
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, "id\n1\n");
+        }
+    }
+
+    @Test
+    void fileIsItself() throws IOException {
+        Path file = directory.resolve("in/a.csv");
+
+        assertEquals(List.of(file), FileSourceComponent.resolveFiles(file.toString()));
+        // a missing file is reported by the caller
+        assertEquals(List.of(directory.resolve("missing.csv")),
+            FileSourceComponent.resolveFiles(directory.resolve("missing.csv").toString()));
+    }
+
+    @Test
+    void directoryIsItsFilesSortedWithoutSubdirectories() throws IOException {
+        assertEquals(files("in/a.csv", "in/b.csv", "in/notes.txt"),
+            FileSourceComponent.resolveFiles(directory.resolve("in").toString()));
+    }
+
+    @Test
+    void globMatchesFilesInTheDirectoryOfThePattern() throws IOException {
+        assertEquals(files("in/a.csv", "in/b.csv"),
+            FileSourceComponent.resolveFiles(directory.resolve("in") + "/*.csv"));
+        assertEquals(files("in/a.csv"), FileSourceComponent.resolveFiles(directory.resolve("in") + "/[a].csv"));
+        assertEquals(files("in/a.csv", "in/notes.txt"),
+            FileSourceComponent.resolveFiles(directory.resolve("in") + "/{a.csv,notes.*}"));
+    }
+
+    @Test
+    void globMatchesAcrossDirectories() throws IOException {
+        assertEquals(files("in/2026-10-01/part-0.csv", "in/2026-10-01/part-1.csv", "in/2026-10-02/part-0.csv"),
+            FileSourceComponent.resolveFiles(directory.resolve("in") + "/2026-10-*/part-*.csv"));
+        assertEquals(files("in/2026-10-01/part-0.csv", "in/2026-10-02/deep/part-0.csv", "in/2026-10-02/part-0.csv",
+                "in/2026-11-01/part-0.csv"),
+            FileSourceComponent.resolveFiles(directory.resolve("in") + "/**/part-0.csv"));
+    }
+
+    @Test
+    void globWithoutMatchesIsEmpty() throws IOException {
+        assertEquals(List.of(), FileSourceComponent.resolveFiles(directory.resolve("in") + "/*.json"));
+        assertEquals(List.of(), FileSourceComponent.resolveFiles(directory.resolve("missing") + "/*.csv"));
+    }
+
+    private List<Path> files(String... names) {
+        return List.of(names).stream().map(directory::resolve).toList();
+    }
+}
@@ -0,0 +1,134 @@
+package io.webetl.components;
+
+import io.webetl.model.data.DataType;
+import io.webetl.model.data.Schema;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilterConditionTest {
+
+    @Test
+    void andBindsTighterThanOr() {
+        FilterCondition condition = FilterCondition.parse("a = 1 OR b = 1 AND c = 1");
+
+        assertTrue(condition.matches(values("a", 1, "b", 0, "c", 0)));
+        assertFalse(condition.matches(values("a", 0, "b", 1, "c", 0)));
+        assertTrue(condition.matches(values("a", 0, "b", 1, "c", 1)));
+        assertEquals("(a = 1 OR b = 1 AND c = 1)", condition.toString());
+    }
+
+    @Test
+    void notBindsTighterThanAndAndParenthesesOverrideBoth() {
+        FilterCondition not = FilterCondition.parse("NOT a = 1 AND b = 1");
+        assertTrue(not.matches(values("a", 0, "b", 1)));
+        assertFalse(not.matches(values("a", 1, "b", 1)));
+
+        FilterCondition grouped = FilterCondition.parse("(a = 1 OR b = 1) AND c = 1");
+        assertFalse(grouped.matches(values("a", 1, "b", 0, "c", 0)));
+        assertTrue(grouped.matches(values("a", 1, "b", 0, "c", 1)));
+        assertEquals(2, grouped.conjuncts().size());
+    }
+
+    @Test
+    void comparisonsWithNullAreUnknown() {
+        Map<String, Object> row = values("a", null, "b", 2);
+
+        assertFalse(FilterCondition.parse("a = 1").matches(row));
+        assertFalse(FilterCondition.parse("a <> 1").matches(row));
+        // NOT unknown is unknown, the row does not pass either way
+        assertFalse(FilterCondition.parse("NOT (a = 1)").matches(row));
+        // unknown OR true is true, unknown AND false is false, unknown AND true is unknown
+        assertTrue(FilterCondition.parse("a = 1 OR b = 2").matches(row));
+        assertTrue(FilterCondition.parse("NOT (a = 1 AND b = 3)").matches(row));
+        assertFalse(FilterCondition.parse("NOT (a = 1 AND b = 2)").matches(row));
+        assertTrue(FilterCondition.parse("a IS NULL AND b IS NOT NULL").matches(row));
+        // a missing column is null
+        assertTrue(FilterCondition.parse("missing IS NULL").matches(row));
+    }
+
+    @Test
+    void doubledQuotesEscapeQuotes() {
+        FilterCondition condition = FilterCondition.parse("name = 'O''Brien' OR name = ''''");
+
+        assertTrue(condition.matches(values("name", "O'Brien")));
+        assertTrue(condition.matches(values("name", "'")));
+        assertFalse(condition.matches(values("name", "O''Brien")));
+        assertEquals(condition.toString(), FilterCondition.parse(condition.toString()).toString());
+        assertThrows(IllegalArgumentException.class, () -> FilterCondition.parse("name = 'O'Brien'"));
+        assertThrows(IllegalArgumentException.class, () -> FilterCondition.parse("name = 'open"));
+    }
+
+    @Test
+    void quotedIdentifiersKeepCaseSpacesAndKeywords() {
+        FilterCondition condition = FilterCondition.parse("\"First Name\" = 'Ada' AND \"AND\" = 1 AND \"a\"\"b\" IS NULL");
+
+        assertTrue(condition.matches(values("First Name", "Ada", "AND", 1)));
+        assertFalse(condition.matches(values("first name", "Ada", "AND", 1)));
+        assertEquals(List.of("First Name", "AND", "a\"b"), List.copyOf(condition.getColumns()));
+        assertEquals(condition.toString(), FilterCondition.parse(condition.toString()).toString());
+        assertThrows(IllegalArgumentException.class, () -> FilterCondition.parse("AND = 1"));
+    }
+
+    @Test
+    void numbersCompareNumericallyAndStringsAsText() {
+        assertTrue(FilterCondition.parse("amount >= 10").matches(values("amount", "10.0")));
+        assertTrue(FilterCondition.parse("amount > 9").matches(values("amount", 10L)));
+        assertTrue(FilterCondition.parse("amount = 1e1").matches(values("amount", new BigDecimal("10.00"))));
+        assertFalse(FilterCondition.parse("amount = 10").matches(values("amount", "ten")));
+        assertTrue(FilterCondition.parse("code < '9'").matches(values("code", "10")));
+        assertTrue(FilterCondition.parse("vip = TRUE").matches(values("vip", "true")));
+        assertTrue(FilterCondition.parse("code != '9'").matches(values("code", "10")));
+    }
+
+    @Test
+    void emptyConditionPassesEveryRow() {
+        assertTrue(FilterCondition.parse(" ").isEmpty());
+        assertTrue(FilterCondition.parse(null).matches(values("a", null)));
+        assertThrows(IllegalStateException.class, () -> FilterCondition.parse("").toSql("postgresql"));
+    }
+
+    @Test
+    void onlyConditionsOnColumnsOfTheirLiteralTypeAreSqlExpressible() {
+        Schema schema = new Schema()
+            .column("id", DataType.INTEGER)
+            .column("amount", DataType.DECIMAL)
+            .column("name", DataType.STRING)
+            .column("active", DataType.BOOLEAN)
+            .column("created", DataType.TIMESTAMP);
+
+        for (String condition : List.of("id > 3", "amount <= 2.5", "name = 'a'", "name <> 'a'", "active = FALSE",
+                "created IS NULL", "NOT (id = 1 OR name = 'b')")) {
+            assertTrue(FilterCondition.parse(condition).isSqlExpressible(schema, "postgresql"), condition);
+        }
+        for (String condition : List.of("name = 10", "id = '3'", "active = 1", "created > '2024-01-01'",
+                "name < 'b'", "name = 'a\\b'", "other = 1", "Id = 1", "id = 1 OR name = 1")) {
+            assertFalse(FilterCondition.parse(condition).isSqlExpressible(schema, "postgresql"), condition);
+        }
+        assertTrue(FilterCondition.parse("id > 3").isSqlExpressible(schema, "mysql"));
+        assertFalse(FilterCondition.parse("name = 'a'").isSqlExpressible(schema, "mysql"));
+        assertFalse(FilterCondition.parse("id > 3").isSqlExpressible(null, "postgresql"));
+    }
+
+    @Test
+    void sqlQuotesColumnsForTheDatabase() {
+        FilterCondition condition = FilterCondition.parse("\"Order`s\" = 'it''s' AND NOT (n IS NULL OR f = TRUE)");
+
+        assertEquals("\"Order`s\" = 'it''s' AND NOT ((\"n\" IS NULL OR \"f\" = TRUE))",
+            condition.toSql("postgresql"));
+        assertEquals("`Order``s` = 'it''s' AND NOT ((`n` IS NULL OR `f` = TRUE))", condition.toSql("mysql"));
+    }
+
+    private static Map<String, Object> values(Object... namesAndValues) {
+        Map<String, Object> values = new HashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            values.put((String) namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return values;
+    }
+}
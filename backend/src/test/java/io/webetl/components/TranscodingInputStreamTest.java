@@ -0,0 +1,85 @@
+package io.webetl.components;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TranscodingInputStreamTest {
+
+    @Test
+    void transcodesToUtf8AndDropsTheByteOrderMark() throws IOException {
+        String text = "id,name\n1,Gr\u00fc\u00dfe\n2,\u4e16\u754c \ud83d\ude00\n";
+        for (String name : List.of("UTF-16", "UTF-16LE", "UTF-16BE", "UTF-32", "GB18030")) {
+            Charset charset = Charset.forName(name);
+            byte[] encoded = ("\ufeff" + text).getBytes(charset);
+
+            assertEquals(text, transcode(encoded, charset), name);
+        }
+    }
+
+    @Test
+    void transcodesMultiByteLegacyCharsets() throws IOException {
+        // the second bytes of these characters include ASCII bytes such as the backslash
+        String text = "\u8868,\u30bd\u30d5\u30c8\n\u80fd,\u5341\n";
+        for (String name : List.of("Shift_JIS", "windows-31j", "Big5")) {
+            Charset charset = Charset.forName(name);
+            String expected = new String(text.getBytes(charset), charset);
+
+            assertEquals(expected, transcode(text.getBytes(charset), charset), name);
+        }
+    }
+
+    @Test
+    void surrogatePairsSplitAcrossBuffersStayWhole() throws IOException {
+        // the pairs straddle every multiple of the 16K character buffer
+        String text = "x" + "\ud83d\ude00".repeat(40_000);
+
+        assertEquals(text, transcode(text.getBytes(StandardCharsets.UTF_16LE), StandardCharsets.UTF_16LE));
+    }
+
+    @Test
+    void readsSingleBytes() throws IOException {
+        try (InputStream in = new TranscodingInputStream(
+                new ByteArrayInputStream("\u00e9".getBytes(StandardCharsets.UTF_16BE)), StandardCharsets.UTF_16BE)) {
+            assertEquals(0xc3, in.read());
+            assertEquals(0xa9, in.read());
+            assertEquals(-1, in.read());
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void malformedInputIsReplaced() throws IOException {
+        // a lone high surrogate at the end
+        byte[] bytes = {0, 'a', (byte) 0xd8, 0x3d};
+
+        assertEquals("a\ufffd", transcode(bytes, StandardCharsets.UTF_16BE));
+    }
+
+    @Test
+    void tokenizerSplitsTranscodedRecords() throws IOException {
+        byte[] bytes = "a,\"b\n\u00e4\"\n\u4e16,\u754c\n".getBytes(StandardCharsets.UTF_16);
+        CsvTokenizer tokenizer = new CsvTokenizer(new TranscodingInputStream(new ByteArrayInputStream(bytes),
+            StandardCharsets.UTF_16), StandardCharsets.UTF_8, ',', '"', '"');
+
+        assertTrue(tokenizer.next());
+        assertArrayEquals(new String[] {"a", "b\n\u00e4"}, tokenizer.fields());
+        assertTrue(tokenizer.next());
+        assertArrayEquals(new String[] {"\u4e16", "\u754c"}, tokenizer.fields());
+        assertEquals(3, tokenizer.line());
+        assertFalse(tokenizer.next());
+    }
+
+    private static String transcode(byte[] bytes, Charset charset) throws IOException {
+        try (InputStream in = new TranscodingInputStream(new ByteArrayInputStream(bytes), charset)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package io.webetl.runtime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckpointStoreTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void jarHashIsKeptWithTheCheckpointsUntilTheyAreCleared() throws Exception {
+        CheckpointStore store = new CheckpointStore(directory.resolve("checkpoints"));
+        assertNull(store.loadJarHash());
+
+        store.saveJarHash("a1b2");
+        store.save("source", 1, Map.of("line", "11"));
+        store.saveRunState("source", Map.of("offset", "120"));
+
+        CheckpointStore reopened = new CheckpointStore(directory.resolve("checkpoints"));
+        assertEquals("a1b2", reopened.loadJarHash());
+        assertTrue(reopened.hasCheckpoints());
+
+        reopened.clear();
+        assertNull(reopened.loadJarHash());
+        assertFalse(reopened.hasCheckpoints());
+        assertEquals(Map.of("offset", "120"), reopened.loadRunState("source"));
+    }
+}
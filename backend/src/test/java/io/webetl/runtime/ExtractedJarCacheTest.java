@@ -0,0 +1,90 @@
+package io.webetl.runtime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExtractedJarCacheTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void extractsAnEntryOnceAndReusesItByChecksum() throws Exception {
+        ExtractedJarCache cache = new ExtractedJarCache(directory, Long.MAX_VALUE);
+        byte[] content = "driver classes".getBytes(StandardCharsets.UTF_8);
+        AtomicInteger opened = new AtomicInteger();
+
+        Path first = cache.extract("META-INF/lib/driver-1.0.jar", crc(content), content.length, () -> {
+            opened.incrementAndGet();
+            return new ByteArrayInputStream(content);
+        });
+        Path second = cache.extract("META-INF/lib/driver-1.0.jar", crc(content), content.length, () -> {
+            opened.incrementAndGet();
+            return new ByteArrayInputStream(content);
+        });
+
+        assertEquals(first, second);
+        assertEquals(1, opened.get());
+        assertArrayEquals(content, Files.readAllBytes(first));
+    }
+
+    @Test
+    void rejectsContentNotMatchingItsChecksum() throws Exception {
+        ExtractedJarCache cache = new ExtractedJarCache(directory, Long.MAX_VALUE);
+        byte[] content = "driver classes".getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(IOException.class, () -> cache.extract("driver.jar", crc(content) + 1, content.length,
+            () -> new ByteArrayInputStream(content)));
+        assertEquals(0, jarCount());
+    }
+
+    @Test
+    void addressesEntriesWithoutChecksumByTheirContent() throws Exception {
+        ExtractedJarCache cache = new ExtractedJarCache(directory, Long.MAX_VALUE);
+        byte[] content = "driver classes".getBytes(StandardCharsets.UTF_8);
+
+        Path first = cache.extract("driver.jar", -1, -1, () -> new ByteArrayInputStream(content));
+        Path same = cache.extract("driver.jar", -1, -1, () -> new ByteArrayInputStream(content));
+        Path other = cache.extract("driver.jar", -1, -1,
+            () -> new ByteArrayInputStream("other classes".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(first, same);
+        assertNotEquals(first, other);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntriesPastTheGracePeriod() throws Exception {
+        ExtractedJarCache cache = new ExtractedJarCache(directory, 10);
+        Path old = cache.get("old", () -> new ByteArrayInputStream(new byte[8]));
+        Path recent = cache.get("recent", () -> new ByteArrayInputStream(new byte[8]));
+        Files.setLastModifiedTime(old, FileTime.fromMillis(System.currentTimeMillis() - 2 * 3600_000L));
+
+        cache.evictIfNeeded();
+
+        assertFalse(Files.exists(old));
+        assertTrue(Files.exists(recent));
+    }
+
+    private long jarCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static long crc(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,80 @@
+package io.webetl.runtime;
+
+import io.webetl.compiler.FlowCompilerNG;
+import io.webetl.compiler.TestFlows;
+import io.webetl.compiler.TestSheets;
+import io.webetl.components.CsvDestinationComponent;
+import io.webetl.components.FileSourceComponent;
+import io.webetl.model.Sheet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(120)
+class FlowExecutorPoolTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void runsFlowsSideBySideInTheirOwnContexts() throws Exception {
+        File first = compile("pool-first", "first.csv", "id\nfirst\n");
+        File second = compile("pool-second", "second.csv", "id\nsecond\n");
+        List<String> firstOutput = new CopyOnWriteArrayList<>();
+        List<String> secondOutput = new CopyOnWriteArrayList<>();
+
+        try (FlowExecutorPool pool = new FlowExecutorPool(2)) {
+            Future<?> firstRun = pool.submit(first.toPath(), null, firstOutput::add);
+            Future<?> secondRun = pool.submit(second.toPath(), null, secondOutput::add);
+            firstRun.get(60, TimeUnit.SECONDS);
+            secondRun.get(60, TimeUnit.SECONDS);
+        }
+
+        assertTrue(firstOutput.stream().anyMatch(line -> line.contains("first")), String.join("\n", firstOutput));
+        assertTrue(firstOutput.stream().noneMatch(line -> line.contains("second")));
+        assertTrue(secondOutput.stream().anyMatch(line -> line.contains("second")), String.join("\n", secondOutput));
+        assertTrue(secondOutput.stream().noneMatch(line -> line.contains("first")));
+    }
+
+    @Test
+    void failedFlowFailsItsFutureAndKeepsThePoolUsable() throws Exception {
+        File failing = compile("pool-failing", "missing.csv", null);
+        File working = compile("pool-working", "working.csv", "id\nworking\n");
+
+        try (FlowExecutorPool pool = new FlowExecutorPool(1)) {
+            Future<?> failed = pool.submit(failing.toPath(), null, line -> { });
+            assertThrows(ExecutionException.class, () -> failed.get(60, TimeUnit.SECONDS));
+            List<String> output = new CopyOnWriteArrayList<>();
+            pool.submit(working.toPath(), null, output::add).get(60, TimeUnit.SECONDS);
+            assertTrue(output.stream().anyMatch(line -> line.contains("Flow execution completed")), String.join("\n", output));
+        }
+    }
+
+    /**
+     * Compiles a flow reading a file into a CSV destination, which logs the row it takes.
+     *
+     * @param content the content of the file, null to leave it missing
+     */
+    private File compile(String sheetId, String fileName, String content) throws Exception {
+        Path file = directory.resolve(fileName);
+        if (content != null) {
+            Files.writeString(file, content);
+        }
+        Sheet sheet = TestSheets.sheet(sheetId)
+            .source("source", FileSourceComponent.class, "filepath", file.toString(), "delimiter", ",")
+            .destination("sink", CsvDestinationComponent.class, "filepath", directory.resolve("out.csv").toString())
+            .flow("source", "sink")
+            .build();
+        return TestFlows.compile(sheet, FlowCompilerNG.Backend.JAVAC);
+    }
+}
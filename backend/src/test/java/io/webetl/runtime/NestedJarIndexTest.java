@@ -0,0 +1,94 @@
+package io.webetl.runtime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NestedJarIndexTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void indexesStoredEmbeddedJarsAfterTheFlowJar() throws Exception {
+        byte[] library = jar(false, "shared.txt", "library", "lib/Only.class", "library class");
+        byte[] legacy = jar(false, "legacy.txt", "legacy");
+        Path flowJar = directory.resolve("flow.jar");
+        try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(flowJar))) {
+            put(jar, "shared.txt", "flow".getBytes(StandardCharsets.UTF_8), false);
+            put(jar, "META-INF/lib/library.jar", library, true);
+            put(jar, "META-INF/lib/legacy.jar", legacy, false);
+        }
+
+        NestedJarIndex index = NestedJarIndex.open(flowJar);
+
+        assertEquals("flow", text(index, index.find("shared.txt")));
+        assertEquals(List.of("flow.jar", "META-INF/lib/library.jar"),
+            index.findAll("shared.txt").stream().map(entry -> entry.location).collect(Collectors.toList()));
+        assertEquals("library", text(index, index.findAll("shared.txt").get(1)));
+        assertEquals("library class", text(index, index.find("lib/Only.class")));
+        try (InputStream in = index.toUrl(index.find("lib/Only.class")).openStream()) {
+            assertEquals("library class", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        // A compressed embedded jar cannot be read in place
+        assertNull(index.find("legacy.txt"));
+        assertEquals(List.of("META-INF/lib/legacy.jar"),
+            index.getCompressedJars().stream().map(entry -> entry.name).collect(Collectors.toList()));
+        assertEquals(3, index.getTopLevelEntries().size());
+    }
+
+    @Test
+    void rejectsFilesThatAreNoJars() throws Exception {
+        Path notAJar = Files.writeString(directory.resolve("flow.jar"), "not a jar");
+
+        assertThrows(IOException.class, () -> NestedJarIndex.open(notAJar));
+    }
+
+    private static String text(NestedJarIndex index, NestedJarIndex.Entry entry) throws IOException {
+        ByteBuffer content = index.read(entry);
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a jar of text entries, given as names and contents alternating.
+     */
+    private static byte[] jar(boolean stored, String... entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JarOutputStream jar = new JarOutputStream(bytes)) {
+            for (int i = 0; i < entries.length; i += 2) {
+                put(jar, entries[i], entries[i + 1].getBytes(StandardCharsets.UTF_8), stored);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void put(JarOutputStream jar, String name, byte[] content, boolean stored) throws IOException {
+        JarEntry entry = new JarEntry(name);
+        if (stored) {
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            entry.setMethod(JarEntry.STORED);
+            entry.setSize(content.length);
+            entry.setCompressedSize(content.length);
+            entry.setCrc(crc.getValue());
+        }
+        jar.putNextEntry(entry);
+        jar.write(content);
+        jar.closeEntry();
+    }
+}
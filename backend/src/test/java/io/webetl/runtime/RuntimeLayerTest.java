@@ -0,0 +1,89 @@
+package io.webetl.runtime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuntimeLayerTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void flowsWithTheSameRuntimeShareAFingerprint() throws Exception {
+        NestedJarIndex first = NestedJarIndex.open(flowJar("first.jar", "FirstFlow", "runtime", "driver-1.0.jar"));
+        NestedJarIndex second = NestedJarIndex.open(flowJar("second.jar", "SecondFlow", "runtime", "driver-1.0.jar"));
+        NestedJarIndex changed = NestedJarIndex.open(flowJar("changed.jar", "FirstFlow", "changed runtime", "driver-1.0.jar"));
+
+        assertEquals(RuntimeLayer.fingerprint(first), RuntimeLayer.fingerprint(second));
+        assertNotEquals(RuntimeLayer.fingerprint(first), RuntimeLayer.fingerprint(changed));
+    }
+
+    @Test
+    void layerHoldsTheRuntimeAndOneVersionOfEachLibrary() throws Exception {
+        NestedJarIndex first = NestedJarIndex.open(flowJar("first.jar", "FirstFlow", "runtime", "driver-1.0.jar"));
+        NestedJarIndex same = NestedJarIndex.open(flowJar("same.jar", "SameFlow", "runtime", "driver-1.0.jar"));
+        NestedJarIndex upgraded = NestedJarIndex.open(flowJar("upgraded.jar", "NewFlow", "runtime", "driver-2.0.jar"));
+        ExtractedJarCache cache = new ExtractedJarCache(directory.resolve("cache"), Long.MAX_VALUE);
+
+        try (RuntimeLayer layer = RuntimeLayer.create(first, RuntimeLayer.fingerprint(first),
+                getClass().getClassLoader(), cache)) {
+            layer.addLibraries(first);
+
+            assertEquals("runtime", resource(layer.getLoader(), "io/webetl/runtime/marker.txt"));
+            assertEquals("META-INF/lib/driver-1.0.jar", resource(layer.getLoader(), "driver.txt"));
+            // Flow classes stay in the flow loader
+            assertNull(layer.getLoader().getResource("io/webetl/generated/FirstFlow.class"));
+            assertTrue(layer.accepts(same));
+            assertFalse(layer.accepts(upgraded));
+            assertTrue(layer.getLibraryEntries().contains("META-INF/lib/driver-1.0.jar"));
+        }
+    }
+
+    private static String resource(ClassLoader loader, String name) throws IOException {
+        try (InputStream in = loader.getResourceAsStream(name)) {
+            assertNotNull(in, name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Writes a flow jar with a flow class, a runtime entry and an embedded library.
+     */
+    private Path flowJar(String name, String flowClass, String runtime, String library) throws IOException {
+        ByteArrayOutputStream libraryBytes = new ByteArrayOutputStream();
+        try (JarOutputStream jar = new JarOutputStream(libraryBytes)) {
+            put(jar, "driver.txt", ("META-INF/lib/" + library).getBytes(StandardCharsets.UTF_8));
+        }
+        Path path = directory.resolve(name);
+        try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(path))) {
+            put(jar, "io/webetl/generated/" + flowClass + ".class", flowClass.getBytes(StandardCharsets.UTF_8));
+            put(jar, "io/webetl/runtime/marker.txt", runtime.getBytes(StandardCharsets.UTF_8));
+            put(jar, "META-INF/lib/" + library, libraryBytes.toByteArray());
+        }
+        return path;
+    }
+
+    private static void put(JarOutputStream jar, String name, byte[] content) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        JarEntry entry = new JarEntry(name);
+        entry.setMethod(JarEntry.STORED);
+        entry.setSize(content.length);
+        entry.setCompressedSize(content.length);
+        entry.setCrc(crc.getValue());
+        jar.putNextEntry(entry);
+        jar.write(content);
+        jar.closeEntry();
+    }
+}
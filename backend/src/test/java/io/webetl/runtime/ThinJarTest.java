@@ -0,0 +1,79 @@
+package io.webetl.runtime;
+
+import io.webetl.compiler.FlowCompilerNG;
+import io.webetl.compiler.TestSheets;
+import io.webetl.components.CsvDestinationComponent;
+import io.webetl.components.FileSourceComponent;
+import io.webetl.model.Sheet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(120)
+class ThinJarTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void thinJarRefersToTheStoreAndRuns() throws Exception {
+        Path file = Files.writeString(directory.resolve("rows.csv"), "id\nthin\n");
+        Sheet sheet = TestSheets.sheet("thin-flow")
+            .source("source", FileSourceComponent.class, "filepath", file.toString(), "delimiter", ",")
+            .destination("sink", CsvDestinationComponent.class, "filepath", directory.resolve("out.csv").toString())
+            .flow("source", "sink")
+            .build();
+
+        File jar = new FlowCompilerNG().compileToJar(sheet, false, FlowCompilerNG.JarLayout.THIN, line -> { });
+
+        ThinJar thinJar = ThinJar.read(jar.toPath());
+        assertNotNull(thinJar);
+        assertTrue(ThinJar.resolve(thinJar.getRuntime()).startsWith(ThinJar.getStore()));
+        assertTrue(thinJar.getDependencies().stream().anyMatch(artifact -> artifact.getArtifactId().equals("commons-compress")));
+        for (Path dependency : thinJar.resolveAll()) {
+            assertTrue(dependency.startsWith(ThinJar.getStore()), dependency.toString());
+        }
+        try (JarFile jarFile = new JarFile(jar)) {
+            assertNotNull(jarFile.getEntry("io/webetl/generated/GeneratedFlow_thin_flow.class"));
+            assertNull(jarFile.getEntry("io/webetl/runtime/ExecutionContext.class"));
+            assertTrue(jarFile.stream().noneMatch(entry -> entry.getName().startsWith("META-INF/lib/")));
+        }
+
+        List<String> output = new CopyOnWriteArrayList<>();
+        try (FlowRunner runner = new FlowRunner()) {
+            runner.runFlow(jar.toPath(), output::add);
+        }
+        assertTrue(output.stream().anyMatch(line -> line.contains("thin")), String.join("\n", output));
+    }
+
+    @Test
+    void plainJarsAreNoThinJars() throws Exception {
+        Path jar = directory.resolve("plain.jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new JarEntry("a.txt"));
+        }
+
+        assertNull(ThinJar.read(jar));
+    }
+
+    @Test
+    void rejectsArtifactsWithAnotherChecksum() throws Exception {
+        ThinJar.Artifact artifact = new ThinJar.Artifact("org.example", "library", "1.0", "0".repeat(64));
+        Path stored = ThinJar.getStore().resolve(artifact.getMavenPath());
+        Files.createDirectories(stored.getParent());
+        Files.writeString(stored, "library");
+
+        assertThrows(IOException.class, () -> ThinJar.resolve(artifact));
+    }
+}
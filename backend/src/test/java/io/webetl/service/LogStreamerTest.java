@@ -0,0 +1,192 @@
+package io.webetl.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(30)
+class LogStreamerTest {
+    private static final Pattern DROP_SUMMARY = Pattern.compile("\\[(\\d+) lines dropped.*");
+
+    private final RecordingTemplate template = new RecordingTemplate();
+    private LogStreamer streamer;
+
+    @AfterEach
+    void shutdown() {
+        if (streamer != null) {
+            streamer.shutdown();
+        }
+    }
+
+    @Test
+    void sendsEveryLineInOrderWhileSubscribersKeepUp() throws Exception {
+        streamer = new LogStreamer(template, 200, 100, 10_000);
+        List<String> lines = lines(50_000);
+
+        // Far more lines per second than a fixed frame rate of 200 lines per 50 ms would take
+        try (LogStreamer.Stream stream = streamer.open("/topic/runner/sheet")) {
+            for (int i = 0; i < lines.size(); i++) {
+                stream.send(lines.get(i));
+                if (i % 1000 == 999) {
+                    Thread.sleep(1);
+                }
+            }
+        }
+
+        assertEquals(lines, template.lines());
+        assertSequential();
+    }
+
+    @Test
+    void coalescesLinesIntoFullFramesWhileAFrameIsSent() {
+        template.sendMillis = 20;
+        streamer = new LogStreamer(template, 200, 100, 10_000);
+        List<String> lines = lines(2000);
+
+        try (LogStreamer.Stream stream = streamer.open("/topic/runner/sheet")) {
+            lines.forEach(stream::send);
+        }
+
+        assertEquals(lines, template.lines());
+        assertTrue(template.messages.size() <= 2000 / 200 + 1, "frames: " + template.messages.size());
+    }
+
+    @Test
+    void framesHoldAtMostMaxLinesLines() {
+        template.sendMillis = 50;
+        streamer = new LogStreamer(template, 10, 100, 1000);
+        List<String> lines = lines(500);
+
+        LogStreamer.Stream stream = streamer.open("/topic/runner/sheet");
+        lines.forEach(stream::send);
+        stream.sendNow("done", Map.of());
+        stream.close();
+
+        List<String> received = template.lines();
+        assertEquals(lines, received.subList(0, lines.size()));
+        for (Map<String, Object> message : template.messages) {
+            assertTrue((Integer) message.get("lines") <= 10, "frame of " + message.get("lines") + " lines");
+        }
+        assertSequential();
+    }
+
+    @Test
+    void producersDoNotWaitForSlowSubscribers() {
+        template.sendMillis = 500;
+        streamer = new LogStreamer(template, 10, 100, 1000);
+
+        LogStreamer.Stream stream = streamer.open("/topic/runner/sheet");
+        long start = System.nanoTime();
+        lines(100).forEach(stream::send);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMillis < 250, "sending lines took " + elapsedMillis + " ms");
+        stream.close();
+        assertEquals(lines(100), template.lines());
+    }
+
+    @Test
+    void dropsLinesOnlyOnceSendingFallsBehindTheBacklog() {
+        template.sendMillis = 50;
+        streamer = new LogStreamer(template, 10, 100, 100);
+        int produced = 5000;
+
+        try (LogStreamer.Stream stream = streamer.open("/topic/runner/sheet")) {
+            lines(produced).forEach(stream::send);
+        }
+
+        List<String> received = template.lines();
+        long dropped = 0;
+        List<String> kept = new ArrayList<>();
+        for (String line : received) {
+            Matcher summary = DROP_SUMMARY.matcher(line);
+            if (summary.matches()) {
+                dropped += Long.parseLong(summary.group(1));
+            } else {
+                kept.add(line);
+            }
+        }
+        assertTrue(dropped > 0);
+        assertEquals(produced, kept.size() + dropped);
+        // What is kept arrives in order
+        assertEquals(kept.stream().sorted((a, b) -> Integer.compare(number(a), number(b))).collect(Collectors.toList()), kept);
+        assertSequential();
+    }
+
+    @Test
+    void sendsPendingLinesBeforeAnImmediateMessage() {
+        streamer = new LogStreamer(template, 200, 10_000, 1000);
+
+        LogStreamer.Stream stream = streamer.open("/topic/runner/sheet");
+        stream.send("first");
+        stream.send("second");
+        stream.sendNow("Waiting for a free runner, queue position 1", Map.of("queuePosition", 1));
+        stream.close();
+
+        assertEquals(2, template.messages.size());
+        assertEquals("first\nsecond", template.messages.get(0).get("content"));
+        assertEquals(1, template.messages.get(1).get("queuePosition"));
+        assertSequential();
+    }
+
+    private void assertSequential() {
+        assertEquals(IntStream.range(0, template.messages.size()).boxed().collect(Collectors.toList()),
+            template.messages.stream().map(message -> message.get("sequence")).collect(Collectors.toList()));
+    }
+
+    private static List<String> lines(int count) {
+        return IntStream.range(0, count).mapToObj(i -> "line " + i).collect(Collectors.toList());
+    }
+
+    private static int number(String line) {
+        return Integer.parseInt(line.substring("line ".length()));
+    }
+
+    /**
+     * Keeps the messages sent, taking its time for every message like a slow subscriber.
+     */
+    private static class RecordingTemplate extends SimpMessagingTemplate {
+        final List<Map<String, Object>> messages = new CopyOnWriteArrayList<>();
+        volatile long sendMillis;
+
+        RecordingTemplate() {
+            super((Message<?> message, long timeout) -> true);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void convertAndSend(String destination, Object payload) {
+            if (sendMillis > 0) {
+                try {
+                    Thread.sleep(sendMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            messages.add((Map<String, Object>) payload);
+        }
+
+        List<String> lines() {
+            List<String> lines = new ArrayList<>();
+            for (Map<String, Object> message : messages) {
+                for (String line : ((String) message.get("content")).split("\n")) {
+                    lines.add(line);
+                }
+            }
+            return lines;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package io.webetl.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(30)
+class RunSchedulerTest {
+    private static final long MB = 1024L * 1024;
+
+    private RunScheduler scheduler;
+
+    @AfterEach
+    void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    void readsAvailableRatherThanFreeMemory() {
+        List<String> meminfo = List.of(
+            "MemTotal:       16314588 kB",
+            "MemFree:          402280 kB",
+            "MemAvailable:    9815036 kB",
+            "Buffers:          512340 kB");
+
+        assertEquals(9815036L * 1024, RunScheduler.parseMemAvailable(meminfo));
+        assertEquals(-1, RunScheduler.parseMemAvailable(List.of("MemTotal: 16314588 kB", "MemFree: 402280 kB")));
+    }
+
+    @Test
+    void startsHigherPrioritiesFirstOnceASlotIsFree() throws Exception {
+        scheduler = new RunScheduler(1, 10, 10, 0, () -> -1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        CompletableFuture<Void> blocking = scheduler.submit("a", RunScheduler.Priority.NORMAL, null, () -> await(release));
+        CompletableFuture<Void> low = scheduler.submit("b", RunScheduler.Priority.LOW, null, () -> order.add("low"));
+        CompletableFuture<Void> high = scheduler.submit("c", RunScheduler.Priority.HIGH, null, () -> order.add("high"));
+        assertEquals(2, scheduler.getQueuedRuns());
+        release.countDown();
+
+        CompletableFuture.allOf(blocking, low, high).get(10, TimeUnit.SECONDS);
+        assertEquals(List.of("high", "low"), order);
+    }
+
+    @Test
+    void keepsRunsOfAProjectWithinItsQuota() throws Exception {
+        scheduler = new RunScheduler(2, 1, 10, 0, () -> -1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch otherStarted = new CountDownLatch(1);
+
+        CompletableFuture<Void> first = scheduler.submit("a", RunScheduler.Priority.NORMAL, null, () -> await(release));
+        CompletableFuture<Void> second = scheduler.submit("a", RunScheduler.Priority.NORMAL, null, () -> { });
+        CompletableFuture<Void> other = scheduler.submit("b", RunScheduler.Priority.NORMAL, null, otherStarted::countDown);
+
+        assertTrue(otherStarted.await(10, TimeUnit.SECONDS));
+        other.get(10, TimeUnit.SECONDS);
+        assertFalse(second.isDone());
+        release.countDown();
+        CompletableFuture.allOf(first, second).get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void rejectsRunsBeyondTheQueueLimit() throws Exception {
+        scheduler = new RunScheduler(1, 1, 1, 0, () -> -1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> positions = new CopyOnWriteArrayList<>();
+
+        CompletableFuture<Void> running = scheduler.submit("a", RunScheduler.Priority.NORMAL, null, () -> await(release));
+        CompletableFuture<Void> queued = scheduler.submit("b", RunScheduler.Priority.NORMAL, positions::add, () -> { });
+        CompletableFuture<Void> rejected = scheduler.submit("c", RunScheduler.Priority.NORMAL, null, () -> { });
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> rejected.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        release.countDown();
+        CompletableFuture.allOf(running, queued).get(10, TimeUnit.SECONDS);
+        assertEquals(List.of(1, 0), positions);
+    }
+
+    @Test
+    void holdsRunsBackUntilEnoughMemoryIsAvailable() throws Exception {
+        // The heap headroom of the test JVM is checked too, so the threshold stays low
+        AtomicLong available = new AtomicLong(8 * MB);
+        scheduler = new RunScheduler(2, 2, 10, 16, available::get);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // The first run is always admitted
+        CompletableFuture<Void> first = scheduler.submit("a", RunScheduler.Priority.NORMAL, null, () -> await(release));
+        CompletableFuture<Void> second = scheduler.submit("a", RunScheduler.Priority.NORMAL, null, () -> { });
+        Thread.sleep(1500);
+        assertFalse(second.isDone());
+        assertEquals(1, scheduler.getQueuedRuns());
+
+        available.set(1024 * MB);
+        second.get(10, TimeUnit.SECONDS);
+        release.countDown();
+        first.get(10, TimeUnit.SECONDS);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}